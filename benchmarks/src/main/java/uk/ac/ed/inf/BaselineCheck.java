@@ -0,0 +1,126 @@
+package uk.ac.ed.inf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares JMH results in JSON format with a baseline recorded the same way.
+ * A benchmark regresses when its score is worse than the baseline by more than the tolerance,
+ * lower is better for time modes and higher is better for throughput, or when it allocates more
+ * bytes per operation by more than the tolerance (from the gc profiler).
+ */
+public final class BaselineCheck {
+    /** relative change accepted by default, JMH scores of the same machine vary by a few percent */
+    public static final double DEFAULT_TOLERANCE = 0.10;
+    /** allocations per operation below this are noise of the measurement itself */
+    private static final double MIN_ALLOCATION = 16;
+    private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private BaselineCheck() {
+    }
+
+    /**
+     * Compare two result files and print every regression
+     * @param baseline the results of the baseline run
+     * @param results the results of the new run
+     * @param tolerance the relative change accepted, e.g. 0.10
+     * @return the number of regressions
+     * @throws IOException if a file cannot be read
+     */
+    public static int compare(File baseline, File results, double tolerance) throws IOException {
+        Map<String, JsonNode> before = readResults(baseline);
+        Map<String, JsonNode> after = readResults(results);
+        int regressions = 0;
+
+        for (Map.Entry<String, JsonNode> entry : after.entrySet()) {
+            JsonNode old = before.get(entry.getKey());
+            if (old == null) {
+                System.out.println("NEW        " + entry.getKey());
+                continue;
+            }
+            JsonNode now = entry.getValue();
+
+            double oldScore = old.path("primaryMetric").path("score").asDouble();
+            double newScore = now.path("primaryMetric").path("score").asDouble();
+            boolean higherIsBetter = now.path("mode").asText().equals("thrpt");
+            double change = oldScore == 0 ? 0 : (newScore - oldScore) / oldScore;
+            boolean slower = higherIsBetter ? change < -tolerance : change > tolerance;
+            System.out.printf("%-10s %s: %.3f -> %.3f %s (%+.1f%%)%n", slower ? "REGRESSED" : "ok",
+                    entry.getKey(), oldScore, newScore, now.path("primaryMetric").path("scoreUnit").asText(),
+                    change * 100);
+            if (slower) {
+                regressions++;
+            }
+
+            double oldAllocation = allocation(old);
+            double newAllocation = allocation(now);
+            if (newAllocation >= MIN_ALLOCATION && newAllocation > oldAllocation * (1 + tolerance)) {
+                System.out.printf("%-10s %s: %.1f -> %.1f B/op%n", "ALLOCATES", entry.getKey(), oldAllocation,
+                        newAllocation);
+                regressions++;
+            }
+        }
+        for (String key : before.keySet()) {
+            if (!after.containsKey(key)) {
+                System.out.println("MISSING    " + key);
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * Index the results of a JMH JSON file by benchmark and parameters
+     * @param file the JMH results in JSON format
+     * @return every result by its key
+     * @throws IOException if the file cannot be read
+     */
+    private static Map<String, JsonNode> readResults(File file) throws IOException {
+        Map<String, JsonNode> results = new LinkedHashMap<>();
+        for (JsonNode result : objectMapper.readTree(file)) {
+            StringBuilder key = new StringBuilder(result.path("benchmark").asText());
+            JsonNode params = result.path("params");
+            for (Iterator<String> names = params.fieldNames(); names.hasNext(); ) {
+                String name = names.next();
+                key.append(' ').append(name).append('=').append(params.path(name).asText());
+            }
+            results.put(key.toString(), result);
+        }
+        return results;
+    }
+
+    /**@return the bytes allocated per operation, 0 if the run was not profiled */
+    private static double allocation(JsonNode result) {
+        // older JMH versions prefix the secondary metrics of profilers with a middle dot
+        for (Iterator<Map.Entry<String, JsonNode>> metrics = result.path("secondaryMetrics").fields(); metrics.hasNext(); ) {
+            Map.Entry<String, JsonNode> metric = metrics.next();
+            if (metric.getKey().endsWith(ALLOCATION_METRIC)) {
+                return metric.getValue().path("score").asDouble();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Compare a new run with the baseline
+     * @param args the baseline file, the results file and optionally the tolerance, 0.10 by default
+     * @throws IOException if a file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineCheck <baseline.json> <results.json> [tolerance]");
+            System.exit(2);
+        }
+        double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_TOLERANCE;
+        int regressions = compare(new File(args[0]), new File(args[1]), tolerance);
+        System.out.println(regressions + " regression(s)");
+        System.exit(regressions == 0 ? 0 : 1);
+    }
+}
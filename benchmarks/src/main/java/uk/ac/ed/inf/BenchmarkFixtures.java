@@ -0,0 +1,102 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Offline fixtures of the benchmarks: documents in the format of the web server for 2023-01-01,
+ * bundled as resources, so every run measures the same map and orders without any network.
+ */
+public final class BenchmarkFixtures {
+    private static final String FOLDER = "/fixtures/";
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Read a fixture document
+     * @param name the file name of the document
+     * @return the document
+     * @throws UncheckedIOException if the fixture is missing
+     */
+    public static String read(String name) {
+        try (InputStream in = BenchmarkFixtures.class.getResourceAsStream(FOLDER + name)) {
+            if (in == null) {
+                throw new IOException("Missing fixture " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**@return the snapshot of the fixture map and restaurants */
+    public static WorldSnapshot worldSnapshot() {
+        return worldSnapshot(read("no-fly-zones.geojson"));
+    }
+
+    /**
+     * Compile the fixture map with other no-fly zones
+     * @param noFlyZonesJson the no-fly-zones.geojson document to use instead of the fixture one
+     * @return the snapshot
+     */
+    public static WorldSnapshot worldSnapshot(String noFlyZonesJson) {
+        return new WorldSnapshot(noFlyZonesJson, read("restaurants.geojson"), read("all.geojson"),
+                read("centralArea.json"), read("restaurants.json"));
+    }
+
+    /**
+     * Read and validate the fixture orders, every call returns fresh orders that were not delivered yet
+     * @param worldSnapshot the restaurants to validate the orders against
+     * @return the orders of the day
+     */
+    public static List<Order> orders(WorldSnapshot worldSnapshot) {
+        List<Order> orders = new ArrayList<>();
+        try (InputStream in = BenchmarkFixtures.class.getResourceAsStream(FOLDER + "orders-2023-01-01.json")) {
+            new OrderReader(worldSnapshot.getMenuCatalog()).readOrders(in, orders::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return orders;
+    }
+
+    /**
+     * Generate square no-fly zones scattered around the central area, away from Appleton Tower
+     * @param count the number of zones
+     * @param seed the seed of the scattering, so that every run measures the same zones
+     * @return the no-fly-zones.geojson document
+     */
+    public static String noFlyZones(int count, long seed) {
+        Random random = new Random(seed);
+        StringBuilder json = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+        for (int i = 0; i < count; i++) {
+            double size = 0.0002 + random.nextDouble() * 0.0006;
+            double lng;
+            double lat;
+            do {
+                lng = -3.200 + random.nextDouble() * 0.020;
+                lat = 55.940 + random.nextDouble() * 0.008;
+            } while (Math.hypot(lng - Drone.APPLETON_LONGITUDE, lat - Drone.APPLETON_LATITUDE) < 0.001);
+
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"type\":\"Feature\",\"properties\":{\"name\":\"zone ").append(i)
+                    .append("\"},\"geometry\":{\"type\":\"Polygon\",\"coordinates\":[[");
+            double[][] corners = {{lng, lat}, {lng + size, lat}, {lng + size, lat + size}, {lng, lat + size}, {lng, lat}};
+            for (int c = 0; c < corners.length; c++) {
+                if (c > 0) {
+                    json.append(',');
+                }
+                json.append('[').append(corners[c][0]).append(',').append(corners[c][1]).append(']');
+            }
+            json.append("]]}}");
+        }
+        return json.append("]}").toString();
+    }
+}
@@ -0,0 +1,66 @@
+package uk.ac.ed.inf;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with allocation profiling and compares them with a recorded baseline.
+ * <p>
+ * Usage, from the benchmarks folder after installing the main project:
+ * <pre>
+ *   java -jar target/benchmarks.jar [JMH options] [benchmark regex]
+ * </pre>
+ * Results are written to results.json and compared with baseline.json if it exists, the run fails
+ * on a regression. Scores only compare on the same machine, so no baseline is committed; record one
+ * on the reference machine with a full run of the commit to compare against:
+ * <pre>
+ *   mvn -B install -DskipTests              (in the main project)
+ *   mvn -B package                          (in the benchmarks folder)
+ *   java -jar target/benchmarks.jar
+ *   cp results.json baseline.json
+ * </pre>
+ */
+public final class Benchmarks {
+    private static final String RESULTS = "results.json";
+    private static final String BASELINE = "baseline.json";
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Run the benchmarks
+     * @param args any JMH command line options, e.g. a regex selecting benchmarks or -f 3
+     * @throws CommandLineOptionException if the options are invalid
+     * @throws RunnerException if a benchmark fails
+     * @throws IOException if the results cannot be compared
+     */
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException, IOException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(RESULTS)
+                .build();
+        new Runner(options).run();
+
+        File baseline = new File(BASELINE);
+        if (!baseline.exists()) {
+            System.out.println("No " + BASELINE + " to compare with, copy " + RESULTS + " to record one");
+            return;
+        }
+        int regressions = BaselineCheck.compare(baseline, new File(RESULTS), BaselineCheck.DEFAULT_TOLERANCE);
+        System.out.println(regressions + " regression(s) against " + BASELINE);
+        if (regressions > 0) {
+            System.exit(1);
+        }
+    }
+}
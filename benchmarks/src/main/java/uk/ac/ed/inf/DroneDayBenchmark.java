@@ -0,0 +1,61 @@
+package uk.ac.ed.inf;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A full day of the fixture orders flown by one drone, as App.deliverDay without the result files
+ * and without the route cache, so that every invocation plans its routes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DroneDayBenchmark {
+    /** greedy navigation while flying, or greedy, A* or visibility-graph routes planned first */
+    @Param({"none", "greedy", "astar", "visibility"})
+    public String planner;
+
+    private WorldSnapshot worldSnapshot;
+    private Fleet fleet;
+
+    @Setup(Level.Trial)
+    public void loadMap() {
+        this.worldSnapshot = BenchmarkFixtures.worldSnapshot();
+    }
+
+    /** every invocation delivers fresh orders with a full battery */
+    @Setup(Level.Invocation)
+    public void newDay() {
+        DataParser dataParser = new DataParser(this.worldSnapshot, BenchmarkFixtures.orders(this.worldSnapshot));
+        this.fleet = new Fleet(dataParser, 1);
+        switch (this.planner) {
+            case "greedy" -> this.fleet.setRoutePlanners(() -> new GreedyPlanner(dataParser));
+            case "astar" -> this.fleet.setRoutePlanners(() -> new AStarPlanner(dataParser));
+            case "visibility" -> this.fleet.setRoutePlanners(() -> new VisibilityGraphPlanner(dataParser));
+            default -> {
+            }
+        }
+        this.fleet.initializeOrders();
+    }
+
+    @Benchmark
+    public MoveBuffer deliverDay() {
+        this.fleet.deliverOrders();
+        return this.fleet.getDrones().get(0).getMoves();
+    }
+}
@@ -0,0 +1,57 @@
+package uk.ac.ed.inf;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Single moves of the drone on the fixture map: the position after a move and the central-area test.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MoveBenchmark {
+    /** a power of two, so that the benchmarks cycle through the positions with a mask */
+    private static final int POSITIONS = 1024;
+    private static final LngLat.Direction[] DIRECTIONS = LngLat.Direction.values();
+
+    private DataParser dataParser;
+    private LngLat[] positions;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        WorldSnapshot worldSnapshot = BenchmarkFixtures.worldSnapshot();
+        this.dataParser = new DataParser(worldSnapshot, BenchmarkFixtures.orders(worldSnapshot));
+
+        Random random = new Random(17);
+        this.positions = new LngLat[POSITIONS];
+        for (int i = 0; i < POSITIONS; i++) {
+            this.positions[i] = new LngLat(-3.196 + random.nextDouble() * 0.016, 55.941 + random.nextDouble() * 0.007);
+        }
+    }
+
+    @Benchmark
+    public LngLat nextPosition() {
+        int i = this.next++;
+        return this.positions[i & (POSITIONS - 1)].nextPosition(DIRECTIONS[i % DIRECTIONS.length]);
+    }
+
+    @Benchmark
+    public boolean inCentralArea() {
+        return this.positions[this.next++ & (POSITIONS - 1)].inCentralArea(this.dataParser);
+    }
+}
@@ -0,0 +1,98 @@
+package uk.ac.ed.inf;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The no-fly-zone test of a move and the greedy navigator built on it, with a growing number of zones.
+ * The zones are scattered with a fixed seed, so every run measures the same map.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NoFlyZoneBenchmark {
+    /** a power of two, so that the benchmarks cycle through the moves with a mask */
+    private static final int MOVES = 1024;
+    private static final LngLat.Direction[] COMPASS = List.of(LngLat.Direction.values()).subList(0, 16)
+            .toArray(new LngLat.Direction[0]);
+
+    @Param({"4", "16", "64", "256"})
+    public int zoneCount;
+
+    private DataParser dataParser;
+    private NoFlyZoneIndex noFlyZoneIndex;
+    private LngLat[] positions;
+    private LngLat[] goals;
+    private LngLat.Direction[] directions;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        WorldSnapshot worldSnapshot = BenchmarkFixtures.worldSnapshot(BenchmarkFixtures.noFlyZones(this.zoneCount, 31));
+        this.dataParser = new DataParser(worldSnapshot, BenchmarkFixtures.orders(worldSnapshot));
+        this.noFlyZoneIndex = this.dataParser.getNoFlyZoneIndex();
+
+        List<LngLat> restaurants = worldSnapshot.getRestaurantLocs();
+        Random random = new Random(17);
+        this.positions = new LngLat[MOVES];
+        this.goals = new LngLat[MOVES];
+        this.directions = new LngLat.Direction[MOVES];
+        for (int i = 0; i < MOVES; i++) {
+            do {
+                this.positions[i] = new LngLat(-3.196 + random.nextDouble() * 0.016,
+                        55.941 + random.nextDouble() * 0.007);
+            } while (isBoxedIn(this.positions[i]));
+            this.goals[i] = restaurants.get(random.nextInt(restaurants.size()));
+            this.directions[i] = COMPASS[random.nextInt(COMPASS.length)];
+        }
+    }
+
+    /**
+     * Test if almost every move from a position crosses a zone edge. The greedy navigator never turns
+     * straight back, so it would search forever from a position whose only valid move is behind it
+     * @param pos the position
+     * @return true if there are less than two valid moves
+     */
+    private boolean isBoxedIn(LngLat pos) {
+        int validMoves = 0;
+        for (LngLat.Direction direction : COMPASS) {
+            LngLat to = pos.nextPosition(direction);
+            if (!this.noFlyZoneIndex.intersects(pos.getLng(), pos.getLat(), to.getLng(), to.getLat())) {
+                validMoves++;
+            }
+        }
+        return validMoves < 2;
+    }
+
+    /** the no-fly-zone test of LngLat.nextDirection, one candidate move, which was LngLat.isOutsideNoFlyZone */
+    @Benchmark
+    public boolean isOutsideNoFlyZone() {
+        int i = this.next++ & (MOVES - 1);
+        LngLat from = this.positions[i];
+        LngLat to = from.nextPosition(this.directions[i]);
+        return !NoFlyZoneIndex.isIntersection(from.testNoFlyZones(this.dataParser, to));
+    }
+
+    /** one step of the greedy navigator, which was LngLat.move */
+    @Benchmark
+    public LngLat.Direction nextDirection() {
+        int i = this.next++ & (MOVES - 1);
+        return this.positions[i].nextDirection(this.dataParser, this.goals[i], this.directions[i]);
+    }
+}
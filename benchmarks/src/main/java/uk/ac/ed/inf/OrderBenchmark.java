@@ -0,0 +1,77 @@
+package uk.ac.ed.inf;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Validation of the fixture orders of a day: the legacy Order.getOrderOutcome, the OrderValidator
+ * and the streaming OrderReader that validates while parsing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OrderBenchmark {
+    private Restaurant[] restaurants;
+    private OrderValidator orderValidator;
+    private OrderReader orderReader;
+    private List<Order> orders;
+    private byte[] ordersJson;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        WorldSnapshot worldSnapshot = BenchmarkFixtures.worldSnapshot();
+        this.restaurants = worldSnapshot.getRestaurants();
+        this.orderValidator = new OrderValidator(worldSnapshot.getMenuCatalog());
+        this.orderReader = new OrderReader(worldSnapshot.getMenuCatalog());
+        this.orders = BenchmarkFixtures.orders(worldSnapshot);
+        this.ordersJson = BenchmarkFixtures.read("orders-2023-01-01.json").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Order nextOrder() {
+        Order order = this.orders.get(this.next);
+        this.next = (this.next + 1) % this.orders.size();
+        return order;
+    }
+
+    /** one order through the legacy validation */
+    @Benchmark
+    public String getOrderOutcome() throws ParseException {
+        Order order = nextOrder();
+        return Order.getOrderOutcome(this.restaurants, order.getOrderItems(), order.getCreditCardNumber(),
+                order.getCreditCardExpiry(), order.getCvv(), order.getOrderDate(), order.getPriceTotalInPence());
+    }
+
+    /** one order through the menu catalogue */
+    @Benchmark
+    public Order.OrderOutcome validate() {
+        Order order = nextOrder();
+        return this.orderValidator.validate(order.getOrderItems(), order.getCreditCardNumber(),
+                order.getCreditCardExpiry(), order.getCvv(), order.getOrderDate(), order.getPriceTotalInPence());
+    }
+
+    /** the whole orders document of the day, parsed and validated */
+    @Benchmark
+    public void readOrders(Blackhole blackhole) throws IOException {
+        this.orderReader.readOrders(new ByteArrayInputStream(this.ordersJson), blackhole::consume);
+    }
+}
@@ -0,0 +1,67 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The three result files of the fixture day, written from the moves of one flown day.
+ * The files go to the resultfiles folder of the working directory, dated 2099-01-01 so that
+ * no real result is overwritten.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResultsWriterBenchmark {
+    private ResultsWriter resultsWriter;
+    private String landmarkFeatures;
+    private List<MoveBuffer> moves;
+    private List<Order> orders;
+
+    @Setup
+    public void setUp() throws IOException {
+        Files.createDirectories(Paths.get("resultfiles"));
+
+        WorldSnapshot worldSnapshot = BenchmarkFixtures.worldSnapshot();
+        DataParser dataParser = new DataParser(worldSnapshot, BenchmarkFixtures.orders(worldSnapshot));
+        Fleet fleet = new Fleet(dataParser, 1);
+        fleet.initializeOrders();
+        fleet.deliverOrders();
+
+        this.resultsWriter = new ResultsWriter("2099", "01", "01");
+        this.landmarkFeatures = dataParser.getLandmarkFeatures();
+        this.moves = fleet.getMoves();
+        this.orders = fleet.getAllOrders();
+    }
+
+    @Benchmark
+    public void writeDeliveriesJson() {
+        this.resultsWriter.writeDeliveriesJson(this.orders);
+    }
+
+    @Benchmark
+    public void writeFlightpathJson() {
+        this.resultsWriter.writeFlightpathJson(this.moves);
+    }
+
+    @Benchmark
+    public void writeDroneGeojson() {
+        this.resultsWriter.writeDroneGeojson(this.landmarkFeatures, this.moves);
+    }
+}
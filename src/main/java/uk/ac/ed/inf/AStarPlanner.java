@@ -0,0 +1,219 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A* search over the 16-direction move lattice of the drone.
+ * Every node is a position reachable by moves of LngLat.LENGTH_OF_MOVE, held exactly in FixedPoint units,
+ * the cost of a node is its number of moves and the heuristic is the Euclidean distance to the goal in moves.
+ * Moves are tested against the no-fly zones with the exact integer predicates of FixedPoint.
+ * The drone flies the planned directions in doubles, which drift from the lattice by up to DRIFT, so a move
+ * keeps DRIFT away from every zone edge and never ends within DRIFT of the central area boundary.
+ * Positions are quantized into a hashed closed set and the search gives up after a bounded
+ * number of node expansions, so the planning latency per order is predictable.
+ * A route on the side of the central area boundary its goal is on never crosses the boundary again,
+ * as LngLat.nextDirection, so that a route to a goal outside the area flown backwards never leaves the area
+ * after entering it, and a route to a goal inside the area never leaves it after entering it.
+ */
+public class AStarPlanner implements RoutePlanner {
+    public static final int DEFAULT_MAX_EXPANSIONS = 100000;
+
+    /** positions closer than this are treated as the same search node, in FixedPoint units */
+    private static final long QUANTUM = FixedPoint.LENGTH_OF_MOVE / 2;
+    /**
+     * the largest distance between a lattice position and the same position flown in doubles, in FixedPoint
+     * units: the drift of the step tables over a full battery and the rounding of start and goal
+     */
+    static final long DRIFT = (long) Math.ceil(FixedPoint.MAX_STEP_ERROR * Math.sqrt(2) * (Drone.BATTERY + 2));
+    /** the distance a move keeps from the zone edges, which are rounded to units too */
+    private static final long ZONE_MARGIN = DRIFT + 1;
+    /** the distance a position keeps from the central area boundary, in degrees */
+    private static final double BOUNDARY_MARGIN = FixedPoint.toDegrees(DRIFT + 1);
+    /**
+     * a node is at the goal when it is this close in FixedPoint units, less than LngLat.DISTANCE_TOLERANCE
+     * by the drift, so the route flown in doubles gets close too
+     */
+    private static final long GOAL_TOLERANCE = FixedPoint.toFixed(LngLat.DISTANCE_TOLERANCE) - DRIFT;
+
+    private static final LngLat.Direction[] DIRECTIONS = Arrays.copyOf(LngLat.Direction.values(), 16);
+
+    private final DataParser dataParser;
+    private final int maxExpansions;
+
+    /* node storage of the current search, positions in FixedPoint units */
+    private long[] nodeLng;
+    private long[] nodeLat;
+    private int[] nodeCost;
+    private int[] nodeParent;
+    private byte[] nodeDirection;
+    private int nodeCount;
+
+    /* binary min-heap of node ids ordered by nodeScore */
+    private double[] nodeScore;
+    private int[] heap;
+    private int heapSize;
+
+    /**
+     * Create the planner with the default expansion cap
+     * @param dataParser the map to plan on
+     */
+    public AStarPlanner(DataParser dataParser) {
+        this(dataParser, DEFAULT_MAX_EXPANSIONS);
+    }
+
+    /**
+     * Create the planner
+     * @param dataParser the map to plan on
+     * @param maxExpansions the maximum number of nodes expanded before the search gives up
+     */
+    public AStarPlanner(DataParser dataParser, int maxExpansions) {
+        this.dataParser = dataParser;
+        this.maxExpansions = maxExpansions;
+    }
+
+    /**
+     * Plan the shortest route in moves from start to a position close to the goal.
+     * Not thread-safe, every thread should use its own planner.
+     * @param start the position the drone starts from
+     * @param goal the position the drone wants to reach
+     * @return the directions of every move, or null if the goal is unreachable within the expansion cap
+     */
+    @Override
+    public List<LngLat.Direction> planRoute(LngLat start, LngLat goal) {
+        NoFlyZoneIndex noFlyZoneIndex = this.dataParser.getNoFlyZoneIndex();
+        CentralArea centralArea = this.dataParser.getCentralAreaPolygon();
+        long goalLng = FixedPoint.toFixed(goal.getLng());
+        long goalLat = FixedPoint.toFixed(goal.getLat());
+        boolean goalInside = centralArea.contains(goal.getLng(), goal.getLat());
+
+        int capacity = 1024;
+        this.nodeLng = new long[capacity];
+        this.nodeLat = new long[capacity];
+        this.nodeCost = new int[capacity];
+        this.nodeParent = new int[capacity];
+        this.nodeDirection = new byte[capacity];
+        this.nodeScore = new double[capacity];
+        this.heap = new int[capacity];
+        this.nodeCount = 0;
+        this.heapSize = 0;
+
+        LongHashSet closed = new LongHashSet(capacity);
+        push(addNode(FixedPoint.toFixed(start.getLng()), FixedPoint.toFixed(start.getLat()), 0, -1, -1,
+                goalLng, goalLat));
+
+        int expansions = 0;
+        while (this.heapSize > 0 && expansions < this.maxExpansions) {
+            int node = pop();
+            long lng = this.nodeLng[node];
+            long lat = this.nodeLat[node];
+
+            if (FixedPoint.closeTo(lng, lat, goalLng, goalLat, GOAL_TOLERANCE)) {
+                return buildRoute(node);
+            }
+            if (!closed.add(FixedPoint.quantize(lng, lat, QUANTUM))) {
+                continue;
+            }
+            expansions++;
+            double lngDegrees = FixedPoint.toDegrees(lng);
+            double latDegrees = FixedPoint.toDegrees(lat);
+            boolean keepSide = centralArea.contains(lngDegrees, latDegrees) == goalInside;
+
+            for (int d = 0; d < DIRECTIONS.length; d++) {
+                long nextLng = lng + FixedPoint.stepLng(DIRECTIONS[d]);
+                long nextLat = lat + FixedPoint.stepLat(DIRECTIONS[d]);
+                if (closed.contains(FixedPoint.quantize(nextLng, nextLat, QUANTUM))) {
+                    continue;
+                }
+                if (noFlyZoneIndex.intersectsFixed(lng, lat, nextLng, nextLat, ZONE_MARGIN)) {
+                    continue;
+                }
+                // a position near the boundary may be on its other side when flown
+                double nextLngDegrees = FixedPoint.toDegrees(nextLng);
+                double nextLatDegrees = FixedPoint.toDegrees(nextLat);
+                if (centralArea.nearBoundary(nextLngDegrees, nextLatDegrees, BOUNDARY_MARGIN) ||
+                        (keepSide && centralArea.contains(nextLngDegrees, nextLatDegrees) != goalInside)) {
+                    continue;
+                }
+                push(addNode(nextLng, nextLat, this.nodeCost[node] + 1, node, d, goalLng, goalLat));
+            }
+        }
+        return null;
+    }
+
+    private int addNode(long lng, long lat, int cost, int parent, int direction, long goalLng, long goalLat) {
+        if (this.nodeCount == this.nodeLng.length) {
+            int capacity = this.nodeLng.length * 2;
+            this.nodeLng = Arrays.copyOf(this.nodeLng, capacity);
+            this.nodeLat = Arrays.copyOf(this.nodeLat, capacity);
+            this.nodeCost = Arrays.copyOf(this.nodeCost, capacity);
+            this.nodeParent = Arrays.copyOf(this.nodeParent, capacity);
+            this.nodeDirection = Arrays.copyOf(this.nodeDirection, capacity);
+            this.nodeScore = Arrays.copyOf(this.nodeScore, capacity);
+        }
+        int node = this.nodeCount++;
+        this.nodeLng[node] = lng;
+        this.nodeLat[node] = lat;
+        this.nodeCost[node] = cost;
+        this.nodeParent[node] = parent;
+        this.nodeDirection[node] = (byte) direction;
+
+        // admissible: every move covers at most LENGTH_OF_MOVE towards the goal
+        double remaining = Math.max(0, Math.hypot(lng - goalLng, lat - goalLat) - GOAL_TOLERANCE);
+        double heuristic = remaining / FixedPoint.LENGTH_OF_MOVE;
+        // a tiny bias towards deeper nodes breaks ties between equally good nodes
+        this.nodeScore[node] = cost + heuristic * (1 + 1e-6);
+        return node;
+    }
+
+    private List<LngLat.Direction> buildRoute(int node) {
+        List<LngLat.Direction> route = new ArrayList<>(this.nodeCost[node]);
+        for (int n = node; this.nodeParent[n] >= 0; n = this.nodeParent[n]) {
+            route.add(DIRECTIONS[this.nodeDirection[n]]);
+        }
+        Collections.reverse(route);
+        return route;
+    }
+
+    private void push(int node) {
+        if (this.heapSize == this.heap.length) {
+            this.heap = Arrays.copyOf(this.heap, this.heap.length * 2);
+        }
+        int i = this.heapSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (this.nodeScore[this.heap[parent]] <= this.nodeScore[node]) {
+                break;
+            }
+            this.heap[i] = this.heap[parent];
+            i = parent;
+        }
+        this.heap[i] = node;
+    }
+
+    private int pop() {
+        int top = this.heap[0];
+        int last = this.heap[--this.heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= this.heapSize) {
+                break;
+            }
+            if (child + 1 < this.heapSize && this.nodeScore[this.heap[child + 1]] < this.nodeScore[this.heap[child]]) {
+                child++;
+            }
+            if (this.nodeScore[last] <= this.nodeScore[this.heap[child]]) {
+                break;
+            }
+            this.heap[i] = this.heap[child];
+            i = child;
+        }
+        if (this.heapSize > 0) {
+            this.heap[i] = last;
+        }
+        return top;
+    }
+}
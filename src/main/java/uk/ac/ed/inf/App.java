@@ -1,17 +1,12 @@
 package uk.ac.ed.inf;
 
 import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.time.Duration;
-import java.time.Instant;
 import java.time.LocalDate;
-import java.util.List;
-
-import com.mapbox.geojson.Feature;
-
-import static uk.ac.ed.inf.Order.OrderOutcome.ValidButNotDelivered;
 
 
 /**
@@ -100,7 +95,7 @@ public class App {
 //            Drone drone = new Drone(dataParser);
 //
 //            // Initialize all the orders at given data
-//            drone.initializeOrders(baseAddress);
+//            drone.initializeOrders();
 //            List<Order> orders = drone.getAllOrders();
 //
 //            // deliver all orders
@@ -142,77 +137,181 @@ public class App {
 //        }
 //    }
 
-    public static void main(String[] args){
-        Instant start = Instant.now();
-
-        LocalDate startDate = LocalDate.parse("2023-01-01");
-        LocalDate endDate   = LocalDate.parse("2023-05-31");
-        for (LocalDate date = startDate; date.isBefore(endDate); date = date.plusDays(1)) {
-
-            Instant startTiming = Instant.now();
-
-            if (isValidDate(String.valueOf(date)) && isValidURL("https://ilp-rest.azurewebsites.net")) {
-                String year = String.valueOf(date).split("-")[0];
-                String month = String.valueOf(date).split("-")[1];
-                String day = String.valueOf(date).split("-")[2];
-
-                String baseAddress = "https://ilp-rest.azurewebsites.net";
-                baseAddress += "/";
-
-                String seed = "cabbage";
-
-                //Initialize order data parsed from server
-                DataParser dataParser = new DataParser(baseAddress, year, month, day);
-                Drone drone = new Drone(dataParser);
+    /**
+     * Deliver the orders of one day and write its result files.
+     * Days are isolated from each other, so several days can run concurrently
+     *
+     * @param baseAddress base address of the web server, ending with "/"
+     * @param date the day to deliver
+     * @param routeCache the route cache shared between days
+     * @param geojsonOptions how the flight line of the drone geojson file is simplified and rounded
+     * @param fleetSize the number of drones delivering the orders
+     * @param selection how the orders of each drone are selected by route cost,
+     *                  or null to deliver the nearest orders first until one does not fit
+     * @param planner the planner of the routes to the restaurants
+     * @param metrics the metrics of the day, written with the result files, or null to not measure the day
+     */
+    public static void deliverDay(String baseAddress, LocalDate date, RouteCache routeCache,
+                                  ResultsWriter.GeojsonOptions geojsonOptions, int fleetSize,
+                                  DeliveryPlanner.Selection selection, RoutePlanner.Kind planner,
+                                  Metrics metrics) {
+        if (!isValidDate(String.valueOf(date))) {
+            throw new IllegalArgumentException("Invalid date input");
+        } else if (!isValidURL(baseAddress)) {
+            throw new IllegalArgumentException("Invalid URL input");
+        }
 
-                // Initialize all the orders at given data
-                drone.initializeOrders(baseAddress);
-                List<Order> orders = drone.getAllOrders();
+        String year = String.valueOf(date).split("-")[0];
+        String month = String.valueOf(date).split("-")[1];
+        String day = String.valueOf(date).split("-")[2];
+
+        //Initialize order data parsed from server
+        DataParser dataParser = new DataParser(baseAddress, year, month, day, metrics);
+        Fleet fleet = new Fleet(dataParser, fleetSize);
+        fleet.setRoutePlanners(() ->
+                routeCache.wrap(planner.create(dataParser), dataParser.getGeometryFingerprint()));
+        if (planner != RoutePlanner.Kind.ASTAR) {
+            // a stuck greedy leg is planned again by A*, unless A* already failed on it
+            fleet.setFallbackPlanners(() ->
+                    routeCache.wrap(new AStarPlanner(dataParser), dataParser.getGeometryFingerprint()));
+        }
+        if (selection != null) {
+            DeliveryPlanner deliveryPlanner = new DeliveryPlanner(
+                    routeCache.wrap(planner.create(dataParser), dataParser.getGeometryFingerprint()), selection);
+            if (planner != RoutePlanner.Kind.ASTAR) {
+                deliveryPlanner.setFallbackPlanner(
+                        routeCache.wrap(new AStarPlanner(dataParser), dataParser.getGeometryFingerprint()));
+            }
+            fleet.setDeliveryPlanner(deliveryPlanner);
+        }
 
-                // deliver all orders
-                for (int i = 0; i < orders.size(); i++){
-                    Order currOrder = orders.get(i);
+        // Initialize all the orders at given data
+        fleet.initializeOrders();
 
-                    if (currOrder.getOrderOutcome().equals(ValidButNotDelivered.toString())) {
+        // deliver all orders
+        fleet.deliverOrders();
+        fleet.getOrdersStatistics();
 
-                        if (drone.haveNoEnoughBattery(currOrder)){
-                            System.out.println("DRONE: No enough battery to deliver the rest orders");
-                            break;
-                        }
+        ResultsWriter resultsWriter = new ResultsWriter(year, month, day, geojsonOptions);
+        resultsWriter.setMetrics(metrics);
 
-                        drone.droneMove(currOrder);
+        // create the result files
+        resultsWriter.writeDroneGeojson(dataParser.getLandmarkFeatures(), fleet.getMoves());
+        resultsWriter.writeFlightpathJson(fleet.getMoves());
+        resultsWriter.writeFlightpathArchive(fleet.getMoves());
+        resultsWriter.writeDeliveriesJson(fleet.getAllOrders());
+        if (metrics != null) {
+            resultsWriter.writeMetrics(metrics);
+        }
+    }
 
-                    } else {
-                        System.out.printf("DRONE: Invalid Order {orderNo: %s} %n", currOrder.getOrderNo());
-                        System.out.println("-----> " + currOrder.getOrderOutcome() + "\n");
-                    }
-                }
-                drone.getOrdersStatistics();
 
-                List<Flightpath> flightpath = drone.getFlightpaths();
-                List<Feature> landmarks = dataParser.getLandmarks();
+    /**
+     * Run all days from 2023-01-01 to 2023-05-30, or the days given
+     *
+     * @param args
+     * <ul>
+     * <li>--threads=N - number of days delivered concurrently, 1 by default</li>
+     * <li>--simplify=T - simplify the flight line of the geojson files, 0 merges straight runs only,
+     * a positive T is the Douglas–Peucker tolerance in degrees; every point is kept by default</li>
+     * <li>--precision=N - decimals of the geojson coordinates, 7 by default</li>
+     * <li>--drones=N - number of drones delivering the orders of each day, 1 by default</li>
+     * <li>--select=deliveries|revenue - select the orders that maximise deliveries or revenue within the
+     * battery, from the real length of their routes; by default the nearest orders are delivered first
+     * until one does not fit</li>
+     * <li>--select-greedy - select by value per move instead of the exact knapsack</li>
+     * <li>--base=URL - base address of the web server, or a file: URL of a directory written by
+     * WorkloadGenerator</li>
+     * <li>--from=YYYY-MM-DD, --to=YYYY-MM-DD - the first and last day, 2023-01-01 and 2023-05-30 by default</li>
+     * <li>--metrics - write the latencies and counts of every day as metrics-YYYY-MM-DD.json and .prom</li>
+     * <li>--planner=greedy|astar|visibility - plan the routes to the restaurants by replaying the greedy
+     * navigator, by A* over the moves, or along the shortest path on the visibility graph of the no-fly zones;
+     * greedy by default</li>
+     * <li>--cache=DIR - keep the server responses in this directory between runs, revalidated on every run;
+     * by default every response is fetched again</li>
+     * <li>--offline - serve the server responses from the cache only, without any request; needs --cache</li>
+     * <li>--route-cache=DIR - also keep the planned routes in this directory between runs;
+     * by default they are only shared between the days of a run</li>
+     * </ul>
+     */
+    public static void main(String[] args){
+        int threads = 1;
+        double tolerance = ResultsWriter.GeojsonOptions.EXACT.tolerance();
+        int precision = ResultsWriter.GeojsonOptions.EXACT.precision();
+        int drones = 1;
+        DeliveryPlanner.Objective objective = null;
+        DeliveryPlanner.Strategy strategy = DeliveryPlanner.Strategy.KNAPSACK;
+        String baseAddress = "https://ilp-rest.azurewebsites.net/";
+        LocalDate from = LocalDate.parse("2023-01-01");
+        LocalDate to = LocalDate.parse("2023-05-30");
+        boolean metrics = false;
+        RoutePlanner.Kind planner = RoutePlanner.Kind.GREEDY;
+        Path cacheDirectory = null;
+        boolean offline = false;
+        Path routeCacheDirectory = null;
+        for (String arg : args) {
+            if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(arg.substring("--threads=".length()));
+            } else if (arg.startsWith("--simplify=")) {
+                tolerance = Double.parseDouble(arg.substring("--simplify=".length()));
+            } else if (arg.startsWith("--precision=")) {
+                precision = Integer.parseInt(arg.substring("--precision=".length()));
+            } else if (arg.startsWith("--drones=")) {
+                drones = Integer.parseInt(arg.substring("--drones=".length()));
+            } else if (arg.startsWith("--select=")) {
+                objective = DeliveryPlanner.Objective.valueOf(arg.substring("--select=".length()).toUpperCase());
+            } else if (arg.equals("--select-greedy")) {
+                strategy = DeliveryPlanner.Strategy.GREEDY_RATIO;
+            } else if (arg.startsWith("--base=")) {
+                baseAddress = arg.substring("--base=".length());
+            } else if (arg.startsWith("--from=")) {
+                from = LocalDate.parse(arg.substring("--from=".length()));
+            } else if (arg.startsWith("--to=")) {
+                to = LocalDate.parse(arg.substring("--to=".length()));
+            } else if (arg.equals("--metrics")) {
+                metrics = true;
+            } else if (arg.startsWith("--planner=")) {
+                planner = RoutePlanner.Kind.valueOf(arg.substring("--planner=".length()).toUpperCase());
+            } else if (arg.startsWith("--cache=")) {
+                cacheDirectory = Paths.get(arg.substring("--cache=".length()));
+            } else if (arg.equals("--offline")) {
+                offline = true;
+            } else if (arg.startsWith("--route-cache=")) {
+                routeCacheDirectory = Paths.get(arg.substring("--route-cache=".length()));
+            } else {
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
 
-                ResultsWriter resultsWriter = new ResultsWriter(year,month,day);
+        if (offline && cacheDirectory == null) {
+            throw new IllegalArgumentException("--offline needs a --cache directory");
+        }
 
-                // create the result files
-                resultsWriter.writeDroneGeojson(landmarks, flightpath);
-                resultsWriter.writeFlightpathJson(flightpath);
-                resultsWriter.writeDeliveriesJson(drone.getAllOrders());
+        // responses of the server are kept between runs if asked, and only transferred again when they changed
+        HttpCache httpCache = null;
+        if (cacheDirectory != null) {
+            httpCache = new HttpCache(cacheDirectory);
+            httpCache.setOffline(offline);
+            RestFetcher.getDefault().setCache(httpCache);
+        }
 
-            } else {
-                if (!isValidDate(args[0])){
-                    throw new IllegalArgumentException("Invalid date input");
-                } else if (!isValidURL(args[1])) {
-                    throw new IllegalArgumentException("Invalid URL input");
-                }
-            }
+        // routes to the restaurants are shared between days with the same map, and between runs if asked
+        RouteCache routeCache = new RouteCache(routeCacheDirectory, 256);
 
-            Instant endTiming = Instant.now();
-            System.out.println(Duration.between(startTiming, endTiming));
+        BatchRunner batchRunner = new BatchRunner(baseAddress, threads, routeCache);
+        batchRunner.setGeojsonOptions(new ResultsWriter.GeojsonOptions(tolerance, precision));
+        batchRunner.setFleetSize(drones);
+        if (objective != null) {
+            batchRunner.setSelection(new DeliveryPlanner.Selection(objective, strategy));
         }
+        batchRunner.setMetrics(metrics);
+        batchRunner.setRoutePlanner(planner);
+        batchRunner.run(from, to.plusDays(1));
 
-        Instant end = Instant.now();
-        System.out.println(Duration.between(start, end) + "\n");
+        System.out.println("Route cache: " + routeCache.getHits() + " hits, " + routeCache.getMisses() + " misses");
+        if (httpCache != null) {
+            System.out.println("HTTP cache: " + httpCache.getHits() + " hits, " + httpCache.getMisses() + " misses");
+        }
     }
 
 
@@ -0,0 +1,214 @@
+package uk.ac.ed.inf;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Runs the deliveries of many days concurrently on a fork-join pool.
+ * Every day builds its own DataParser, Drone and ResultsWriter, so the result files
+ * are the same as when the days are run one after another. A day that fails is reported in the
+ * summary of the batch and does not stop the other days.
+ */
+public class BatchRunner {
+    /** number of times a day is attempted when the web server cannot be reached */
+    public static final int MAX_ATTEMPTS = 3;
+
+    private final String baseAddress;
+    private final int parallelism;
+    private final RouteCache routeCache;
+    private ResultsWriter.GeojsonOptions geojsonOptions = ResultsWriter.GeojsonOptions.EXACT;
+    private int fleetSize = 1;
+    private DeliveryPlanner.Selection selection;
+    private boolean metrics;
+    private RoutePlanner.Kind routePlanner = RoutePlanner.Kind.GREEDY;
+    private Consumer<LocalDate> dayDelivery = this::deliverDay;
+
+    /**
+     * The outcome of one day of the batch
+     * @param date the day
+     * @param attempts the number of times the day was attempted
+     * @param wallTime the wall time of all attempts
+     * @param failure why the last attempt failed, or null if the day was delivered
+     */
+    public record DayResult(LocalDate date, int attempts, Duration wallTime, Throwable failure) {
+        /**@return true if the orders of the day were delivered and its result files written */
+        public boolean isDelivered() {
+            return this.failure == null;
+        }
+    }
+
+    /**
+     * The outcome of a batch
+     * @param days the outcome of every day, in date order
+     * @param wallTime the wall time of the whole batch
+     */
+    public record Summary(List<DayResult> days, Duration wallTime) {
+        /**@return the days that failed, in date order */
+        public List<DayResult> failedDays() {
+            return this.days.stream().filter(day -> !day.isDelivered()).toList();
+        }
+    }
+
+    /**
+     * Create the batch runner
+     * @param baseAddress base address of the web server, ending with "/"
+     * @param parallelism number of days delivered concurrently
+     * @param routeCache the route cache shared between days
+     */
+    public BatchRunner(String baseAddress, int parallelism, RouteCache routeCache) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.baseAddress = baseAddress;
+        this.parallelism = parallelism;
+        this.routeCache = routeCache;
+    }
+
+    /**
+     * Simplify or round the flight line of the drone geojson files
+     * @param geojsonOptions the options of the drone geojson files
+     */
+    public void setGeojsonOptions(ResultsWriter.GeojsonOptions geojsonOptions) {
+        this.geojsonOptions = geojsonOptions;
+    }
+
+    /**
+     * Deliver the orders of every day with a fleet of drones
+     * @param fleetSize the number of drones
+     */
+    public void setFleetSize(int fleetSize) {
+        if (fleetSize < 1) {
+            throw new IllegalArgumentException("A fleet needs at least one drone");
+        }
+        this.fleetSize = fleetSize;
+    }
+
+    /**
+     * Select the orders of each drone by the real cost of their routes
+     * @param selection how orders are selected, or null to deliver the nearest orders first
+     */
+    public void setSelection(DeliveryPlanner.Selection selection) {
+        this.selection = selection;
+    }
+
+    /**
+     * Measure every day and write its metrics with its result files
+     * @param metrics true to measure the days
+     */
+    public void setMetrics(boolean metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Plan the routes to the restaurants with another planner
+     * @param routePlanner the kind of planner, greedy by default
+     */
+    public void setRoutePlanner(RoutePlanner.Kind routePlanner) {
+        this.routePlanner = routePlanner;
+    }
+
+    /**
+     * Deliver every day with another delivery, e.g. a stub in tests
+     * @param dayDelivery delivers one day, throws if the day fails
+     */
+    void setDayDelivery(Consumer<LocalDate> dayDelivery) {
+        this.dayDelivery = dayDelivery;
+    }
+
+    private void deliverDay(LocalDate day) {
+        // a failed attempt is measured again from scratch
+        App.deliverDay(this.baseAddress, day, this.routeCache, this.geojsonOptions, this.fleetSize,
+                this.selection, this.routePlanner, this.metrics ? new Metrics() : null);
+    }
+
+    private DayResult deliverWithRetry(LocalDate day) {
+        long dayStart = System.nanoTime();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                this.dayDelivery.accept(day);
+                return new DayResult(day, attempt, Duration.ofNanos(System.nanoTime() - dayStart), null);
+            } catch (UncheckedIOException e) {
+                // only the web server being unreachable is worth another attempt, not a body missing from the cache
+                if (attempt == MAX_ATTEMPTS || isNotCached(e)) {
+                    return new DayResult(day, attempt, Duration.ofNanos(System.nanoTime() - dayStart), e);
+                }
+                System.err.println(day + ": " + e.getCause().getMessage() + " Retrying (" + attempt + "/" +
+                        (MAX_ATTEMPTS - 1) + ")");
+            } catch (RuntimeException e) {
+                return new DayResult(day, attempt, Duration.ofNanos(System.nanoTime() - dayStart), e);
+            }
+        }
+    }
+
+    private static boolean isNotCached(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpCache.NotCachedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Deliver every day in the range and report the wall time of each day and of the whole batch,
+     * and the days that failed
+     * @param startDate the first day to deliver
+     * @param endDate the day after the last day to deliver
+     * @return the outcome of every day and the wall time of the whole batch
+     */
+    public Summary run(LocalDate startDate, LocalDate endDate) {
+        long batchStart = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+
+        List<LocalDate> dates = new ArrayList<>();
+        List<Future<DayResult>> results = new ArrayList<>();
+        List<DayResult> days = new ArrayList<>();
+        try {
+            for (LocalDate date = startDate; date.isBefore(endDate); date = date.plusDays(1)) {
+                LocalDate day = date;
+                dates.add(day);
+                results.add(pool.submit(() -> deliverWithRetry(day)));
+            }
+
+            // report in date order once every day has finished
+            for (int i = 0; i < dates.size(); i++) {
+                DayResult result;
+                try {
+                    result = results.get(i).get();
+                } catch (ExecutionException e) {
+                    result = new DayResult(dates.get(i), 1, Duration.ZERO, e.getCause());
+                }
+                days.add(result);
+                if (result.isDelivered()) {
+                    System.out.println(result.date() + ": " + result.wallTime());
+                } else {
+                    System.err.println(result.date() + ": failed after " + result.attempts() + " attempt(s)");
+                    result.failure().printStackTrace();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            pool.shutdown();
+        }
+
+        Summary summary = new Summary(days, Duration.ofNanos(System.nanoTime() - batchStart));
+        System.out.println("Batch of " + dates.size() + " days on " + this.parallelism + " threads: " +
+                summary.wallTime());
+        List<DayResult> failed = summary.failedDays();
+        if (!failed.isEmpty()) {
+            System.out.println(failed.size() + " day(s) failed: " +
+                    failed.stream().map(day -> day.date().toString()).toList());
+        }
+        System.out.println();
+        return summary;
+    }
+}
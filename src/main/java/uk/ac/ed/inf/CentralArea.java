@@ -0,0 +1,160 @@
+package uk.ac.ed.inf;
+
+import java.awt.geom.Line2D;
+import java.util.List;
+
+/**
+ * Prepared polygon of the central area.
+ * The vertices are compiled once into primitive edge arrays with a bounding box, so a containment
+ * test rejects most positions with four comparisons and allocates nothing.
+ * The polygon is immutable and can be shared between threads.
+ */
+public class CentralArea {
+    /** positions closer than this to an edge are on the boundary, which belongs to the area */
+    static final double BOUNDARY_EPSILON = 1e-12;
+
+    /* edge i runs from vertex i to vertex i + 1, the last edge closes the polygon */
+    private final double[] lng1;
+    private final double[] lat1;
+    private final double[] lng2;
+    private final double[] lat2;
+
+    private final double minLng;
+    private final double minLat;
+    private final double maxLng;
+    private final double maxLat;
+
+    /**
+     * Compile the given vertices into a polygon
+     * @param vertices the vertices of the central area retrieved from the server, in order
+     */
+    public CentralArea(List<LngLat> vertices) {
+        int n = vertices.size();
+        this.lng1 = new double[n];
+        this.lat1 = new double[n];
+        this.lng2 = new double[n];
+        this.lat2 = new double[n];
+
+        double bMinLng = Double.POSITIVE_INFINITY;
+        double bMinLat = Double.POSITIVE_INFINITY;
+        double bMaxLng = Double.NEGATIVE_INFINITY;
+        double bMaxLat = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            LngLat from = vertices.get(i);
+            LngLat to = vertices.get((i + 1) % n);
+            this.lng1[i] = from.getLng();
+            this.lat1[i] = from.getLat();
+            this.lng2[i] = to.getLng();
+            this.lat2[i] = to.getLat();
+
+            bMinLng = Math.min(bMinLng, from.getLng());
+            bMinLat = Math.min(bMinLat, from.getLat());
+            bMaxLng = Math.max(bMaxLng, from.getLng());
+            bMaxLat = Math.max(bMaxLat, from.getLat());
+        }
+        this.minLng = bMinLng - BOUNDARY_EPSILON;
+        this.minLat = bMinLat - BOUNDARY_EPSILON;
+        this.maxLng = bMaxLng + BOUNDARY_EPSILON;
+        this.maxLat = bMaxLat + BOUNDARY_EPSILON;
+    }
+
+    /**
+     * Test if a position is in the central area
+     * @param lng the longitude of the position
+     * @param lat the latitude of the position
+     * @return true if the position is inside the central area or on its boundary, false if it is outside
+     */
+    public boolean contains(double lng, double lat) {
+        if (lng < this.minLng || lng > this.maxLng || lat < this.minLat || lat > this.maxLat) {
+            return false;
+        }
+
+        // ray cast towards increasing longitude, testing the boundary on the way
+        boolean inside = false;
+        for (int i = 0; i < this.lng1.length; i++) {
+            if (onEdge(i, lng, lat)) {
+                return true;
+            }
+            double latI = this.lat1[i];
+            double latJ = this.lat2[i];
+            if ((latI > lat) != (latJ > lat) &&
+                    lng < (this.lng2[i] - this.lng1[i]) * (lat - latI) / (latJ - latI) + this.lng1[i]) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * Test if a straight line crosses or touches the boundary of the central area,
+     * i.e. whether a line between two positions outside the area enters it
+     * @param fromLng the longitude of the start of the line
+     * @param fromLat the latitude of the start of the line
+     * @param toLng the longitude of the end of the line
+     * @param toLat the latitude of the end of the line
+     * @return true if the line meets the boundary, false otherwise
+     */
+    public boolean crossesBoundary(double fromLng, double fromLat, double toLng, double toLat) {
+        if (Math.max(fromLng, toLng) < this.minLng || Math.min(fromLng, toLng) > this.maxLng ||
+                Math.max(fromLat, toLat) < this.minLat || Math.min(fromLat, toLat) > this.maxLat) {
+            return false;
+        }
+        for (int i = 0; i < this.lng1.length; i++) {
+            if (Line2D.linesIntersect(fromLng, fromLat, toLng, toLat,
+                    this.lng1[i], this.lat1[i], this.lng2[i], this.lat2[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Test if a position is within a distance of the boundary, on either side of it
+     * @param lng the longitude of the position
+     * @param lat the latitude of the position
+     * @param distance the distance, in degrees
+     * @return true if the position is at most the distance away from an edge
+     */
+    boolean nearBoundary(double lng, double lat, double distance) {
+        if (lng < this.minLng - distance || lng > this.maxLng + distance ||
+                lat < this.minLat - distance || lat > this.maxLat + distance) {
+            return false;
+        }
+        for (int i = 0; i < this.lng1.length; i++) {
+            if (edgeDistanceSquared(i, lng, lat) <= distance * distance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Test if a position lies on an edge, within BOUNDARY_EPSILON
+     * @param i the index of the edge
+     * @param lng the longitude of the position
+     * @param lat the latitude of the position
+     * @return true if the position is on the edge
+     */
+    private boolean onEdge(int i, double lng, double lat) {
+        return edgeDistanceSquared(i, lng, lat) <= BOUNDARY_EPSILON * BOUNDARY_EPSILON;
+    }
+
+    /**
+     * @param i the index of the edge
+     * @param lng the longitude of the position
+     * @param lat the latitude of the position
+     * @return the square of the distance from the position to the edge
+     */
+    private double edgeDistanceSquared(int i, double lng, double lat) {
+        double dx = this.lng2[i] - this.lng1[i];
+        double dy = this.lat2[i] - this.lat1[i];
+        double px = lng - this.lng1[i];
+        double py = lat - this.lat1[i];
+
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, (px * dx + py * dy) / lengthSquared));
+        double ex = px - t * dx;
+        double ey = py - t * dy;
+        return ex * ex + ey * ey;
+    }
+}
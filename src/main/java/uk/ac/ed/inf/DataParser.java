@@ -1,168 +1,146 @@
 package uk.ac.ed.inf;
 import java.io.IOException;
-import java.math.BigDecimal;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.net.http.HttpResponse.BodyHandlers;
+import java.util.function.Consumer;
 
 import com.mapbox.geojson.*;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 
 /**
- * The class is used to parse data required by drone from the server
+ * The class is used to parse data required by drone from the server.
+ * The static geography comes from a shared WorldSnapshot, only the orders are fetched per day
  */
 public class DataParser {
-    private static final HttpClient client = HttpClient.newHttpClient();
-    private static HttpResponse<String> response;
-    private List<Polygon> noFlyZones;
-    private List<LngLat> restaurantLocs;
-    private List<LngLat> centralArea;
-    private List<JSONObject> rawOrderData;
-    private List<Feature> landmarks;
+    private final WorldSnapshot worldSnapshot;
+    private final List<Order> orders;
+    private final Metrics metrics;
 
     /* getters */
 
-    public List<Polygon> getNoFlyZones(){return this.noFlyZones;}
-    public List<LngLat> getCentralArea() {return this.centralArea;}
-    public List<LngLat> getRestaurantLocs() {return this.restaurantLocs;}
-    public List<Feature> getLandmarks() {return this.landmarks;}
-    public List<JSONObject> getRawOrderData() {return this.rawOrderData;}
+    public WorldSnapshot getWorldSnapshot(){return this.worldSnapshot;}
+    public List<Polygon> getNoFlyZones(){return this.worldSnapshot.getNoFlyZones();}
+    public NoFlyZoneIndex getNoFlyZoneIndex(){return this.worldSnapshot.getNoFlyZoneIndex();}
+    public VisibilityGraph getVisibilityGraph(){return this.worldSnapshot.getVisibilityGraph();}
+    public long getGeometryFingerprint(){return this.worldSnapshot.getGeometryFingerprint();}
+    public List<LngLat> getCentralArea() {return this.worldSnapshot.getCentralArea();}
+    public CentralArea getCentralAreaPolygon() {return this.worldSnapshot.getCentralAreaPolygon();}
+    public List<LngLat> getRestaurantLocs() {return this.worldSnapshot.getRestaurantLocs();}
+    public List<Feature> getLandmarks() {return this.worldSnapshot.getLandmarks();}
+    public String getLandmarkFeatures() {return this.worldSnapshot.getLandmarkFeatures();}
+    public Restaurant[] getRestaurants() {return this.worldSnapshot.getRestaurants();}
+    public List<Order> getOrders() {return this.orders;}
+
+    /**@return the metrics of the day, or null if the day is not measured */
+    public Metrics getMetrics() {return this.metrics;}
 
     /**
-     * DataParser Object
+     * DataParser Object using the shared snapshot of the given server
      * @param baseAddress Given base address
      * @param year Given year
      * @param month Given month
      * @param day Given day
      */
     public DataParser(String baseAddress, String year, String month, String day) {
-        this.noFlyZones = readNoFlyZones(baseAddress);
-        this.restaurantLocs = readRestaurants(baseAddress);
-        this.landmarks = readLandmarks(baseAddress);
-        this.centralArea = readCentralArea(baseAddress);
-        try {
-            this.rawOrderData = readOrders(baseAddress, year, month, day);
-        } catch (JSONException e) {
-            throw new RuntimeException(e);
-        }
+        this(baseAddress, year, month, day, null);
     }
 
     /**
-     * Connect to the web server by a given url
-     * @param urlString url of the web
+     * DataParser Object using the shared snapshot of the given server, measuring the day
+     * @param baseAddress Given base address
+     * @param year Given year
+     * @param month Given month
+     * @param day Given day
+     * @param metrics the metrics of the day, or null
      */
-    private static void connect(String urlString){
-
-        try {
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(urlString))
-                    .build();
-            response =
-                    client.send(request, BodyHandlers.ofString());
-
-            // catch errors
-            if (response.statusCode() != 200){
-                System.err.println("Fatal error: Unable to connect to " + urlString + ".");
-                System.exit(1);
-            }
-        } catch (IOException | InterruptedException e){
-            e.printStackTrace();
-            System.exit(1);
-        }
-
+    public DataParser(String baseAddress, String year, String month, String day, Metrics metrics) {
+        this(baseAddress, WorldSnapshot.of(baseAddress, metrics), year, month, day, metrics);
     }
 
     /**
-     * Fetch no-fly zones from web server
-     * @return all no-fly zones
+     * DataParser Object
+     * @param baseAddress Given base address
+     * @param worldSnapshot the static geography and restaurants of the server
+     * @param year Given year
+     * @param month Given month
+     * @param day Given day
      */
-    private List<Polygon> readNoFlyZones(String baseAddress){
-        String urlString = baseAddress + "/no-fly-zones.geojson";
-        connect (urlString);
-        List<Feature> noFlyZoneFeatures = FeatureCollection.fromJson(response.body()).features();
-        List<Polygon> noFlyZones = new ArrayList<>();
-
-        if (noFlyZoneFeatures != null) {
-            for (Feature feature : noFlyZoneFeatures) {
-                Polygon zone = (Polygon) feature.geometry();
-                noFlyZones.add(zone);
-            }
-        }
-
-        return noFlyZones;
+    public DataParser(String baseAddress, WorldSnapshot worldSnapshot, String year, String month, String day) {
+        this(baseAddress, worldSnapshot, year, month, day, null);
     }
 
     /**
-     * Fetch all locations of restaurants from web server
-     * @return all locations of restaurants
+     * DataParser Object measuring the day
+     * @param baseAddress Given base address
+     * @param worldSnapshot the static geography and restaurants of the server
+     * @param year Given year
+     * @param month Given month
+     * @param day Given day
+     * @param metrics the metrics of the day, or null
      */
-    private List<LngLat> readRestaurants(String baseAddress){
-        String urlString = baseAddress + "/restaurants.geojson";
-        connect (urlString);
-        List<Feature> restaurantFeatures = FeatureCollection.fromJson(response.body()).features();
-        List<LngLat> restaurantLocs = new ArrayList<>();
-        if (restaurantFeatures != null) {
-            for (Feature feature : restaurantFeatures){
-                Point p = (Point) feature.geometry();
-                LngLat loc = null;
-                if (p != null) {
-                    loc = new LngLat(p.longitude(), p.latitude());
-                }
-                restaurantLocs.add(loc);
-            }
-        }
-        return restaurantLocs;
+    public DataParser(String baseAddress, WorldSnapshot worldSnapshot, String year, String month, String day,
+                      Metrics metrics) {
+        this.worldSnapshot = worldSnapshot;
+        this.orders = new ArrayList<>();
+        this.metrics = metrics;
+        streamOrders(baseAddress, worldSnapshot, year + "-" + month + "-" + day, this.orders::add, metrics);
     }
 
-
-    private List<Feature> readLandmarks(String baseAddress){
-        String urlString = baseAddress + "/all.geojson";
-        connect (urlString);
-
-        return FeatureCollection.fromJson(response.body()).features();
+    /**
+     * DataParser Object over orders that were already read, e.g. from a file
+     * @param worldSnapshot the static geography and restaurants of the server
+     * @param orders the validated orders of the day
+     */
+    public DataParser(WorldSnapshot worldSnapshot, List<Order> orders) {
+        this(worldSnapshot, orders, null);
     }
 
-    private List<LngLat> readCentralArea(String baseAddress){
-        String urlString = baseAddress + "/centralArea";
-        connect (urlString);
-
-        JSONArray jsonArray = new JSONArray(response.body());
-
-        List<LngLat> centralArea = new ArrayList<>();
-        for (int i = 0; i < jsonArray.length(); i++) {
-            BigDecimal lng = (BigDecimal) jsonArray.getJSONObject(i).get("longitude");
-            BigDecimal lat = (BigDecimal) jsonArray.getJSONObject(i).get("latitude");
-            centralArea.add(new LngLat(lng.doubleValue(),lat.doubleValue()));
-        }
+    /**
+     * DataParser Object over orders that were already read, measuring the day
+     * @param worldSnapshot the static geography and restaurants of the server
+     * @param orders the validated orders of the day
+     * @param metrics the metrics of the day, or null
+     */
+    public DataParser(WorldSnapshot worldSnapshot, List<Order> orders, Metrics metrics) {
+        this.worldSnapshot = worldSnapshot;
+        this.orders = orders;
+        this.metrics = metrics;
+    }
 
-        return centralArea;
+    /**
+     * Stream the orders of a date from the server, every order is validated and handed over
+     * while the response is still being read
+     * @param baseAddress Given base address
+     * @param worldSnapshot the restaurants to validate the orders against
+     * @param fullDate the date in YYYY-MM-DD format
+     * @param sink receives every order
+     * @throws UncheckedIOException if the orders cannot be fetched or parsed
+     */
+    public static void streamOrders(String baseAddress, WorldSnapshot worldSnapshot, String fullDate,
+                                    Consumer<Order> sink) {
+        streamOrders(baseAddress, worldSnapshot, fullDate, sink, null);
     }
 
     /**
-     * Read the orders from server by a date
-     * @param year year required
-     * @param month month required
-     * @param day day required
-     * @return a hashmap of key = order number and value
+     * Stream the orders of a date from the server, measuring the fetch and the validation of every order
+     * @param baseAddress Given base address
+     * @param worldSnapshot the restaurants to validate the orders against
+     * @param fullDate the date in YYYY-MM-DD format
+     * @param sink receives every order
+     * @param metrics the metrics of the day, or null
+     * @throws UncheckedIOException if the orders cannot be fetched or parsed
      */
-    private List<JSONObject> readOrders(String baseAddress, String year, String month, String day){
-        String fullDate = year + "-" + month + "-" + day;
+    public static void streamOrders(String baseAddress, WorldSnapshot worldSnapshot, String fullDate,
+                                    Consumer<Order> sink, Metrics metrics) {
         String urlString = baseAddress + "/orders/" + fullDate;
-        connect (urlString);
+        OrderReader orderReader = new OrderReader(worldSnapshot.getMenuCatalog());
+        orderReader.setMetrics(metrics);
 
-        JSONArray jsonArray = new JSONArray(response.body());
-
-        List<JSONObject> orderObjects = new ArrayList<>();
-        for (int i = 0; i < jsonArray.length(); i++) {
-            orderObjects.add(jsonArray.getJSONObject(i));
+        try (InputStream body = RestFetcher.await(RestFetcher.getDefault().fetchStreamAsync(urlString, metrics))) {
+            orderReader.readOrders(body, sink);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-
-        return orderObjects;
     }
 }
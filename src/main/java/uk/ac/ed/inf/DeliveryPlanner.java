@@ -0,0 +1,191 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chooses which orders a drone delivers with its battery, from the real number of moves of each
+ * round trip instead of the straight-line estimate of Drone.haveNoEnoughBattery.
+ * <p>
+ * A round trip flies the planned route to the restaurant, hovers, flies it backwards and hovers at
+ * Appleton Tower, so it costs twice the route length plus two moves. The route to each restaurant
+ * is planned once and reused for every order of that restaurant. The heading of the drone at Appleton Tower
+ * depends on the order it delivered before, so a planner whose routes depend on the heading is asked with
+ * every compass heading and the longest route is the cost. Orders whose round trip does not
+ * fit are skipped, the selection never stops at the first one.
+ */
+public class DeliveryPlanner {
+    /** What the selection maximises */
+    public enum Objective {
+        /** the number of delivered orders */
+        DELIVERIES,
+        /** the sum of priceTotalInPence of the delivered orders */
+        REVENUE
+    }
+
+    /** How the selection is searched */
+    public enum Strategy {
+        /** exact 0/1 knapsack over the battery */
+        KNAPSACK,
+        /** orders by value per move, taking every order that still fits */
+        GREEDY_RATIO
+    }
+
+    /**
+     * How orders are selected
+     * @param objective what the selection maximises
+     * @param strategy how the selection is searched
+     */
+    public record Selection(Objective objective, Strategy strategy) {}
+
+    /** the cost of an order whose restaurant cannot be reached */
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+    /** the headings the drone can have at Appleton Tower */
+    private static final LngLat.Direction[] HEADINGS = Arrays.copyOf(LngLat.Direction.values(), 16);
+
+    private final RoutePlanner routePlanner;
+    private final Selection selection;
+    private final LngLat startPos = new LngLat(Drone.APPLETON_LONGITUDE, Drone.APPLETON_LATITUDE);
+    private final Map<LngLat, Integer> roundTrips = new HashMap<>();
+    private RoutePlanner fallbackPlanner;
+
+    /**
+     * Create the planner of one day
+     * @param routePlanner the planner the drone flies its routes with, so that the costs are exact
+     * @param selection how orders are selected
+     */
+    public DeliveryPlanner(RoutePlanner routePlanner, Selection selection) {
+        this.routePlanner = routePlanner;
+        this.selection = selection;
+    }
+
+    /**
+     * Cost the routes the route planner gives up with the planner the drone falls back to
+     * @param fallbackPlanner the fallback planner of the drone, or null if the drone gives such orders up
+     */
+    public void setFallbackPlanner(RoutePlanner fallbackPlanner) {
+        this.fallbackPlanner = fallbackPlanner;
+    }
+
+    /**
+     * Get the number of moves of the round trip of an order, planning the route on first use
+     * @param order a valid order
+     * @return the battery the delivery takes, or Integer.MAX_VALUE if neither planner reaches the restaurant
+     */
+    public synchronized int getRoundTripCost(Order order) {
+        // locations are compared by value, so every order of a restaurant shares one route
+        return this.roundTrips.computeIfAbsent(order.getRestaurantLoc(), this::planRoundTrip);
+    }
+
+    /**
+     * Plan the route to a restaurant from Appleton Tower with every heading the routes depend on.
+     * A heading neither planner finds a route from costs nothing, the drone gives the order up without moving
+     * @param restaurantLoc the location of the restaurant
+     * @return the battery of the round trip along the longest route, or Integer.MAX_VALUE if there is none
+     */
+    private int planRoundTrip(LngLat restaurantLoc) {
+        boolean dependsOnHeading = this.routePlanner.dependsOnHeading() ||
+                (this.fallbackPlanner != null && this.fallbackPlanner.dependsOnHeading());
+        LngLat.Direction[] headings = dependsOnHeading ? HEADINGS : new LngLat.Direction[]{LngLat.Direction.East};
+        int longest = -1;
+        for (LngLat.Direction heading : headings) {
+            List<LngLat.Direction> route = this.routePlanner.planRoute(this.startPos, restaurantLoc, heading);
+            if (route == null && this.fallbackPlanner != null) {
+                // the drone flies the fallback route then
+                route = this.fallbackPlanner.planRoute(this.startPos, restaurantLoc, heading);
+            }
+            if (route != null) {
+                longest = Math.max(longest, route.size());
+            }
+        }
+        return longest < 0 ? UNREACHABLE : longest * 2 + 2;
+    }
+
+    /**
+     * Select the orders to deliver with the given battery
+     * @param orders the candidate orders in delivery order, orders that are not ValidButNotDelivered are ignored
+     * @param battery the battery available
+     * @return the selected orders, in the same relative order as the candidates
+     */
+    public List<Order> select(List<Order> orders, int battery) {
+        List<Order> candidates = new ArrayList<>();
+        List<Integer> costs = new ArrayList<>();
+        for (Order order : orders) {
+            if (!order.getOrderOutcome().equals(Order.OrderOutcome.ValidButNotDelivered.toString())) {
+                continue;
+            }
+            int cost = getRoundTripCost(order);
+            if (cost <= battery) {
+                candidates.add(order);
+                costs.add(cost);
+            }
+        }
+
+        boolean[] chosen = this.selection.strategy() == Strategy.KNAPSACK
+                ? knapsack(candidates, costs, battery)
+                : greedyByRatio(candidates, costs, battery);
+
+        List<Order> selected = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            if (chosen[i]) {
+                selected.add(candidates.get(i));
+            }
+        }
+        return selected;
+    }
+
+    private long value(Order order) {
+        return this.selection.objective() == Objective.DELIVERIES ? 1 : order.getPriceTotalInPence();
+    }
+
+    private boolean[] knapsack(List<Order> candidates, List<Integer> costs, int battery) {
+        int n = candidates.size();
+        long[] best = new long[battery + 1];
+        boolean[][] take = new boolean[n][battery + 1];
+
+        for (int i = 0; i < n; i++) {
+            int cost = costs.get(i);
+            long value = value(candidates.get(i));
+            for (int b = battery; b >= cost; b--) {
+                // strictly better only, so that ties keep the earlier, nearer orders
+                if (best[b - cost] + value > best[b]) {
+                    best[b] = best[b - cost] + value;
+                    take[i][b] = true;
+                }
+            }
+        }
+
+        boolean[] chosen = new boolean[n];
+        int b = battery;
+        for (int i = n - 1; i >= 0; i--) {
+            if (take[i][b]) {
+                chosen[i] = true;
+                b -= costs.get(i);
+            }
+        }
+        return chosen;
+    }
+
+    private boolean[] greedyByRatio(List<Order> candidates, List<Integer> costs, int battery) {
+        List<Integer> byRatio = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            byRatio.add(i);
+        }
+        // stable sort, so that orders of equal ratio keep their delivery order
+        byRatio.sort(Comparator.comparingDouble(i -> -(double) value(candidates.get(i)) / costs.get(i)));
+
+        boolean[] chosen = new boolean[candidates.size()];
+        int left = battery;
+        for (int i : byRatio) {
+            if (costs.get(i) <= left) {
+                chosen[i] = true;
+                left -= costs.get(i);
+            }
+        }
+        return chosen;
+    }
+}
@@ -1,14 +1,9 @@
 package uk.ac.ed.inf;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
-
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 import java.time.Clock;
 
@@ -21,16 +16,27 @@ public class Drone {
     public static final double APPLETON_LATITUDE = 55.944494;
     public static final LngLat APPLETON_TOWER = new LngLat(APPLETON_LONGITUDE, APPLETON_LATITUDE);
     private DataParser dataParser;
+    private final int droneId;
     public boolean prepareToReturn;
     private final LngLat startPos;
     private LngLat dronePos;
+    /** the direction of the last greedy move, the greedy navigator never turns straight back */
+    private LngLat.Direction heading;
     private LngLat currGoal;
+    /** whether currGoal is in the central area, tested once per leg */
+    private boolean goalInCentralArea;
     private int remainBattery;
     private int ticksSinceStartOfCalculation;
-    private List<Flightpath> flightpaths;
+    private final MoveBuffer moves;
     private List<Order> orderDelivered;
     private List<Order> allOrders;
-    private List<Flightpath> backtrack_path;
+    private int outboundStart;
+    private LngLat orderStartPos;
+    private RoutePlanner routePlanner;
+    private RoutePlanner fallbackPlanner;
+    private Consumer<Flightpath> moveSink;
+    /** true while the moves of a greedy leg are kept from the sink until the leg is known to reach its goal */
+    private boolean holdingMoves;
 
     /* getters  */
 
@@ -44,9 +50,19 @@ public class Drone {
         return this.allOrders;
     }
 
-    /**@return the list of flightpaths that moved by drone */
+    /**@return the list of flightpaths that moved by drone, copied out of the move buffer */
     public List<Flightpath> getFlightpaths(){
-        return this.flightpaths;
+        return this.moves.toFlightpaths();
+    }
+
+    /**@return the buffer of the moves of the drone */
+    public MoveBuffer getMoves(){
+        return this.moves;
+    }
+
+    /**@return the id of the drone in its fleet, 0 for a single drone */
+    public int getDroneId(){
+        return this.droneId;
     }
 
     /**@return the amount of remain battery that drone currently has */
@@ -55,73 +71,130 @@ public class Drone {
     }
 
 
+    /**
+     * Plan the whole route to each restaurant before flying instead of navigating greedily step by step,
+     * the greedy navigator is still used when the planner cannot find a route
+     * @param routePlanner the planner to use, or null to always navigate greedily
+     */
+    public void setRoutePlanner(RoutePlanner routePlanner) {
+        this.routePlanner = routePlanner;
+    }
+
+
+    /**
+     * Plan a route when the greedy navigator is caught in a cycle or makes no progress,
+     * the moves of the given up leg are taken back and its battery restored first
+     * @param fallbackPlanner the planner to use, or null to give up the order instead
+     */
+    public void setFallbackPlanner(RoutePlanner fallbackPlanner) {
+        this.fallbackPlanner = fallbackPlanner;
+    }
+
+
+    /**
+     * Hand every move to the given sink as soon as it is made, e.g. a ResultsWriter.FlightpathStream.
+     * While a sink is set, only the moves of the current delivery are kept in memory,
+     * the others are missing from getFlightpaths()
+     * @param moveSink the sink to stream moves to, or null to keep moves in memory
+     */
+    public void streamMovesTo(Consumer<Flightpath> moveSink) {
+        this.moveSink = moveSink;
+    }
+
+
     /**
      * Create the drone
      * @param dataParser the dataParser parse the required data by drone for order delivery
      */
     public Drone(DataParser dataParser) {
+        this(dataParser, 0);
+    }
+
+    /**
+     * Create one drone of a fleet, every drone starts from Appleton Tower with a full battery
+     * @param dataParser the dataParser parse the required data by drone for order delivery
+     * @param droneId the id of the drone in its fleet
+     */
+    public Drone(DataParser dataParser, int droneId) {
         this.dataParser = dataParser;
+        this.droneId = droneId;
         this.startPos = APPLETON_TOWER;
         this.dronePos = APPLETON_TOWER;
+        this.heading = LngLat.Direction.East;
         this.currGoal = null;
         this.remainBattery = BATTERY;
         this.prepareToReturn = false;
-        this.flightpaths = new ArrayList<>();
+        this.moves = new MoveBuffer(droneId);
         this.orderDelivered = new ArrayList<>();
         this.allOrders = new ArrayList<>();
-        this.backtrack_path  = new ArrayList<>();
+        this.outboundStart = 0;
         this.ticksSinceStartOfCalculation = 0;
     }
 
     /**
-     * Initialize all daily orders for drone before flying
-     * @param baseAddress list of participated restaurants retrieved from the web server
+     * Initialize all daily orders for drone before flying,
+     * the orders were already validated while they were streamed from the server
      */
-    public void initializeOrders(String baseAddress) {
-        List<JSONObject> rawOrderData = this.dataParser.getRawOrderData();
-        Restaurant[] restaurants;
-        try {
-            restaurants = Restaurant.getRestaurantsFromRestServer(new URL(baseAddress));
-        } catch (MalformedURLException e) {
-            throw new RuntimeException(e);
-        }
+    public void initializeOrders() {
+        this.allOrders.addAll(this.dataParser.getOrders());
 
-        for (JSONObject rawOrder: rawOrderData) {
-            JSONArray numItems = (JSONArray) rawOrder.get("orderItems");
-            String[] orderItems = new String[numItems.length()];
+        // Sort orders according to distance from Appleton Tower in ascending way
+        this.allOrders.sort(((o1, o2) -> Double.compare(o2.getDistance(), o1.getDistance())));
+        Collections.reverse(this.allOrders);
+    }
 
-            for (int i = 0; i < numItems.length(); i++) {
-                orderItems[i] = numItems.get(i).toString();
-            }
+    /**
+     * Deliver the given orders one after another, skipping invalid orders,
+     * until the drone has no enough battery for the next one
+     * @param orders the orders to deliver, in delivery order
+     */
+    public void deliverOrders(List<Order> orders) {
+        deliver(orders, true);
+        recordRemainingBattery();
+    }
 
-            Restaurant restaurant = Restaurant.getRestaurantByItem(restaurants, orderItems[0]);
-            LngLat restaurantLoc = null;
-            if (restaurant != null) {
-                restaurantLoc = new LngLat(restaurant.getLongitude(), restaurant.getLatitude());
-            }
+    /**
+     * Deliver the given orders one after another, skipping invalid orders and the orders the drone
+     * has no enough battery for, so that a fleet can hand them to another drone
+     * @param orders the orders to deliver, in delivery order
+     * @return the valid orders that were skipped, in delivery order
+     */
+    List<Order> deliverOrdersWithinBattery(List<Order> orders) {
+        return deliver(orders, false);
+    }
 
-            String orderNo = rawOrder.get("orderNo").toString();
-            String orderDate = rawOrder.get("orderDate").toString();
-            String creditCardNumber = rawOrder.get("creditCardNumber").toString();
-            String creditCardExpiry = rawOrder.get("creditCardExpiry").toString();
-            String cvv = rawOrder.get("cvv").toString();
-            int priceTotalInPence = (int) rawOrder.get("priceTotalInPence");
-
-            String orderOutcome;
-            try {
-                orderOutcome = Order.getOrderOutcome(restaurants, orderItems, creditCardNumber, creditCardExpiry,
-                        cvv, orderDate, priceTotalInPence);
-            } catch (ParseException e) {
-                throw new RuntimeException(e);
-            }
+    private List<Order> deliver(List<Order> orders, boolean stopAtFirstSkipped) {
+        List<Order> skipped = new ArrayList<>();
+        for (Order currOrder : orders) {
+            if (currOrder.getOrderOutcome().equals(Order.OrderOutcome.ValidButNotDelivered.toString())) {
+
+                if (haveNoEnoughBattery(currOrder)){
+                    if (stopAtFirstSkipped) {
+                        System.out.println("DRONE: No enough battery to deliver the rest orders");
+                        break;
+                    }
+                    System.out.printf("DRONE: No enough battery for order {orderNo: %s}, skipped %n",
+                            currOrder.getOrderNo());
+                    skipped.add(currOrder);
+                    continue;
+                }
+
+                droneMove(currOrder);
 
-            this.allOrders.add(new Order(orderNo, orderDate, restaurantLoc, creditCardNumber, creditCardExpiry,
-                    cvv, orderItems, priceTotalInPence, orderOutcome));
+            } else {
+                System.out.printf("DRONE: Invalid Order {orderNo: %s} %n", currOrder.getOrderNo());
+                System.out.println("-----> " + currOrder.getOrderOutcome() + "\n");
+            }
         }
+        return skipped;
+    }
 
-        // Sort orders according to distance from Appleton Tower in ascending way
-        this.allOrders.sort(((o1, o2) -> Double.compare(o2.getDistance(), o1.getDistance())));
-        Collections.reverse(this.allOrders);
+    /** Record the battery left at the end of the day */
+    void recordRemainingBattery() {
+        Metrics metrics = this.dataParser.getMetrics();
+        if (metrics != null) {
+            metrics.batteryRemaining.record(this.remainBattery);
+        }
     }
 
     /**
@@ -154,65 +227,122 @@ public class Drone {
         return minDist/LngLat.LENGTH_OF_MOVE > getRemainBattery();
     }
 
-    private void toGetOrder(Clock clock, Order order) {
+    private boolean toGetOrder(Clock clock, Order order) {
         // move a step and record it
         long start = clock.millis();
 
-        LngLat newPos = this.dronePos.move(this.dataParser, this.currGoal);
+        LngLat.Direction direction = this.dronePos.nextDirection(this.dataParser, this.currGoal, this.heading,
+                this.goalInCentralArea);
 
         long end = clock.millis();
 
+        if (direction == null) {
+            System.out.println("-----> Walled in between the no-fly zones and the central area, no valid move");
+            return false;
+        }
+        LngLat newPos = this.dronePos.nextPosition(direction);
         this.ticksSinceStartOfCalculation += end - start + 1;
-        Flightpath moveToOrder = new Flightpath(order.getOrderNo(), this.dronePos.getLng(),
-                this.dronePos.getLat(), this.dronePos.getAngle(), newPos.getLng(), newPos.getLat(),
-                this.ticksSinceStartOfCalculation);
+        recordMove(order, direction, newPos);
 
-        this.flightpaths.add(moveToOrder);
-        this.backtrack_path.add(moveToOrder);
-
-        this.dronePos.setLngLat(newPos);
+        this.dronePos = newPos;
+        this.heading = direction;
         this.remainBattery -= 1;
 
 
         // hover if the drone is close to its target, while recording this step
         if (this.dronePos.closeTo(this.currGoal)) {
-            start = clock.millis();
+            hoverAtRestaurant(clock, order);
+        }
+        return true;
+    }
 
-            this.dronePos = this.dronePos.nextPosition(LngLat.Direction.Null);
+    private void recordMove(Order order, LngLat.Direction direction, LngLat newPos) {
+        this.moves.add(order.getOrderNo(), this.dronePos.getLng(), this.dronePos.getLat(), direction,
+                newPos.getLng(), newPos.getLat(), this.ticksSinceStartOfCalculation);
 
-            end = clock.millis();
-            this.ticksSinceStartOfCalculation += end - start + 1;
+        if (this.moveSink != null && !this.holdingMoves) {
+            this.moves.visitRecorded(this.moves.getRecordedCount() - 1, this::streamMove);
+        }
+    }
 
-            Flightpath hovering = new Flightpath(order.getOrderNo(), this.dronePos.getLng(),
-                    this.dronePos.getLat(), LngLat.Direction.Null.getValue(), this.dronePos.getLng(),
-                    this.dronePos.getLat(), this.ticksSinceStartOfCalculation);
+    private void releaseHeldMoves() {
+        if (this.holdingMoves) {
+            this.holdingMoves = false;
+            for (int i = this.outboundStart; i < this.moves.getRecordedCount(); i++) {
+                this.moves.visitRecorded(i, this::streamMove);
+            }
+        }
+    }
 
-            this.flightpaths.add(hovering);
+    /**
+     * Take back the moves of the greedy leg to the current restaurant, as if the drone never left
+     * @param battery the battery of the drone before the leg
+     * @param startHeading the heading of the drone before the leg
+     */
+    private void abandonLeg(int battery, LngLat.Direction startHeading) {
+        this.moves.truncate(this.outboundStart);
+        this.holdingMoves = false;
+        this.dronePos = this.orderStartPos;
+        this.heading = startHeading;
+        this.remainBattery = battery;
+    }
 
-            this.remainBattery -= 1;
+    private void streamMove(String orderNo, double fromLongitude, double fromLatitude, double angle,
+                            double toLongitude, double toLatitude, int ticks) {
+        this.moveSink.accept(new Flightpath(this.droneId, orderNo, fromLongitude, fromLatitude, angle,
+                toLongitude, toLatitude, ticks));
+    }
 
-            this.prepareToReturn = true;
-            this.currGoal = this.startPos;
+    private void followRoute(Clock clock, Order order, List<LngLat.Direction> route) {
+        // replay the planned moves while recording them
+        for (LngLat.Direction direction : route) {
+            if (this.remainBattery <= 0) {
+                return;
+            }
+            LngLat newPos = this.dronePos.nextPosition(direction);
+
+            this.ticksSinceStartOfCalculation += 1;
+            recordMove(order, direction, newPos);
+
+            this.dronePos = newPos;
+            this.heading = direction;
+            this.remainBattery -= 1;
         }
+
+        hoverAtRestaurant(clock, order);
     }
-    
-    private void backtrack(Clock clock, Order order) {
-        Collections.reverse(this.backtrack_path);
 
-        for (Flightpath thisMove : this.backtrack_path) {
+    private void hoverAtRestaurant(Clock clock, Order order) {
+        long start = clock.millis();
 
-            this.ticksSinceStartOfCalculation += 1;
+        LngLat newPos = this.dronePos.nextPosition(LngLat.Direction.Null);
 
-            Flightpath moveBack = new Flightpath(thisMove.orderNo, thisMove.fromLongitude,
-                    thisMove.fromLatitude, thisMove.angle, thisMove.toLongitude, thisMove.toLatitude,
-                    this.ticksSinceStartOfCalculation);
+        long end = clock.millis();
+        this.ticksSinceStartOfCalculation += end - start + 1;
 
+        recordMove(order, LngLat.Direction.Null, newPos);
+        this.dronePos = newPos;
 
-            this.flightpaths.add(moveBack);
+        this.remainBattery -= 1;
 
-            this.dronePos.setLngLat(new LngLat(thisMove.fromLongitude, thisMove.fromLatitude));
+        this.prepareToReturn = true;
+        this.currGoal = this.startPos;
+    }
 
-            this.remainBattery -= 1;
+    private void backtrack(Clock clock, Order order) {
+        // fly the outbound moves backwards, every move except the hovering at the restaurant
+        int outboundEnd = this.moves.getRecordedCount() - 1;
+        int returnMoves = outboundEnd - this.outboundStart;
+
+        this.moves.addReversed(this.outboundStart, outboundEnd, this.ticksSinceStartOfCalculation + 1);
+        if (this.moveSink != null) {
+            this.moves.forEachMoveOfLastReturn(this::streamMove);
+        }
+
+        this.ticksSinceStartOfCalculation += returnMoves;
+        this.remainBattery -= returnMoves;
+        if (returnMoves > 0) {
+            this.dronePos = this.orderStartPos;
         }
 
         // hover if the drone is close to its target, while recording this step
@@ -223,16 +353,13 @@ public class Drone {
             System.out.printf("-----> Order {orderNo: %s} delivered %n", order.getOrderNo());
 
             long start = clock.millis();
-            this.dronePos = this.dronePos.nextPosition(LngLat.Direction.Null);
+            LngLat newPos = this.dronePos.nextPosition(LngLat.Direction.Null);
 
             long end = clock.millis();
             this.ticksSinceStartOfCalculation += end - start + 1;
 
-            Flightpath hovering = new Flightpath(order.getOrderNo(), this.dronePos.getLng(),
-                    this.dronePos.getLat(), LngLat.Direction.Null.getValue(), this.dronePos.getLng(),
-                    this.dronePos.getLat(), this.ticksSinceStartOfCalculation);
-
-            this.flightpaths.add(hovering);
+            recordMove(order, LngLat.Direction.Null, newPos);
+            this.dronePos = newPos;
 
             this.remainBattery -= 1;
             this.prepareToReturn = false;
@@ -252,20 +379,88 @@ public class Drone {
         int lastTimeRemainBattery = this.remainBattery;
 
         this.currGoal = order.getRestaurantLoc();
+        this.goalInCentralArea = this.dataParser.getCentralAreaPolygon().contains(this.currGoal.getLng(),
+                this.currGoal.getLat());
 
-        this.backtrack_path = new ArrayList<>();
+        if (this.moveSink != null) {
+            // the moves of earlier deliveries were already streamed
+            this.moves.clear();
+        }
+        this.outboundStart = this.moves.getRecordedCount();
+        this.orderStartPos = this.dronePos;
+        LngLat.Direction startHeading = this.heading;
+
+        // plan the whole route first if a planner is available
+        List<LngLat.Direction> route = null;
+        Metrics metrics = this.dataParser.getMetrics();
+        if (this.routePlanner != null) {
+            long start = clock.millis();
+            long startNanos = System.nanoTime();
+            route = this.routePlanner.planRoute(this.dronePos, this.currGoal, this.heading);
+            long end = clock.millis();
+            this.ticksSinceStartOfCalculation += (int) (end - start);
+            if (metrics != null) {
+                metrics.routePlanning.record(System.nanoTime() - startNanos);
+            }
+
+            if (route == null && this.fallbackPlanner != null) {
+                // the planner already gave the leg up, flying it greedily again would only repeat that
+                route = this.fallbackPlanner.planRoute(this.dronePos, this.currGoal, this.heading);
+                if (route == null) {
+                    System.out.printf("-----> Order {orderNo: %s} given up, no route found %n%n",
+                            order.getOrderNo());
+                    return;
+                }
+                System.out.println("-----> No planned route found, following the fallback route");
+            } else if (route == null) {
+                System.out.println("-----> No planned route found, navigating greedily");
+            }
+        }
+
+        // watch the greedy leg, its moves are only streamed once it reaches the restaurant
+        GreedyLegMonitor monitor = null;
+        if (route == null) {
+            monitor = new GreedyLegMonitor(this.dronePos, this.currGoal);
+            this.holdingMoves = this.moveSink != null;
+        }
 
         // move the drone
         while (this.remainBattery > 0){
             if (!this.prepareToReturn){
-                toGetOrder(clock, order);
+                if (route != null) {
+                    followRoute(clock, order, route);
+                } else {
+                    boolean moved = toGetOrder(clock, order);
+                    if (!this.prepareToReturn && (!moved || monitor.isStuck(this.dronePos, this.heading))) {
+                        abandonLeg(lastTimeRemainBattery, startHeading);
+                        if (metrics != null) {
+                            metrics.greedyLegsAbandoned.increment();
+                        }
+                        if (this.fallbackPlanner != null) {
+                            route = this.fallbackPlanner.planRoute(this.dronePos, this.currGoal, this.heading);
+                        }
+                        if (route == null) {
+                            System.out.printf("-----> Order {orderNo: %s} given up, no route found %n%n",
+                                    order.getOrderNo());
+                            break;
+                        }
+                        System.out.println("-----> Greedy navigation stuck, following the fallback route");
+                    }
+                }
             } else {
+                releaseHeldMoves();
                 backtrack(clock, order);
                 
                 System.out.println("-----> Took " + (lastTimeRemainBattery - this.remainBattery) + " Moves \n");
+                if (metrics != null && !this.prepareToReturn) {
+                    metrics.orderMoves.record(lastTimeRemainBattery - this.remainBattery);
+                    metrics.ordersDelivered.increment();
+                }
 
                 break;
             }
         }
+        // the battery ran out on the way
+        releaseHeldMoves();
     }
 }
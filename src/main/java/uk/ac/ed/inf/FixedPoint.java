@@ -0,0 +1,173 @@
+package uk.ac.ed.inf;
+
+/**
+ * Fixed-point coordinates: a position is a pair of longs counting nanodegrees of longitude and latitude.
+ * The moves of the 16 compass directions are integer step tables, a direction and its opposite cancel exactly,
+ * so a position reached by different sequences of moves is the same pair of longs, and positions can be
+ * compared and hashed exactly. The geometry predicates are exact integer orientation tests with 128-bit
+ * products, so they do not overflow and have no tolerance to tune. AStarPlanner searches in these units,
+ * with NoFlyZoneIndex.intersectsFixed as its zone test.
+ */
+final class FixedPoint {
+    /** fixed-point units in one degree, one unit is about 0.1 mm in Edinburgh */
+    static final long UNITS_PER_DEGREE = 1_000_000_000L;
+    /** the length of a move, in units */
+    static final long LENGTH_OF_MOVE = toFixed(LngLat.LENGTH_OF_MOVE);
+    /** the largest difference between a move of the step tables and the same move in doubles, in units */
+    static final double MAX_STEP_ERROR = 0.5;
+
+    /* the move of every direction in units, indexed by ordinal, 0 for Null */
+    private static final long[] STEP_LNG = new long[LngLat.Direction.values().length];
+    private static final long[] STEP_LAT = new long[LngLat.Direction.values().length];
+    static {
+        LngLat.Direction[] directions = LngLat.Direction.values();
+        for (int d = 0; d < 8; d++) {
+            double angle = Math.toRadians(directions[d].getValue());
+            STEP_LNG[d] = Math.round(Math.cos(angle) * LENGTH_OF_MOVE);
+            STEP_LAT[d] = Math.round(Math.sin(angle) * LENGTH_OF_MOVE);
+            // the opposite direction is the exact negation
+            STEP_LNG[d + 8] = -STEP_LNG[d];
+            STEP_LAT[d + 8] = -STEP_LAT[d];
+        }
+    }
+
+    private FixedPoint() {}
+
+    /**
+     * @param degrees a longitude or latitude
+     * @return the nearest fixed-point value
+     */
+    static long toFixed(double degrees) {
+        return Math.round(degrees * UNITS_PER_DEGREE);
+    }
+
+    /**
+     * @param units a fixed-point longitude or latitude
+     * @return the value in degrees
+     */
+    static double toDegrees(long units) {
+        return (double) units / UNITS_PER_DEGREE;
+    }
+
+    /**
+     * @param direction a direction, Null to hover
+     * @return the change of longitude of a move in the direction, in units
+     */
+    static long stepLng(LngLat.Direction direction) {
+        return STEP_LNG[direction.ordinal()];
+    }
+
+    /**
+     * @param direction a direction, Null to hover
+     * @return the change of latitude of a move in the direction, in units
+     */
+    static long stepLat(LngLat.Direction direction) {
+        return STEP_LAT[direction.ordinal()];
+    }
+
+    /**
+     * Snap a position to a grid and pack the cell into one long, e.g. as the key of a closed set
+     * @param lng the fixed-point longitude
+     * @param lat the fixed-point latitude
+     * @param quantum the side of a grid cell, in units
+     * @return the packed cell nearest to the position, equal for positions in the same cell only
+     */
+    static long quantize(long lng, long lat, long quantum) {
+        long cellLng = Math.floorDiv(lng + quantum / 2, quantum);
+        long cellLat = Math.floorDiv(lat + quantum / 2, quantum);
+        return cellLng << 32 | (cellLat & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Test if two positions are strictly closer than a distance, exactly
+     * @param tolerance the distance, in units
+     * @return true if the distance between the positions is less than the tolerance
+     */
+    static boolean closeTo(long lng1, long lat1, long lng2, long lat2, long tolerance) {
+        long dx = Math.abs(lng1 - lng2);
+        long dy = Math.abs(lat1 - lat2);
+        // the squares cannot overflow below the tolerance
+        if (dx >= tolerance || dy >= tolerance) {
+            return false;
+        }
+        return dx * dx + dy * dy < tolerance * tolerance;
+    }
+
+    /**
+     * The side of the line from a to b that c is on, exactly
+     * @return 1 if a, b, c turn counter-clockwise, -1 if clockwise, 0 if they are collinear
+     */
+    static int orientation(long ax, long ay, long bx, long by, long cx, long cy) {
+        return compareProducts(bx - ax, cy - ay, by - ay, cx - ax);
+    }
+
+    /**
+     * Compare a * b with c * d without overflow, using the full 128-bit products
+     * @return the sign of a * b - c * d
+     */
+    private static int compareProducts(long a, long b, long c, long d) {
+        long high = Math.multiplyHigh(a, b);
+        long otherHigh = Math.multiplyHigh(c, d);
+        if (high != otherHigh) {
+            return high < otherHigh ? -1 : 1;
+        }
+        return Integer.signum(Long.compareUnsigned(a * b, c * d));
+    }
+
+    /**
+     * Test if the segments p1-p2 and q1-q2 cross or touch, exactly, as Line2D.linesIntersect
+     * @return true if the segments have a point in common
+     */
+    static boolean segmentsIntersect(long p1x, long p1y, long p2x, long p2y,
+                                     long q1x, long q1y, long q2x, long q2y) {
+        int d1 = orientation(q1x, q1y, q2x, q2y, p1x, p1y);
+        int d2 = orientation(q1x, q1y, q2x, q2y, p2x, p2y);
+        int d3 = orientation(p1x, p1y, p2x, p2y, q1x, q1y);
+        int d4 = orientation(p1x, p1y, p2x, p2y, q2x, q2y);
+        if (d1 * d2 < 0 && d3 * d4 < 0) {
+            return true;
+        }
+        // an end on the other segment, including collinear overlaps
+        return (d1 == 0 && inBox(p1x, p1y, q1x, q1y, q2x, q2y)) ||
+                (d2 == 0 && inBox(p2x, p2y, q1x, q1y, q2x, q2y)) ||
+                (d3 == 0 && inBox(q1x, q1y, p1x, p1y, p2x, p2y)) ||
+                (d4 == 0 && inBox(q2x, q2y, p1x, p1y, p2x, p2y));
+    }
+
+    /**
+     * Test if the segments p1-p2 and q1-q2 have a point in common or come within a distance of each other
+     * @param distance the distance, in units
+     * @return true if the segments intersect or the distance between them is at most the given distance
+     */
+    static boolean segmentsWithin(long p1x, long p1y, long p2x, long p2y,
+                                  long q1x, long q1y, long q2x, long q2y, long distance) {
+        if (segmentsIntersect(p1x, p1y, p2x, p2y, q1x, q1y, q2x, q2y)) {
+            return true;
+        }
+        // segments that do not intersect are closest at an end of one of them
+        double limit = (double) distance * distance;
+        return distanceSquared(p1x, p1y, q1x, q1y, q2x, q2y) <= limit ||
+                distanceSquared(p2x, p2y, q1x, q1y, q2x, q2y) <= limit ||
+                distanceSquared(q1x, q1y, p1x, p1y, p2x, p2y) <= limit ||
+                distanceSquared(q2x, q2y, p1x, p1y, p2x, p2y) <= limit;
+    }
+
+    /** @return the square of the distance from (x, y) to the segment a-b, in units squared */
+    private static double distanceSquared(long x, long y, long ax, long ay, long bx, long by) {
+        // differences of nearby positions are exact in doubles
+        double dx = bx - ax;
+        double dy = by - ay;
+        double px = x - ax;
+        double py = y - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, (px * dx + py * dy) / lengthSquared));
+        double ex = px - t * dx;
+        double ey = py - t * dy;
+        return ex * ex + ey * ey;
+    }
+
+    /** @return true if (x, y) is in the bounding box of the segment a-b */
+    private static boolean inBox(long x, long y, long ax, long ay, long bx, long by) {
+        return x >= Math.min(ax, bx) && x <= Math.max(ax, bx) && y >= Math.min(ay, by) && y <= Math.max(ay, by);
+    }
+}
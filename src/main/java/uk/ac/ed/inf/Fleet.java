@@ -0,0 +1,281 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * A fleet of drones flying from Appleton Tower, each with its own battery and flightpath.
+ * The dispatcher hands every valid order of the day to the drone with the most battery left
+ * by estimate, or lets a DeliveryPlanner select the orders of each drone from the real cost of their
+ * routes, then all drones fly their orders concurrently, one thread per drone.
+ * An order a drone skips because its real routes left it less battery than estimated is handed back
+ * and dispatched again to the drones with battery left, by estimate or by the DeliveryPlanner as the first
+ * round, until no drone can afford any of them. An order a drone flew for and gave up is not dispatched again.
+ */
+public class Fleet {
+    private final DataParser dataParser;
+    private final List<Drone> drones = new ArrayList<>();
+    private final List<Order> allOrders = new ArrayList<>();
+    private DeliveryPlanner deliveryPlanner;
+
+    /**
+     * Create the fleet
+     * @param dataParser the map and orders of the day, shared read-only by all drones
+     * @param size the number of drones
+     */
+    public Fleet(DataParser dataParser, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("A fleet needs at least one drone");
+        }
+        this.dataParser = dataParser;
+        for (int droneId = 0; droneId < size; droneId++) {
+            this.drones.add(new Drone(dataParser, droneId));
+        }
+    }
+
+    /* getters */
+
+    /**@return the drones of the fleet, by id */
+    public List<Drone> getDrones() {
+        return Collections.unmodifiableList(this.drones);
+    }
+
+    /**@return the list of all orders at a given days */
+    public List<Order> getAllOrders() {
+        return this.allOrders;
+    }
+
+    /**@return the move buffer of every drone, by id */
+    public List<MoveBuffer> getMoves() {
+        List<MoveBuffer> moves = new ArrayList<>();
+        for (Drone drone : this.drones) {
+            moves.add(drone.getMoves());
+        }
+        return moves;
+    }
+
+    /**
+     * Give every drone its own route planner
+     * @param routePlanners creates the planner of one drone
+     */
+    public void setRoutePlanners(Supplier<RoutePlanner> routePlanners) {
+        for (Drone drone : this.drones) {
+            drone.setRoutePlanner(routePlanners.get());
+        }
+    }
+
+    /**
+     * Give every drone its own planner for the legs the greedy navigator gives up
+     * @param fallbackPlanners creates the fallback planner of one drone
+     */
+    public void setFallbackPlanners(Supplier<RoutePlanner> fallbackPlanners) {
+        for (Drone drone : this.drones) {
+            drone.setFallbackPlanner(fallbackPlanners.get());
+        }
+    }
+
+    /**
+     * Select the orders of every drone by the real cost of their routes instead of the distance estimate
+     * @param deliveryPlanner the planner selecting orders, or null to dispatch by distance
+     */
+    public void setDeliveryPlanner(DeliveryPlanner deliveryPlanner) {
+        this.deliveryPlanner = deliveryPlanner;
+    }
+
+    /**
+     * Initialize all daily orders before flying,
+     * the orders were already validated while they were streamed from the server
+     */
+    public void initializeOrders() {
+        this.allOrders.addAll(this.dataParser.getOrders());
+
+        // Sort orders according to distance from Appleton Tower in ascending way, as Drone.initializeOrders does
+        this.allOrders.sort(((o1, o2) -> Double.compare(o2.getDistance(), o1.getDistance())));
+        Collections.reverse(this.allOrders);
+    }
+
+    /**
+     * Assign the valid orders to drones with a full battery, see dispatch(List, double[])
+     * @return the orders of every drone, by id, in delivery order
+     */
+    List<List<Order>> dispatch() {
+        double[] batteryLeft = new double[this.drones.size()];
+        Arrays.fill(batteryLeft, Drone.BATTERY);
+        return dispatch(this.allOrders, batteryLeft);
+    }
+
+    /**
+     * Assign the valid orders to drones, in the given order. Each order goes to the drone with the most
+     * battery left after the round trips already assigned to it, estimated as in Drone.haveNoEnoughBattery;
+     * orders no drone can afford by estimate are not assigned
+     * @param orders the orders to assign, nearest first
+     * @param batteryLeft the battery of every drone, by id, decreased by the estimate of every assigned order
+     * @return the orders of every drone, by id, in delivery order
+     */
+    List<List<Order>> dispatch(List<Order> orders, double[] batteryLeft) {
+        List<List<Order>> assigned = new ArrayList<>();
+        for (int droneId = 0; droneId < this.drones.size(); droneId++) {
+            assigned.add(new ArrayList<>());
+        }
+
+        for (Order order : orders) {
+            if (!order.getOrderOutcome().equals(Order.OrderOutcome.ValidButNotDelivered.toString())) {
+                continue;
+            }
+            int best = 0;
+            for (int droneId = 1; droneId < batteryLeft.length; droneId++) {
+                if (batteryLeft[droneId] > batteryLeft[best]) {
+                    best = droneId;
+                }
+            }
+
+            double moves = Drone.APPLETON_TOWER.distanceTo(order.getRestaurantLoc()) * 2 / LngLat.LENGTH_OF_MOVE;
+            if (moves <= batteryLeft[best]) {
+                assigned.get(best).add(order);
+                batteryLeft[best] -= moves;
+            }
+        }
+        return assigned;
+    }
+
+    /**
+     * Let the delivery planner select the orders of each drone with a full battery, see
+     * dispatchByRoute(List, double[])
+     * @return the orders of every drone, by id, in delivery order
+     */
+    List<List<Order>> dispatchByRoute() {
+        double[] batteryLeft = new double[this.drones.size()];
+        Arrays.fill(batteryLeft, Drone.BATTERY);
+        return dispatchByRoute(this.allOrders, batteryLeft);
+    }
+
+    /**
+     * Let the delivery planner select the orders of each drone in turn from the orders not selected yet
+     * @param orders the orders to assign, nearest first
+     * @param batteryLeft the battery of every drone, by id
+     * @return the orders of every drone, by id, in delivery order
+     */
+    List<List<Order>> dispatchByRoute(List<Order> orders, double[] batteryLeft) {
+        List<List<Order>> assigned = new ArrayList<>();
+        List<Order> remaining = new ArrayList<>(orders);
+        for (int droneId = 0; droneId < this.drones.size(); droneId++) {
+            List<Order> selected = this.deliveryPlanner.select(remaining, (int) batteryLeft[droneId]);
+            assigned.add(selected);
+            remaining.removeAll(selected);
+        }
+        return assigned;
+    }
+
+    /**
+     * Dispatch the orders and let every drone deliver its share concurrently
+     */
+    public void deliverOrders() {
+        if (this.drones.size() == 1 && this.deliveryPlanner == null) {
+            // a single drone flies as it always did, until the first order it cannot afford
+            this.drones.get(0).deliverOrders(this.allOrders);
+            return;
+        }
+        List<List<Order>> assigned = this.deliveryPlanner != null ? dispatchByRoute() : dispatch();
+
+        if (this.drones.size() == 1) {
+            this.drones.get(0).deliverOrders(assigned.get(0));
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(this.drones.size());
+        // the orders a drone flew for without delivering them, e.g. to a restaurant no planner reaches
+        Set<Order> givenUp = new HashSet<>();
+        try {
+            while (true) {
+                int deliveredBefore = countDelivered();
+                List<Future<List<Order>>> flights = new ArrayList<>();
+                for (Drone drone : this.drones) {
+                    List<Order> orders = assigned.get(drone.getDroneId());
+                    flights.add(pool.submit(() -> drone.deliverOrdersWithinBattery(orders)));
+                }
+                for (Drone drone : this.drones) {
+                    Set<Order> skipped = new HashSet<>(flights.get(drone.getDroneId()).get());
+                    for (Order order : assigned.get(drone.getDroneId())) {
+                        if (!skipped.contains(order) && order.getOrderOutcome().equals(
+                                Order.OrderOutcome.ValidButNotDelivered.toString())) {
+                            givenUp.add(order);
+                        }
+                    }
+                }
+                // a round that delivers nothing would be dispatched the same way again
+                if (countDelivered() == deliveredBefore) {
+                    break;
+                }
+
+                // hand the orders not delivered yet, nearest first, to the drones that still have battery for them
+                List<Order> remaining = new ArrayList<>();
+                for (Order order : this.allOrders) {
+                    if (!givenUp.contains(order)) {
+                        remaining.add(order);
+                    }
+                }
+                double[] batteryLeft = new double[this.drones.size()];
+                for (Drone drone : this.drones) {
+                    batteryLeft[drone.getDroneId()] = drone.getRemainBattery();
+                }
+                assigned = this.deliveryPlanner != null ? dispatchByRoute(remaining, batteryLeft) :
+                        dispatch(remaining, batteryLeft);
+                if (assigned.stream().allMatch(List::isEmpty)) {
+                    break;
+                }
+            }
+            for (Drone drone : this.drones) {
+                drone.recordRemainingBattery();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private int countDelivered() {
+        int delivered = 0;
+        for (Drone drone : this.drones) {
+            delivered += drone.getOrderDelivered().size();
+        }
+        return delivered;
+    }
+
+    /**
+     * Get delivery statistics of the whole fleet displayed in terminal
+     */
+    public void getOrdersStatistics() {
+        int validNumOrders = 0;
+        int delivered = 0;
+
+        for (Order order : this.allOrders){
+            if (order.getOrderOutcome().equals(Order.OrderOutcome.ValidButNotDelivered.toString()) ||
+                    order.getOrderOutcome().equals(Order.OrderOutcome.Delivered.toString())){
+                validNumOrders += 1;
+            }
+        }
+        for (Drone drone : this.drones) {
+            delivered += drone.getOrderDelivered().size();
+        }
+        System.out.println("<-------------Result------------->");
+        System.out.println("Number of invalid orders: " + (this.allOrders.size() - validNumOrders));
+        System.out.println("Orders delivered: " + delivered + "/" + validNumOrders);
+        for (Drone drone : this.drones) {
+            System.out.println("Drone " + drone.getDroneId() + ": " + drone.getOrderDelivered().size() +
+                    " orders delivered, remaining battery " + drone.getRemainBattery());
+        }
+        System.out.println();
+    }
+}
@@ -12,9 +12,12 @@ public class Flightpath {
     double toLongitude;
     double toLatitude;
     int ticksSinceStartOfCalculation;
+    int droneId;
 
     /* Getters and Setters */
 
+    public int getDroneId() {return droneId;}
+
     public int getTicksSinceStartOfCalculation() {return ticksSinceStartOfCalculation;}
 
     public void setTicksSinceStartOfCalculation(int ticksSinceStartOfCalculation) {
@@ -42,4 +45,22 @@ public class Flightpath {
         this.toLatitude = toLatitude;
         this.ticksSinceStartOfCalculation =  ticksSinceStartOfCalculation;
     }
+
+    /**
+     * Create one step in flightpath of one drone of a fleet
+     * @param droneId the id of the drone making the move
+     * @param orderNo order number
+     * @param fromLongitude previous longitude coordinate of the drone
+     * @param fromLatitude previous latitude coordinate of the drone
+     * @param angle the angle of travel of the drone in this move
+     * @param toLongitude next longitude coordinate of the drone
+     * @param toLatitude next latitude coordinate of the drone
+     * @param ticksSinceStartOfCalculation the elapsed ticks since the computation
+     * started for the day
+     */
+    public Flightpath(int droneId, String orderNo, double fromLongitude, double fromLatitude,
+                      double angle, double toLongitude, double toLatitude, int ticksSinceStartOfCalculation){
+        this(orderNo, fromLongitude, fromLatitude, angle, toLongitude, toLatitude, ticksSinceStartOfCalculation);
+        this.droneId = droneId;
+    }
 }
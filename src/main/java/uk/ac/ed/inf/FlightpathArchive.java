@@ -0,0 +1,396 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Compact binary day file of the flightpath, about a tenth of the size of the json file.
+ * <p>
+ * The file starts with a header: the magic "PDFP", a version byte, the dictionary of order numbers
+ * and the number of drones. The moves of every drone follow as a section: the id of the drone, its number
+ * of moves and its records (version 1 files hold the moves of a single drone without the drone count and
+ * id). Every move has a one-byte record header holding the index of its
+ * direction and two flags, followed by varints: the index of its order number, its coordinates as
+ * deltas of the raw double bits against the previous position, and its ticks as a delta against the
+ * previous move. Coordinates are only stored in full when a move does not start where the previous one
+ * ended, so the encoding is lossless and the json file can be reproduced exactly on demand.
+ * Files are written and read through memory-mapped FileChannels.
+ */
+public class FlightpathArchive {
+    private static final byte[] MAGIC = {'P', 'D', 'F', 'P'};
+    private static final byte VERSION = 2;
+    private static final byte SINGLE_DRONE_VERSION = 1;
+
+    /* record header: the low five bits hold the direction index */
+    private static final int DIRECTION_MASK = 0x1F;
+    private static final int OTHER_ANGLE = 0x1F;
+    private static final int DISCONTINUOUS = 0x20;
+    private static final int HOVER = 0x40;
+
+    /** worst case size of a move: header, order index, two full doubles, two deltas, an angle and ticks */
+    private static final int MAX_RECORD_SIZE = 1 + 5 + 16 + 10 + 10 + 8 + 10;
+
+    private static final LngLat.Direction[] DIRECTIONS = LngLat.Direction.values();
+
+    /**
+     * Write the moves of a day into a binary file
+     * @param flightpaths the moves of the day, the moves of each drone in flying order
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(List<Flightpath> flightpaths, Path file) throws IOException {
+        // the dictionary of order numbers and the drones, in order of first appearance
+        Set<String> orderNos = new LinkedHashSet<>();
+        Map<Integer, List<Flightpath>> drones = new LinkedHashMap<>();
+        for (Flightpath path : flightpaths) {
+            orderNos.add(path.orderNo);
+            drones.computeIfAbsent(path.getDroneId(), droneId -> new ArrayList<>()).add(path);
+        }
+
+        List<Section> sections = new ArrayList<>();
+        for (Map.Entry<Integer, List<Flightpath>> drone : drones.entrySet()) {
+            List<Flightpath> moves = drone.getValue();
+            sections.add(new Section(drone.getKey(), moves.size(), encoder -> {
+                for (Flightpath path : moves) {
+                    encoder.visit(path.orderNo, path.fromLongitude, path.fromLatitude, path.angle,
+                            path.toLongitude, path.toLatitude, path.getTicksSinceStartOfCalculation());
+                }
+            }));
+        }
+        write(orderNos, sections, file);
+    }
+
+    /**
+     * Write the moves of a day into a binary file straight from the move buffer of the drone
+     * @param moves the moves of the day
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(MoveBuffer moves, Path file) throws IOException {
+        writeFleet(List.of(moves), file);
+    }
+
+    /**
+     * Write the moves of a day into a binary file straight from the move buffers of a fleet
+     * @param fleetMoves the moves of every drone
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeFleet(List<MoveBuffer> fleetMoves, Path file) throws IOException {
+        Set<String> orderNos = new LinkedHashSet<>();
+        List<Section> sections = new ArrayList<>();
+        for (MoveBuffer moves : fleetMoves) {
+            orderNos.addAll(moves.getOrderNos());
+            sections.add(new Section(moves.getDroneId(), moves.size(), moves::forEachMove));
+        }
+        write(orderNos, sections, file);
+    }
+
+    /**
+     * The moves of one drone to write
+     * @param droneId the id of the drone
+     * @param count the number of moves
+     * @param moves hands every move to the encoder in flying order
+     */
+    private record Section(int droneId, int count, Consumer<MoveBuffer.MoveVisitor> moves) {}
+
+    private static void write(Collection<String> orderNos, List<Section> sections, Path file) throws IOException {
+        Map<String, Integer> orderIndex = new HashMap<>();
+        List<byte[]> orderNames = new ArrayList<>();
+        long size = MAGIC.length + 1 + varintSize(orderNos.size()) + varintSize(sections.size());
+        for (String orderNo : orderNos) {
+            orderIndex.put(orderNo, orderNames.size());
+            byte[] name = orderNo.getBytes(StandardCharsets.UTF_8);
+            orderNames.add(name);
+            size += varintSize(name.length) + name.length;
+        }
+        // the records are encoded twice, first to size the file exactly, so that it is never truncated while mapped
+        for (Section section : sections) {
+            Encoder sizer = new Encoder(orderIndex);
+            section.moves().accept(sizer);
+            size += varintSize(section.droneId()) + varintSize(section.count()) + sizer.size;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+            out.put(MAGIC);
+            out.put(VERSION);
+            putVarint(out, orderNames.size());
+            for (byte[] name : orderNames) {
+                putVarint(out, name.length);
+                out.put(name);
+            }
+            putVarint(out, sections.size());
+
+            for (Section section : sections) {
+                putVarint(out, section.droneId());
+                putVarint(out, section.count());
+                section.moves().accept(new Encoder(out, orderIndex));
+            }
+
+            out.force();
+        }
+    }
+
+    /**
+     * Encodes the records of the moves one by one, against the position and ticks of the previous move
+     */
+    private static class Encoder implements MoveBuffer.MoveVisitor {
+        private final ByteBuffer out;
+        private final Map<String, Integer> orderIndex;
+        /** true if the records are only sized, each into a scratch buffer */
+        private final boolean sizing;
+        private double lng = Double.NaN;
+        private double lat = Double.NaN;
+        private long ticks = 0;
+        /** the number of bytes of the records sized so far */
+        private long size;
+
+        private Encoder(ByteBuffer out, Map<String, Integer> orderIndex) {
+            this.out = out;
+            this.orderIndex = orderIndex;
+            this.sizing = false;
+        }
+
+        /** Create an encoder that only sizes the records */
+        private Encoder(Map<String, Integer> orderIndex) {
+            this.out = ByteBuffer.allocate(MAX_RECORD_SIZE);
+            this.orderIndex = orderIndex;
+            this.sizing = true;
+        }
+
+        @Override
+        public void visit(String orderNo, double fromLongitude, double fromLatitude, double angle,
+                          double toLongitude, double toLatitude, int ticksSinceStartOfCalculation) {
+            int direction = directionIndex(angle);
+            boolean discontinuous = Double.doubleToRawLongBits(fromLongitude) != Double.doubleToRawLongBits(this.lng) ||
+                    Double.doubleToRawLongBits(fromLatitude) != Double.doubleToRawLongBits(this.lat);
+            boolean hover = Double.doubleToRawLongBits(fromLongitude) == Double.doubleToRawLongBits(toLongitude) &&
+                    Double.doubleToRawLongBits(fromLatitude) == Double.doubleToRawLongBits(toLatitude);
+
+            this.out.put((byte) (direction | (discontinuous ? DISCONTINUOUS : 0) | (hover ? HOVER : 0)));
+            putVarint(this.out, this.orderIndex.get(orderNo));
+            if (direction == OTHER_ANGLE) {
+                this.out.putDouble(angle);
+            }
+            if (discontinuous) {
+                this.out.putDouble(fromLongitude);
+                this.out.putDouble(fromLatitude);
+            }
+            if (!hover) {
+                putVarint(this.out, zigzag(Double.doubleToRawLongBits(toLongitude) -
+                        Double.doubleToRawLongBits(fromLongitude)));
+                putVarint(this.out, zigzag(Double.doubleToRawLongBits(toLatitude) -
+                        Double.doubleToRawLongBits(fromLatitude)));
+            }
+            putVarint(this.out, zigzag(ticksSinceStartOfCalculation - this.ticks));
+
+            this.lng = toLongitude;
+            this.lat = toLatitude;
+            this.ticks = ticksSinceStartOfCalculation;
+            if (this.sizing) {
+                this.size += this.out.position();
+                this.out.clear();
+            }
+        }
+    }
+
+    /**
+     * Read every move of a binary file
+     * @param file the file to read
+     * @param sink receives every move, drone by drone in flying order
+     * @throws IOException if the file cannot be read or is not a flightpath archive
+     */
+    public static void read(Path file, Consumer<Flightpath> sink) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            readDrones(readHeader(file, in), in, sink);
+        } catch (BufferUnderflowException e) {
+            throw new IOException(file + " is truncated", e);
+        }
+    }
+
+    /**
+     * The header of a file
+     * @param version the version of the file
+     * @param orderNames the dictionary of order numbers
+     * @param droneCount the number of drones
+     */
+    private record Header(int version, String[] orderNames, int droneCount) {}
+
+    private static Header readHeader(Path file, ByteBuffer in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.get(magic);
+        byte version = in.get();
+        if (!Arrays.equals(magic, MAGIC) || (version != VERSION && version != SINGLE_DRONE_VERSION)) {
+            throw new IOException(file + " is not a flightpath archive");
+        }
+
+        String[] orderNames = new String[(int) getVarint(in)];
+        for (int i = 0; i < orderNames.length; i++) {
+            byte[] name = new byte[(int) getVarint(in)];
+            in.get(name);
+            orderNames[i] = new String(name, StandardCharsets.UTF_8);
+        }
+
+        int droneCount = version == SINGLE_DRONE_VERSION ? 1 : (int) getVarint(in);
+        return new Header(version, orderNames, droneCount);
+    }
+
+    private static void readDrones(Header header, ByteBuffer in, Consumer<Flightpath> sink) {
+        for (int d = 0; d < header.droneCount(); d++) {
+            int droneId = header.version() == SINGLE_DRONE_VERSION ? 0 : (int) getVarint(in);
+            readRecords(header.orderNames(), droneId, in, sink);
+        }
+    }
+
+    private static void readRecords(String[] orderNames, int droneId, ByteBuffer in, Consumer<Flightpath> sink) {
+        long count = getVarint(in);
+        double lng = Double.NaN;
+        double lat = Double.NaN;
+        long ticks = 0;
+        for (long i = 0; i < count; i++) {
+            int header = in.get() & 0xFF;
+            int direction = header & DIRECTION_MASK;
+            String orderNo = orderNames[(int) getVarint(in)];
+            double angle = direction == OTHER_ANGLE ? in.getDouble() : DIRECTIONS[direction].getValue();
+
+            double fromLng = lng;
+            double fromLat = lat;
+            if ((header & DISCONTINUOUS) != 0) {
+                fromLng = in.getDouble();
+                fromLat = in.getDouble();
+            }
+            double toLng = fromLng;
+            double toLat = fromLat;
+            if ((header & HOVER) == 0) {
+                toLng = Double.longBitsToDouble(Double.doubleToRawLongBits(fromLng) + unzigzag(getVarint(in)));
+                toLat = Double.longBitsToDouble(Double.doubleToRawLongBits(fromLat) + unzigzag(getVarint(in)));
+            }
+            ticks += unzigzag(getVarint(in));
+
+            sink.accept(new Flightpath(droneId, orderNo, fromLng, fromLat, angle, toLng, toLat, (int) ticks));
+            lng = toLng;
+            lat = toLat;
+        }
+    }
+
+    /**
+     * Read every move of a binary file into a list
+     * @param file the file to read
+     * @return the moves in flying order
+     * @throws IOException if the file cannot be read or is not a flightpath archive
+     */
+    public static List<Flightpath> read(Path file) throws IOException {
+        List<Flightpath> flightpaths = new ArrayList<>();
+        read(file, flightpaths::add);
+        return flightpaths;
+    }
+
+    /**
+     * Convert a binary file into the flightpath json file of its day
+     * @param file the binary file to convert
+     * @param resultsWriter the writer of the day of the file
+     * @throws IOException if the file cannot be read or the json file cannot be written
+     */
+    public static void exportJson(Path file, ResultsWriter resultsWriter) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Header header = readHeader(file, in);
+
+            // moves are tagged with their drone only when a fleet flew the day
+            try (ResultsWriter.FlightpathStream stream = resultsWriter.openFlightpathStream(header.droneCount() > 1)) {
+                readDrones(header, in, stream);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException(file + " is truncated", e);
+        }
+    }
+
+    /**
+     * Convert binary files named flightpath-YYYY-MM-DD.fpb into the matching json files
+     * @param args the binary files to convert
+     */
+    public static void main(String[] args) {
+        for (String arg : args) {
+            Path file = Paths.get(arg);
+            String name = file.getFileName().toString();
+            if (!name.matches("flightpath-\\d{4}-\\d{2}-\\d{2}\\.fpb")) {
+                throw new IllegalArgumentException("Invalid flightpath archive name: " + name);
+            }
+            String[] date = name.substring("flightpath-".length(), name.length() - ".fpb".length()).split("-");
+
+            try {
+                exportJson(file, new ResultsWriter(date[0], date[1], date[2]));
+                System.out.println(name + " exported");
+            } catch (IOException e) {
+                System.err.println("Fatal error: Unable to export " + name);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static int directionIndex(double angle) {
+        for (int d = 0; d < DIRECTIONS.length; d++) {
+            if (Double.doubleToLongBits(DIRECTIONS[d].getValue()) == Double.doubleToLongBits(angle)) {
+                return d;
+            }
+        }
+        return OTHER_ANGLE;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void putVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+
+    private static long getVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Checks the result files of delivered days. Every move of flightpath-YYYY-MM-DD.json must be a hover
+ * or one move of LngLat.LENGTH_OF_MOVE in one of the 16 compass directions, start where the previous
+ * move of its drone ended, never cross a no-fly zone, and belong to an order that deliveries-YYYY-MM-DD.json
+ * lists as valid; every delivered order must end with a hover at Appleton Tower.
+ * The files are streamed without building a tree, and days are verified concurrently on a fork-join pool,
+ * one day per thread, against a prepared NoFlyZoneIndex
+ */
+public class FlightpathVerifier {
+    /** how far a coordinate may be off the exact move, the return leg is computed in reverse */
+    public static final double TOLERANCE = 1e-12;
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private final NoFlyZoneIndex noFlyZoneIndex;
+
+    /**
+     * A move or an order that breaks a rule
+     * @param date the day of the result files
+     * @param orderNo the order of the move, or of the delivery
+     * @param ticks the ticksSinceStartOfCalculation of the move, -1 for a delivery without a move
+     * @param message what is wrong
+     */
+    public record Violation(LocalDate date, String orderNo, int ticks, String message) {
+        @Override
+        public String toString() {
+            return this.date + " order " + this.orderNo + (this.ticks >= 0 ? " tick " + this.ticks : "") + ": " +
+                    this.message;
+        }
+    }
+
+    /** The position, ticks and number of moves of one drone while its moves are read */
+    private static class DroneTrack {
+        private double lng = Drone.APPLETON_LONGITUDE;
+        private double lat = Drone.APPLETON_LATITUDE;
+        private int ticks = Integer.MIN_VALUE;
+        private int moves;
+    }
+
+    /** The last move of an order */
+    private record LastMove(double lng, double lat, boolean hover) {
+    }
+
+    /**
+     * Create the verifier
+     * @param noFlyZoneIndex the no-fly zones of the days to verify
+     */
+    public FlightpathVerifier(NoFlyZoneIndex noFlyZoneIndex) {
+        this.noFlyZoneIndex = noFlyZoneIndex;
+    }
+
+    /**
+     * Verify the flightpath and deliveries files of one day in a directory
+     * @param directory the folder of the result files
+     * @param date the day
+     * @return the violations in the order of the moves, then of the deliveries
+     * @throws IOException if a file cannot be read or parsed
+     */
+    public List<Violation> verifyDay(Path directory, LocalDate date) throws IOException {
+        try (InputStream flightpath = Files.newInputStream(directory.resolve("flightpath-" + date + ".json"));
+             InputStream deliveries = Files.newInputStream(directory.resolve("deliveries-" + date + ".json"))) {
+            return verify(date, flightpath, deliveries);
+        }
+    }
+
+    /**
+     * Verify the flightpath and deliveries documents of one day
+     * @param date the day
+     * @param flightpath the JSON array of moves, it is not closed
+     * @param deliveries the JSON array of deliveries, it is not closed
+     * @return the violations in the order of the moves, then of the deliveries
+     * @throws IOException if a document cannot be read or parsed
+     */
+    public List<Violation> verify(LocalDate date, InputStream flightpath, InputStream deliveries) throws IOException {
+        Map<String, String> outcomes = readOutcomes(deliveries);
+        List<Violation> violations = new ArrayList<>();
+        Map<Integer, DroneTrack> drones = new HashMap<>();
+        Map<String, LastMove> lastMoves = new HashMap<>();
+        Set<String> reportedOrders = new HashSet<>();
+
+        try (JsonParser parser = jsonFactory.createParser(flightpath)) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            expectArray(parser, "moves");
+
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                int droneId = 0;
+                String orderNo = null;
+                double fromLng = Double.NaN;
+                double fromLat = Double.NaN;
+                double angle = Double.NaN;
+                double toLng = Double.NaN;
+                double toLat = Double.NaN;
+                int ticks = -1;
+
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    parser.nextToken();
+                    switch (field) {
+                        case "droneId" -> droneId = parser.getIntValue();
+                        case "orderNo" -> orderNo = parser.getText();
+                        case "fromLongitude" -> fromLng = parser.getDoubleValue();
+                        case "fromLatitude" -> fromLat = parser.getDoubleValue();
+                        case "angle" -> angle = parser.getDoubleValue();
+                        case "toLongitude" -> toLng = parser.getDoubleValue();
+                        case "toLatitude" -> toLat = parser.getDoubleValue();
+                        case "ticksSinceStartOfCalculation" -> ticks = parser.getIntValue();
+                        default -> parser.skipChildren();
+                    }
+                }
+                if (orderNo == null || Double.isNaN(fromLng) || Double.isNaN(fromLat) || Double.isNaN(angle) ||
+                        Double.isNaN(toLng) || Double.isNaN(toLat) || ticks < 0) {
+                    throw new JsonParseException(parser, "Move of order " + orderNo + " is missing a field");
+                }
+
+                DroneTrack drone = drones.computeIfAbsent(droneId, id -> new DroneTrack());
+                String problem = checkMove(drone, fromLng, fromLat, angle, toLng, toLat, ticks);
+                if (problem != null) {
+                    violations.add(new Violation(date, orderNo, ticks, problem));
+                }
+
+                String outcome = outcomes.get(orderNo);
+                if (outcome == null) {
+                    if (reportedOrders.add(orderNo)) {
+                        violations.add(new Violation(date, orderNo, ticks, "order is not in the deliveries"));
+                    }
+                } else if (!outcome.equals(Order.OrderOutcome.Delivered.toString()) &&
+                        !outcome.equals(Order.OrderOutcome.ValidButNotDelivered.toString())) {
+                    if (reportedOrders.add(orderNo)) {
+                        violations.add(new Violation(date, orderNo, ticks, "an order with outcome " + outcome +
+                                " is flown"));
+                    }
+                }
+
+                // the next move of the drone is checked against where this move ended
+                drone.lng = toLng;
+                drone.lat = toLat;
+                drone.ticks = ticks;
+                drone.moves++;
+                if (drone.moves == Drone.BATTERY + 1) {
+                    violations.add(new Violation(date, orderNo, ticks, "drone " + droneId + " flies more than " +
+                            Drone.BATTERY + " moves"));
+                }
+                lastMoves.put(orderNo, new LastMove(toLng, toLat, angle == LngLat.Direction.Null.getValue()));
+            }
+            if (parser.currentToken() != JsonToken.END_ARRAY) {
+                throw new JsonParseException(parser, "Expected a move object");
+            }
+        }
+
+        // every delivered order was flown back to Appleton Tower
+        for (Map.Entry<String, String> delivery : outcomes.entrySet()) {
+            if (!delivery.getValue().equals(Order.OrderOutcome.Delivered.toString())) {
+                continue;
+            }
+            LastMove last = lastMoves.get(delivery.getKey());
+            if (last == null) {
+                violations.add(new Violation(date, delivery.getKey(), -1, "delivered order has no moves"));
+            } else if (!last.hover() || !new LngLat(last.lng(), last.lat()).closeTo(Drone.APPLETON_TOWER)) {
+                violations.add(new Violation(date, delivery.getKey(), -1,
+                        "delivered order does not end with a hover at Appleton Tower"));
+            }
+        }
+        return violations;
+    }
+
+    /**
+     * Check one move against the rules of flight
+     * @return what is wrong with the move, or null if it is valid
+     */
+    private String checkMove(DroneTrack drone, double fromLng, double fromLat, double angle,
+                             double toLng, double toLat, int ticks) {
+        if (Math.abs(fromLng - drone.lng) > TOLERANCE || Math.abs(fromLat - drone.lat) > TOLERANCE) {
+            return drone.moves == 0 ? "drone does not start at Appleton Tower" :
+                    "move does not start where the previous move ended";
+        }
+        if (ticks < drone.ticks) {
+            return "ticks go backwards from " + drone.ticks;
+        }
+
+        LngLat.Direction direction = LngLat.Direction.fromAngle(angle);
+        if (direction == null) {
+            return "angle " + angle + " is not a compass direction";
+        }
+        if (direction == LngLat.Direction.Null) {
+            if (fromLng != toLng || fromLat != toLat) {
+                return "hover moves the drone";
+            }
+            return null;
+        }
+
+        double length = Math.hypot(toLng - fromLng, toLat - fromLat);
+        if (Math.abs(length - LngLat.LENGTH_OF_MOVE) > TOLERANCE) {
+            return "move is " + length + " long";
+        }
+        LngLat expected = new LngLat(fromLng, fromLat).nextPosition(direction);
+        if (Math.abs(toLng - expected.getLng()) > TOLERANCE || Math.abs(toLat - expected.getLat()) > TOLERANCE) {
+            return "move does not follow its angle " + angle;
+        }
+        if (this.noFlyZoneIndex.intersects(fromLng, fromLat, toLng, toLat)) {
+            return "move crosses a no-fly zone";
+        }
+        return null;
+    }
+
+    /**
+     * Read the outcome of every order of a deliveries document
+     * @return the outcome of every order number
+     */
+    private static Map<String, String> readOutcomes(InputStream deliveries) throws IOException {
+        Map<String, String> outcomes = new HashMap<>();
+        try (JsonParser parser = jsonFactory.createParser(deliveries)) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            expectArray(parser, "deliveries");
+
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                String orderNo = null;
+                String outcome = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    parser.nextToken();
+                    switch (field) {
+                        case "orderNo" -> orderNo = parser.getText();
+                        case "outcome" -> outcome = parser.getText();
+                        default -> parser.skipChildren();
+                    }
+                }
+                if (orderNo == null || outcome == null) {
+                    throw new JsonParseException(parser, "Delivery of order " + orderNo + " is missing a field");
+                }
+                outcomes.put(orderNo, outcome);
+            }
+            if (parser.currentToken() != JsonToken.END_ARRAY) {
+                throw new JsonParseException(parser, "Expected a delivery object");
+            }
+        }
+        return outcomes;
+    }
+
+    private static void expectArray(JsonParser parser, String what) throws IOException {
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new JsonParseException(parser, "Expected an array of " + what);
+        }
+    }
+
+    /**
+     * Verify every day with a flightpath json file in a directory, the days run concurrently.
+     * Files named flightpath-*.json whose suffix is not a date are reported and skipped
+     * @param directory the folder of the result files
+     * @param parallelism number of days verified concurrently
+     * @return the violations of every day, in date order
+     * @throws IOException if the directory cannot be listed or a file cannot be read or parsed
+     */
+    public List<Violation> verifyAll(Path directory, int parallelism) throws IOException {
+        List<LocalDate> dates = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "flightpath-*.json")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    dates.add(LocalDate.parse(name.substring("flightpath-".length(),
+                            name.length() - ".json".length())));
+                } catch (DateTimeParseException e) {
+                    // e.g. a copy of a day file, it has no deliveries file of its own
+                    System.err.println("Skipped " + file + ": not the flightpath file of a day");
+                }
+            }
+        }
+        dates.sort(null);
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<Future<List<Violation>>> results = new ArrayList<>();
+            for (LocalDate date : dates) {
+                results.add(pool.submit(() -> verifyDay(directory, date)));
+            }
+
+            List<Violation> violations = new ArrayList<>();
+            for (Future<List<Violation>> result : results) {
+                violations.addAll(result.get());
+            }
+            return violations;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Verify the result files of every day and print the violations,
+     * the exit status is 1 if there is any
+     *
+     * @param args
+     * <ul>
+     * <li>--base=URL - base address of the web server the no-fly zones are fetched from</li>
+     * <li>--threads=N - number of days verified concurrently, the number of processors by default</li>
+     * <li>the folder of the result files, resultfiles by default</li>
+     * </ul>
+     */
+    public static void main(String[] args) {
+        String baseAddress = "https://ilp-rest.azurewebsites.net/";
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path directory = Paths.get("resultfiles");
+        for (String arg : args) {
+            if (arg.startsWith("--base=")) {
+                baseAddress = arg.substring("--base=".length());
+            } else if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(arg.substring("--threads=".length()));
+            } else if (arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            } else {
+                directory = Paths.get(arg);
+            }
+        }
+
+        long start = System.nanoTime();
+        FlightpathVerifier verifier = new FlightpathVerifier(WorldSnapshot.of(baseAddress).getNoFlyZoneIndex());
+        List<Violation> violations;
+        try {
+            violations = verifier.verifyAll(directory, threads);
+        } catch (IOException e) {
+            System.err.println("Fatal error: Unable to verify " + directory);
+            e.printStackTrace();
+            System.exit(2);
+            return;
+        }
+
+        for (Violation violation : violations) {
+            System.out.println(violation);
+        }
+        System.out.printf("%d violations in %s, verified in %d ms%n", violations.size(), directory,
+                (System.nanoTime() - start) / 1_000_000);
+        if (!violations.isEmpty()) {
+            System.exit(1);
+        }
+    }
+}
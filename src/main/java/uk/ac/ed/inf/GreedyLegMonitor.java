@@ -0,0 +1,71 @@
+package uk.ac.ed.inf;
+
+/**
+ * Watches one leg of the greedy navigator and tells when to give it up, so a stuck leg costs a bounded
+ * number of moves instead of the whole battery. The greedy move only depends on the position and the heading,
+ * so a leg that comes back to a position with the same heading repeats itself forever: these states are kept
+ * exactly, as FixedPoint positions relative to the start of the leg, in a LongHashSet. A leg that wanders without
+ * getting closer to its goal than before is given up too, after a window that grows with the length of the leg,
+ * since a long leg can meet a long wall of no-fly zones to fly around.
+ * Not thread-safe, every leg uses its own monitor.
+ */
+final class GreedyLegMonitor {
+    /** moves without getting any closer to the goal before a short leg is given up */
+    static final int MIN_NO_PROGRESS_WINDOW = 200;
+    /** moves without getting any closer to the goal per move of the straight line to the goal */
+    static final int NO_PROGRESS_MOVES_PER_MOVE = 2;
+
+    /* a state takes 30 bits per coordinate, enough for a full battery of moves from the start, and 4 bits of heading */
+    private static final int COORDINATE_BITS = 30;
+    private static final long COORDINATE_MASK = (1L << COORDINATE_BITS) - 1;
+    private static final int HEADING_BITS = 4;
+
+    private final LngLat goal;
+    private final long startLng;
+    private final long startLat;
+    private final LongHashSet states = new LongHashSet(256);
+    private final int noProgressWindow;
+    private double closest;
+    private int movesSinceProgress;
+
+    /**
+     * Start watching a leg
+     * @param start the position the leg starts from
+     * @param goal the position the leg goes to
+     */
+    GreedyLegMonitor(LngLat start, LngLat goal) {
+        this.goal = goal;
+        this.startLng = FixedPoint.toFixed(start.getLng());
+        this.startLat = FixedPoint.toFixed(start.getLat());
+        this.closest = start.distanceTo(goal);
+        this.noProgressWindow = (int) Math.max(MIN_NO_PROGRESS_WINDOW,
+                Math.min(Drone.BATTERY, Math.ceil(this.closest / LngLat.LENGTH_OF_MOVE) * NO_PROGRESS_MOVES_PER_MOVE));
+    }
+
+    /**@return the number of moves without getting any closer to the goal before the leg is given up */
+    int getNoProgressWindow() {
+        return this.noProgressWindow;
+    }
+
+    /**
+     * Record a greedy move
+     * @param pos the position after the move
+     * @param heading the direction of the move, never Null
+     * @return true if the leg is in a cycle or makes no progress and should be given up
+     */
+    boolean isStuck(LngLat pos, LngLat.Direction heading) {
+        double distance = pos.distanceTo(this.goal);
+        if (distance < this.closest) {
+            this.closest = distance;
+            this.movesSinceProgress = 0;
+        } else if (++this.movesSinceProgress >= this.noProgressWindow) {
+            return true;
+        }
+
+        long lng = FixedPoint.toFixed(pos.getLng()) - this.startLng;
+        long lat = FixedPoint.toFixed(pos.getLat()) - this.startLat;
+        long state = ((lng & COORDINATE_MASK) << (COORDINATE_BITS + HEADING_BITS)) |
+                ((lat & COORDINATE_MASK) << HEADING_BITS) | heading.ordinal();
+        return !this.states.add(state);
+    }
+}
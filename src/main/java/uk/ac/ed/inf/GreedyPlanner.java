@@ -0,0 +1,72 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plans a route by simulating the greedy LngLat.nextDirection navigator from the start position,
+ * so that the greedy routes can be cached and replayed like any other planned route.
+ * The navigator breaks ties by the heading of the drone, so the route starts from the heading of the last move.
+ */
+public class GreedyPlanner implements RoutePlanner {
+    private final DataParser dataParser;
+
+    /**
+     * Create the planner
+     * @param dataParser the map to plan on
+     */
+    public GreedyPlanner(DataParser dataParser) {
+        this.dataParser = dataParser;
+    }
+
+    /**
+     * Simulate the greedy navigator of a drone heading East, as at the start of the day
+     * @param start the position the drone starts from
+     * @param goal the position the drone wants to reach
+     * @return the directions of every move, or null if the goal is not reached
+     */
+    @Override
+    public List<LngLat.Direction> planRoute(LngLat start, LngLat goal) {
+        return planRoute(start, goal, LngLat.Direction.East);
+    }
+
+    /**
+     * Simulate the greedy navigator until it gets close to the goal
+     * @param start the position the drone starts from
+     * @param goal the position the drone wants to reach
+     * @param heading the direction of the last move of the drone
+     * @return the directions of every move, or null if the goal is not reached within a full battery
+     * or the navigator is caught in a cycle, makes no progress or is walled in on the way
+     */
+    @Override
+    public List<LngLat.Direction> planRoute(LngLat start, LngLat goal, LngLat.Direction heading) {
+        LngLat pos = start;
+        List<LngLat.Direction> route = new ArrayList<>();
+        GreedyLegMonitor monitor = new GreedyLegMonitor(start, goal);
+        boolean goalInCentralArea = this.dataParser.getCentralAreaPolygon().contains(goal.getLng(), goal.getLat());
+
+        while (!pos.closeTo(goal)) {
+            if (route.size() >= Drone.BATTERY) {
+                return null;
+            }
+            heading = pos.nextDirection(this.dataParser, goal, heading, goalInCentralArea);
+            if (heading != null) {
+                route.add(heading);
+                pos = pos.nextPosition(heading);
+            }
+            if (heading == null || !pos.closeTo(goal) && monitor.isStuck(pos, heading)) {
+                Metrics metrics = this.dataParser.getMetrics();
+                if (metrics != null) {
+                    metrics.greedyLegsAbandoned.increment();
+                }
+                return null;
+            }
+        }
+        return route;
+    }
+
+    @Override
+    public boolean dependsOnHeading() {
+        return true;
+    }
+}
@@ -0,0 +1,340 @@
+package uk.ac.ed.inf;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * On-disk cache of the bodies fetched from the REST service, keyed by url, that survives between runs.
+ * Every body is stored gzip-compressed with the ETag and Last-Modified validators of its response,
+ * so that RestFetcher can revalidate it with a conditional request and only transfer bodies that changed.
+ * In offline mode nothing is requested and only cached bodies are served, which makes reruns and
+ * benchmarks reproducible. The cache is thread-safe and can be shared by all days of a run.
+ */
+public class HttpCache {
+    private final Path directory;
+    private volatile boolean offline;
+    private int hits;
+    private int misses;
+
+    /**
+     * A cached body and the validators of its response
+     * @param etag the ETag of the response, or null
+     * @param lastModified the Last-Modified date of the response, or null
+     * @param body the gzip-compressed body
+     */
+    record Entry(String etag, String lastModified, Path body) {}
+
+    /**
+     * The failure of a url fetched offline that is not cached, another attempt fails the same way
+     */
+    public static class NotCachedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        NotCachedException(String url) {
+            super("Unable to fetch " + url + " offline: it is not cached.");
+        }
+    }
+
+    /**
+     * Create the cache
+     * @param directory the directory of the cached bodies, created on first store
+     */
+    public HttpCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Serve only cached bodies without requesting anything, a url that is not cached fails to fetch
+     * @param offline true to never go over the network
+     */
+    public void setOffline(boolean offline) {
+        this.offline = offline;
+    }
+
+    /**@return true if only cached bodies are served */
+    public boolean isOffline() {
+        return this.offline;
+    }
+
+    /**@return the number of bodies served from the cache, offline or after a revalidation */
+    public synchronized int getHits() {
+        return this.hits;
+    }
+
+    /**@return the number of bodies that had to be transferred */
+    public synchronized int getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * Find the cached body of a url
+     * @param url the url of the body
+     * @return the entry, or null if the url is not cached
+     */
+    Entry lookup(String url) {
+        Path meta = fileOf(url, ".meta");
+        Path body = fileOf(url, ".gz");
+        if (!Files.exists(meta) || !Files.exists(body)) {
+            return null;
+        }
+
+        try {
+            List<String> lines = Files.readAllLines(meta, StandardCharsets.UTF_8);
+            if (lines.size() != 3 || !lines.get(0).equals(url)) {
+                return null;
+            }
+            return new Entry(lines.get(1).isEmpty() ? null : lines.get(1),
+                    lines.get(2).isEmpty() ? null : lines.get(2), body);
+        } catch (IOException e) {
+            System.err.println("Unable to read cached response " + meta + ", fetching it again");
+            return null;
+        }
+    }
+
+    /**
+     * Serve a cached body without transferring it
+     * @param entry the entry of the body
+     * @return the gzip-compressed body
+     */
+    Path hit(Entry entry) {
+        synchronized (this) {
+            this.hits++;
+        }
+        return entry.body();
+    }
+
+    /**
+     * Store a transferred body, replacing the cached one
+     * @param url the url of the body
+     * @param body the body as received
+     * @param gzipped true if the body was received gzip-compressed
+     * @param etag the ETag of the response, or null
+     * @param lastModified the Last-Modified date of the response, or null
+     * @return the gzip-compressed body
+     * @throws IOException if the body cannot be stored
+     */
+    Path store(String url, byte[] body, boolean gzipped, String etag, String lastModified) throws IOException {
+        synchronized (this) {
+            this.misses++;
+        }
+        Files.createDirectories(this.directory);
+
+        Path temp = Files.createTempFile(this.directory, "body", ".tmp");
+        try (OutputStream out = gzipped ? Files.newOutputStream(temp) :
+                new GZIPOutputStream(Files.newOutputStream(temp))) {
+            out.write(body);
+        }
+        return commit(url, temp, etag, lastModified);
+    }
+
+    /**
+     * Store a transferred body while it is read, replacing the cached one once the reader reaches its end.
+     * A body closed before its end is not stored
+     * @param url the url of the body
+     * @param body the body as it arrives, closed with the returned stream
+     * @param gzipped true if the body is received gzip-compressed
+     * @param etag the ETag of the response, or null
+     * @param lastModified the Last-Modified date of the response, or null
+     * @return a stream of the decompressed body, which the caller must close
+     * @throws IOException if the body cannot be stored
+     */
+    InputStream store(String url, InputStream body, boolean gzipped, String etag, String lastModified)
+            throws IOException {
+        synchronized (this) {
+            this.misses++;
+        }
+        Files.createDirectories(this.directory);
+
+        Path temp = Files.createTempFile(this.directory, "body", ".tmp");
+        OutputStream file = Files.newOutputStream(temp);
+        OutputStream out = gzipped ? file : new GZIPOutputStream(file);
+        InputStream copied = new CopyingStream(body, out);
+        return new FilterInputStream(gzipped ? gunzipOnRead(copied) : copied) {
+            private boolean ended;
+            private boolean closed;
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                this.ended |= b < 0;
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int n = super.read(buffer, offset, length);
+                this.ended |= n < 0;
+                return n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (this.closed) {
+                    return;
+                }
+                this.closed = true;
+                boolean stored = false;
+                try {
+                    if (this.ended) {
+                        // the gzip trailer may not have been read to the end of the body
+                        copied.transferTo(OutputStream.nullOutputStream());
+                        out.close();
+                        commit(url, temp, etag, lastModified);
+                        stored = true;
+                    }
+                } finally {
+                    if (!stored) {
+                        out.close();
+                        Files.deleteIfExists(temp);
+                    }
+                    super.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Move a stored body in place and write its meta file
+     * @param temp the gzip-compressed body
+     * @return the cached body
+     */
+    private Path commit(String url, Path temp, String etag, String lastModified) throws IOException {
+        // the body is moved in place first, an entry is only found once its meta file follows
+        Path file = fileOf(url, ".gz");
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        temp = Files.createTempFile(this.directory, "meta", ".tmp");
+        Files.writeString(temp, url + "\n" + (etag == null ? "" : etag) + "\n" +
+                (lastModified == null ? "" : lastModified) + "\n", StandardCharsets.UTF_8);
+        Files.move(temp, fileOf(url, ".meta"), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        return file;
+    }
+
+    /**
+     * @param body a gzip-compressed body
+     * @return a stream of the decompressed body, which the caller must close
+     * @throws IOException if the body cannot be read
+     */
+    static InputStream open(Path body) throws IOException {
+        return new GZIPInputStream(Files.newInputStream(body));
+    }
+
+    /**
+     * @param body a gzip-compressed body
+     * @return the decompressed body
+     * @throws IOException if the body cannot be read
+     */
+    static byte[] read(Path body) throws IOException {
+        try (InputStream in = open(body)) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * @param body a gzip-compressed body
+     * @return the decompressed body
+     * @throws IOException if the body is not valid gzip
+     */
+    static byte[] gunzip(byte[] body) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Decompress a body that may still be arriving. Unlike new GZIPInputStream, which reads the gzip header
+     * at once, the header is only read on the first read, so that the caller is not blocked before it reads
+     * @param body a gzip-compressed body
+     * @return a stream of the decompressed body, which the caller must close
+     */
+    static InputStream gunzipOnRead(InputStream body) {
+        return new InputStream() {
+            private InputStream decompressed;
+
+            private InputStream decompressed() throws IOException {
+                if (this.decompressed == null) {
+                    this.decompressed = new GZIPInputStream(body);
+                }
+                return this.decompressed;
+            }
+
+            @Override
+            public int read() throws IOException {
+                return decompressed().read();
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                return decompressed().read(buffer, offset, length);
+            }
+
+            @Override
+            public int available() throws IOException {
+                return this.decompressed == null ? 0 : this.decompressed.available();
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (this.decompressed != null) {
+                    this.decompressed.close();
+                } else {
+                    body.close();
+                }
+            }
+        };
+    }
+
+    /** A stream that writes every byte read from it to a file */
+    private static class CopyingStream extends FilterInputStream {
+        private final OutputStream out;
+
+        private CopyingStream(InputStream in, OutputStream out) {
+            super(in);
+            this.out = out;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                this.out.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                this.out.write(buffer, offset, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped bytes are read, so that the copy is complete
+            return n <= 0 ? 0 : Math.max(0, read(new byte[(int) Math.min(n, 8192)]));
+        }
+    }
+
+    private Path fileOf(String url, String extension) {
+        // 64-bit FNV-1a of the url, the url itself is stored in the meta file to detect collisions
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            hash = (hash ^ url.charAt(i)) * 0x100000001b3L;
+        }
+        return this.directory.resolve(Long.toHexString(hash) + extension);
+    }
+}
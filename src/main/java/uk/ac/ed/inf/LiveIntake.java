@@ -0,0 +1,393 @@
+package uk.ac.ed.inf;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Live delivery of orders as they arrive, instead of a daily batch.
+ * Orders arrive as JSON Lines, one order object of the orders endpoint per line, from a followed file or
+ * from a local socket. Every line is validated as soon as it is read and queued for the drone, which flies
+ * the valid orders whose planned round trip fits its battery in order of arrival and hands every move to a sink as it is made, e.g. the flightpath
+ * file of the day, flushed after every delivery. The time from the arrival of an order to its planned route,
+ * i.e. its first move, is measured for every order
+ */
+public class LiveIntake {
+    /** how often a followed file is checked for new lines */
+    public static final long POLL_MILLIS = 20;
+
+    /** queued by finish() after the last order */
+    private static final Arrival END = new Arrival(null, 0);
+
+    private final OrderReader orderReader;
+    private final Drone drone;
+    private final DeliveryPlanner deliveryPlanner;
+    private final Consumer<Flightpath> moveSink;
+    private final Metrics metrics;
+    private final Metrics.Histogram routeLatency;
+    private final BlockingQueue<Arrival> queue = new LinkedBlockingQueue<>();
+    private final List<Order> orders = new ArrayList<>();
+    private Duration idleTimeout;
+    /** the order being flown whose first move was not made yet */
+    private Arrival planning;
+
+    /** An order and the System.nanoTime its line was read at */
+    private record Arrival(Order order, long arrivedAt) {
+    }
+
+    /**
+     * Create the intake with one drone starting from Appleton Tower with a full battery
+     * @param worldSnapshot the geography and restaurants the orders are validated and flown against
+     * @param moveSink receives every move as it is made, flushed after every delivery if it is Flushable
+     */
+    public LiveIntake(WorldSnapshot worldSnapshot, Consumer<Flightpath> moveSink) {
+        this.metrics = new Metrics();
+        this.routeLatency = this.metrics.histogram("order_route_latency_seconds",
+                "Time from the arrival of an order to its planned route", 1e9);
+        DataParser dataParser = new DataParser(worldSnapshot, new ArrayList<>(), this.metrics);
+        this.orderReader = new OrderReader(worldSnapshot.getMenuCatalog());
+        this.orderReader.setMetrics(this.metrics);
+        RoutePlanner routePlanner = new GreedyPlanner(dataParser);
+        RoutePlanner fallbackPlanner = new AStarPlanner(dataParser);
+        this.drone = new Drone(dataParser);
+        this.drone.setRoutePlanner(routePlanner);
+        this.drone.setFallbackPlanner(fallbackPlanner);
+        // orders are accepted by the moves of the round trip the drone flies, planned once per restaurant
+        this.deliveryPlanner = new DeliveryPlanner(routePlanner, new DeliveryPlanner.Selection(
+                DeliveryPlanner.Objective.DELIVERIES, DeliveryPlanner.Strategy.GREEDY_RATIO));
+        this.deliveryPlanner.setFallbackPlanner(fallbackPlanner);
+        this.drone.streamMovesTo(this::acceptMove);
+        this.moveSink = moveSink;
+    }
+
+    /**
+     * Stop when no order arrives for the given time
+     * @param idleTimeout the longest wait for an order, or null to wait until finish() is called
+     */
+    public void setIdleTimeout(Duration idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**@return every order that arrived so far with its outcome, in order of arrival */
+    public List<Order> getOrders() {
+        return this.orders;
+    }
+
+    /**@return the metrics of the intake, including the latency from arrival to planned route */
+    public Metrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**@return the drone flying the orders */
+    public Drone getDrone() {
+        return this.drone;
+    }
+
+    /**
+     * Validate one line and queue its order for the drone, lines that are not orders are reported and skipped.
+     * Lines may be submitted from any thread
+     * @param line one order object
+     */
+    public void submit(String line) {
+        long arrivedAt = System.nanoTime();
+        if (line.isBlank()) {
+            return;
+        }
+        try {
+            this.queue.add(new Arrival(this.orderReader.readOrder(line), arrivedAt));
+        } catch (IOException e) {
+            System.err.println("INTAKE: Skipped a line that is not an order: " + e.getMessage());
+        }
+    }
+
+    /** No more orders will arrive, run() returns once the queued orders are delivered */
+    public void finish() {
+        this.queue.add(END);
+    }
+
+    /**
+     * Deliver the queued orders as they arrive until finish() is called or the intake is idle for too long
+     * @return every order that arrived, with its outcome
+     */
+    public List<Order> run() {
+        try {
+            while (true) {
+                Arrival arrival = this.idleTimeout == null ? this.queue.take() :
+                        this.queue.poll(this.idleTimeout.toMillis(), TimeUnit.MILLISECONDS);
+                if (arrival == null) {
+                    System.out.println("INTAKE: No order for " + this.idleTimeout.toMillis() + " ms, stopping");
+                    break;
+                }
+                if (arrival == END) {
+                    break;
+                }
+                dispatch(arrival);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.metrics.batteryRemaining.record(this.drone.getRemainBattery());
+        return this.orders;
+    }
+
+    private void dispatch(Arrival arrival) {
+        Order order = arrival.order();
+        this.orders.add(order);
+
+        if (!order.getOrderOutcome().equals(Order.OrderOutcome.ValidButNotDelivered.toString())) {
+            System.out.printf("DRONE: Invalid Order {orderNo: %s} %n", order.getOrderNo());
+            System.out.println("-----> " + order.getOrderOutcome() + "\n");
+            return;
+        }
+        // a later order to a nearer restaurant may still fit
+        int cost = this.deliveryPlanner.getRoundTripCost(order);
+        if (cost == Integer.MAX_VALUE) {
+            System.out.printf("DRONE: No route to the restaurant of order {orderNo: %s} %n", order.getOrderNo());
+            return;
+        } else if (cost > this.drone.getRemainBattery()) {
+            System.out.printf("DRONE: No enough battery to deliver order {orderNo: %s} %n", order.getOrderNo());
+            return;
+        }
+
+        this.planning = arrival;
+        this.drone.droneMove(order);
+        if (this.moveSink instanceof Flushable flushable) {
+            try {
+                flushable.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void acceptMove(Flightpath move) {
+        if (this.planning != null) {
+            long latency = System.nanoTime() - this.planning.arrivedAt();
+            this.routeLatency.record(latency);
+            System.out.printf("-----> Route planned %.3f ms after arrival %n", latency / 1e6);
+            this.planning = null;
+        }
+        this.moveSink.accept(move);
+    }
+
+    /**
+     * Follow a JSON Lines file as it grows, like tail -F, and submit every complete line.
+     * The file is read from its start and may not exist yet. A file truncated below the position read
+     * is read again from its start, and a file replaced by another one, e.g. rotated, is reopened
+     * @param file the file to follow
+     * @return the daemon thread following the file, it stops when interrupted
+     */
+    public Thread follow(Path file) {
+        Thread follower = new Thread(() -> {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            try {
+                while (true) {
+                    while (!Files.exists(file)) {
+                        Thread.sleep(POLL_MILLIS);
+                    }
+                    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                        followUntilReplaced(file, channel, buffer, line);
+                    } catch (NoSuchFileException e) {
+                        // removed before it was opened, wait for the next one
+                    }
+                    // the end of the replaced file without a newline is never completed
+                    line.reset();
+                }
+            } catch (IOException e) {
+                System.err.println("Fatal error: Unable to follow " + file);
+                e.printStackTrace();
+            } catch (InterruptedException e) {
+                // stopped
+            }
+        }, "intake-" + file.getFileName());
+        follower.setDaemon(true);
+        follower.start();
+        return follower;
+    }
+
+    /**
+     * Submit the lines of an open file as they are written, until the file at its path is another one
+     */
+    private void followUntilReplaced(Path file, FileChannel channel, ByteBuffer buffer, ByteArrayOutputStream line)
+            throws IOException, InterruptedException {
+        Object fileKey = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        while (true) {
+            buffer.clear();
+            if (channel.read(buffer) <= 0) {
+                // at the end of the file, it may have been truncated or replaced since
+                if (channel.size() < channel.position()) {
+                    System.out.println("INTAKE: " + file + " was truncated, reading it from its start");
+                    channel.position(0);
+                    line.reset();
+                } else if (isReplaced(file, fileKey)) {
+                    System.out.println("INTAKE: " + file + " was replaced, reopening it");
+                    return;
+                }
+                Thread.sleep(POLL_MILLIS);
+                continue;
+            }
+            buffer.flip();
+            // a line is only submitted once its newline was written
+            while (buffer.hasRemaining()) {
+                byte b = buffer.get();
+                if (b == '\n') {
+                    submit(line.toString(StandardCharsets.UTF_8));
+                    line.reset();
+                } else {
+                    line.write(b);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param fileKey the identity of the open file, or null if the platform has none
+     * @return true if the file was removed, or the path now leads to another file
+     */
+    private static boolean isReplaced(Path file, Object fileKey) throws IOException {
+        try {
+            return fileKey != null && !fileKey.equals(Files.readAttributes(file, BasicFileAttributes.class).fileKey());
+        } catch (NoSuchFileException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Accept JSON Lines connections on a port of the loopback interface and submit every line,
+     * each connection is read on its own daemon thread until the client closes it
+     * @param port the port to listen on, 0 for any free port
+     * @return the port listened on
+     * @throws IOException if the port cannot be opened
+     */
+    public int listen(int port) throws IOException {
+        ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(() -> {
+            while (true) {
+                try {
+                    Socket client = server.accept();
+                    Thread reader = new Thread(() -> readLines(client), "intake-" + client.getPort());
+                    reader.setDaemon(true);
+                    reader.start();
+                } catch (IOException e) {
+                    System.err.println("Fatal error: Unable to accept an intake connection");
+                    e.printStackTrace();
+                    return;
+                }
+            }
+        }, "intake-" + server.getLocalPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return server.getLocalPort();
+    }
+
+    private void readLines(Socket client) {
+        try (client; BufferedReader in = new BufferedReader(
+                new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8))) {
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                submit(line);
+            }
+        } catch (IOException e) {
+            System.err.println("INTAKE: Connection from port " + client.getPort() + " failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Deliver orders live until the intake is idle or the process is stopped, then write the deliveries
+     * and metrics files of the day. The flightpath file is written move by move while the drone flies
+     *
+     * @param args
+     * <ul>
+     * <li>--file=PATH - follow a JSON Lines file of orders</li>
+     * <li>--port=N - accept JSON Lines of orders on a local port</li>
+     * <li>--base=URL - base address of the web server, or a file: URL of a directory written by
+     * WorkloadGenerator</li>
+     * <li>--date=YYYY-MM-DD - the day of the result files, today by default</li>
+     * <li>--idle=SECONDS - stop when no order arrives for this long; by default run until stopped</li>
+     * </ul>
+     */
+    public static void main(String[] args) throws IOException {
+        String baseAddress = "https://ilp-rest.azurewebsites.net/";
+        LocalDate date = LocalDate.now();
+        Path file = null;
+        int port = -1;
+        Duration idleTimeout = null;
+        for (String arg : args) {
+            if (arg.startsWith("--file=")) {
+                file = Paths.get(arg.substring("--file=".length()));
+            } else if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (arg.startsWith("--base=")) {
+                baseAddress = arg.substring("--base=".length());
+            } else if (arg.startsWith("--date=")) {
+                date = LocalDate.parse(arg.substring("--date=".length()));
+            } else if (arg.startsWith("--idle=")) {
+                idleTimeout = Duration.ofMillis((long) (Double.parseDouble(arg.substring("--idle=".length())) * 1000));
+            } else {
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        if (file == null && port < 0) {
+            throw new IllegalArgumentException("An intake is required: --file=PATH or --port=N");
+        }
+
+        String[] day = date.toString().split("-");
+        ResultsWriter resultsWriter = new ResultsWriter(day[0], day[1], day[2]);
+        ResultsWriter.FlightpathStream flightpath = resultsWriter.openFlightpathStream();
+        LiveIntake intake = new LiveIntake(WorldSnapshot.of(baseAddress), flightpath);
+        intake.setIdleTimeout(idleTimeout);
+        if (file != null) {
+            intake.follow(file);
+            System.out.println("INTAKE: Following " + file);
+        }
+        if (port >= 0) {
+            System.out.println("INTAKE: Listening on port " + intake.listen(port));
+        }
+
+        // stopping the process finishes the day: the queued orders are delivered and the files are closed
+        Thread runner = Thread.currentThread();
+        Thread stop = new Thread(() -> {
+            intake.finish();
+            try {
+                runner.join();
+            } catch (InterruptedException ignored) {
+                // the files may be incomplete
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(stop);
+
+        List<Order> orders = intake.run();
+        flightpath.close();
+        System.out.println("flightpath-" + date + ".json created");
+        resultsWriter.writeDeliveriesJson(orders);
+        resultsWriter.writeMetrics(intake.getMetrics());
+
+        Metrics.Histogram latency = intake.routeLatency;
+        System.out.printf("Route latency over %d orders: p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                latency.getCount(), latency.getValueAtQuantile(0.5) / 1e6, latency.getValueAtQuantile(0.99) / 1e6,
+                latency.getMax() / 1e6);
+    }
+}
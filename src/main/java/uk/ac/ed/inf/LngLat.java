@@ -1,34 +1,18 @@
 package uk.ac.ed.inf;
 
-import java.util.HashMap;
-import java.util.List;
-import java.awt.geom.Line2D;
-import java.util.Objects;
-import com.mapbox.geojson.Polygon;
-import com.mapbox.geojson.Point;
-
 /**
- * Class to define the location for the objects (e.g., drone, restaurants) and fundamental methods
+ * Class to define the location for the objects (e.g., drone, restaurants) and fundamental methods.
+ * Locations are immutable values and can be shared between threads
  */
-public class LngLat {
+public final class LngLat {
 
     /* Constants */
     public final static double DISTANCE_TOLERANCE = 0.00015;
     public final static double LENGTH_OF_MOVE = 0.00015;
 
-    private final HashMap<Direction, Double> directionHashMap = initMap();
-    private HashMap<Direction, Double> initMap() {
-        HashMap<Direction, Double> hashmap = new HashMap<>();
-        for (Direction dir : Direction.values()){
-            hashmap.put(dir, dir.value);
-        }
-        return hashmap;
-    }
-
     /** coordinate of the drone */
-    private double lng;
-    private double lat;
-    private double angle;
+    private final double lng;
+    private final double lat;
 
     /**
      * Create a coordinate instance for the drone.
@@ -38,11 +22,9 @@ public class LngLat {
     public LngLat(double lng, double lat) {
         this.lng = lng;
         this.lat = lat;
-        // define initial angle to be zero
-        this.angle = 0.0;
     }
 
-    /* Getters and Setters */
+    /* Getters */
 
     /**@return the longitude of the current LngLat object*/
     public double getLng(){
@@ -54,14 +36,20 @@ public class LngLat {
         return this.lat;
     }
 
-    /**@return the anticlockwise angle between the current LngLat object and East direction */
-    public double getAngle(){
-        return this.angle;
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LngLat other)) {
+            return false;
+        }
+        return Double.compare(this.lng, other.lng) == 0 && Double.compare(this.lat, other.lat) == 0;
     }
 
-    public void setLngLat(LngLat newPos){
-        this.lng = newPos.getLng();
-        this.lat = newPos.getLat();
+    @Override
+    public int hashCode() {
+        return 31 * Double.hashCode(this.lng) + Double.hashCode(this.lat);
     }
 
 
@@ -71,53 +59,7 @@ public class LngLat {
      * @return true if the drone is inside the central area or on the boundary of central area, false if it is outside
      */
     public boolean inCentralArea(DataParser dataParser) {
-        List<LngLat> centralArea = dataParser.getCentralArea();
-
-        // Number of vertices n
-        int n = centralArea.size();
-
-        // Detect if it is on vertex or edge
-        if (isOnPolygonOutline(centralArea.get(0).lng, centralArea.get(0).lat,
-                centralArea.get(n - 1).lng, centralArea.get(n - 1).lat)){
-            return true;
-        }
-        for (int i = 0; i < n - 1; i++) {
-            if (isOnPolygonOutline(centralArea.get(i).lng, centralArea.get(i).lat,
-                    centralArea.get(i+1).lng, centralArea.get(i+1).lat)) {
-                return true;
-            }
-        }
-
-        // Detect if the drone still in polygon central area
-        int i, j;
-        boolean res = false;
-        for (i = 0, j = n - 1; i < n; j = i++) {
-            double lat_i =  centralArea.get(i).lat;
-            double lat_j =  centralArea.get(j).lat;
-            double lng_i =  centralArea.get(i).lng;
-            double lng_j =  centralArea.get(j).lng;
-
-            if (((lat_i > lat) != (lat_j > lat)) &&
-                    (lng < (lng_j - lng_i) * (lat - lat_i) / (lat_j - lat_i) + lng_i)){
-                res = !res;
-            }
-        }
-        return res;
-    }
-
-
-    /**
-     * A helper function for inCentralArea()
-     * To determine whether the drone locates at the boundary of the polygon area
-     *
-     * @param x1 the longitude of first location point
-     * @param y1 the latitude of first location point
-     * @param x2 the longitude of second location point
-     * @param y2 the latitude of second location point
-     * @return true if the drone is on the boundary of the polygon area, false if not
-     */
-    private boolean isOnPolygonOutline(double x1, double y1, double x2, double y2) {
-        return Math.hypot(x1-lng, y1-lat) + Math.hypot(lng-x2, lat-y2) == Math.hypot(x1-x2, y1-y2);
+        return dataParser.getCentralAreaPolygon().contains(this.lng, this.lat);
     }
 
 
@@ -177,16 +119,56 @@ public class LngLat {
         East_South_East (337.5),
         Null (-999);
 
+        private static final Direction[] COMPASS = values();
+        private static final int COMPASS_DIRECTIONS = 16;
+        /** the bits of the ordinals of the compass directions */
+        private static final int ALL_COMPASS_DIRECTIONS = (1 << COMPASS_DIRECTIONS) - 1;
+
         private final double value;
+        /** the change of longitude and latitude of one move in this direction */
+        private final double lngStep;
+        private final double latStep;
 
         Direction(double value) {
             this.value = value;
+            if (value == -999) {
+                this.lngStep = 0;
+                this.latStep = 0;
+            } else {
+                double angle = Math.toRadians(value);
+                this.lngStep = Math.cos(angle) * LENGTH_OF_MOVE;
+                this.latStep = Math.sin(angle) * LENGTH_OF_MOVE;
+            }
         }
 
         public double getValue() {
             return this.value;
         }
 
+        /**
+         * Convert a valid angle into its direction
+         * @param angle angle that link to a direction
+         * @return if angle is valid (should be the multiple of 22.5 in range [0,360)),
+         * a direction from enum class would be return, otherwise return null
+         */
+        public static Direction fromAngle(double angle) {
+            if (angle == Null.value) {
+                return Null;
+            }
+            if (!(angle >= 0 && angle < 360)) {
+                return null;
+            }
+            Direction direction = COMPASS[(int) (angle / 22.5)];
+            return direction.value == angle ? direction : null;
+        }
+
+        /**@return the direction flying back the way this direction came, Null for Null */
+        public Direction opposite() {
+            if (this == Null) {
+                return Null;
+            }
+            return COMPASS[(ordinal() + COMPASS_DIRECTIONS / 2) % COMPASS_DIRECTIONS];
+        }
     }
 
     /**
@@ -197,14 +179,10 @@ public class LngLat {
      */
     public LngLat nextPosition (Direction direction){
         // when drone is hovering
-        if (direction.value == -999){
+        if (direction == Direction.Null){
             return this;
         } else {
-            double angle = Math.toRadians(direction.value);
-            double newLong = this.lng + Math.cos(angle) * LENGTH_OF_MOVE;
-            double newLat = this.lat + Math.sin(angle) * LENGTH_OF_MOVE;
-
-            return new LngLat (newLong, newLat);
+            return new LngLat (this.lng + direction.lngStep, this.lat + direction.latStep);
         }
     }
 
@@ -247,86 +225,118 @@ public class LngLat {
 
 
     /**
-     * A helper function to convert the given valid angle into direction
-     * @param angle angle that link to a direction
-     * @return if angle is valid (should be the multiple of 22.5 in range [0,360)),
-     * a direction from enum class would be return, otherwise return null
+     * Test if going to the next position from current position is outside No-Fly-Zone
+     *
+     * @param dataParser the map of the drone navigating
+     * @param nextPos the position to be tested
+     * @return the result of NoFlyZoneIndex.testMove, see NoFlyZoneIndex.isIntersection
      */
-    private Direction getDirectionByAngle(double angle){
-        for (Direction direction: directionHashMap.keySet()) {
-            if (Objects.equals(angle, direction.value)){
-                return direction;
-            }
-        }
-        return null;
+    int testNoFlyZones(DataParser dataParser, LngLat nextPos){
+        // only the no-fly-zone edges near the current move are tested
+        return dataParser.getNoFlyZoneIndex().testMove(this.lng, this.lat, nextPos.getLng(), nextPos.getLat());
     }
 
 
     /**
-     * Test if going to the next position from current position is outside No-Fly-Zone
+     * Test if the moves from this position must keep to the side of the central area boundary the goal is on.
+     * A drone on the side of its goal never crosses the boundary again: on its way to a goal outside the
+     * central area it never re-enters the area after leaving it, so the return leg, which flies the outbound
+     * moves backwards, never leaves the area after entering it; on its way to a goal inside the central area
+     * it never leaves the area after entering it
      *
      * @param dataParser the map of the drone navigating
-     * @param nextPos the position to be tested
-     * @return outside No-Fly-Zone or not
+     * @param goalInCentralArea whether the goal of the leg is in the central area
+     * @return true if moves to the other side of the boundary must be rejected from this position
      */
-    private boolean isOutsideNoFlyZone(DataParser dataParser, LngLat nextPos){
-        Line2D path = new Line2D.Double(this.lat, this.lng,
-                nextPos.getLat(), nextPos.getLng());
-        List<Polygon> noFlyZones = dataParser.getNoFlyZones();
-
-        // for every line segment of every zone,
-        // test if it intersects with the line segment of the current move
-        for (Polygon zone: noFlyZones) {
-            List<Point> points = zone.coordinates().get(0);
-            for (int i = 0; i < points.size() - 1; i++) {
-                int j = (i + 1) % points.size();
-                Point p1 = points.get(i);
-                Point p2 = points.get(j);
-                Line2D noFlySegment = new Line2D.Double(p1.latitude(), p1.longitude(),
-                        p2.latitude(), p2.longitude());
-                if (path.intersectsLine(noFlySegment)) {
-                    return false;
-                }
-            }
-        }
-        return true;
+    boolean mustKeepToSideOfGoal(DataParser dataParser, boolean goalInCentralArea){
+        return dataParser.getCentralAreaPolygon().contains(this.lng, this.lat) == goalInCentralArea;
     }
 
 
     /**
-     * Calculate the next valid move to given position,
-     * outside no-fly-zone
-     * if next move not valid, modify angle in +10,-10, +20,-20
+     * Calculate the direction of the next valid move to given position, see
+     * nextDirection(DataParser, LngLat, Direction, boolean). The goal is tested against the central area
+     * on every call, a navigator calling this at every step should test it once per leg instead
      *
      * @param dataParser the map to traverse
      * @param destPos desired position of the drone
-     * @return the next valid move
+     * @param heading the direction of the previous move of the drone, East before its first move
+     * @return the direction of the next valid move, or null if every direction is invalid
      */
-    public LngLat move(DataParser dataParser, LngLat destPos){
-        double preAngle = this.angle;
-        this.angle = calculateAngle(destPos);
-        LngLat nextPos = nextPosition(getDirectionByAngle(this.angle));
+    public Direction nextDirection(DataParser dataParser, LngLat destPos, Direction heading){
+        return nextDirection(dataParser, destPos, heading,
+                dataParser.getCentralAreaPolygon().contains(destPos.lng, destPos.lat));
+    }
+
+
+    /**
+     * Calculate the direction of the next valid move to given position,
+     * outside no-fly-zone and, once the drone is on the side of the central area boundary its goal is on,
+     * on that side, see mustKeepToSideOfGoal
+     * if next move not valid, modify angle in +22.5,-45, +67.5,-90
+     * going back the way the drone came is never valid. If no direction is valid, the drone is walled in
+     * between the no-fly zones and the boundary, null is returned instead of breaking the central-area rule
+     * and the caller gives the leg up
+     *
+     * @param dataParser the map to traverse
+     * @param destPos desired position of the drone
+     * @param heading the direction of the previous move of the drone, East before its first move
+     * @param goalInCentralArea whether destPos is in the central area, tested once per leg by the caller
+     * @return the direction of the next valid move, which becomes the heading of the drone,
+     * or null if every direction is invalid
+     */
+    Direction nextDirection(DataParser dataParser, LngLat destPos, Direction heading, boolean goalInCentralArea){
+        Metrics metrics = dataParser.getMetrics();
+        long start = metrics != null ? System.nanoTime() : 0;
+        CentralArea centralArea = dataParser.getCentralAreaPolygon();
+        double preAngle = heading.value;
+        double angle = calculateAngle(destPos);
+        LngLat nextPos = nextPosition(Direction.fromAngle(angle));
         double adjustment = 22.5;
+        // one containment test of the position per step, candidates are only tested once clear of the zones
+        boolean keepSide = mustKeepToSideOfGoal(dataParser, goalInCentralArea);
+        // the directions tried so far and the one going back, as bits of their ordinals
+        int tried = 1 << heading.opposite().ordinal();
+        int rejected = 0;
+        boolean walledIn = false;
+        int test = testNoFlyZones(dataParser, nextPos);
+        int edgesTested = NoFlyZoneIndex.edgesTested(test);
 
         // if the move is not valid, increase the angle until it is valid
-        while ( !(isOutsideNoFlyZone(dataParser, nextPos))){
-            this.angle += adjustment;
+        while ( NoFlyZoneIndex.isIntersection(test) ||
+                (keepSide && centralArea.contains(nextPos.lng, nextPos.lat) != goalInCentralArea)){
+            rejected++;
+            tried |= 1 << Direction.fromAngle(angle).ordinal();
+            if ((tried & Direction.ALL_COMPASS_DIRECTIONS) == Direction.ALL_COMPASS_DIRECTIONS) {
+                // the sweep reaches every direction within COMPASS_DIRECTIONS - 1 adjustments
+                walledIn = true;
+                break;
+            }
+            angle += adjustment;
             // go back to previous location is forbidden, since it might cause the drone trap in a point
-            if (Math.abs(preAngle - this.angle) == 180){
-                this.angle += 22.5*(adjustment/Math.abs(adjustment));
+            if (Math.abs(preAngle - angle) == 180){
+                angle += 22.5*(adjustment/Math.abs(adjustment));
             }
-            if (this.angle >= 360){
-                this.angle -= 360;
+            if (angle >= 360){
+                angle -= 360;
             }
-            if (this.angle < 0){
-                this.angle += 360;
+            if (angle < 0){
+                angle += 360;
             }
 
-            nextPos = nextPosition(getDirectionByAngle(this.angle));
+            nextPos = nextPosition(Direction.fromAngle(angle));
             adjustment = - (adjustment + 22.5*(adjustment/Math.abs(adjustment)));
+            test = testNoFlyZones(dataParser, nextPos);
+            edgesTested += NoFlyZoneIndex.edgesTested(test);
+
+        }
 
+        if (metrics != null) {
+            metrics.movePlanning.record(System.nanoTime() - start);
+            metrics.angleAdjustments.record(rejected);
+            metrics.edgesTested.record(edgesTested);
         }
-        return nextPos;
+        return walledIn ? null : Direction.fromAngle(angle);
     }
 }
 
@@ -0,0 +1,108 @@
+package uk.ac.ed.inf;
+
+import java.util.Arrays;
+
+/**
+ * A compact open-addressing hash set of primitive long keys, used for quantized positions.
+ * Not thread-safe, every search keeps its own instance.
+ */
+class LongHashSet {
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int size;
+    private boolean hasEmptyKey;
+
+    /**
+     * Create the set
+     * @param expectedSize number of keys the set should hold without resizing
+     */
+    LongHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        this.keys = new long[capacity];
+        Arrays.fill(this.keys, EMPTY);
+    }
+
+    /**@return the number of keys in the set */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * @param key a key
+     * @return the spread hash of the key, its first slot is this masked by the capacity
+     */
+    static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * @param key the key to look up
+     * @return true if the key is in the set
+     */
+    boolean contains(long key) {
+        if (key == EMPTY) {
+            return this.hasEmptyKey;
+        }
+        int mask = this.keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            if (this.keys[i] == EMPTY) {
+                return false;
+            }
+            if (this.keys[i] == key) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param key the key to add
+     * @return true if the key was not in the set before
+     */
+    boolean add(long key) {
+        if (key == EMPTY) {
+            boolean added = !this.hasEmptyKey;
+            this.hasEmptyKey = true;
+            this.size += added ? 1 : 0;
+            return added;
+        }
+        if ((this.size + 1) * 2 > this.keys.length) {
+            grow();
+        }
+        int mask = this.keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            if (this.keys[i] == EMPTY) {
+                this.keys[i] = key;
+                this.size++;
+                return true;
+            }
+            if (this.keys[i] == key) {
+                return false;
+            }
+        }
+    }
+
+    /** Remove every key from the set, keeping its capacity */
+    void clear() {
+        Arrays.fill(this.keys, EMPTY);
+        this.size = 0;
+        this.hasEmptyKey = false;
+    }
+
+    private void grow() {
+        long[] old = this.keys;
+        this.keys = new long[old.length * 2];
+        Arrays.fill(this.keys, EMPTY);
+        int mask = this.keys.length - 1;
+        for (long key : old) {
+            if (key != EMPTY) {
+                int i = mix(key) & mask;
+                while (this.keys[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                this.keys[i] = key;
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package uk.ac.ed.inf;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index of every pizza on the menus of the participating restaurants, built once per set of restaurants.
+ * It maps a pizza name to its restaurant and price, so looking up an order item is a single hash lookup.
+ * The catalog is immutable and can be shared between threads.
+ */
+public class MenuCatalog {
+    private final Restaurant[] restaurants;
+    private final LngLat[] restaurantLocs;
+    private final Map<String, Item> items = new HashMap<>();
+
+    /**
+     * A pizza on a menu
+     * @param restaurantIndex the index of the first restaurant selling the pizza
+     * @param priceInPence the price of the pizza at that restaurant
+     * @param ambiguous true if more than one restaurant sells a pizza of this name
+     */
+    record Item(int restaurantIndex, int priceInPence, boolean ambiguous) {}
+
+    /**
+     * Build the catalog
+     * @param restaurants the participating restaurants
+     */
+    public MenuCatalog(Restaurant[] restaurants) {
+        this.restaurants = restaurants.clone();
+        this.restaurantLocs = new LngLat[restaurants.length];
+
+        for (int r = 0; r < restaurants.length; r++) {
+            this.restaurantLocs[r] = new LngLat(restaurants[r].getLongitude(), restaurants[r].getLatitude());
+
+            for (Menu menu : restaurants[r].getMenu()) {
+                Item known = this.items.get(menu.getName());
+                if (known == null || known.restaurantIndex() == r) {
+                    // a later entry on the same menu overrides the price, as it did in the old menu map
+                    this.items.put(menu.getName(), new Item(r, menu.getPriceInPence(), false));
+                } else {
+                    this.items.put(menu.getName(), new Item(known.restaurantIndex(), known.priceInPence(), true));
+                }
+            }
+        }
+    }
+
+    /**@return a copy of the restaurants of this catalog */
+    public Restaurant[] getRestaurants() {
+        return this.restaurants.clone();
+    }
+
+    /**
+     * @param pizza the name of a pizza
+     * @return the catalog entry of the pizza, or null if no restaurant sells it
+     */
+    Item getItem(String pizza) {
+        return this.items.get(pizza);
+    }
+
+    /**
+     * Find the restaurant selling a pizza, as Restaurant.getRestaurantByItem does
+     * @param pizza the name of a pizza
+     * @return the first restaurant selling the pizza, or null if none does
+     */
+    public Restaurant getRestaurantByItem(String pizza) {
+        Item item = this.items.get(pizza);
+        return item == null ? null : this.restaurants[item.restaurantIndex()];
+    }
+
+    /**
+     * Find the location of the restaurant selling a pizza
+     * @param pizza the name of a pizza
+     * @return the location of the first restaurant selling the pizza, or null if none does
+     */
+    public LngLat getRestaurantLoc(String pizza) {
+        Item item = this.items.get(pizza);
+        return item == null ? null : this.restaurantLocs[item.restaurantIndex()];
+    }
+}
@@ -0,0 +1,261 @@
+package uk.ac.ed.inf;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registry of the counters and histograms of one day, dumped as JSON and as Prometheus text.
+ * Recording is lock-free: counters are LongAdders and histograms are arrays of atomic bucket counts,
+ * so the drones of a fleet record into the same registry without contention.
+ * Latencies are recorded in nanoseconds from System.nanoTime and exported in seconds
+ */
+public final class Metrics {
+    /** prefix of every exported name */
+    public static final String PREFIX = "pizzadronz_";
+    /** the quantiles exported for every histogram */
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final String[] QUANTILE_NAMES = {"p50", "p90", "p99", "p999"};
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    /* the instruments of the delivery, registered by every registry */
+
+    final Histogram movePlanning = histogram("move_planning_seconds",
+            "Time to choose one greedy move", NANOS_PER_SECOND);
+    final Histogram angleAdjustments = histogram("move_angle_adjustments",
+            "Angle adjustments made to choose one greedy move", 1);
+    final Histogram edgesTested = histogram("move_edges_tested",
+            "No-fly-zone edges tested to choose one greedy move", 1);
+    final Histogram routePlanning = histogram("route_planning_seconds",
+            "Time to plan the route to one restaurant", NANOS_PER_SECOND);
+    final Histogram orderMoves = histogram("order_moves",
+            "Battery spent on one delivered order, in moves", 1);
+    final Histogram batteryRemaining = histogram("drone_battery_remaining",
+            "Battery left in a drone at the end of the day, in moves", 1);
+    final Counter ordersDelivered = counter("orders_delivered_total",
+            "Orders delivered");
+    final Counter greedyLegsAbandoned = counter("greedy_legs_abandoned_total",
+            "Greedy legs given up in a cycle or without progress");
+    final Histogram orderValidation = histogram("order_validation_seconds",
+            "Time to validate one order", NANOS_PER_SECOND);
+    final Histogram fetchLatency = histogram("http_fetch_seconds",
+            "Time from the request to the end of the body of one fetch", NANOS_PER_SECOND);
+    final Counter fetchBytes = counter("http_fetch_bytes_total",
+            "Bytes of the fetched bodies");
+    final Histogram writeLatency = histogram("result_write_seconds",
+            "Time to write one result file", NANOS_PER_SECOND);
+    final Counter writeBytes = counter("result_write_bytes_total",
+            "Bytes of the written result files");
+
+    /**
+     * A monotonic count
+     */
+    public static class Counter {
+        private final String help;
+        private final LongAdder value = new LongAdder();
+
+        private Counter(String help) {
+            this.help = help;
+        }
+
+        public void increment() {
+            this.value.increment();
+        }
+
+        public void add(long amount) {
+            this.value.add(amount);
+        }
+
+        /**@return the current count */
+        public long get() {
+            return this.value.sum();
+        }
+    }
+
+    /**
+     * Distribution of non-negative long values in log-linear buckets, as an HDR histogram:
+     * values below 32 are counted exactly, larger values in 32 buckets per power of two,
+     * so any quantile is within about 3% of the recorded value
+     */
+    public static class Histogram {
+        private static final int SUB_BUCKET_BITS = 5;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+        private final String help;
+        private final double scale;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        private Histogram(String help, double scale) {
+            this.help = help;
+            this.scale = scale;
+        }
+
+        static int bucketOf(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) Math.max(value, 0);
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+        }
+
+        static long highestValueOf(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int shift = bucket / SUB_BUCKETS - 1;
+            long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+            return lowest + (1L << shift) - 1;
+        }
+
+        /**
+         * Record one value, negative values are counted as 0
+         * @param value the value, in nanoseconds for latencies
+         */
+        public void record(long value) {
+            this.buckets.incrementAndGet(bucketOf(value));
+            this.sum.add(Math.max(value, 0));
+            this.max.accumulate(value);
+        }
+
+        /**@return the number of recorded values */
+        public long getCount() {
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += this.buckets.get(i);
+            }
+            return count;
+        }
+
+        /**@return the sum of the recorded values */
+        public long getSum() {
+            return this.sum.sum();
+        }
+
+        /**@return the largest recorded value, 0 if nothing was recorded */
+        public long getMax() {
+            return this.max.get();
+        }
+
+        /**
+         * @param quantile the quantile between 0 and 1
+         * @return the highest value of the bucket holding the quantile, at most the largest recorded value,
+         * 0 if nothing was recorded
+         */
+        public long getValueAtQuantile(double quantile) {
+            long[] counts = new long[BUCKETS];
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = this.buckets.get(i);
+                count += counts[i];
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueOf(i), getMax());
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Get or register a counter
+     * @param name the name without prefix, ending with _total
+     * @param help the description of the counter
+     * @return the counter of the name
+     */
+    public Counter counter(String name, String help) {
+        return this.counters.computeIfAbsent(name, n -> new Counter(help));
+    }
+
+    /**
+     * Get or register a histogram
+     * @param name the name without prefix, ending with the exported unit such as _seconds
+     * @param help the description of the histogram
+     * @param scale the recorded values per exported unit, 1e9 for nanoseconds exported as seconds
+     * @return the histogram of the name
+     */
+    public Histogram histogram(String name, String help, double scale) {
+        return this.histograms.computeIfAbsent(name, n -> new Histogram(help, scale));
+    }
+
+    /**
+     * Write every counter and histogram as a JSON object, in the order of their names
+     * @param out the writer, it is not closed
+     * @throws IOException if the writer fails
+     */
+    public void writeJson(Writer out) throws IOException {
+        JsonWriter jsonWriter = new JsonWriter(out);
+        jsonWriter.setIndent("  ");
+        jsonWriter.beginObject();
+
+        jsonWriter.name("counters").beginObject();
+        for (Map.Entry<String, Counter> counter : new TreeMap<>(this.counters).entrySet()) {
+            jsonWriter.name(counter.getKey()).value(counter.getValue().get());
+        }
+        jsonWriter.endObject();
+
+        jsonWriter.name("histograms").beginObject();
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(this.histograms).entrySet()) {
+            Histogram histogram = entry.getValue();
+            jsonWriter.name(entry.getKey()).beginObject();
+            jsonWriter.name("count").value(histogram.getCount());
+            jsonWriter.name("sum").value(histogram.getSum() / histogram.scale);
+            for (int q = 0; q < QUANTILES.length; q++) {
+                jsonWriter.name(QUANTILE_NAMES[q]).value(histogram.getValueAtQuantile(QUANTILES[q]) / histogram.scale);
+            }
+            jsonWriter.name("max").value(histogram.getMax() / histogram.scale);
+            jsonWriter.endObject();
+        }
+        jsonWriter.endObject();
+
+        jsonWriter.endObject();
+        jsonWriter.flush();
+    }
+
+    /**
+     * Write every counter and histogram in the Prometheus text exposition format,
+     * histograms as summaries with their quantiles
+     * @param out the writer, it is not closed
+     * @throws IOException if the writer fails
+     */
+    public void writePrometheus(Writer out) throws IOException {
+        for (Map.Entry<String, Counter> entry : new TreeMap<>(this.counters).entrySet()) {
+            String name = PREFIX + entry.getKey();
+            out.write("# HELP " + name + " " + entry.getValue().help + "\n");
+            out.write("# TYPE " + name + " counter\n");
+            out.write(name + " " + entry.getValue().get() + "\n");
+        }
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(this.histograms).entrySet()) {
+            String name = PREFIX + entry.getKey();
+            Histogram histogram = entry.getValue();
+            out.write("# HELP " + name + " " + histogram.help + "\n");
+            out.write("# TYPE " + name + " summary\n");
+            for (double quantile : QUANTILES) {
+                out.write(name + "{quantile=\"" + quantile + "\"} " +
+                        histogram.getValueAtQuantile(quantile) / histogram.scale + "\n");
+            }
+            out.write(name + "{quantile=\"1\"} " + histogram.getMax() / histogram.scale + "\n");
+            out.write(name + "_sum " + histogram.getSum() / histogram.scale + "\n");
+            out.write(name + "_count " + histogram.getCount() + "\n");
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,239 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Columnar store of the moves of a drone, kept in growable primitive arrays instead of Flightpath objects.
+ * <p>
+ * Every recorded move takes four coordinates, a direction index, its ticks and the id of its order number.
+ * The return leg of a delivery is not copied: it is stored as a reversed view over the range of moves
+ * of the outbound leg, with consecutive ticks starting from a given tick. Moves are read back in flying
+ * order through forEachMove. Every buffer holds the moves of one drone.
+ */
+public class MoveBuffer {
+    private static final LngLat.Direction[] DIRECTIONS = LngLat.Direction.values();
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * Receives the moves of a buffer one by one, with the same fields as a Flightpath
+     */
+    public interface MoveVisitor {
+        void visit(String orderNo, double fromLongitude, double fromLatitude, double angle,
+                   double toLongitude, double toLatitude, int ticksSinceStartOfCalculation);
+    }
+
+    /* recorded moves: fromLng, fromLat, toLng, toLat for every move */
+    private double[] coordinates = new double[INITIAL_CAPACITY * 4];
+    private byte[] directions = new byte[INITIAL_CAPACITY];
+    private int[] ticks = new int[INITIAL_CAPACITY];
+    private int[] orderIds = new int[INITIAL_CAPACITY];
+    private int moveCount;
+
+    /* reversed views: the number of recorded moves before the view, its range and its first tick */
+    private int[] views = new int[16 * 4];
+    private int viewCount;
+    private int size;
+
+    private final List<String> orderNos = new ArrayList<>();
+    private final Map<String, Integer> orderIndex = new HashMap<>();
+    private final int droneId;
+
+    /** Create the buffer of a single drone, with id 0 */
+    public MoveBuffer() {
+        this(0);
+    }
+
+    /**
+     * Create the buffer of one drone of a fleet
+     * @param droneId the id of the drone
+     */
+    public MoveBuffer(int droneId) {
+        this.droneId = droneId;
+    }
+
+    /**@return the id of the drone making the moves */
+    public int getDroneId() {
+        return this.droneId;
+    }
+
+    /**@return the number of moves, including the moves of the return legs */
+    public int size() {
+        return this.size;
+    }
+
+    /**@return the number of recorded moves, the index the next recorded move gets */
+    public int getRecordedCount() {
+        return this.moveCount;
+    }
+
+    /**@return the distinct order numbers of the moves, in order of first appearance */
+    public List<String> getOrderNos() {
+        return Collections.unmodifiableList(this.orderNos);
+    }
+
+    /**
+     * Record a move
+     * @param orderNo the order number of the move
+     * @param fromLongitude previous longitude coordinate of the drone
+     * @param fromLatitude previous latitude coordinate of the drone
+     * @param direction the direction of the move, Null if hovering
+     * @param toLongitude next longitude coordinate of the drone
+     * @param toLatitude next latitude coordinate of the drone
+     * @param ticksSinceStartOfCalculation the elapsed ticks since the computation started for the day
+     */
+    public void add(String orderNo, double fromLongitude, double fromLatitude, LngLat.Direction direction,
+                    double toLongitude, double toLatitude, int ticksSinceStartOfCalculation) {
+        if (this.moveCount == this.ticks.length) {
+            int capacity = this.ticks.length * 2;
+            this.coordinates = Arrays.copyOf(this.coordinates, capacity * 4);
+            this.directions = Arrays.copyOf(this.directions, capacity);
+            this.ticks = Arrays.copyOf(this.ticks, capacity);
+            this.orderIds = Arrays.copyOf(this.orderIds, capacity);
+        }
+
+        Integer orderId = this.orderIndex.get(orderNo);
+        if (orderId == null) {
+            orderId = this.orderNos.size();
+            this.orderIndex.put(orderNo, orderId);
+            this.orderNos.add(orderNo);
+        }
+
+        int i = this.moveCount;
+        this.coordinates[i * 4] = fromLongitude;
+        this.coordinates[i * 4 + 1] = fromLatitude;
+        this.coordinates[i * 4 + 2] = toLongitude;
+        this.coordinates[i * 4 + 3] = toLatitude;
+        this.directions[i] = (byte) direction.ordinal();
+        this.ticks[i] = ticksSinceStartOfCalculation;
+        this.orderIds[i] = orderId;
+        this.moveCount++;
+        this.size++;
+    }
+
+    /**
+     * Add the return leg of a range of recorded moves: the moves are flown backwards in reverse order,
+     * each with the opposite direction, starting with the last move of the range
+     * @param start the index of the first recorded move of the range
+     * @param end the index after the last recorded move of the range
+     * @param firstTick the ticks of the first move of the return leg, each later move takes one more tick
+     */
+    public void addReversed(int start, int end, int firstTick) {
+        if (start < 0 || end > this.moveCount || start > end) {
+            throw new IndexOutOfBoundsException("Invalid range [" + start + ", " + end + ")");
+        }
+        if (this.viewCount * 4 == this.views.length) {
+            this.views = Arrays.copyOf(this.views, this.views.length * 2);
+        }
+
+        int v = this.viewCount * 4;
+        this.views[v] = this.moveCount;
+        this.views[v + 1] = start;
+        this.views[v + 2] = end;
+        this.views[v + 3] = firstTick;
+        this.viewCount++;
+        this.size += end - start;
+    }
+
+    /**
+     * Visit every move in flying order
+     * @param visitor the visitor of the moves
+     */
+    public void forEachMove(MoveVisitor visitor) {
+        int view = 0;
+        for (int i = 0; i <= this.moveCount; i++) {
+            while (view < this.viewCount && this.views[view * 4] == i) {
+                visitReversed(view, visitor);
+                view++;
+            }
+            if (i < this.moveCount) {
+                visitRecorded(i, visitor);
+            }
+        }
+    }
+
+    /**
+     * Visit the moves of the last return leg, e.g. to stream them while the drone flies
+     * @param visitor the visitor of the moves
+     */
+    public void forEachMoveOfLastReturn(MoveVisitor visitor) {
+        if (this.viewCount > 0) {
+            visitReversed(this.viewCount - 1, visitor);
+        }
+    }
+
+    /**
+     * Visit one recorded move
+     * @param i the index of the recorded move
+     * @param visitor the visitor of the move
+     */
+    public void visitRecorded(int i, MoveVisitor visitor) {
+        visitor.visit(this.orderNos.get(this.orderIds[i]), this.coordinates[i * 4], this.coordinates[i * 4 + 1],
+                DIRECTIONS[this.directions[i]].getValue(), this.coordinates[i * 4 + 2], this.coordinates[i * 4 + 3],
+                this.ticks[i]);
+    }
+
+    private void visitReversed(int view, MoveVisitor visitor) {
+        int start = this.views[view * 4 + 1];
+        int end = this.views[view * 4 + 2];
+        int tick = this.views[view * 4 + 3];
+
+        for (int i = end - 1; i >= start; i--) {
+            LngLat.Direction direction = DIRECTIONS[this.directions[i]].opposite();
+            visitor.visit(this.orderNos.get(this.orderIds[i]), this.coordinates[i * 4 + 2],
+                    this.coordinates[i * 4 + 3], direction.getValue(), this.coordinates[i * 4],
+                    this.coordinates[i * 4 + 1], tick++);
+        }
+    }
+
+    /**
+     * Copy every move into Flightpath objects
+     * @return the moves in flying order
+     */
+    public List<Flightpath> toFlightpaths() {
+        List<Flightpath> flightpaths = new ArrayList<>(this.size);
+        forEachMove((orderNo, fromLng, fromLat, angle, toLng, toLat, moveTicks) ->
+                flightpaths.add(new Flightpath(this.droneId, orderNo, fromLng, fromLat, angle, toLng, toLat,
+                        moveTicks)));
+        return flightpaths;
+    }
+
+    /**
+     * Remove the last recorded moves, e.g. the moves of a leg that was given up
+     * @param recordedCount the number of recorded moves to keep
+     * @throws IndexOutOfBoundsException if more moves are kept than recorded, or a return leg uses the removed moves
+     */
+    public void truncate(int recordedCount) {
+        if (recordedCount < 0 || recordedCount > this.moveCount) {
+            throw new IndexOutOfBoundsException("Invalid recorded count " + recordedCount);
+        }
+        if (this.viewCount > 0 && (this.views[(this.viewCount - 1) * 4] > recordedCount ||
+                this.views[(this.viewCount - 1) * 4 + 2] > recordedCount)) {
+            throw new IndexOutOfBoundsException("A return leg uses moves after " + recordedCount);
+        }
+        this.size -= this.moveCount - recordedCount;
+        this.moveCount = recordedCount;
+
+        // forget the order numbers only the removed moves had, they were the last to appear
+        int orderCount = 0;
+        for (int i = 0; i < this.moveCount; i++) {
+            orderCount = Math.max(orderCount, this.orderIds[i] + 1);
+        }
+        while (this.orderNos.size() > orderCount) {
+            this.orderIndex.remove(this.orderNos.remove(this.orderNos.size() - 1));
+        }
+    }
+
+    /** Remove every move */
+    public void clear() {
+        this.moveCount = 0;
+        this.viewCount = 0;
+        this.size = 0;
+        this.orderNos.clear();
+        this.orderIndex.clear();
+    }
+}
@@ -0,0 +1,350 @@
+package uk.ac.ed.inf;
+
+import java.awt.geom.Line2D;
+import java.util.Arrays;
+import java.util.List;
+
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+
+/**
+ * Prepared spatial index over the edges of all no-fly zones of a day.
+ * The zones are compiled once into primitive edge arrays, a bounding box per zone
+ * and a uniform grid over the edges, so a move test only touches the edges near the move
+ * and allocates nothing. The index is immutable and can be shared between threads.
+ */
+public class NoFlyZoneIndex {
+    /** target number of edges per grid cell on average */
+    private static final double EDGES_PER_CELL = 2.0;
+    /** upper bound of cells on one axis, keeps the grid small for huge maps */
+    private static final int MAX_CELLS_PER_AXIS = 512;
+
+    /* edge arrays, the x axis is latitude and the y axis is longitude as in the original Line2D test */
+    private final double[] x1;
+    private final double[] y1;
+    private final double[] x2;
+    private final double[] y2;
+    private final int[] edgeZone;
+    /* the same edges in FixedPoint units, for the exact test */
+    private final long[] fx1;
+    private final long[] fy1;
+    private final long[] fx2;
+    private final long[] fy2;
+
+    /* bounding box of every zone: minX, minY, maxX, maxY */
+    private final double[] zoneBounds;
+
+    /* uniform grid: cellStart[c] .. cellStart[c + 1] indexes cellEdges */
+    private final double minX;
+    private final double minY;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final int columns;
+    private final int rows;
+    private final int[] cellStart;
+    private final int[] cellEdges;
+    /* the first column and row of the cells of every edge */
+    private final int[] edgeColumn;
+    private final int[] edgeRow;
+
+    /**
+     * Compile the given no-fly zones into an index
+     * @param noFlyZones the no-fly zones retrieved from the server
+     */
+    public NoFlyZoneIndex(List<Polygon> noFlyZones) {
+        int edgeCount = 0;
+        for (Polygon zone : noFlyZones) {
+            edgeCount += Math.max(zone.coordinates().get(0).size() - 1, 0);
+        }
+
+        this.x1 = new double[edgeCount];
+        this.y1 = new double[edgeCount];
+        this.x2 = new double[edgeCount];
+        this.y2 = new double[edgeCount];
+        this.edgeZone = new int[edgeCount];
+        this.fx1 = new long[edgeCount];
+        this.fy1 = new long[edgeCount];
+        this.fx2 = new long[edgeCount];
+        this.fy2 = new long[edgeCount];
+        this.zoneBounds = new double[noFlyZones.size() * 4];
+
+        double gMinX = Double.POSITIVE_INFINITY;
+        double gMinY = Double.POSITIVE_INFINITY;
+        double gMaxX = Double.NEGATIVE_INFINITY;
+        double gMaxY = Double.NEGATIVE_INFINITY;
+
+        int e = 0;
+        for (int z = 0; z < noFlyZones.size(); z++) {
+            List<Point> points = noFlyZones.get(z).coordinates().get(0);
+            double zMinX = Double.POSITIVE_INFINITY;
+            double zMinY = Double.POSITIVE_INFINITY;
+            double zMaxX = Double.NEGATIVE_INFINITY;
+            double zMaxY = Double.NEGATIVE_INFINITY;
+
+            for (int i = 0; i < points.size() - 1; i++) {
+                Point p1 = points.get(i);
+                Point p2 = points.get(i + 1);
+                this.x1[e] = p1.latitude();
+                this.y1[e] = p1.longitude();
+                this.x2[e] = p2.latitude();
+                this.y2[e] = p2.longitude();
+                this.edgeZone[e] = z;
+                this.fx1[e] = FixedPoint.toFixed(this.x1[e]);
+                this.fy1[e] = FixedPoint.toFixed(this.y1[e]);
+                this.fx2[e] = FixedPoint.toFixed(this.x2[e]);
+                this.fy2[e] = FixedPoint.toFixed(this.y2[e]);
+
+                zMinX = Math.min(zMinX, Math.min(this.x1[e], this.x2[e]));
+                zMinY = Math.min(zMinY, Math.min(this.y1[e], this.y2[e]));
+                zMaxX = Math.max(zMaxX, Math.max(this.x1[e], this.x2[e]));
+                zMaxY = Math.max(zMaxY, Math.max(this.y1[e], this.y2[e]));
+                e++;
+            }
+
+            this.zoneBounds[z * 4] = zMinX;
+            this.zoneBounds[z * 4 + 1] = zMinY;
+            this.zoneBounds[z * 4 + 2] = zMaxX;
+            this.zoneBounds[z * 4 + 3] = zMaxY;
+
+            gMinX = Math.min(gMinX, zMinX);
+            gMinY = Math.min(gMinY, zMinY);
+            gMaxX = Math.max(gMaxX, zMaxX);
+            gMaxY = Math.max(gMaxY, zMaxY);
+        }
+
+        if (edgeCount == 0) {
+            this.minX = 0;
+            this.minY = 0;
+            this.cellWidth = 1;
+            this.cellHeight = 1;
+            this.columns = 0;
+            this.rows = 0;
+            this.cellStart = new int[1];
+            this.cellEdges = new int[0];
+            this.edgeColumn = new int[0];
+            this.edgeRow = new int[0];
+            return;
+        }
+
+        // choose a square-ish grid with a few edges per cell
+        double width = Math.max(gMaxX - gMinX, Double.MIN_NORMAL);
+        double height = Math.max(gMaxY - gMinY, Double.MIN_NORMAL);
+        double cellSize = Math.sqrt(width * height * EDGES_PER_CELL / edgeCount);
+        this.columns = (int) Math.min(MAX_CELLS_PER_AXIS, Math.max(1, Math.ceil(width / cellSize)));
+        this.rows = (int) Math.min(MAX_CELLS_PER_AXIS, Math.max(1, Math.ceil(height / cellSize)));
+        this.minX = gMinX;
+        this.minY = gMinY;
+        this.cellWidth = width / this.columns;
+        this.cellHeight = height / this.rows;
+
+        // first pass counts the edges of every cell, second pass fills them in (CSR layout)
+        this.cellStart = new int[this.columns * this.rows + 1];
+        this.edgeColumn = new int[edgeCount];
+        this.edgeRow = new int[edgeCount];
+        for (int i = 0; i < edgeCount; i++) {
+            int c0 = column(Math.min(this.x1[i], this.x2[i]));
+            int c1 = column(Math.max(this.x1[i], this.x2[i]));
+            int r0 = row(Math.min(this.y1[i], this.y2[i]));
+            int r1 = row(Math.max(this.y1[i], this.y2[i]));
+            this.edgeColumn[i] = c0;
+            this.edgeRow[i] = r0;
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) {
+                    this.cellStart[r * this.columns + c + 1]++;
+                }
+            }
+        }
+        for (int c = 0; c < this.columns * this.rows; c++) {
+            this.cellStart[c + 1] += this.cellStart[c];
+        }
+
+        this.cellEdges = new int[this.cellStart[this.columns * this.rows]];
+        int[] fill = Arrays.copyOf(this.cellStart, this.columns * this.rows);
+        for (int i = 0; i < edgeCount; i++) {
+            int c0 = column(Math.min(this.x1[i], this.x2[i]));
+            int c1 = column(Math.max(this.x1[i], this.x2[i]));
+            int r0 = row(Math.min(this.y1[i], this.y2[i]));
+            int r1 = row(Math.max(this.y1[i], this.y2[i]));
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) {
+                    this.cellEdges[fill[r * this.columns + c]++] = i;
+                }
+            }
+        }
+    }
+
+    /**@return the number of indexed no-fly-zone edges */
+    public int getEdgeCount() {
+        return this.x1.length;
+    }
+
+    /**@return the number of indexed no-fly zones */
+    public int getZoneCount() {
+        return this.zoneBounds.length / 4;
+    }
+
+    private int column(double x) {
+        int c = (int) ((x - this.minX) / this.cellWidth);
+        return Math.max(0, Math.min(this.columns - 1, c));
+    }
+
+    private int row(double y) {
+        int r = (int) ((y - this.minY) / this.cellHeight);
+        return Math.max(0, Math.min(this.rows - 1, r));
+    }
+
+    /**
+     * An edge spanning several cells of a move is only tested in the first cell they share,
+     * so every edge is tested at most once per move
+     * @param i the index of the edge
+     * @param c the column of the cell
+     * @param r the row of the cell
+     * @param c0 the first column of the cells of the move
+     * @param r0 the first row of the cells of the move
+     * @return true if the cell is the first cell of the move that holds the edge
+     */
+    private boolean firstSharedCell(int i, int c, int r, int c0, int r0) {
+        return c == Math.max(c0, this.edgeColumn[i]) && r == Math.max(r0, this.edgeRow[i]);
+    }
+
+    /**
+     * Test if the move from one position to another crosses or touches any no-fly-zone edge
+     *
+     * @param fromLng longitude of the start of the move
+     * @param fromLat latitude of the start of the move
+     * @param toLng longitude of the end of the move
+     * @param toLat latitude of the end of the move
+     * @return true if the move intersects a no-fly zone, false otherwise
+     */
+    public boolean intersects(double fromLng, double fromLat, double toLng, double toLat) {
+        return isIntersection(testMove(fromLng, fromLat, toLng, toLat));
+    }
+
+    /**
+     * Test a move as intersects does, counting the distinct edges tested exactly
+     *
+     * @param fromLng longitude of the start of the move
+     * @param fromLat latitude of the start of the move
+     * @param toLng longitude of the end of the move
+     * @param toLat latitude of the end of the move
+     * @return the number of edges tested, bitwise negated if the move intersects a no-fly zone,
+     * see isIntersection and edgesTested
+     */
+    public int testMove(double fromLng, double fromLat, double toLng, double toLat) {
+        if (this.columns == 0) {
+            return 0;
+        }
+
+        double sMinX = Math.min(fromLat, toLat);
+        double sMaxX = Math.max(fromLat, toLat);
+        double sMinY = Math.min(fromLng, toLng);
+        double sMaxY = Math.max(fromLng, toLng);
+
+        // reject moves that are outside the grid, i.e. away from every zone
+        if (sMaxX < this.minX || sMinX > this.minX + this.cellWidth * this.columns ||
+                sMaxY < this.minY || sMinY > this.minY + this.cellHeight * this.rows) {
+            return 0;
+        }
+
+        int tested = 0;
+        int c0 = column(sMinX);
+        int c1 = column(sMaxX);
+        int r0 = row(sMinY);
+        int r1 = row(sMaxY);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * this.columns + c;
+                for (int k = this.cellStart[cell]; k < this.cellStart[cell + 1]; k++) {
+                    int i = this.cellEdges[k];
+                    if (!firstSharedCell(i, c, r, c0, r0)) {
+                        continue;
+                    }
+                    int z = this.edgeZone[i] * 4;
+                    // skip the exact test when the move is outside the bounding box of the edge's zone
+                    if (sMaxX < this.zoneBounds[z] || sMinX > this.zoneBounds[z + 2] ||
+                            sMaxY < this.zoneBounds[z + 1] || sMinY > this.zoneBounds[z + 3]) {
+                        continue;
+                    }
+                    tested++;
+                    if (Line2D.linesIntersect(fromLat, fromLng, toLat, toLng,
+                            this.x1[i], this.y1[i], this.x2[i], this.y2[i])) {
+                        return ~tested;
+                    }
+                }
+            }
+        }
+        return tested;
+    }
+
+    /**
+     * Test if a move in FixedPoint units crosses, touches or comes within a margin of any no-fly-zone edge,
+     * as intersects does with a margin of 0 but with the exact integer segment test of FixedPoint
+     * on the edges rounded to units
+     *
+     * @param fromLng fixed-point longitude of the start of the move
+     * @param fromLat fixed-point latitude of the start of the move
+     * @param toLng fixed-point longitude of the end of the move
+     * @param toLat fixed-point latitude of the end of the move
+     * @param margin the distance the move must keep from every edge, in units
+     * @return true if the move intersects a no-fly zone or comes within the margin of one, false otherwise
+     */
+    boolean intersectsFixed(long fromLng, long fromLat, long toLng, long toLat, long margin) {
+        if (this.columns == 0) {
+            return false;
+        }
+
+        // cells and bounding boxes are in degrees, the move is widened by the margin and a unit
+        // so rounding never skips an edge
+        long widen = margin + 1;
+        double sMinX = FixedPoint.toDegrees(Math.min(fromLat, toLat) - widen);
+        double sMaxX = FixedPoint.toDegrees(Math.max(fromLat, toLat) + widen);
+        double sMinY = FixedPoint.toDegrees(Math.min(fromLng, toLng) - widen);
+        double sMaxY = FixedPoint.toDegrees(Math.max(fromLng, toLng) + widen);
+        if (sMaxX < this.minX || sMinX > this.minX + this.cellWidth * this.columns ||
+                sMaxY < this.minY || sMinY > this.minY + this.cellHeight * this.rows) {
+            return false;
+        }
+
+        int c0 = column(sMinX);
+        int c1 = column(sMaxX);
+        int r0 = row(sMinY);
+        int r1 = row(sMaxY);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * this.columns + c;
+                for (int k = this.cellStart[cell]; k < this.cellStart[cell + 1]; k++) {
+                    int i = this.cellEdges[k];
+                    if (!firstSharedCell(i, c, r, c0, r0)) {
+                        continue;
+                    }
+                    int z = this.edgeZone[i] * 4;
+                    if (sMaxX < this.zoneBounds[z] || sMinX > this.zoneBounds[z + 2] ||
+                            sMaxY < this.zoneBounds[z + 1] || sMinY > this.zoneBounds[z + 3]) {
+                        continue;
+                    }
+                    if (FixedPoint.segmentsWithin(fromLat, fromLng, toLat, toLng,
+                            this.fx1[i], this.fy1[i], this.fx2[i], this.fy2[i], margin)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param test the result of testMove
+     * @return true if the tested move intersects a no-fly zone
+     */
+    public static boolean isIntersection(int test) {
+        return test < 0;
+    }
+
+    /**
+     * @param test the result of testMove
+     * @return the number of edges tested
+     */
+    public static int edgesTested(int test) {
+        return test < 0 ? ~test : test;
+    }
+}
@@ -51,6 +51,16 @@ public class Order {
 
     public String getOrderNo() {return this.orderNo;}
 
+    public String getOrderDate() {return this.orderDate;}
+
+    public String getCreditCardNumber() {return this.creditCardNumber;}
+
+    public String getCreditCardExpiry() {return this.creditCardExpiry;}
+
+    public String getCvv() {return this.cvv;}
+
+    public String[] getOrderItems() {return this.orderItems;}
+
     public LngLat getRestaurantLoc() {
         return this.restaurantLoc;
     }
@@ -63,7 +73,14 @@ public class Order {
         return this.orderOutcome;
     }
 
+    /**
+     * @return the distance from Appleton Tower to the restaurant, infinite when the first pizza
+     * is not on any menu and the order has no restaurant
+     */
     public double getDistance(){
+        if (this.restaurantLoc == null) {
+            return Double.POSITIVE_INFINITY;
+        }
         return this.restaurantLoc.distanceTo(Drone.APPLETON_TOWER);
     }
 
@@ -0,0 +1,145 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Streaming reader of the /orders/{date} endpoint.
+ * The JSON array is read token by token from the response stream and every order is validated
+ * and handed over as a typed Order as soon as it is complete, so no intermediate tree is built
+ */
+public class OrderReader {
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private final MenuCatalog menuCatalog;
+    private final OrderValidator orderValidator;
+    private Metrics metrics;
+
+    /**
+     * Create the reader
+     * @param menuCatalog the catalog of the participating restaurants the orders are validated against
+     */
+    public OrderReader(MenuCatalog menuCatalog) {
+        this.menuCatalog = menuCatalog;
+        this.orderValidator = new OrderValidator(menuCatalog);
+    }
+
+    /**
+     * Measure the validation of every order
+     * @param metrics the metrics to record into, or null
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Read a JSON array of orders
+     * @param in the stream of the JSON array, it is not closed
+     * @param sink receives every order in the order of the array
+     * @throws IOException if the stream cannot be read or is not an array of orders
+     */
+    public void readOrders(InputStream in, Consumer<Order> sink) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(in)) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "Expected an array of orders");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                sink.accept(readOrder(parser));
+            }
+            if (parser.currentToken() != JsonToken.END_ARRAY) {
+                throw new JsonParseException(parser, "Expected an order object");
+            }
+        }
+    }
+
+    /**
+     * Read one order object, e.g. one line of a JSON Lines stream of orders
+     * @param json the order object
+     * @return the validated order
+     * @throws IOException if the text is not an order object
+     */
+    public Order readOrder(String json) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected an order object");
+            }
+            return readOrder(parser);
+        }
+    }
+
+    /**
+     * Read one order object, the parser is positioned on its START_OBJECT token
+     */
+    private Order readOrder(JsonParser parser) throws IOException {
+        String orderNo = null;
+        String orderDate = null;
+        String creditCardNumber = null;
+        String creditCardExpiry = null;
+        String cvv = null;
+        Integer priceTotalInPence = null;
+        String[] orderItems = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "orderNo" -> orderNo = parser.getText();
+                case "orderDate" -> orderDate = parser.getText();
+                case "creditCardNumber" -> creditCardNumber = parser.getText();
+                case "creditCardExpiry" -> creditCardExpiry = parser.getText();
+                case "cvv" -> cvv = parser.getText();
+                case "priceTotalInPence" -> priceTotalInPence = parser.getIntValue();
+                case "orderItems" -> {
+                    if (value != JsonToken.START_ARRAY) {
+                        throw new JsonParseException(parser, "Expected an array of order items");
+                    }
+                    List<String> items = new ArrayList<>();
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        items.add(parser.getText());
+                    }
+                    orderItems = items.toArray(new String[0]);
+                }
+                default -> parser.skipChildren();
+            }
+        }
+
+        if (orderNo == null || orderDate == null || creditCardNumber == null || creditCardExpiry == null ||
+                cvv == null || priceTotalInPence == null || orderItems == null) {
+            throw new JsonParseException(parser, "Order " + orderNo + " is missing a field");
+        }
+
+        return buildOrder(orderNo, orderDate, creditCardNumber, creditCardExpiry, cvv, priceTotalInPence, orderItems);
+    }
+
+    /**
+     * Validate an order and locate its restaurant
+     * @return the order with its outcome
+     */
+    private Order buildOrder(String orderNo, String orderDate, String creditCardNumber, String creditCardExpiry,
+                             String cvv, int priceTotalInPence, String[] orderItems) {
+        LngLat restaurantLoc = null;
+        if (orderItems.length > 0) {
+            restaurantLoc = this.menuCatalog.getRestaurantLoc(orderItems[0]);
+        }
+
+        long start = this.metrics != null ? System.nanoTime() : 0;
+        String orderOutcome = this.orderValidator.validate(orderItems, creditCardNumber, creditCardExpiry,
+                cvv, orderDate, priceTotalInPence).toString();
+        if (this.metrics != null) {
+            this.metrics.orderValidation.record(System.nanoTime() - start);
+        }
+
+        return new Order(orderNo, orderDate, restaurantLoc, creditCardNumber, creditCardExpiry,
+                cvv, orderItems, priceTotalInPence, orderOutcome);
+    }
+}
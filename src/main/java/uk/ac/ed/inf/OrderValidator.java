@@ -0,0 +1,191 @@
+package uk.ac.ed.inf;
+
+import java.text.ParseException;
+import java.util.Calendar;
+import java.util.stream.IntStream;
+
+import uk.ac.ed.inf.Order.OrderOutcome;
+
+/**
+ * Validates orders against a MenuCatalog without allocating per order.
+ * It returns exactly the outcomes of Order.getOrderOutcome: well-formed inputs are checked with plain
+ * character arithmetic, and the rare inputs whose outcome depends on the quirks of SimpleDateFormat,
+ * or pizzas sold by more than one restaurant, are handed to Order.getOrderOutcome itself.
+ * The validator is immutable and can be shared between threads.
+ */
+public class OrderValidator {
+    /** first year of the 100-year window SimpleDateFormat maps two-digit years into */
+    private static final int CENTURY_START_YEAR = centuryStartYear();
+
+    private final MenuCatalog menuCatalog;
+    private final Restaurant[] restaurants;
+
+    /**
+     * Create the validator
+     * @param menuCatalog the catalog of the participating restaurants
+     */
+    public OrderValidator(MenuCatalog menuCatalog) {
+        this.menuCatalog = menuCatalog;
+        this.restaurants = menuCatalog.getRestaurants();
+    }
+
+    private static int centuryStartYear() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.add(Calendar.YEAR, -80);
+        return calendar.get(Calendar.YEAR);
+    }
+
+    /**
+     * Get the outcome of an order
+     * @param orderItems the ordered pizza being delivery
+     * @param creditCardNumber customer's credit card number
+     * @param creditCardExpiry expiry date of customer's credit card
+     * @param cvv 3 - 4 digit number
+     * @param orderDate the date the customer ordered pizza
+     * @param priceTotalInPence total price that one delivery cost (pence)
+     * @return the outcome of the order, ValidButNotDelivered if it is valid
+     */
+    public OrderOutcome validate(String[] orderItems, String creditCardNumber, String creditCardExpiry,
+                                 String cvv, String orderDate, int priceTotalInPence) {
+        if (!isCanonicalDate(orderDate)) {
+            return legacyOutcome(orderItems, creditCardNumber, creditCardExpiry, cvv, orderDate, priceTotalInPence);
+        }
+
+        // Check if it exceeds the delivery maximum
+        int numPizza = orderItems.length;
+        if (numPizza > 4 || numPizza < 1) {
+            return OrderOutcome.InvalidPizzaCount;
+        }
+
+        // every pizza must be defined before the suppliers are compared
+        int deliveryCost = 100;
+        int restaurantIndex = -1;
+        boolean multipleSuppliers = false;
+        for (String pizza : orderItems) {
+            MenuCatalog.Item item = this.menuCatalog.getItem(pizza);
+            if (item == null) {
+                return OrderOutcome.InvalidPizzaNotDefined;
+            }
+            if (item.ambiguous()) {
+                return legacyOutcome(orderItems, creditCardNumber, creditCardExpiry, cvv, orderDate, priceTotalInPence);
+            }
+            if (restaurantIndex >= 0 && restaurantIndex != item.restaurantIndex()) {
+                multipleSuppliers = true;
+            }
+            restaurantIndex = item.restaurantIndex();
+            deliveryCost += item.priceInPence();
+        }
+        if (multipleSuppliers) {
+            return OrderOutcome.InvalidPizzaCombinationMultipleSuppliers;
+        }
+        if (deliveryCost != priceTotalInPence) {
+            return OrderOutcome.InvalidTotal;
+        }
+
+        if (!isValidCardNumber(creditCardNumber)) {
+            return OrderOutcome.InvalidCardNumber;
+        }
+
+        int expiryMonth = parseTwoDigits(creditCardExpiry, 0);
+        int expiryYear = parseTwoDigits(creditCardExpiry, 3);
+        if (creditCardExpiry.length() != 5 || creditCardExpiry.charAt(2) != '/' || expiryMonth < 1 ||
+                expiryMonth > 12 || expiryYear < 0 || expiryYear == CENTURY_START_YEAR % 100) {
+            return legacyOutcome(orderItems, creditCardNumber, creditCardExpiry, cvv, orderDate, priceTotalInPence);
+        }
+        expiryYear += (CENTURY_START_YEAR / 100) * 100 + (expiryYear < CENTURY_START_YEAR % 100 ? 100 : 0);
+
+        int orderYear = parseTwoDigits(orderDate, 0) * 100 + parseTwoDigits(orderDate, 2);
+        int orderMonth = parseTwoDigits(orderDate, 5);
+        if (orderYear > expiryYear || (orderYear == expiryYear && orderMonth > expiryMonth)) {
+            return OrderOutcome.InvalidExpiryDate;
+        }
+
+        if (!isValidCVV(cvv)) {
+            return OrderOutcome.InvalidCvv;
+        }
+
+        return OrderOutcome.ValidButNotDelivered;
+    }
+
+    /**
+     * Validate many orders in parallel
+     * @param orders the orders to validate
+     * @return the outcome of every order, in the same order
+     */
+    public OrderOutcome[] validateAll(Order[] orders) {
+        OrderOutcome[] outcomes = new OrderOutcome[orders.length];
+        IntStream.range(0, orders.length).parallel().forEach(i -> {
+            Order order = orders[i];
+            outcomes[i] = validate(order.getOrderItems(), order.getCreditCardNumber(), order.getCreditCardExpiry(),
+                    order.getCvv(), order.getOrderDate(), order.getPriceTotalInPence());
+        });
+        return outcomes;
+    }
+
+    private OrderOutcome legacyOutcome(String[] orderItems, String creditCardNumber, String creditCardExpiry,
+                                       String cvv, String orderDate, int priceTotalInPence) {
+        try {
+            return OrderOutcome.valueOf(Order.getOrderOutcome(this.restaurants, orderItems, creditCardNumber,
+                    creditCardExpiry, cvv, orderDate, priceTotalInPence));
+        } catch (ParseException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return the value of two ASCII digits at the given index, or -1 if they are not two ASCII digits
+     */
+    private static int parseTwoDigits(String s, int index) {
+        if (s.length() < index + 2) {
+            return -1;
+        }
+        int tens = s.charAt(index) - '0';
+        int units = s.charAt(index + 1) - '0';
+        if (tens < 0 || tens > 9 || units < 0 || units > 9) {
+            return -1;
+        }
+        return tens * 10 + units;
+    }
+
+    /**
+     * @return true if the date starts with YYYY-MM- with a four-digit year and a month from 01 to 12
+     */
+    private static boolean isCanonicalDate(String orderDate) {
+        if (orderDate.length() < 8 || orderDate.charAt(4) != '-' || orderDate.charAt(7) != '-') {
+            return false;
+        }
+        int century = parseTwoDigits(orderDate, 0);
+        int month = parseTwoDigits(orderDate, 5);
+        return century >= 10 && parseTwoDigits(orderDate, 2) >= 0 && month >= 1 && month <= 12;
+    }
+
+    /**
+     * Luhn check of a 16-digit card number, accepting the same digits as Integer.parseInt
+     */
+    private static boolean isValidCardNumber(String cardNumber) {
+        int sum = 0;
+        boolean alternate = false;
+        for (int i = cardNumber.length() - 1; i >= 0; i--) {
+            int n = Character.digit(cardNumber.charAt(i), 10);
+            if (n < 0) {
+                return false;
+            }
+            if (alternate) {
+                n *= 2;
+                if (n > 9) {
+                    n = (n % 10) + 1;
+                }
+            }
+            sum += n;
+            alternate = !alternate;
+        }
+        return (sum % 10 == 0) && (cardNumber.length() == 16);
+    }
+
+    /**
+     * @return true if the cvv is exactly three ASCII digits
+     */
+    private static boolean isValidCVV(String cvv) {
+        return cvv != null && cvv.length() == 3 && parseTwoDigits(cvv, 0) >= 0 && parseTwoDigits(cvv, 1) >= 0;
+    }
+}
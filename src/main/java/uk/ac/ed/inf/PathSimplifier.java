@@ -0,0 +1,126 @@
+package uk.ac.ed.inf;
+
+import java.util.Arrays;
+
+/**
+ * Simplification of a polyline held as interleaved lng, lat pairs in a double array.
+ * Both methods compact the kept points to the front of the array and return how many were kept;
+ * the first and the last point are always kept.
+ */
+final class PathSimplifier {
+    /** relative tolerance of the cross product when testing whether two steps are collinear */
+    private static final double COLLINEAR_EPSILON = 1e-9;
+
+    private PathSimplifier() {}
+
+    /**
+     * Drop repeated points and the inner points of straight runs, which does not change the drawn line
+     * @param points interleaved lng, lat pairs
+     * @param count the number of points
+     * @return the number of kept points
+     */
+    static int mergeCollinear(double[] points, int count) {
+        if (count < 3) {
+            return count;
+        }
+        int kept = 1;
+        for (int i = 1; i < count; i++) {
+            double x = points[i * 2];
+            double y = points[i * 2 + 1];
+            double lastX = points[(kept - 1) * 2];
+            double lastY = points[(kept - 1) * 2 + 1];
+            if (x == lastX && y == lastY) {
+                continue;
+            }
+
+            // replace the last kept point if it lies on a straight run from the one before it
+            if (kept >= 2) {
+                double dx1 = lastX - points[(kept - 2) * 2];
+                double dy1 = lastY - points[(kept - 2) * 2 + 1];
+                double dx2 = x - lastX;
+                double dy2 = y - lastY;
+                double cross = dx1 * dy2 - dy1 * dx2;
+                double dot = dx1 * dx2 + dy1 * dy2;
+                if (dot > 0 && Math.abs(cross) <= COLLINEAR_EPSILON * Math.hypot(dx1, dy1) * Math.hypot(dx2, dy2)) {
+                    kept--;
+                }
+            }
+            points[kept * 2] = x;
+            points[kept * 2 + 1] = y;
+            kept++;
+        }
+        return kept;
+    }
+
+    /**
+     * Douglas–Peucker simplification: drop every point closer than the tolerance to the line kept around it
+     * @param points interleaved lng, lat pairs
+     * @param count the number of points
+     * @param tolerance the largest distance of a dropped point from the simplified line, in degrees
+     * @return the number of kept points
+     */
+    static int douglasPeucker(double[] points, int count, double tolerance) {
+        if (count < 3) {
+            return count;
+        }
+        boolean[] keep = new boolean[count];
+        keep[0] = true;
+        keep[count - 1] = true;
+
+        // ranges still to split, as pairs of first and last index, instead of recursion
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = count - 1;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+
+            int farthest = -1;
+            double maxDistance = tolerance;
+            for (int i = first + 1; i < last; i++) {
+                double distance = distanceToSegment(points, i, first, last);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    farthest = i;
+                }
+            }
+            if (farthest < 0) {
+                continue;
+            }
+
+            keep[farthest] = true;
+            if (top + 4 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[top++] = first;
+            stack[top++] = farthest;
+            stack[top++] = farthest;
+            stack[top++] = last;
+        }
+
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (keep[i]) {
+                points[kept * 2] = points[i * 2];
+                points[kept * 2 + 1] = points[i * 2 + 1];
+                kept++;
+            }
+        }
+        return kept;
+    }
+
+    private static double distanceToSegment(double[] points, int i, int first, int last) {
+        double x = points[i * 2];
+        double y = points[i * 2 + 1];
+        double x1 = points[first * 2];
+        double y1 = points[first * 2 + 1];
+        double dx = points[last * 2] - x1;
+        double dy = points[last * 2 + 1] - y1;
+
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : ((x - x1) * dx + (y - y1) * dy) / lengthSquared;
+        t = Math.max(0, Math.min(1, t));
+        return Math.hypot(x - (x1 + t * dx), y - (y1 + t * dy));
+    }
+}
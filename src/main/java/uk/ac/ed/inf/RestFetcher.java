@@ -0,0 +1,421 @@
+package uk.ac.ed.inf;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Asynchronous fetch layer for the REST service.
+ * Requests are issued with HttpClient.sendAsync, at most a bounded number at a time, and the bodies
+ * are returned as CompletableFutures. A failed request completes its future exceptionally with an
+ * IOException, so that a batch caller can retry it, unless it is an HttpCache.NotCachedException.
+ * The fetcher is thread-safe.
+ * A file: base address reads the same paths from a directory, e.g. a day written by WorkloadGenerator.
+ * Bodies are requested gzip-compressed, and with an HttpCache set they are revalidated with
+ * conditional requests instead of being transferred again. A streamed body is stored into the cache
+ * while the caller reads it.
+ */
+public class RestFetcher {
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 8;
+    /** the longest wait for a connection, and for a whole response before its slot is given to the next request */
+    public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final RestFetcher defaultFetcher = new RestFetcher(DEFAULT_MAX_CONCURRENT_REQUESTS);
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(DEFAULT_REQUEST_TIMEOUT).build();
+    private final int maxConcurrentRequests;
+    private final Queue<Runnable> pending = new ArrayDeque<>();
+    private int running;
+    private volatile HttpCache cache;
+    private volatile Duration requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+
+    /**
+     * Create the fetcher
+     * @param maxConcurrentRequests the maximum number of requests in flight at the same time
+     */
+    public RestFetcher(int maxConcurrentRequests) {
+        if (maxConcurrentRequests < 1) {
+            throw new IllegalArgumentException("At least one concurrent request is required");
+        }
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    /**@return the fetcher shared by the whole application */
+    public static RestFetcher getDefault() {
+        return defaultFetcher;
+    }
+
+    /**
+     * Fail a request that gets no response within the given time, so that a hung server cannot hold a slot forever.
+     * A streamed body is timed until its headers arrive, its reader must handle a body that stops arriving
+     * @param requestTimeout the longest wait for a response
+     */
+    public void setRequestTimeout(Duration requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * Serve bodies from an on-disk cache, revalidating them with the server unless the cache is offline
+     * @param cache the cache to use, or null to transfer every body
+     */
+    public void setCache(HttpCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Fetch the body of the given url without blocking
+     * @param urlString url of the web
+     * @return the future body, completed exceptionally with an IOException if the request fails
+     */
+    public CompletableFuture<String> fetchAsync(String urlString) {
+        if (isFile(urlString)) {
+            return readFile(urlString, Files::readString);
+        }
+        HttpCache cache = this.cache;
+        if (cache != null) {
+            return fetchCached(urlString, cache).thenCompose(file -> decode(urlString, () -> HttpCache.read(file)))
+                    .thenApply(body -> new String(body, StandardCharsets.UTF_8));
+        }
+        return send(newRequest(urlString, null), BodyHandlers.ofByteArray(), body -> {})
+                .thenCompose(response -> decode(urlString, () ->
+                        isGzipped(response) ? HttpCache.gunzip(response.body()) : response.body()))
+                .thenApply(body -> new String(body, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Fetch the body of the given url as a stream without blocking, so that large bodies
+     * can be parsed while they arrive instead of being buffered as a String
+     * @param urlString url of the web
+     * @return the future body stream which the caller must close,
+     * completed exceptionally with an IOException if the request fails
+     */
+    public CompletableFuture<InputStream> fetchStreamAsync(String urlString) {
+        if (isFile(urlString)) {
+            return readFile(urlString, Files::newInputStream);
+        }
+        HttpCache cache = this.cache;
+        if (cache != null) {
+            return fetchCachedStream(urlString, cache);
+        }
+        // the gzip header is read by the caller, the body may not have arrived yet
+        return send(newRequest(urlString, null), BodyHandlers.ofInputStream(), RestFetcher::discard)
+                .thenApply(response -> isGzipped(response) ?
+                        HttpCache.gunzipOnRead(response.body()) : response.body());
+    }
+
+    private static void discard(InputStream body) {
+        try {
+            body.close();
+        } catch (IOException ignored) {
+            // the body of a failed request is not needed
+        }
+    }
+
+    /**
+     * Get the cached body of a url, transferring it only if it is not cached or changed on the server
+     * @return the future gzip-compressed body in the cache
+     */
+    private CompletableFuture<Path> fetchCached(String urlString, HttpCache cache) {
+        HttpCache.Entry entry = cache.lookup(urlString);
+        if (cache.isOffline()) {
+            return fetchOffline(urlString, cache, entry);
+        }
+
+        return send(newRequest(urlString, entry), BodyHandlers.ofByteArray(), body -> {})
+                .thenCompose(response -> decode(urlString, () -> {
+                    if (response.statusCode() == 304) {
+                        return cache.hit(entry);
+                    }
+                    return cache.store(urlString, response.body(), isGzipped(response),
+                            response.headers().firstValue("ETag").orElse(null),
+                            response.headers().firstValue("Last-Modified").orElse(null));
+                }));
+    }
+
+    /**
+     * Get the body of a url as a stream, from the cache if it is not changed on the server, otherwise
+     * as it arrives while it is stored into the cache
+     * @return the future body stream which the caller must close
+     */
+    private CompletableFuture<InputStream> fetchCachedStream(String urlString, HttpCache cache) {
+        HttpCache.Entry entry = cache.lookup(urlString);
+        if (cache.isOffline()) {
+            return fetchOffline(urlString, cache, entry)
+                    .thenCompose(file -> decode(urlString, () -> HttpCache.open(file)));
+        }
+
+        return send(newRequest(urlString, entry), BodyHandlers.ofInputStream(), RestFetcher::discard)
+                .thenCompose(response -> decode(urlString, () -> {
+                    if (response.statusCode() == 304) {
+                        response.body().close();
+                        return HttpCache.open(cache.hit(entry));
+                    }
+                    return cache.store(urlString, response.body(), isGzipped(response),
+                            response.headers().firstValue("ETag").orElse(null),
+                            response.headers().firstValue("Last-Modified").orElse(null));
+                }));
+    }
+
+    /**
+     * @return the future cached body of a url, completed exceptionally with an HttpCache.NotCachedException,
+     * which is not worth another attempt, if the url is not cached
+     */
+    private static CompletableFuture<Path> fetchOffline(String urlString, HttpCache cache, HttpCache.Entry entry) {
+        return entry != null ? CompletableFuture.completedFuture(cache.hit(entry)) :
+                CompletableFuture.failedFuture(new HttpCache.NotCachedException(urlString));
+    }
+
+    /**
+     * Create a request accepting a gzip-compressed body
+     * @param entry the cached body to revalidate, or null for an unconditional request
+     */
+    private HttpRequest newRequest(String urlString, HttpCache.Entry entry) {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create(urlString))
+                .timeout(this.requestTimeout)
+                .header("Accept-Encoding", "gzip");
+        if (entry != null && entry.etag() != null) {
+            request.header("If-None-Match", entry.etag());
+        }
+        if (entry != null && entry.lastModified() != null) {
+            request.header("If-Modified-Since", entry.lastModified());
+        }
+        return request.build();
+    }
+
+    private static boolean isGzipped(HttpResponse<?> response) {
+        return response.headers().firstValue("Content-Encoding").orElse("").equalsIgnoreCase("gzip");
+    }
+
+    /** Reads or decodes a body */
+    private interface BodyReader<T> {
+        T read() throws IOException;
+    }
+
+    /** @return the future body read by the reader, completed exceptionally with its IOException */
+    private static <T> CompletableFuture<T> decode(String urlString, BodyReader<T> reader) {
+        try {
+            return CompletableFuture.completedFuture(reader.read());
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new IOException("Unable to read " + urlString + ".", e));
+        }
+    }
+
+    /**
+     * Fetch the body of the given url without blocking, measuring its latency and size
+     * @param urlString url of the web
+     * @param metrics the metrics to record a successful fetch into, or null
+     * @return the future body, completed exceptionally with an IOException if the request fails
+     */
+    public CompletableFuture<String> fetchAsync(String urlString, Metrics metrics) {
+        if (metrics == null) {
+            return fetchAsync(urlString);
+        }
+        long start = System.nanoTime();
+        return fetchAsync(urlString).whenComplete((body, error) -> {
+            if (error == null) {
+                metrics.fetchLatency.record(System.nanoTime() - start);
+                metrics.fetchBytes.add(body.getBytes(StandardCharsets.UTF_8).length);
+            }
+        });
+    }
+
+    /**
+     * Fetch the body of the given url as a stream without blocking, the latency is measured
+     * until the stream is closed, so that it includes reading the body
+     * @param urlString url of the web
+     * @param metrics the metrics to record a successful fetch into, or null
+     * @return the future body stream which the caller must close,
+     * completed exceptionally with an IOException if the request fails
+     */
+    public CompletableFuture<InputStream> fetchStreamAsync(String urlString, Metrics metrics) {
+        if (metrics == null) {
+            return fetchStreamAsync(urlString);
+        }
+        long start = System.nanoTime();
+        return fetchStreamAsync(urlString).thenApply(body -> new MeasuredStream(body, metrics, start));
+    }
+
+    /** A body stream that records its size and the time until it is closed */
+    private static class MeasuredStream extends FilterInputStream {
+        private final Metrics metrics;
+        private final long start;
+        private long bytes;
+        private boolean closed;
+
+        private MeasuredStream(InputStream in, Metrics metrics, long start) {
+            super(in);
+            this.metrics = metrics;
+            this.start = start;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                this.bytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                this.bytes += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            this.bytes += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!this.closed) {
+                this.closed = true;
+                this.metrics.fetchLatency.record(System.nanoTime() - this.start);
+                this.metrics.fetchBytes.add(this.bytes);
+            }
+            super.close();
+        }
+    }
+
+    /** Reads a file into a body */
+    private interface FileReader<T> {
+        T read(Path path) throws IOException;
+    }
+
+    private static boolean isFile(String urlString) {
+        return urlString.startsWith("file:");
+    }
+
+    private static <T> CompletableFuture<T> readFile(String urlString, FileReader<T> reader) {
+        CompletableFuture<T> body = new CompletableFuture<>();
+        try {
+            body.complete(reader.read(Paths.get(URI.create(urlString))));
+        } catch (IOException e) {
+            body.completeExceptionally(new IOException("Unable to read " + urlString + ".", e));
+        }
+        return body;
+    }
+
+    /**
+     * Send a request once a slot is free
+     * @return the future response, completed exceptionally with an IOException unless it is 200 or 304
+     */
+    private <T> CompletableFuture<HttpResponse<T>> send(HttpRequest request, BodyHandler<T> bodyHandler,
+                                                        Consumer<T> discard) {
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        String urlString = request.uri().toString();
+        // only a conditional request can be answered with Not Modified
+        boolean conditional = request.headers().firstValue("If-None-Match").isPresent() ||
+                request.headers().firstValue("If-Modified-Since").isPresent();
+
+        Runnable send = () -> {
+            CompletableFuture<HttpResponse<T>> exchange;
+            try {
+                exchange = this.client.sendAsync(request, bodyHandler);
+            } catch (RuntimeException e) {
+                startNext();
+                result.completeExceptionally(new IOException("Unable to connect to " + urlString + ".", e));
+                return;
+            }
+            // the request timeout stops at the headers, a buffered body that stops arriving is timed out here
+            Duration timeout = request.timeout().orElse(DEFAULT_REQUEST_TIMEOUT);
+            exchange.copy().orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                    .whenComplete((response, error) -> {
+                        startNext();
+                        if (error instanceof TimeoutException) {
+                            exchange.cancel(true);
+                            result.completeExceptionally(new HttpTimeoutException("Unable to connect to " +
+                                    urlString + ": no response within " + timeout.toMillis() + " ms."));
+                        } else if (error != null) {
+                            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                            result.completeExceptionally(cause instanceof IOException ? cause :
+                                    new IOException("Unable to connect to " + urlString + ".", cause));
+                        } else if (response.statusCode() != 200 && !(conditional && response.statusCode() == 304)) {
+                            discard.accept(response.body());
+                            result.completeExceptionally(new IOException("Unable to connect to " + urlString +
+                                    ": HTTP " + response.statusCode() + "."));
+                        } else {
+                            result.complete(response);
+                        }
+                    });
+        };
+
+        synchronized (this) {
+            if (this.running >= this.maxConcurrentRequests) {
+                this.pending.add(send);
+                return result;
+            }
+            this.running++;
+        }
+        send.run();
+        return result;
+    }
+
+    /**
+     * Fetch the body of the given url, blocking until it arrives
+     * @param urlString url of the web
+     * @return the body of the response
+     * @throws UncheckedIOException if the request fails
+     */
+    public String fetch(String urlString) {
+        return await(fetchAsync(urlString));
+    }
+
+    /**
+     * Wait for a fetched body
+     * @param body the future body
+     * @param <T> the type of the body
+     * @return the body of the response
+     * @throws UncheckedIOException if the request failed
+     */
+    public static <T> T await(CompletableFuture<T> body) {
+        try {
+            return body.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw new UncheckedIOException((IOException) e.getCause());
+            }
+            throw e;
+        }
+    }
+
+    /** Hand the slot of a finished request to the next pending request, if any */
+    private void startNext() {
+        Runnable next;
+        synchronized (this) {
+            next = this.pending.poll();
+            if (next == null) {
+                this.running--;
+                return;
+            }
+        }
+        next.run();
+    }
+}
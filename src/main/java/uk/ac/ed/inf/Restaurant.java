@@ -5,6 +5,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URL;
 
 /**
@@ -62,6 +63,21 @@ public class Restaurant {
     }
 
 
+    /**
+     * Parse restaurants from the body of the /restaurants endpoint
+     * @param json the fetched JSON array of restaurants
+     * @return an array of Restaurants which are defined (including the menus)
+     * @throws UncheckedIOException if the JSON cannot be parsed
+     */
+    public static Restaurant[] parseRestaurants(String json) {
+        try {
+            return new ObjectMapper().readValue(json, Restaurant[].class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
     /**
      * Find the corresponding restaurant from given restaurant array according to a given ordered item
      * @param restaurants Array of participated restaurants
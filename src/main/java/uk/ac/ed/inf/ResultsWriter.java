@@ -1,27 +1,42 @@
 package uk.ac.ed.inf;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import com.mapbox.geojson.Feature;
-import com.mapbox.geojson.FeatureCollection;
-import com.mapbox.geojson.LineString;
-import com.mapbox.geojson.Point;
+import com.google.gson.stream.JsonWriter;
 
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.Flushable;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * The class to write the result produced by drone into files:
- * flightpath-YYYY-MM-DD.json, deliveries-YYYY-MM-DD.json and drone-YYYY-MM-DD.geojson.
+ * flightpath-YYYY-MM-DD.json, deliveries-YYYY-MM-DD.json and drone-YYYY-MM-DD.geojson,
+ * and the metrics of the day when it is measured.
  */
 public class ResultsWriter {
-    private final String RESULT_FOLDER = "resultfiles" + File.separator;
+    private String resultFolder = "resultfiles" + File.separator;
     private final String year;
     private final String month;
     private final String day;
+    private final GeojsonOptions geojsonOptions;
+    private Metrics metrics;
+
+    /**
+     * How the flight line of the drone geojson file is written
+     * @param tolerance negative to keep every point, 0 to merge straight runs only,
+     *                  otherwise the Douglas–Peucker tolerance in degrees
+     * @param precision the number of decimals of the coordinates, negative to keep every digit
+     */
+    public record GeojsonOptions(double tolerance, int precision) {
+        /** every point with 7 decimals, as GeoJSON files were always written */
+        public static final GeojsonOptions EXACT = new GeojsonOptions(-1, 7);
+    }
 
     /**
      * Constructor of the ResultsWriter class,
@@ -31,42 +46,204 @@ public class ResultsWriter {
      * @param day Given day
      */
     public ResultsWriter(String year, String month, String day) {
+        this(year, month, day, GeojsonOptions.EXACT);
+    }
+
+    /**
+     * Constructor of the ResultsWriter class with options of the drone geojson file
+     * @param year Given year
+     * @param month Given month
+     * @param day Given day
+     * @param geojsonOptions how the flight line is simplified and rounded
+     */
+    public ResultsWriter(String year, String month, String day, GeojsonOptions geojsonOptions) {
         this.year = year;
         this.month = month;
         this.day = day;
+        this.geojsonOptions = geojsonOptions;
     }
 
     /**
-     * Write the flightpath json file containing all flight steps made by the drone in a given day
-     * @param flightpaths the flightpath of the drone in a given day
+     * Write the result files into another folder than resultfiles
+     * @param folder the folder, which must exist
+     */
+    public void setResultFolder(Path folder) {
+        this.resultFolder = folder.toString() + File.separator;
+    }
+
+    /**
+     * Measure the time and size of every result file written
+     * @param metrics the metrics of the day, or null
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    private void recordWrite(long start, String fileName) {
+        if (this.metrics == null) {
+            return;
+        }
+        this.metrics.writeLatency.record(System.nanoTime() - start);
+        try {
+            this.metrics.writeBytes.add(Files.size(Paths.get(this.resultFolder + fileName)));
+        } catch (IOException ignored) {
+            // a file that could not be written was already reported
+        }
+    }
+
+    /**
+     * A flightpath json file that is written record by record while the drone flies,
+     * so that the moves of a day never have to be kept in memory.
+     * The moves of a fleet are tagged with the id of their drone
      */
-    public void writeFlightpathJson(List<Flightpath> flightpaths) {
-        String fileName = "flightpath-" + this.year + "-" + this.month + "-" + this.day + ".json";
+    public static class FlightpathStream implements Consumer<Flightpath>, MoveBuffer.MoveVisitor, Flushable, Closeable {
+        private final JsonWriter jsonWriter;
+        private final boolean tagDrones;
+        private int droneId;
 
-        //Creating a JSONArray object
-        JsonArray jsonArray = new JsonArray();
+        private FlightpathStream(Path file, boolean tagDrones) throws IOException {
+            this.jsonWriter = new JsonWriter(Files.newBufferedWriter(file));
+            this.jsonWriter.beginArray();
+            this.tagDrones = tagDrones;
+        }
+
+        /**
+         * Set the drone of the moves visited next
+         * @param droneId the id of the drone
+         */
+        public void setDroneId(int droneId) {
+            this.droneId = droneId;
+        }
 
-        //Creating a JSONObject object
-        for (Flightpath path : flightpaths) {
-            JsonObject jsonObject = new JsonObject();
-            jsonObject.addProperty("orderNo", path.orderNo);
-            jsonObject.addProperty("fromLongitude", path.fromLongitude);
-            jsonObject.addProperty("fromLatitude", path.fromLatitude);
-            jsonObject.addProperty("angle", path.angle);
-            jsonObject.addProperty("toLongitude", path.toLongitude);
-            jsonObject.addProperty("toLatitude", path.toLatitude);
-            jsonObject.addProperty("ticksSinceStartOfCalculation", path.getTicksSinceStartOfCalculation());
-            jsonArray.add(jsonObject);
+        /**
+         * Append one move to the file
+         * @param path the move
+         * @throws UncheckedIOException if the move cannot be written
+         */
+        @Override
+        public void accept(Flightpath path) {
+            this.droneId = path.getDroneId();
+            visit(path.orderNo, path.fromLongitude, path.fromLatitude, path.angle, path.toLongitude,
+                    path.toLatitude, path.getTicksSinceStartOfCalculation());
         }
 
+        /**
+         * Append one move of a MoveBuffer to the file
+         * @throws UncheckedIOException if the move cannot be written
+         */
+        @Override
+        public void visit(String orderNo, double fromLongitude, double fromLatitude, double angle,
+                          double toLongitude, double toLatitude, int ticksSinceStartOfCalculation) {
+            try {
+                this.jsonWriter.beginObject();
+                if (this.tagDrones) {
+                    this.jsonWriter.name("droneId").value(this.droneId);
+                }
+                this.jsonWriter.name("orderNo").value(orderNo);
+                this.jsonWriter.name("fromLongitude").value(fromLongitude);
+                this.jsonWriter.name("fromLatitude").value(fromLatitude);
+                this.jsonWriter.name("angle").value(angle);
+                this.jsonWriter.name("toLongitude").value(toLongitude);
+                this.jsonWriter.name("toLatitude").value(toLatitude);
+                this.jsonWriter.name("ticksSinceStartOfCalculation").value(ticksSinceStartOfCalculation);
+                this.jsonWriter.endObject();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Write the moves appended so far to the file, the json array stays open
+         * @throws IOException if the moves cannot be written
+         */
+        @Override
+        public void flush() throws IOException {
+            this.jsonWriter.flush();
+        }
+
+        /** Finish the json array and close the file */
+        @Override
+        public void close() throws IOException {
+            this.jsonWriter.endArray();
+            this.jsonWriter.close();
+        }
+    }
+
+
+    /**
+     * Open the flightpath json file of the day for streaming
+     * @return the stream to append moves to, which must be closed at the end of the day
+     * @throws IOException if the file cannot be created
+     */
+    public FlightpathStream openFlightpathStream() throws IOException {
+        return openFlightpathStream(false);
+    }
+
+    /**
+     * Open the flightpath json file of the day for streaming
+     * @param tagDrones true to tag every move with the id of its drone, for the moves of a fleet
+     * @return the stream to append moves to, which must be closed at the end of the day
+     * @throws IOException if the file cannot be created
+     */
+    public FlightpathStream openFlightpathStream(boolean tagDrones) throws IOException {
+        return new FlightpathStream(Paths.get(this.resultFolder + getFlightpathFileName()), tagDrones);
+    }
+
+    private String getFlightpathFileName() {
+        return "flightpath-" + this.year + "-" + this.month + "-" + this.day + ".json";
+    }
+
+    private String getFlightpathArchiveName() {
+        return "flightpath-" + this.year + "-" + this.month + "-" + this.day + ".fpb";
+    }
+
+
+    /**
+     * Write the compact binary flightpath file of a given day, see FlightpathArchive
+     * @param fleetMoves the moves of every drone in a given day
+     */
+    public void writeFlightpathArchive(List<MoveBuffer> fleetMoves) {
+        String fileName = getFlightpathArchiveName();
+        long start = System.nanoTime();
+
         try {
-            FileWriter file = new FileWriter(RESULT_FOLDER + fileName);
-            file.write(jsonArray.toString());
-            file.close();
+            FlightpathArchive.writeFleet(fleetMoves, Paths.get(this.resultFolder + fileName));
         } catch (IOException e) {
+            System.err.println("Fatal error: Unable to generate flightpath archive");
+            e.printStackTrace();
+        }
+        recordWrite(start, fileName);
+        System.out.println(fileName + " created");
+    }
+
+
+    /**
+     * Write the flightpath json file containing all flight steps made by the drone in a given day
+     * @param moves the moves of the drone in a given day
+     */
+    public void writeFlightpathJson(MoveBuffer moves) {
+        writeFlightpathJson(List.of(moves));
+    }
+
+    /**
+     * Write the flightpath json file containing all flight steps made by a fleet in a given day,
+     * drone by drone, every move tagged with its drone if there is more than one
+     * @param fleetMoves the moves of every drone in a given day
+     */
+    public void writeFlightpathJson(List<MoveBuffer> fleetMoves) {
+        String fileName = getFlightpathFileName();
+        long start = System.nanoTime();
+
+        try (FlightpathStream stream = openFlightpathStream(fleetMoves.size() > 1)) {
+            for (MoveBuffer moves : fleetMoves) {
+                stream.setDroneId(moves.getDroneId());
+                moves.forEachMove(stream);
+            }
+        } catch (IOException | UncheckedIOException e) {
             System.err.println("Fatal error: Unable to generate flightpath json");
             e.printStackTrace();
         }
+        recordWrite(start, fileName);
         System.out.println(fileName + " created");
     }
 
@@ -77,76 +254,161 @@ public class ResultsWriter {
      */
     public void writeDeliveriesJson(List<Order> orders) {
         String fileName = "deliveries-" + this.year + "-" + this.month + "-" + this.day + ".json";
+        long start = System.nanoTime();
 
-        //Creating a JSONArray object
-        JsonArray jsonArray = new JsonArray();
-
-        //Creating a JSONObject object
-        for (Order order : orders) {
-            JsonObject jsonObject = new JsonObject();
-            jsonObject.addProperty("orderNo", order.getOrderNo());
-            jsonObject.addProperty("outcome", order.getOrderOutcome());
-            jsonObject.addProperty("costInPence", order.getPriceTotalInPence());
-            jsonArray.add(jsonObject);
-        }
-
-        try {
-            FileWriter file = new FileWriter(RESULT_FOLDER + fileName);
-            file.write(jsonArray.toString());
-            file.close();
+        try (JsonWriter jsonWriter = new JsonWriter(Files.newBufferedWriter(Paths.get(this.resultFolder + fileName)))) {
+            jsonWriter.beginArray();
+            for (Order order : orders) {
+                jsonWriter.beginObject();
+                jsonWriter.name("orderNo").value(order.getOrderNo());
+                jsonWriter.name("outcome").value(order.getOrderOutcome());
+                jsonWriter.name("costInPence").value(order.getPriceTotalInPence());
+                jsonWriter.endObject();
+            }
+            jsonWriter.endArray();
         } catch (IOException e) {
             System.err.println("Fatal error: Unable to generate deliveries json");
             e.printStackTrace();
         }
+        recordWrite(start, fileName);
         System.out.println(fileName + " created");
     }
 
 
     /**
-     * Create the geojson file to render the flight path of drone on GeoJson map
-     * @param allFlightpath all flightpath of the day
-     * @param landmarks all landmarks retrieved from all.geojson, such as
+     * Create the geojson file to render the flight path of drone on GeoJson map.
+     * The flight path is written point by point and the landmarks are copied as fetched,
+     * without building the whole document in memory
+     * @param landmarkFeatures the features of all.geojson as fetched, such as
      *                  blue and yellow markers(restaurants and appleton tower),
      *                  semi-transparent red polygons(no-fly zones),
      *                  outer grey rectangle(central area)
-     *
+     * @param fleetMoves the moves of every drone in a given day, each drone is drawn as its own line
+     *                   tagged with the id of the drone if there is more than one
      */
-    public void writeDroneGeojson(List<Feature> landmarks, List<Flightpath> allFlightpath) {
-        String flightpathJson;
+    public void writeDroneGeojson(String landmarkFeatures, List<MoveBuffer> fleetMoves) {
         String fileName = "drone-" + this.year + "-" + this.month + "-" + this.day + ".geojson";
+        long start = System.nanoTime();
 
-        if (allFlightpath.size() == 0) {
-            flightpathJson = "";
-        } else {
-            // convert flightpath objects to linestring
-            List<Point> flightpathPoints = new ArrayList<>();
-            flightpathPoints.add(Point.fromLngLat(allFlightpath.get(0).fromLongitude, allFlightpath.get(0).fromLatitude));
-
-            for (Flightpath fp : allFlightpath){
-                flightpathPoints.add(Point.fromLngLat(fp.toLongitude, fp.toLatitude));
-            }
-            LineString flightpathLineString = LineString.fromLngLats(flightpathPoints);
-            Feature flightpathFeature = Feature.fromGeometry(flightpathLineString);
+        try (Writer writer = Files.newBufferedWriter(Paths.get(this.resultFolder + fileName))) {
+            if (fleetMoves.stream().anyMatch(moves -> moves.size() > 0)) {
+                JsonWriter jsonWriter = new JsonWriter(writer);
+                jsonWriter.beginObject();
+                jsonWriter.name("type").value("FeatureCollection");
+                jsonWriter.name("features").beginArray();
 
-            // convert flightpath to one feature in a feature collection
-            List<Feature> flightpathList = new ArrayList<>();
-            flightpathList.add(flightpathFeature);
-            flightpathList.addAll(landmarks);
+                for (MoveBuffer moves : fleetMoves) {
+                    if (moves.size() == 0) {
+                        continue;
+                    }
+                    // members in the order mapbox wrote them, every Feature has its properties
+                    jsonWriter.beginObject();
+                    jsonWriter.name("type").value("Feature");
+                    jsonWriter.name("geometry").beginObject();
+                    jsonWriter.name("type").value("LineString");
+                    jsonWriter.name("coordinates").beginArray();
+                    writeFlightLine(jsonWriter, moves);
+                    jsonWriter.endArray();
+                    jsonWriter.endObject();
+                    jsonWriter.name("properties").beginObject();
+                    if (fleetMoves.size() > 1) {
+                        jsonWriter.name("droneId").value(moves.getDroneId());
+                    }
+                    jsonWriter.endObject();
+                    jsonWriter.endObject();
+                }
 
-            FeatureCollection flightpathFC = FeatureCollection.fromFeatures(flightpathList);
+                if (!landmarkFeatures.isEmpty()) {
+                    jsonWriter.flush();
+                    writer.write(',');
+                    writer.write(landmarkFeatures);
+                }
 
-            flightpathJson = flightpathFC.toJson();
+                jsonWriter.endArray();
+                jsonWriter.endObject();
+                jsonWriter.flush();
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Fatal error: Unable to generate Drone Geojson");
+            e.printStackTrace();
         }
+        recordWrite(start, fileName);
+        System.out.println(fileName + " created");
+    }
 
-        // write the geojson file
-        try {
-            FileWriter file = new FileWriter(RESULT_FOLDER + fileName);
-            file.write(flightpathJson);
-            file.close();
+    /**
+     * Write the metrics of the day as metrics-YYYY-MM-DD.json and as Prometheus text in metrics-YYYY-MM-DD.prom
+     * @param metrics the metrics of the day
+     */
+    public void writeMetrics(Metrics metrics) {
+        String fileName = "metrics-" + this.year + "-" + this.month + "-" + this.day;
+
+        try (Writer json = Files.newBufferedWriter(Paths.get(this.resultFolder + fileName + ".json"));
+             Writer prometheus = Files.newBufferedWriter(Paths.get(this.resultFolder + fileName + ".prom"))) {
+            metrics.writeJson(json);
+            metrics.writePrometheus(prometheus);
         } catch (IOException e) {
-            System.err.println("Fatal error: Unable to generate Drone Geojson");
+            System.err.println("Fatal error: Unable to generate metrics");
             e.printStackTrace();
         }
-        System.out.println(fileName + " created");
+        System.out.println(fileName + ".json and .prom created");
+    }
+
+    private void writeFlightLine(JsonWriter jsonWriter, MoveBuffer moves) throws IOException {
+        double tolerance = this.geojsonOptions.tolerance();
+
+        if (tolerance < 0) {
+            // every point, straight from the buffer
+            boolean[] first = {true};
+            moves.forEachMove((orderNo, fromLng, fromLat, angle, toLng, toLat, ticks) -> {
+                try {
+                    if (first[0]) {
+                        writePoint(jsonWriter, fromLng, fromLat);
+                        first[0] = false;
+                    }
+                    writePoint(jsonWriter, toLng, toLat);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            return;
+        }
+
+        double[] points = new double[(moves.size() + 1) * 2];
+        int[] count = {0};
+        moves.forEachMove((orderNo, fromLng, fromLat, angle, toLng, toLat, ticks) -> {
+            if (count[0] == 0) {
+                points[0] = fromLng;
+                points[1] = fromLat;
+                count[0] = 1;
+            }
+            points[count[0] * 2] = toLng;
+            points[count[0] * 2 + 1] = toLat;
+            count[0]++;
+        });
+
+        int kept = PathSimplifier.mergeCollinear(points, count[0]);
+        if (tolerance > 0) {
+            kept = PathSimplifier.douglasPeucker(points, kept, tolerance);
+        }
+        for (int i = 0; i < kept; i++) {
+            writePoint(jsonWriter, points[i * 2], points[i * 2 + 1]);
+        }
+    }
+
+    private void writePoint(JsonWriter jsonWriter, double lng, double lat) throws IOException {
+        jsonWriter.beginArray();
+        jsonWriter.value(roundCoordinate(lng));
+        jsonWriter.value(roundCoordinate(lat));
+        jsonWriter.endArray();
+    }
+
+    private double roundCoordinate(double value) {
+        int precision = this.geojsonOptions.precision();
+        if (precision < 0) {
+            return value;
+        }
+        double scale = Math.pow(10, precision);
+        return Math.round(value * scale) / scale;
     }
 }
@@ -0,0 +1,182 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of planned routes keyed by start, goal and the fingerprint of the no-fly-zone and central-area geometry,
+ * and by the heading of the drone for the planners whose routes depend on it.
+ * Routes are kept in an in-memory LRU and in an on-disk store that survives between runs,
+ * one file per route. The cache is thread-safe and can be shared by all days of a run.
+ */
+public class RouteCache {
+    private final Path directory;
+    private final Map<String, List<LngLat.Direction>> memory;
+    private int hits;
+    private int misses;
+
+    /**
+     * Create the cache
+     * @param directory the directory of the on-disk store, or null to keep routes in memory only
+     * @param capacity the maximum number of routes kept in memory
+     */
+    public RouteCache(Path directory, int capacity) {
+        this.directory = directory;
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<LngLat.Direction>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**@return the number of routes served from the cache */
+    public synchronized int getHits() {
+        return this.hits;
+    }
+
+    /**@return the number of routes that had to be planned */
+    public synchronized int getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * Wrap a planner so that its routes are served from and stored into this cache
+     * @param delegate the planner that plans the routes on a cache miss
+     * @param geometryFingerprint the fingerprint of the geometry the delegate plans on
+     * @return the caching planner
+     */
+    public RoutePlanner wrap(RoutePlanner delegate, long geometryFingerprint) {
+        return new RoutePlanner() {
+            @Override
+            public List<LngLat.Direction> planRoute(LngLat start, LngLat goal) {
+                return plan(delegate, geometryFingerprint, start, goal, null);
+            }
+
+            @Override
+            public List<LngLat.Direction> planRoute(LngLat start, LngLat goal, LngLat.Direction heading) {
+                return plan(delegate, geometryFingerprint, start, goal, heading);
+            }
+
+            @Override
+            public boolean dependsOnHeading() {
+                return delegate.dependsOnHeading();
+            }
+        };
+    }
+
+    private List<LngLat.Direction> plan(RoutePlanner delegate, long geometryFingerprint, LngLat start,
+                                        LngLat goal, LngLat.Direction heading) {
+        String key = delegate.getClass().getSimpleName() + " " + start.getLng() + "," + start.getLat() +
+                " " + goal.getLng() + "," + goal.getLat() + " " + Long.toHexString(geometryFingerprint);
+        if (delegate.dependsOnHeading()) {
+            // a drone without a heading has not moved yet, which is heading East
+            if (heading == null) {
+                heading = LngLat.Direction.East;
+            }
+            key += " " + heading.name();
+        }
+
+        List<LngLat.Direction> route = lookup(key);
+        if (route == null) {
+            route = heading == null ? delegate.planRoute(start, goal) : delegate.planRoute(start, goal, heading);
+            if (route != null) {
+                store(key, route);
+            }
+        }
+        return route;
+    }
+
+    private synchronized List<LngLat.Direction> lookup(String key) {
+        List<LngLat.Direction> route = this.memory.get(key);
+        if (route == null) {
+            route = readFromDisk(key);
+            if (route != null) {
+                this.memory.put(key, route);
+            }
+        }
+
+        if (route == null) {
+            this.misses++;
+        } else {
+            this.hits++;
+        }
+        return route;
+    }
+
+    private synchronized void store(String key, List<LngLat.Direction> route) {
+        List<LngLat.Direction> copy = List.copyOf(route);
+        this.memory.put(key, copy);
+        writeToDisk(key, copy);
+    }
+
+    private Path fileOf(String key) {
+        // 64-bit FNV-1a of the key, the key itself is stored in the file to detect collisions
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        return this.directory.resolve(Long.toHexString(hash) + ".route");
+    }
+
+    private List<LngLat.Direction> readFromDisk(String key) {
+        if (this.directory == null) {
+            return null;
+        }
+        Path file = fileOf(key);
+        if (!Files.exists(file)) {
+            return null;
+        }
+
+        try {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            if (lines.size() != 2 || !lines.get(0).equals(key)) {
+                return null;
+            }
+
+            List<LngLat.Direction> route = new ArrayList<>();
+            LngLat.Direction[] directions = LngLat.Direction.values();
+            if (!lines.get(1).isEmpty()) {
+                for (String ordinal : lines.get(1).split(",")) {
+                    route.add(directions[Integer.parseInt(ordinal)]);
+                }
+            }
+            return List.copyOf(route);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Unable to read cached route " + file + ", planning it again");
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, List<LngLat.Direction> route) {
+        if (this.directory == null) {
+            return;
+        }
+
+        StringBuilder ordinals = new StringBuilder();
+        for (LngLat.Direction direction : route) {
+            if (ordinals.length() > 0) {
+                ordinals.append(',');
+            }
+            ordinals.append(direction.ordinal());
+        }
+
+        try {
+            Files.createDirectories(this.directory);
+            Path file = fileOf(key);
+            Path temp = Files.createTempFile(this.directory, "route", ".tmp");
+            Files.writeString(temp, key + "\n" + ordinals + "\n", StandardCharsets.UTF_8);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Unable to store route in " + this.directory);
+            e.printStackTrace();
+        }
+    }
+}
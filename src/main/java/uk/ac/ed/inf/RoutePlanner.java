@@ -0,0 +1,58 @@
+package uk.ac.ed.inf;
+
+import java.util.List;
+
+/**
+ * A planner that computes the whole route of the drone to a goal before the drone flies
+ */
+public interface RoutePlanner {
+
+    /**
+     * Plan the moves that bring the drone from the start position close to the goal
+     * @param start the position the drone starts from
+     * @param goal the position the drone wants to reach
+     * @return the directions of every move in flying order, or null if no route could be found
+     */
+    List<LngLat.Direction> planRoute(LngLat start, LngLat goal);
+
+    /**
+     * Plan the moves that bring the drone from the start position close to the goal,
+     * for a drone whose last move was in the given heading
+     * @param start the position the drone starts from
+     * @param goal the position the drone wants to reach
+     * @param heading the direction of the last move of the drone
+     * @return the directions of every move in flying order, or null if no route could be found
+     */
+    default List<LngLat.Direction> planRoute(LngLat start, LngLat goal, LngLat.Direction heading) {
+        return planRoute(start, goal);
+    }
+
+    /**@return true if the route depends on the heading of the drone, not only on start and goal */
+    default boolean dependsOnHeading() {
+        return false;
+    }
+
+    /**
+     * The planners a day can be delivered with
+     */
+    enum Kind {
+        /** replay the greedy navigator, see GreedyPlanner */
+        GREEDY,
+        /** search the move lattice, see AStarPlanner */
+        ASTAR,
+        /** fly along the shortest path on the visibility graph of the no-fly zones, see VisibilityGraphPlanner */
+        VISIBILITY;
+
+        /**
+         * @param dataParser the map to plan on
+         * @return a new planner of this kind
+         */
+        public RoutePlanner create(DataParser dataParser) {
+            return switch (this) {
+                case GREEDY -> new GreedyPlanner(dataParser);
+                case ASTAR -> new AStarPlanner(dataParser);
+                case VISIBILITY -> new VisibilityGraphPlanner(dataParser);
+            };
+        }
+    }
+}
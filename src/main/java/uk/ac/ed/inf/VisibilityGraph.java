@@ -0,0 +1,255 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+
+/**
+ * Prepared visibility graph of the no-fly zones, for shortest paths that go around the zones.
+ * The nodes are the convex vertices of every zone pushed out by CLEARANCE, Appleton Tower and the restaurants;
+ * two nodes are joined when the straight line between them crosses no zone, weighted by its length.
+ * Reflex vertices are left out as no shortest path bends around them. The graph is built once per map,
+ * a path query only adds the visibility of its two ends, so its cost depends on the number of zone vertices
+ * and not on the length of the path. The graph is immutable and can be shared between threads.
+ */
+public class VisibilityGraph {
+    /** distance between a node and the zone vertex it stands for, leaving room for the drift of the moves */
+    public static final double CLEARANCE = LngLat.LENGTH_OF_MOVE * 1.5;
+
+    private final NoFlyZoneIndex noFlyZoneIndex;
+    private final CentralArea centralArea;
+
+    /* node positions and whether they are in the central area */
+    private final double[] lng;
+    private final double[] lat;
+    private final boolean[] inCentralArea;
+
+    /* adjacency: neighbourStart[n] .. neighbourStart[n + 1] indexes neighbours, lengths and whether
+       the edge meets the boundary of the central area (CSR layout) */
+    private final int[] neighbourStart;
+    private final int[] neighbours;
+    private final double[] lengths;
+    private final boolean[] meetsCentralArea;
+
+    /**
+     * Build the graph
+     * @param noFlyZones the no-fly zones
+     * @param noFlyZoneIndex the index of the same zones
+     * @param centralArea the central area, a path to a goal outside it never re-enters it
+     * @param fixedPoints positions often planned from or to, such as Appleton Tower and the restaurants
+     */
+    public VisibilityGraph(List<Polygon> noFlyZones, NoFlyZoneIndex noFlyZoneIndex, CentralArea centralArea,
+                           List<LngLat> fixedPoints) {
+        this.noFlyZoneIndex = noFlyZoneIndex;
+        this.centralArea = centralArea;
+
+        List<double[]> nodes = new ArrayList<>();
+        for (Polygon zone : noFlyZones) {
+            addCorners(zone.coordinates().get(0), nodes);
+        }
+        for (LngLat point : fixedPoints) {
+            nodes.add(new double[]{point.getLng(), point.getLat()});
+        }
+
+        int n = nodes.size();
+        this.lng = new double[n];
+        this.lat = new double[n];
+        this.inCentralArea = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            this.lng[i] = nodes.get(i)[0];
+            this.lat[i] = nodes.get(i)[1];
+            this.inCentralArea[i] = centralArea.contains(this.lng[i], this.lat[i]);
+        }
+
+        // every pair is tested once, the edge is stored in both directions
+        int[] degree = new int[n];
+        List<int[]> edges = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                if (!noFlyZoneIndex.intersects(this.lng[i], this.lat[i], this.lng[j], this.lat[j])) {
+                    edges.add(new int[]{i, j});
+                    degree[i]++;
+                    degree[j]++;
+                }
+            }
+        }
+
+        this.neighbourStart = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            this.neighbourStart[i + 1] = this.neighbourStart[i] + degree[i];
+        }
+        this.neighbours = new int[this.neighbourStart[n]];
+        this.lengths = new double[this.neighbourStart[n]];
+        this.meetsCentralArea = new boolean[this.neighbourStart[n]];
+        int[] fill = Arrays.copyOf(this.neighbourStart, n);
+        for (int[] edge : edges) {
+            int i = edge[0];
+            int j = edge[1];
+            double length = Math.hypot(this.lng[i] - this.lng[j], this.lat[i] - this.lat[j]);
+            boolean meets = centralArea.crossesBoundary(this.lng[i], this.lat[i], this.lng[j], this.lat[j]);
+            this.neighbours[fill[i]] = j;
+            this.lengths[fill[i]] = length;
+            this.meetsCentralArea[fill[i]++] = meets;
+            this.neighbours[fill[j]] = i;
+            this.lengths[fill[j]] = length;
+            this.meetsCentralArea[fill[j]++] = meets;
+        }
+    }
+
+    /**
+     * Add a node outside every convex vertex of a zone, on the bisector of its two edges,
+     * CLEARANCE away from both edges
+     * @param ring the closed ring of the zone
+     * @param nodes the nodes to add to, as lng, lat pairs
+     */
+    private static void addCorners(List<Point> ring, List<double[]> nodes) {
+        int n = ring.size() - 1;
+        if (n < 3) {
+            return;
+        }
+        double area = 0;
+        for (int i = 0; i < n; i++) {
+            Point p = ring.get(i);
+            Point q = ring.get(i + 1);
+            area += p.longitude() * q.latitude() - q.longitude() * p.latitude();
+        }
+        // the outward normal is on the right of the edges of a counter-clockwise ring
+        double orientation = Math.signum(area);
+
+        for (int i = 0; i < n; i++) {
+            Point prev = ring.get((i + n - 1) % n);
+            Point vertex = ring.get(i);
+            Point next = ring.get(i + 1);
+            double dx1 = vertex.longitude() - prev.longitude();
+            double dy1 = vertex.latitude() - prev.latitude();
+            double dx2 = next.longitude() - vertex.longitude();
+            double dy2 = next.latitude() - vertex.latitude();
+            double length1 = Math.hypot(dx1, dy1);
+            double length2 = Math.hypot(dx2, dy2);
+            if (length1 == 0 || length2 == 0 || (dx1 * dy2 - dy1 * dx2) * orientation <= 0) {
+                continue;
+            }
+
+            double nx1 = dy1 / length1 * orientation;
+            double ny1 = -dx1 / length1 * orientation;
+            double nx2 = dy2 / length2 * orientation;
+            double ny2 = -dx2 / length2 * orientation;
+            double bisectorLength = Math.hypot(nx1 + nx2, ny1 + ny2);
+            double bx = (nx1 + nx2) / bisectorLength;
+            double by = (ny1 + ny2) / bisectorLength;
+            // a miter, cut short at sharp spikes
+            double distance = CLEARANCE / Math.max(bx * nx1 + by * ny1, 0.5);
+            nodes.add(new double[]{vertex.longitude() + bx * distance, vertex.latitude() + by * distance});
+        }
+    }
+
+    /**@return the number of nodes */
+    public int getNodeCount() {
+        return this.lng.length;
+    }
+
+    /**@return the number of edges, each counted once */
+    public int getEdgeCount() {
+        return this.neighbours.length / 2;
+    }
+
+    /**
+     * Find the shortest path from start to goal that crosses no zone.
+     * For a goal outside the central area, a path that has left the central area never re-enters it,
+     * as LngLat.nextDirection. Dijkstra runs on arrays without a heap, as the graph is dense.
+     * @param start the start of the path
+     * @param goal the end of the path
+     * @return the corners of the path from start to goal, or null if the goal cannot be reached
+     */
+    public List<LngLat> findPath(LngLat start, LngLat goal) {
+        int n = this.lng.length;
+        int startNode = n;
+        int goalNode = n + 1;
+        boolean goalOutside = !this.centralArea.contains(goal.getLng(), goal.getLat());
+        boolean startInside = this.centralArea.contains(start.getLng(), start.getLat());
+
+        boolean startStaysOut = goalOutside && !startInside;
+
+        if (!this.noFlyZoneIndex.intersects(start.getLng(), start.getLat(), goal.getLng(), goal.getLat()) &&
+                !(startStaysOut && entersCentralArea(start.getLng(), start.getLat(), goal.getLng(), goal.getLat()))) {
+            return List.of(start, goal);
+        }
+
+        // the two ends are only joined to the nodes they see
+        boolean[] seenFromStart = new boolean[n];
+        boolean[] seenFromGoal = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            seenFromStart[i] = !this.noFlyZoneIndex.intersects(start.getLng(), start.getLat(), this.lng[i], this.lat[i]);
+            seenFromGoal[i] = !this.noFlyZoneIndex.intersects(this.lng[i], this.lat[i], goal.getLng(), goal.getLat());
+        }
+
+        double[] distance = new double[n + 2];
+        int[] previous = new int[n + 2];
+        boolean[] done = new boolean[n + 2];
+        Arrays.fill(distance, Double.POSITIVE_INFINITY);
+        Arrays.fill(previous, -1);
+        distance[startNode] = 0;
+
+        while (true) {
+            int node = -1;
+            for (int i = 0; i < n + 2; i++) {
+                if (!done[i] && (node < 0 || distance[i] < distance[node])) {
+                    node = i;
+                }
+            }
+            if (node < 0 || distance[node] == Double.POSITIVE_INFINITY) {
+                return null;
+            }
+            if (node == goalNode) {
+                break;
+            }
+            done[node] = true;
+
+            double nodeLng = node == startNode ? start.getLng() : this.lng[node];
+            double nodeLat = node == startNode ? start.getLat() : this.lat[node];
+            // outside the central area, only edges that keep out of it are followed
+            boolean stayOut = node == startNode ? startStaysOut : goalOutside && !this.inCentralArea[node];
+
+            if (node == startNode) {
+                for (int i = 0; i < n; i++) {
+                    if (seenFromStart[i] && !(stayOut && entersCentralArea(nodeLng, nodeLat, this.lng[i], this.lat[i]))) {
+                        relax(distance, previous, node, i, Math.hypot(this.lng[i] - nodeLng, this.lat[i] - nodeLat));
+                    }
+                }
+                continue;
+            }
+            for (int k = this.neighbourStart[node]; k < this.neighbourStart[node + 1]; k++) {
+                int neighbour = this.neighbours[k];
+                if (!(stayOut && (this.meetsCentralArea[k] || this.inCentralArea[neighbour]))) {
+                    relax(distance, previous, node, neighbour, this.lengths[k]);
+                }
+            }
+            if (seenFromGoal[node] && !(stayOut && entersCentralArea(nodeLng, nodeLat, goal.getLng(), goal.getLat()))) {
+                relax(distance, previous, node, goalNode,
+                        Math.hypot(goal.getLng() - nodeLng, goal.getLat() - nodeLat));
+            }
+        }
+
+        List<LngLat> path = new ArrayList<>();
+        for (int node = goalNode; node >= 0; node = previous[node]) {
+            path.add(node == goalNode ? goal : node == startNode ? start : new LngLat(this.lng[node], this.lat[node]));
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    private boolean entersCentralArea(double fromLng, double fromLat, double toLng, double toLat) {
+        return this.centralArea.contains(toLng, toLat) || this.centralArea.crossesBoundary(fromLng, fromLat, toLng, toLat);
+    }
+
+    private static void relax(double[] distance, int[] previous, int from, int to, double length) {
+        if (distance[from] + length < distance[to]) {
+            distance[to] = distance[from] + length;
+            previous[to] = from;
+        }
+    }
+}
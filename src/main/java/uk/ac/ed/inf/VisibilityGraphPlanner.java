@@ -0,0 +1,94 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Plans the shortest path around the no-fly zones on the visibility graph of the map,
+ * then flies along it in moves of the 16 compass directions. Every move heads for the next corner of the path;
+ * a move that would cross a zone, or re-enter the central area on the way to a goal outside it, is replaced by
+ * the nearest direction that does not, at most a right angle away. The planner keeps no state and is thread-safe.
+ */
+public class VisibilityGraphPlanner implements RoutePlanner {
+    private static final LngLat.Direction[] DIRECTIONS = Arrays.copyOf(LngLat.Direction.values(), 16);
+    /** directions tried on either side of the heading before giving up, up to 90 degrees */
+    private static final int MAX_DEVIATION = 4;
+
+    private final DataParser dataParser;
+
+    /**
+     * Create the planner
+     * @param dataParser the map to plan on, its visibility graph is built on first use
+     */
+    public VisibilityGraphPlanner(DataParser dataParser) {
+        this.dataParser = dataParser;
+    }
+
+    /**
+     * Plan the moves along the shortest path from start to a position close to the goal
+     * @param start the position the drone starts from
+     * @param goal the position the drone wants to reach
+     * @return the directions of every move, or null if there is no path or its moves do not reach the goal
+     * within a full battery
+     */
+    @Override
+    public List<LngLat.Direction> planRoute(LngLat start, LngLat goal) {
+        List<LngLat> path = this.dataParser.getVisibilityGraph().findPath(start, goal);
+        if (path == null) {
+            return null;
+        }
+        NoFlyZoneIndex noFlyZoneIndex = this.dataParser.getNoFlyZoneIndex();
+        CentralArea centralArea = this.dataParser.getCentralAreaPolygon();
+        boolean goalOutside = !centralArea.contains(goal.getLng(), goal.getLat());
+
+        List<LngLat.Direction> route = new ArrayList<>();
+        LngLat pos = start;
+        int corner = 1;
+        while (!pos.closeTo(goal)) {
+            if (route.size() >= Drone.BATTERY) {
+                return null;
+            }
+            // a corner is passed once the drone is within a move of it
+            LngLat target = path.get(corner);
+            if (corner < path.size() - 1 && pos.distanceTo(target) < LngLat.LENGTH_OF_MOVE) {
+                corner++;
+                continue;
+            }
+
+            boolean stayOut = goalOutside && !centralArea.contains(pos.getLng(), pos.getLat());
+            LngLat.Direction direction = legalDirectionTowards(pos, target, noFlyZoneIndex, centralArea, stayOut);
+            if (direction == null) {
+                return null;
+            }
+            route.add(direction);
+            pos = pos.nextPosition(direction);
+        }
+        return route;
+    }
+
+    /**
+     * Find the compass direction nearest to the bearing of the target whose move is legal
+     * @return the direction, or null if none is legal within MAX_DEVIATION steps of the bearing
+     */
+    private static LngLat.Direction legalDirectionTowards(LngLat pos, LngLat target, NoFlyZoneIndex noFlyZoneIndex,
+                                                          CentralArea centralArea, boolean stayOut) {
+        double bearing = Math.toDegrees(Math.atan2(target.getLat() - pos.getLat(), target.getLng() - pos.getLng()));
+        double steps = (bearing < 0 ? bearing + 360 : bearing) / 22.5;
+        int nearest = (int) Math.round(steps);
+        // try the closer neighbour of the nearest direction first
+        int side = steps >= nearest ? 1 : -1;
+
+        for (int deviation = 0; deviation <= MAX_DEVIATION; deviation++) {
+            for (int sign : deviation == 0 ? new int[]{1} : new int[]{side, -side}) {
+                LngLat.Direction direction = DIRECTIONS[Math.floorMod(nearest + sign * deviation, 16)];
+                LngLat next = pos.nextPosition(direction);
+                if (!noFlyZoneIndex.intersects(pos.getLng(), pos.getLat(), next.getLng(), next.getLat()) &&
+                        !(stayOut && centralArea.contains(next.getLng(), next.getLat()))) {
+                    return direction;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,506 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Seeded generator of synthetic days at any scale, written in the schemas of the web server.
+ * <p>
+ * The files are laid out as the endpoints of the server, so the directory can be used as a base address
+ * with a file: URL: orders/YYYY-MM-DD, restaurants, restaurants.geojson, no-fly-zones.geojson, centralArea
+ * and all.geojson. The same seed and settings always give the same bytes.
+ * <p>
+ * Restaurants are scattered around Appleton Tower, each with its own uniquely named pizzas. No-fly zones are
+ * star-shaped polygons, each inside its own cell of a grid, so that they never overlap; cells holding
+ * Appleton Tower or a restaurant are left free. A given fraction of the orders is invalid, spread evenly over
+ * every invalid outcome the validator detects.
+ */
+public class WorkloadGenerator {
+    /** the outcomes of the invalid orders, in the order they are handed out */
+    private static final Order.OrderOutcome[] INVALID_OUTCOMES = {
+            Order.OrderOutcome.InvalidCardNumber,
+            Order.OrderOutcome.InvalidExpiryDate,
+            Order.OrderOutcome.InvalidCvv,
+            Order.OrderOutcome.InvalidTotal,
+            Order.OrderOutcome.InvalidPizzaNotDefined,
+            Order.OrderOutcome.InvalidPizzaCount,
+            Order.OrderOutcome.InvalidPizzaCombinationMultipleSuppliers
+    };
+
+    /* the area the restaurants and zones are scattered in */
+    private static final double MIN_LNG = -3.215;
+    private static final double MAX_LNG = -3.160;
+    private static final double MIN_LAT = 55.934;
+    private static final double MAX_LAT = 55.956;
+    /** restaurants and Appleton Tower keep at least this distance from every zone */
+    private static final double CLEARANCE = 0.0006;
+
+    private final long seed;
+    private int orderCount = 5000;
+    private double invalidFraction = 0.1;
+    private int restaurantCount = 16;
+    private int zoneCount = 32;
+    private int zoneVertices = 8;
+
+    /**
+     * Create the generator with the default settings, 100 times the orders of a real day
+     * @param seed the seed of every random choice
+     */
+    public WorkloadGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @param orderCount the number of orders of the day
+     */
+    public void setOrderCount(int orderCount) {
+        if (orderCount < 0) {
+            throw new IllegalArgumentException("The number of orders cannot be negative");
+        }
+        this.orderCount = orderCount;
+    }
+
+    /**
+     * @param invalidFraction the fraction of invalid orders, from 0 to 1
+     */
+    public void setInvalidFraction(double invalidFraction) {
+        if (!(invalidFraction >= 0 && invalidFraction <= 1)) {
+            throw new IllegalArgumentException("The fraction of invalid orders must be between 0 and 1");
+        }
+        this.invalidFraction = invalidFraction;
+    }
+
+    /**
+     * @param restaurantCount the number of restaurants, at least two so that orders can mix suppliers
+     */
+    public void setRestaurantCount(int restaurantCount) {
+        if (restaurantCount < 2) {
+            throw new IllegalArgumentException("At least two restaurants are required");
+        }
+        this.restaurantCount = restaurantCount;
+    }
+
+    /**
+     * @param zoneCount the number of no-fly zones, 0 for none
+     * @param zoneVertices the number of vertices of every zone, at least 3
+     */
+    public void setZones(int zoneCount, int zoneVertices) {
+        if (zoneCount < 0) {
+            throw new IllegalArgumentException("The number of zones cannot be negative");
+        }
+        if (zoneVertices < 3) {
+            throw new IllegalArgumentException("Zones need at least 3 vertices");
+        }
+        this.zoneCount = zoneCount;
+        this.zoneVertices = zoneVertices;
+    }
+
+    /**@return the number of invalid orders of the day */
+    public int getInvalidCount() {
+        return (int) Math.round(this.orderCount * this.invalidFraction);
+    }
+
+    /**
+     * Write every document of a day
+     * @param directory the directory standing for the base address of the server
+     * @param date the date of the orders
+     * @throws UncheckedIOException if a file cannot be written
+     */
+    public void write(Path directory, LocalDate date) {
+        Random random = new Random(this.seed);
+        List<SyntheticRestaurant> restaurants = generateRestaurants(random);
+        List<double[][]> zones = generateZones(random, restaurants);
+
+        try {
+            Files.createDirectories(directory.resolve("orders"));
+            writeRestaurants(directory.resolve("restaurants"), restaurants);
+            writeRestaurantLocs(directory.resolve("restaurants.geojson"), restaurants);
+            writeNoFlyZones(directory.resolve("no-fly-zones.geojson"), zones);
+            writeCentralArea(directory.resolve("centralArea"));
+            writeLandmarks(directory.resolve("all.geojson"));
+            writeOrders(directory.resolve("orders").resolve(date.toString()), random, date, restaurants);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** A generated restaurant with its pizzas and prices */
+    private record SyntheticRestaurant(String name, double lng, double lat, String[] pizzas, int[] prices) {}
+
+    private List<SyntheticRestaurant> generateRestaurants(Random random) {
+        List<SyntheticRestaurant> restaurants = new ArrayList<>();
+        for (int r = 0; r < this.restaurantCount; r++) {
+            int menuSize = 2 + random.nextInt(3);
+            String[] pizzas = new String[menuSize];
+            int[] prices = new int[menuSize];
+            for (int p = 0; p < menuSize; p++) {
+                pizzas[p] = "Pizza " + (p + 1) + " of Restaurant " + (r + 1);
+                prices[p] = 800 + 100 * random.nextInt(9);
+            }
+            double lng;
+            double lat;
+            do {
+                lng = MIN_LNG + random.nextDouble() * (MAX_LNG - MIN_LNG);
+                lat = MIN_LAT + random.nextDouble() * (MAX_LAT - MIN_LAT);
+            } while (Math.hypot(lng - Drone.APPLETON_LONGITUDE, lat - Drone.APPLETON_LATITUDE) < CLEARANCE * 2);
+            restaurants.add(new SyntheticRestaurant("Restaurant " + (r + 1), lng, lat, pizzas, prices));
+        }
+        return restaurants;
+    }
+
+    /**
+     * Place every zone in its own free cell of a grid over the area
+     * @return the closed rings of the zones, longitude and latitude of every vertex
+     */
+    private List<double[][]> generateZones(Random random, List<SyntheticRestaurant> restaurants) {
+        // enough cells for the zones even if a restaurant or Appleton Tower blocks some of them
+        int cells = (this.zoneCount + this.restaurantCount + 1) * 2;
+        int columns = (int) Math.ceil(Math.sqrt(cells * (MAX_LNG - MIN_LNG) / (MAX_LAT - MIN_LAT)));
+        int rows = (int) Math.ceil((double) cells / columns);
+        double cellWidth = (MAX_LNG - MIN_LNG) / columns;
+        double cellHeight = (MAX_LAT - MIN_LAT) / rows;
+        double radius = Math.min(cellWidth, cellHeight) / 2 - CLEARANCE;
+        if (radius <= LngLat.LENGTH_OF_MOVE) {
+            throw new IllegalArgumentException("Too many zones for the area");
+        }
+
+        List<Integer> freeCells = new ArrayList<>();
+        for (int cell = 0; cell < columns * rows; cell++) {
+            double centerLng = MIN_LNG + (cell % columns + 0.5) * cellWidth;
+            double centerLat = MIN_LAT + (cell / columns + 0.5) * cellHeight;
+            boolean free = !near(centerLng, centerLat, Drone.APPLETON_LONGITUDE, Drone.APPLETON_LATITUDE,
+                    cellWidth, cellHeight);
+            for (SyntheticRestaurant restaurant : restaurants) {
+                free &= !near(centerLng, centerLat, restaurant.lng(), restaurant.lat(), cellWidth, cellHeight);
+            }
+            if (free) {
+                freeCells.add(cell);
+            }
+        }
+        if (freeCells.size() < this.zoneCount) {
+            throw new IllegalArgumentException("Too many zones for the area");
+        }
+        Collections.shuffle(freeCells, random);
+
+        List<double[][]> zones = new ArrayList<>();
+        for (int z = 0; z < this.zoneCount; z++) {
+            int cell = freeCells.get(z);
+            double centerLng = MIN_LNG + (cell % columns + 0.5) * cellWidth;
+            double centerLat = MIN_LAT + (cell / columns + 0.5) * cellHeight;
+
+            // star-shaped: vertices at increasing angles, so the ring never crosses itself
+            double[][] ring = new double[this.zoneVertices + 1][];
+            double start = random.nextDouble() * 2 * Math.PI;
+            for (int v = 0; v < this.zoneVertices; v++) {
+                double angle = start + 2 * Math.PI * v / this.zoneVertices;
+                double r = radius * (0.5 + 0.5 * random.nextDouble());
+                ring[v] = new double[]{centerLng + r * Math.cos(angle), centerLat + r * Math.sin(angle)};
+            }
+            ring[this.zoneVertices] = ring[0];
+            zones.add(ring);
+        }
+        return zones;
+    }
+
+    /**@return true if a point is inside the cell centred on the given centre, grown by the clearance */
+    private static boolean near(double centerLng, double centerLat, double lng, double lat,
+                                double cellWidth, double cellHeight) {
+        return Math.abs(lng - centerLng) < cellWidth / 2 + CLEARANCE &&
+                Math.abs(lat - centerLat) < cellHeight / 2 + CLEARANCE;
+    }
+
+    private static void writeRestaurants(Path file, List<SyntheticRestaurant> restaurants) throws IOException {
+        try (JsonWriter jsonWriter = new JsonWriter(Files.newBufferedWriter(file))) {
+            jsonWriter.beginArray();
+            for (SyntheticRestaurant restaurant : restaurants) {
+                jsonWriter.beginObject();
+                jsonWriter.name("name").value(restaurant.name());
+                jsonWriter.name("longitude").value(restaurant.lng());
+                jsonWriter.name("latitude").value(restaurant.lat());
+                jsonWriter.name("menu").beginArray();
+                for (int p = 0; p < restaurant.pizzas().length; p++) {
+                    jsonWriter.beginObject();
+                    jsonWriter.name("name").value(restaurant.pizzas()[p]);
+                    jsonWriter.name("priceInPence").value(restaurant.prices()[p]);
+                    jsonWriter.endObject();
+                }
+                jsonWriter.endArray();
+                jsonWriter.endObject();
+            }
+            jsonWriter.endArray();
+        }
+    }
+
+    private static void writeRestaurantLocs(Path file, List<SyntheticRestaurant> restaurants) throws IOException {
+        try (JsonWriter jsonWriter = new JsonWriter(Files.newBufferedWriter(file))) {
+            beginFeatureCollection(jsonWriter);
+            for (SyntheticRestaurant restaurant : restaurants) {
+                beginFeature(jsonWriter, restaurant.name(), "Point");
+                writePosition(jsonWriter, restaurant.lng(), restaurant.lat());
+                endFeature(jsonWriter);
+            }
+            endFeatureCollection(jsonWriter);
+        }
+    }
+
+    private static void writeNoFlyZones(Path file, List<double[][]> zones) throws IOException {
+        try (JsonWriter jsonWriter = new JsonWriter(Files.newBufferedWriter(file))) {
+            beginFeatureCollection(jsonWriter);
+            for (int z = 0; z < zones.size(); z++) {
+                beginFeature(jsonWriter, "Zone " + (z + 1), "Polygon");
+                jsonWriter.beginArray().beginArray();
+                for (double[] vertex : zones.get(z)) {
+                    writePosition(jsonWriter, vertex[0], vertex[1]);
+                }
+                jsonWriter.endArray().endArray();
+                endFeature(jsonWriter);
+            }
+            endFeatureCollection(jsonWriter);
+        }
+    }
+
+    private static void writeCentralArea(Path file) throws IOException {
+        String[] names = {"Forrest Hill", "KFC", "Buccleuch St bus stop", "Top of the Meadows"};
+        double[][] vertices = {{-3.192473, 55.946233}, {-3.192473, 55.942617}, {-3.184319, 55.942617},
+                {-3.184319, 55.946233}};
+        try (JsonWriter jsonWriter = new JsonWriter(Files.newBufferedWriter(file))) {
+            jsonWriter.beginArray();
+            for (int v = 0; v < vertices.length; v++) {
+                jsonWriter.beginObject();
+                jsonWriter.name("name").value(names[v]);
+                jsonWriter.name("longitude").value(vertices[v][0]);
+                jsonWriter.name("latitude").value(vertices[v][1]);
+                jsonWriter.endObject();
+            }
+            jsonWriter.endArray();
+        }
+    }
+
+    private static void writeLandmarks(Path file) throws IOException {
+        try (JsonWriter jsonWriter = new JsonWriter(Files.newBufferedWriter(file))) {
+            beginFeatureCollection(jsonWriter);
+            beginFeature(jsonWriter, "Appleton Tower", "Point");
+            writePosition(jsonWriter, Drone.APPLETON_LONGITUDE, Drone.APPLETON_LATITUDE);
+            endFeature(jsonWriter);
+            endFeatureCollection(jsonWriter);
+        }
+    }
+
+    private void writeOrders(Path file, Random random, LocalDate date, List<SyntheticRestaurant> restaurants)
+            throws IOException {
+        // which orders are invalid, the k-th invalid order gets the k-th invalid outcome in turn
+        List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < this.orderCount; i++) {
+            indices.add(i);
+        }
+        Collections.shuffle(indices, random);
+        int[] invalidKind = new int[this.orderCount];
+        Arrays.fill(invalidKind, -1);
+        for (int k = 0; k < getInvalidCount(); k++) {
+            invalidKind[indices.get(k)] = k % INVALID_OUTCOMES.length;
+        }
+
+        try (JsonWriter jsonWriter = new JsonWriter(Files.newBufferedWriter(file))) {
+            jsonWriter.beginArray();
+            for (int i = 0; i < this.orderCount; i++) {
+                Order.OrderOutcome outcome = invalidKind[i] < 0 ? null : INVALID_OUTCOMES[invalidKind[i]];
+                writeOrder(jsonWriter, random, date, restaurants, i, outcome);
+            }
+            jsonWriter.endArray();
+        }
+    }
+
+    /**
+     * Write one order
+     * @param outcome the invalid outcome the order must have, or null for a valid order
+     */
+    private static void writeOrder(JsonWriter jsonWriter, Random random, LocalDate date,
+                                   List<SyntheticRestaurant> restaurants, int index, Order.OrderOutcome outcome)
+            throws IOException {
+        SyntheticRestaurant restaurant = restaurants.get(random.nextInt(restaurants.size()));
+        int pizzaCount;
+        if (outcome == Order.OrderOutcome.InvalidPizzaCount) {
+            pizzaCount = 5;
+        } else if (outcome == Order.OrderOutcome.InvalidPizzaCombinationMultipleSuppliers) {
+            // one of the pizzas is swapped for a pizza of another restaurant
+            pizzaCount = 2 + random.nextInt(3);
+        } else {
+            pizzaCount = 1 + random.nextInt(4);
+        }
+        List<String> items = new ArrayList<>();
+        int total = 100;
+        for (int p = 0; p < pizzaCount; p++) {
+            int pizza = random.nextInt(restaurant.pizzas().length);
+            items.add(restaurant.pizzas()[pizza]);
+            total += restaurant.prices()[pizza];
+        }
+
+        String cardNumber = cardNumber(random);
+        LocalDate expiry = date.plusMonths(1 + random.nextInt(48));
+        String cvv = String.format("%03d", random.nextInt(1000));
+
+        switch (outcome == null ? Order.OrderOutcome.ValidButNotDelivered : outcome) {
+            case InvalidCardNumber -> cardNumber = cardNumber.substring(0, 15) +
+                    (char) ('0' + (cardNumber.charAt(15) - '0' + 1) % 10);
+            case InvalidExpiryDate -> expiry = date.minusMonths(1 + random.nextInt(24));
+            case InvalidCvv -> cvv = cvv.substring(0, 2);
+            case InvalidTotal -> total += 100 * (1 + random.nextInt(5));
+            case InvalidPizzaNotDefined -> items.set(random.nextInt(items.size()), "Pizza of the Day");
+            case InvalidPizzaCombinationMultipleSuppliers -> {
+                SyntheticRestaurant other = restaurants.get((restaurants.indexOf(restaurant) + 1 +
+                        random.nextInt(restaurants.size() - 1)) % restaurants.size());
+                int pizza = random.nextInt(other.pizzas().length);
+                items.set(random.nextInt(items.size()), other.pizzas()[pizza]);
+                total = 100 + other.prices()[pizza];
+                for (String item : items) {
+                    int own = Arrays.asList(restaurant.pizzas()).indexOf(item);
+                    total += own < 0 ? 0 : restaurant.prices()[own];
+                }
+            }
+            default -> {
+            }
+        }
+
+        jsonWriter.beginObject();
+        jsonWriter.name("orderNo").value(String.format("%08X", index));
+        jsonWriter.name("orderDate").value(date.toString());
+        jsonWriter.name("customer").value("Customer " + (index + 1));
+        jsonWriter.name("creditCardNumber").value(cardNumber);
+        jsonWriter.name("creditCardExpiry").value(String.format("%02d/%02d", expiry.getMonthValue(),
+                expiry.getYear() % 100));
+        jsonWriter.name("cvv").value(cvv);
+        jsonWriter.name("priceTotalInPence").value(total);
+        jsonWriter.name("orderItems").beginArray();
+        for (String item : items) {
+            jsonWriter.value(item);
+        }
+        jsonWriter.endArray();
+        jsonWriter.endObject();
+    }
+
+    /**@return a random 16-digit card number that passes the Luhn check */
+    private static String cardNumber(Random random) {
+        int[] digits = new int[16];
+        digits[0] = 4;
+        for (int i = 1; i < 15; i++) {
+            digits[i] = random.nextInt(10);
+        }
+        // the check digit makes the Luhn sum a multiple of 10, every second digit from the right is doubled
+        int sum = 0;
+        for (int i = 0; i < 15; i++) {
+            int n = digits[i];
+            if (i % 2 == 0) {
+                n *= 2;
+                if (n > 9) {
+                    n -= 9;
+                }
+            }
+            sum += n;
+        }
+        digits[15] = (10 - sum % 10) % 10;
+
+        StringBuilder number = new StringBuilder();
+        for (int digit : digits) {
+            number.append(digit);
+        }
+        return number.toString();
+    }
+
+    private static void beginFeatureCollection(JsonWriter jsonWriter) throws IOException {
+        jsonWriter.beginObject();
+        jsonWriter.name("type").value("FeatureCollection");
+        jsonWriter.name("features").beginArray();
+    }
+
+    private static void endFeatureCollection(JsonWriter jsonWriter) throws IOException {
+        jsonWriter.endArray();
+        jsonWriter.endObject();
+    }
+
+    private static void beginFeature(JsonWriter jsonWriter, String name, String geometryType) throws IOException {
+        jsonWriter.beginObject();
+        jsonWriter.name("type").value("Feature");
+        jsonWriter.name("properties").beginObject().name("name").value(name).endObject();
+        jsonWriter.name("geometry").beginObject();
+        jsonWriter.name("type").value(geometryType);
+        jsonWriter.name("coordinates");
+    }
+
+    private static void endFeature(JsonWriter jsonWriter) throws IOException {
+        jsonWriter.endObject();
+        jsonWriter.endObject();
+    }
+
+    private static void writePosition(JsonWriter jsonWriter, double lng, double lat) throws IOException {
+        jsonWriter.beginArray().value(lng).value(lat).endArray();
+    }
+
+    /**
+     * Generate a day
+     * @param args the directory to write to, then optionally
+     * <ul>
+     * <li>--date=YYYY-MM-DD - the date of the orders, 2023-01-01 by default</li>
+     * <li>--seed=N - the seed, 1 by default</li>
+     * <li>--orders=N - the number of orders, 5000 by default</li>
+     * <li>--invalid=F - the fraction of invalid orders, 0.1 by default</li>
+     * <li>--restaurants=N - the number of restaurants, 16 by default</li>
+     * <li>--zones=N - the number of no-fly zones, 32 by default</li>
+     * <li>--vertices=N - the number of vertices of every zone, 8 by default</li>
+     * </ul>
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: WorkloadGenerator <directory> [--date=YYYY-MM-DD] [--seed=N] [--orders=N] " +
+                    "[--invalid=F] [--restaurants=N] [--zones=N] [--vertices=N]");
+            System.exit(2);
+        }
+        LocalDate date = LocalDate.parse("2023-01-01");
+        long seed = 1;
+        int orders = 5000;
+        double invalid = 0.1;
+        int restaurants = 16;
+        int zones = 32;
+        int vertices = 8;
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--date=")) {
+                date = LocalDate.parse(value);
+            } else if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(value);
+            } else if (arg.startsWith("--orders=")) {
+                orders = Integer.parseInt(value);
+            } else if (arg.startsWith("--invalid=")) {
+                invalid = Double.parseDouble(value);
+            } else if (arg.startsWith("--restaurants=")) {
+                restaurants = Integer.parseInt(value);
+            } else if (arg.startsWith("--zones=")) {
+                zones = Integer.parseInt(value);
+            } else if (arg.startsWith("--vertices=")) {
+                vertices = Integer.parseInt(value);
+            } else {
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+
+        WorkloadGenerator generator = new WorkloadGenerator(seed);
+        generator.setOrderCount(orders);
+        generator.setInvalidFraction(invalid);
+        generator.setRestaurantCount(restaurants);
+        generator.setZones(zones, vertices);
+        Path directory = Paths.get(args[0]);
+        generator.write(directory, date);
+        System.out.println("Wrote " + orders + " orders of " + date + " to " + directory.toAbsolutePath().toUri());
+    }
+}
@@ -0,0 +1,286 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.mapbox.geojson.*;
+import org.json.JSONArray;
+
+/**
+ * The static geography and restaurant catalogue of the web server: no-fly zones, central area,
+ * landmarks and restaurants. It is fetched and compiled once per server, shared read-only
+ * across days and threads, and only fetched again after an explicit invalidation.
+ */
+public class WorldSnapshot {
+    /** the snapshot of every server, completed once fetched; a snapshot being fetched is awaited, not fetched again */
+    private static final Map<String, CompletableFuture<WorldSnapshot>> snapshots = new ConcurrentHashMap<>();
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private final List<Polygon> noFlyZones;
+    private final NoFlyZoneIndex noFlyZoneIndex;
+    private final List<LngLat> restaurantLocs;
+    private final List<LngLat> centralArea;
+    private final CentralArea centralAreaPolygon;
+    private final List<Feature> landmarks;
+    private final String landmarkFeatures;
+    private final Restaurant[] restaurants;
+    private final MenuCatalog menuCatalog;
+    private final long geometryFingerprint;
+    private volatile VisibilityGraph visibilityGraph;
+
+    /* getters */
+
+    public List<Polygon> getNoFlyZones(){return this.noFlyZones;}
+    public NoFlyZoneIndex getNoFlyZoneIndex(){return this.noFlyZoneIndex;}
+    public long getGeometryFingerprint(){return this.geometryFingerprint;}
+    public List<LngLat> getCentralArea() {return this.centralArea;}
+    public CentralArea getCentralAreaPolygon() {return this.centralAreaPolygon;}
+    public List<LngLat> getRestaurantLocs() {return this.restaurantLocs;}
+    public List<Feature> getLandmarks() {return this.landmarks;}
+
+    /**@return the features of all.geojson exactly as fetched, the elements of its features array */
+    public String getLandmarkFeatures() {return this.landmarkFeatures;}
+
+    public MenuCatalog getMenuCatalog() {return this.menuCatalog;}
+
+    /**@return the visibility graph of the no-fly zones, Appleton Tower and the restaurants, built on first use */
+    public VisibilityGraph getVisibilityGraph() {
+        VisibilityGraph graph = this.visibilityGraph;
+        if (graph == null) {
+            synchronized (this) {
+                graph = this.visibilityGraph;
+                if (graph == null) {
+                    List<LngLat> fixedPoints = new ArrayList<>();
+                    fixedPoints.add(Drone.APPLETON_TOWER);
+                    fixedPoints.addAll(this.restaurantLocs);
+                    graph = new VisibilityGraph(this.noFlyZones, this.noFlyZoneIndex, this.centralAreaPolygon,
+                            fixedPoints);
+                    this.visibilityGraph = graph;
+                }
+            }
+        }
+        return graph;
+    }
+
+    /**@return a copy of the participating restaurants with their menus */
+    public Restaurant[] getRestaurants() {return this.restaurants.clone();}
+
+    /**
+     * Get the snapshot of a web server, fetching it on first use
+     * @param baseAddress base address of the web server
+     * @return the shared snapshot
+     * @throws java.io.UncheckedIOException if the snapshot cannot be fetched, nothing is cached then
+     */
+    public static WorldSnapshot of(String baseAddress) {
+        return of(baseAddress, null);
+    }
+
+    /**
+     * Get the snapshot of a web server, fetching it on first use
+     * @param baseAddress base address of the web server
+     * @param metrics measures the fetches if the snapshot is fetched now, or null
+     * @return the shared snapshot
+     * @throws java.io.UncheckedIOException if the snapshot cannot be fetched, nothing is cached then
+     */
+    public static WorldSnapshot of(String baseAddress, Metrics metrics) {
+        CompletableFuture<WorldSnapshot> snapshot = snapshots.get(baseAddress);
+        if (snapshot == null) {
+            // fetch outside the map, so that fetching one server never blocks the snapshots of the others
+            CompletableFuture<WorldSnapshot> fetching = new CompletableFuture<>();
+            snapshot = snapshots.putIfAbsent(baseAddress, fetching);
+            if (snapshot == null) {
+                try {
+                    WorldSnapshot fetched = fetch(baseAddress, metrics);
+                    fetching.complete(fetched);
+                    return fetched;
+                } catch (RuntimeException | Error e) {
+                    snapshots.remove(baseAddress, fetching);
+                    fetching.completeExceptionally(e);
+                    throw e;
+                }
+            }
+        }
+
+        try {
+            return snapshot.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Drop the snapshot of a web server, the next call to of() fetches it again
+     * @param baseAddress base address of the web server
+     */
+    public static void invalidate(String baseAddress) {
+        snapshots.remove(baseAddress);
+    }
+
+    /**
+     * Fetch and compile the snapshot, all endpoints are requested concurrently
+     * @param baseAddress base address of the web server
+     * @param metrics measures the fetches, or null
+     * @return the compiled snapshot
+     * @throws java.io.UncheckedIOException if any endpoint cannot be fetched
+     */
+    private static WorldSnapshot fetch(String baseAddress, Metrics metrics) {
+        RestFetcher fetcher = RestFetcher.getDefault();
+        CompletableFuture<String> noFlyZonesBody = fetcher.fetchAsync(baseAddress + "/no-fly-zones.geojson", metrics);
+        CompletableFuture<String> restaurantLocsBody = fetcher.fetchAsync(baseAddress + "/restaurants.geojson", metrics);
+        CompletableFuture<String> landmarksBody = fetcher.fetchAsync(baseAddress + "/all.geojson", metrics);
+        CompletableFuture<String> centralAreaBody = fetcher.fetchAsync(baseAddress + "/centralArea", metrics);
+        CompletableFuture<String> restaurantsBody = fetcher.fetchAsync(baseAddress + "/restaurants", metrics);
+
+        return new WorldSnapshot(RestFetcher.await(noFlyZonesBody), RestFetcher.await(restaurantLocsBody),
+                RestFetcher.await(landmarksBody), RestFetcher.await(centralAreaBody),
+                RestFetcher.await(restaurantsBody));
+    }
+
+    /**
+     * Compile a snapshot from the documents of the web server, e.g. fixtures recorded from it
+     * @param noFlyZonesJson the no-fly-zones.geojson document
+     * @param restaurantLocsJson the restaurants.geojson document
+     * @param landmarksJson the all.geojson document
+     * @param centralAreaJson the centralArea document
+     * @param restaurantsJson the restaurants document
+     */
+    public WorldSnapshot(String noFlyZonesJson, String restaurantLocsJson, String landmarksJson,
+                         String centralAreaJson, String restaurantsJson) {
+        this.noFlyZones = Collections.unmodifiableList(readNoFlyZones(noFlyZonesJson));
+        this.noFlyZoneIndex = new NoFlyZoneIndex(this.noFlyZones);
+        this.restaurantLocs = Collections.unmodifiableList(readRestaurants(restaurantLocsJson));
+        this.landmarks = Collections.unmodifiableList(readLandmarks(landmarksJson));
+        this.landmarkFeatures = readLandmarkFeatures(landmarksJson);
+        this.centralArea = Collections.unmodifiableList(readCentralArea(centralAreaJson));
+        this.centralAreaPolygon = new CentralArea(this.centralArea);
+        this.geometryFingerprint = fingerprint(this.noFlyZones, this.centralArea);
+        this.restaurants = Restaurant.parseRestaurants(restaurantsJson);
+        this.menuCatalog = new MenuCatalog(this.restaurants);
+    }
+
+    /**
+     * Hash the geometry that affects the route of the drone, so that routes planned on one day
+     * can be reused on any day with the same no-fly zones and central area
+     * @param noFlyZones all no-fly zones
+     * @param centralArea vertices of the central area
+     * @return 64-bit FNV-1a hash of all coordinates
+     */
+    private static long fingerprint(List<Polygon> noFlyZones, List<LngLat> centralArea) {
+        long hash = 0xcbf29ce484222325L;
+        for (Polygon zone : noFlyZones) {
+            for (Point point : zone.coordinates().get(0)) {
+                hash = (hash ^ Double.doubleToLongBits(point.longitude())) * 0x100000001b3L;
+                hash = (hash ^ Double.doubleToLongBits(point.latitude())) * 0x100000001b3L;
+            }
+            // separate zones so that moving a vertex between zones changes the hash
+            hash = (hash ^ 0x5a) * 0x100000001b3L;
+        }
+        for (LngLat vertex : centralArea) {
+            hash = (hash ^ Double.doubleToLongBits(vertex.getLng())) * 0x100000001b3L;
+            hash = (hash ^ Double.doubleToLongBits(vertex.getLat())) * 0x100000001b3L;
+        }
+        // routes planned before the central-area rule was enforced in flight are not reused
+        hash = (hash ^ 0xca) * 0x100000001b3L;
+        return hash;
+    }
+
+    /**
+     * Parse no-fly zones fetched from web server
+     * @param body the no-fly-zones.geojson document
+     * @return all no-fly zones
+     */
+    private static List<Polygon> readNoFlyZones(String body){
+        List<Feature> noFlyZoneFeatures = FeatureCollection.fromJson(body).features();
+        List<Polygon> noFlyZones = new ArrayList<>();
+
+        if (noFlyZoneFeatures != null) {
+            for (Feature feature : noFlyZoneFeatures) {
+                Polygon zone = (Polygon) feature.geometry();
+                noFlyZones.add(zone);
+            }
+        }
+
+        return noFlyZones;
+    }
+
+    /**
+     * Parse all locations of restaurants fetched from web server
+     * @param body the restaurants.geojson document
+     * @return all locations of restaurants
+     */
+    private static List<LngLat> readRestaurants(String body){
+        List<Feature> restaurantFeatures = FeatureCollection.fromJson(body).features();
+        List<LngLat> restaurantLocs = new ArrayList<>();
+        if (restaurantFeatures != null) {
+            for (Feature feature : restaurantFeatures){
+                Point p = (Point) feature.geometry();
+                LngLat loc = null;
+                if (p != null) {
+                    loc = new LngLat(p.longitude(), p.latitude());
+                }
+                restaurantLocs.add(loc);
+            }
+        }
+        return restaurantLocs;
+    }
+
+
+    private static List<Feature> readLandmarks(String body){
+        List<Feature> landmarks = FeatureCollection.fromJson(body).features();
+        return landmarks != null ? landmarks : new ArrayList<>();
+    }
+
+    /**
+     * Locate the features array of a feature collection by the offsets of its tokens
+     * @param body the all.geojson document
+     * @return the text between the brackets of the features array, or "" if there is none
+     */
+    private static String readLandmarkFeatures(String body){
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return "";
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (field.equals("features") && value == JsonToken.START_ARRAY) {
+                    int start = (int) parser.getTokenLocation().getCharOffset() + 1;
+                    parser.skipChildren();
+                    int end = (int) parser.getTokenLocation().getCharOffset();
+                    return body.substring(start, end).trim();
+                }
+                parser.skipChildren();
+            }
+            return "";
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<LngLat> readCentralArea(String body){
+        JSONArray jsonArray = new JSONArray(body);
+
+        List<LngLat> centralArea = new ArrayList<>();
+        for (int i = 0; i < jsonArray.length(); i++) {
+            BigDecimal lng = (BigDecimal) jsonArray.getJSONObject(i).get("longitude");
+            BigDecimal lat = (BigDecimal) jsonArray.getJSONObject(i).get("latitude");
+            centralArea.add(new LngLat(lng.doubleValue(),lat.doubleValue()));
+        }
+
+        return centralArea;
+    }
+}
@@ -0,0 +1,149 @@
+package uk.ac.ed.inf;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import com.mapbox.geojson.Feature;
+import com.mapbox.geojson.FeatureCollection;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test of the routes planned by A* on the move lattice.
+ */
+public class AStarPlannerTest {
+    @TempDir
+    Path directory;
+
+    /** replay a route from start: it must end close to the goal without crossing a zone */
+    private static void assertLegal(DataParser dataParser, LngLat start, LngLat goal, List<LngLat.Direction> route) {
+        NoFlyZoneIndex zones = dataParser.getNoFlyZoneIndex();
+        CentralArea centralArea = dataParser.getCentralAreaPolygon();
+        boolean goalOutside = !centralArea.contains(goal.getLng(), goal.getLat());
+        LngLat pos = start;
+        boolean left = false;
+        for (LngLat.Direction direction : route) {
+            LngLat next = pos.nextPosition(direction);
+            assertFalse(zones.intersects(pos.getLng(), pos.getLat(), next.getLng(), next.getLat()));
+            left |= !centralArea.contains(pos.getLng(), pos.getLat());
+            assertFalse(goalOutside && left && centralArea.contains(next.getLng(), next.getLat()));
+            pos = next;
+        }
+        assertTrue(pos.closeTo(goal));
+    }
+
+    @Test
+    public void routesReachEveryRestaurantAroundTheZones() {
+        WorkloadGenerator generator = TestWorlds.generator(11, 1);
+        generator.setZones(60, 10);
+        DataParser dataParser = TestWorlds.dataParser(TestWorlds.writeDay(this.directory, generator), null);
+
+        AStarPlanner planner = new AStarPlanner(dataParser);
+        for (LngLat restaurant : dataParser.getRestaurantLocs()) {
+            List<LngLat.Direction> route = planner.planRoute(Drone.APPLETON_TOWER, restaurant);
+            assertNotNull(route);
+            assertLegal(dataParser, Drone.APPLETON_TOWER, restaurant, route);
+            assertTrue(route.size() >= Drone.APPLETON_TOWER.distanceTo(restaurant) / LngLat.LENGTH_OF_MOVE - 1);
+        }
+    }
+
+    @Test
+    public void routeGoesAroundAZoneAndGivesUpOnAnEnclosedGoal() throws IOException {
+        WorkloadGenerator generator = TestWorlds.generator(11, 1);
+        generator.setZones(0, 3);
+        String baseAddress = TestWorlds.writeDay(this.directory, generator);
+
+        // a square east of Appleton Tower, right across the straight line to the goal
+        double size = 0.002;
+        double lng = Drone.APPLETON_LONGITUDE + 0.001;
+        double lat = Drone.APPLETON_LATITUDE - size / 2;
+        Files.writeString(this.directory.resolve("no-fly-zones.geojson"), FeatureCollection.fromFeatures(
+                List.of(Feature.fromGeometry(TestWorlds.square(lng, lat, size)))).toJson());
+        WorldSnapshot.invalidate(baseAddress);
+        DataParser dataParser = TestWorlds.dataParser(baseAddress, null);
+
+        AStarPlanner planner = new AStarPlanner(dataParser);
+        LngLat goal = new LngLat(lng + size + 0.001, Drone.APPLETON_LATITUDE);
+        List<LngLat.Direction> route = planner.planRoute(Drone.APPLETON_TOWER, goal);
+        assertNotNull(route);
+        assertLegal(dataParser, Drone.APPLETON_TOWER, goal, route);
+        assertTrue(route.size() > Drone.APPLETON_TOWER.distanceTo(goal) / LngLat.LENGTH_OF_MOVE + 1);
+
+        // the centre of the square cannot be reached, the search stops at its expansion cap
+        AStarPlanner capped = new AStarPlanner(dataParser, 5000);
+        assertNull(capped.planRoute(Drone.APPLETON_TOWER, new LngLat(lng + size / 2, Drone.APPLETON_LATITUDE)));
+    }
+
+    @Test
+    public void routeGrazingAZoneStaysClearWhenFlownInDoubles() throws IOException {
+        WorkloadGenerator generator = TestWorlds.generator(11, 1);
+        generator.setZones(0, 3);
+        String baseAddress = TestWorlds.writeDay(this.directory, generator);
+
+        // the straight route East-North-East on the lattice and the same moves flown in doubles drift apart
+        LngLat.Direction direction = LngLat.Direction.East_North_East;
+        int moves = 1200;
+        long startLng = FixedPoint.toFixed(Drone.APPLETON_LONGITUDE);
+        long startLat = FixedPoint.toFixed(Drone.APPLETON_LATITUDE);
+        LngLat start = new LngLat(FixedPoint.toDegrees(startLng), FixedPoint.toDegrees(startLat));
+        LngLat flown = start;
+        for (int i = 0; i < moves; i++) {
+            flown = flown.nextPosition(direction);
+        }
+        long endLng = startLng + moves * FixedPoint.stepLng(direction);
+        long endLat = startLat + moves * FixedPoint.stepLat(direction);
+
+        // a tiny square around the flown end, clear of the straight route on the lattice even with its
+        // corners rounded to the 7 decimals of GeoJSON
+        double dx = FixedPoint.toDegrees(endLng - startLng);
+        double dy = FixedPoint.toDegrees(endLat - startLat);
+        double drift = Math.abs((flown.getLng() - start.getLng()) * dy - (flown.getLat() - start.getLat()) * dx) /
+                Math.hypot(dx, dy);
+        double size = drift * 0.7;
+        Files.writeString(this.directory.resolve("no-fly-zones.geojson"), FeatureCollection.fromFeatures(
+                List.of(Feature.fromGeometry(TestWorlds.square(flown.getLng() - size / 2, flown.getLat() - size / 2,
+                        size)))).toJson());
+        WorldSnapshot.invalidate(baseAddress);
+        DataParser dataParser = TestWorlds.dataParser(baseAddress, null);
+
+        // without a margin the lattice route is clear while the same route flown in doubles is not
+        NoFlyZoneIndex zones = dataParser.getNoFlyZoneIndex();
+        boolean flownIntersects = false;
+        LngLat pos = start;
+        for (int i = 0; i < moves; i++) {
+            assertFalse(zones.intersectsFixed(startLng + i * FixedPoint.stepLng(direction),
+                    startLat + i * FixedPoint.stepLat(direction), startLng + (i + 1) * FixedPoint.stepLng(direction),
+                    startLat + (i + 1) * FixedPoint.stepLat(direction), 0));
+            LngLat next = pos.nextPosition(direction);
+            flownIntersects |= NoFlyZoneIndex.isIntersection(pos.testNoFlyZones(dataParser, next));
+            pos = next;
+        }
+        assertTrue(flownIntersects);
+        // with the drift as the margin the last lattice move is rejected
+        assertTrue(zones.intersectsFixed(endLng - FixedPoint.stepLng(direction), endLat - FixedPoint.stepLat(direction),
+                endLng, endLat, AStarPlanner.DRIFT));
+
+        // the planned route flown in doubles, out and back, keeps clear of the zone
+        List<LngLat.Direction> route = new AStarPlanner(dataParser).planRoute(start, flown);
+        assertNotNull(route);
+        assertLegal(dataParser, start, flown, route);
+        pos = start;
+        for (LngLat.Direction move : route) {
+            LngLat next = pos.nextPosition(move);
+            assertFalse(NoFlyZoneIndex.isIntersection(pos.testNoFlyZones(dataParser, next)));
+            pos = next;
+        }
+        for (int i = route.size() - 1; i >= 0; i--) {
+            LngLat next = pos.nextPosition(route.get(i).opposite());
+            assertFalse(NoFlyZoneIndex.isIntersection(pos.testNoFlyZones(dataParser, next)));
+            pos = next;
+        }
+    }
+}
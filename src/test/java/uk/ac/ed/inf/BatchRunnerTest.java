@@ -0,0 +1,67 @@
+package uk.ac.ed.inf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test of the retries of a batch and of the isolation of the days that fail.
+ */
+public class BatchRunnerTest {
+    private static final LocalDate FIRST = LocalDate.parse("2023-01-01");
+
+    @Test
+    public void unreachableServerIsRetriedAndOtherFailuresAreNot() {
+        Map<LocalDate, Integer> attempts = new ConcurrentHashMap<>();
+        BatchRunner batchRunner = new BatchRunner("https://example.org/", 3, new RouteCache(null, 16));
+        batchRunner.setDayDelivery(day -> {
+            int attempt = attempts.merge(day, 1, Integer::sum);
+            switch (day.getDayOfMonth()) {
+                // the server comes back at the last attempt
+                case 2 -> {
+                    if (attempt < BatchRunner.MAX_ATTEMPTS) {
+                        throw new UncheckedIOException(new IOException("Unable to connect"));
+                    }
+                }
+                // the server never comes back
+                case 3 -> throw new UncheckedIOException(new IOException("Unable to connect"));
+                // a bug of the day is not retried
+                case 4 -> throw new IllegalStateException("Broken day");
+                // nor is a day missing from an offline cache
+                case 6 -> throw new UncheckedIOException(new HttpCache.NotCachedException("https://example.org/"));
+                default -> { }
+            }
+        });
+
+        BatchRunner.Summary summary = batchRunner.run(FIRST, FIRST.plusDays(6));
+        List<BatchRunner.DayResult> days = summary.days();
+        assertEquals(6, days.size());
+        for (int i = 0; i < days.size(); i++) {
+            assertEquals(FIRST.plusDays(i), days.get(i).date());
+            assertEquals(attempts.get(FIRST.plusDays(i)).intValue(), days.get(i).attempts());
+        }
+
+        assertTrue(days.get(0).isDelivered());
+        assertEquals(1, days.get(0).attempts());
+        assertTrue(days.get(1).isDelivered());
+        assertEquals(BatchRunner.MAX_ATTEMPTS, days.get(1).attempts());
+        assertEquals(BatchRunner.MAX_ATTEMPTS, days.get(2).attempts());
+        assertTrue(days.get(2).failure() instanceof UncheckedIOException);
+        assertEquals(1, days.get(3).attempts());
+        assertTrue(days.get(3).failure() instanceof IllegalStateException);
+        assertTrue(days.get(4).isDelivered());
+        assertEquals(1, days.get(5).attempts());
+        assertTrue(days.get(5).failure().getCause() instanceof HttpCache.NotCachedException);
+
+        assertEquals(List.of(days.get(2), days.get(3), days.get(5)), summary.failedDays());
+        assertTrue(summary.wallTime().compareTo(days.get(1).wallTime()) >= 0);
+    }
+}
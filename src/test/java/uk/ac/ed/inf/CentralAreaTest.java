@@ -0,0 +1,115 @@
+package uk.ac.ed.inf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.mapbox.geojson.Feature;
+import com.mapbox.geojson.FeatureCollection;
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test for the prepared central-area polygon and for the central-area rule of the navigator.
+ */
+public class CentralAreaTest {
+    /** the west edge of the central area of the generated worlds */
+    private static final double WEST_EDGE = -3.192473;
+    private static final double LAT = 55.944;
+    private static final LngLat INSIDE_GOAL = new LngLat(-3.188, LAT);
+    private static final LngLat OUTSIDE_GOAL = new LngLat(-3.2, LAT);
+
+    @TempDir
+    Path directory;
+
+    private static final List<LngLat> VERTICES = List.of(
+            new LngLat(-3.192473, 55.946233),
+            new LngLat(-3.192473, 55.942617),
+            new LngLat(-3.184319, 55.942617),
+            new LngLat(-3.184319, 55.946233));
+
+    @Test
+    public void containsInsideAndBoundary() {
+        CentralArea centralArea = new CentralArea(VERTICES);
+
+        assertTrue(centralArea.contains(-3.186874, 55.944494));
+        // vertices and edges belong to the area
+        assertTrue(centralArea.contains(-3.192473, 55.946233));
+        assertTrue(centralArea.contains(-3.184319, 55.944));
+        assertTrue(centralArea.contains(-3.19, 55.942617));
+
+        assertFalse(centralArea.contains(-3.1843, 55.944));
+        assertFalse(centralArea.contains(-3.19, 55.9426));
+        assertFalse(centralArea.contains(-3.202, 55.943));
+    }
+
+    @Test
+    public void agreesWithTheRectangle() {
+        CentralArea centralArea = new CentralArea(VERTICES);
+        Random random = new Random(7);
+        for (int i = 0; i < 10000; i++) {
+            double lng = -3.195 + random.nextDouble() * 0.013;
+            double lat = 55.941 + random.nextDouble() * 0.007;
+            boolean expected = lng >= -3.192473 && lng <= -3.184319 && lat >= 55.942617 && lat <= 55.946233;
+            assertEquals(expected, centralArea.contains(lng, lat));
+        }
+    }
+
+    @Test
+    public void droneWalledInOutsideTheAreaDoesNotReEnterIt() throws IOException {
+        // just west of the area, the only moves clear of the cup lead into the area
+        LngLat pos = new LngLat(WEST_EDGE - 0.00005, LAT);
+        DataParser dataParser = worldWithCup(pos, 1);
+
+        assertNull(pos.nextDirection(dataParser, OUTSIDE_GOAL, LngLat.Direction.East));
+        assertNull(new GreedyPlanner(dataParser).planRoute(pos, OUTSIDE_GOAL));
+        // a drone outside the area on its way into it may enter it
+        assertEquals(LngLat.Direction.East, pos.nextDirection(dataParser, INSIDE_GOAL, LngLat.Direction.East));
+    }
+
+    @Test
+    public void droneOnItsWayToAGoalInsideTheAreaDoesNotLeaveIt() throws IOException {
+        // just east of the west edge, the only moves clear of the cup leave the area
+        LngLat pos = new LngLat(WEST_EDGE + 0.00005, LAT);
+        DataParser dataParser = worldWithCup(pos, -1);
+
+        assertNull(pos.nextDirection(dataParser, INSIDE_GOAL, LngLat.Direction.West));
+        // a drone inside the area on its way out of it may leave it
+        assertEquals(LngLat.Direction.West, pos.nextDirection(dataParser, OUTSIDE_GOAL, LngLat.Direction.West));
+    }
+
+    /**
+     * Write a world whose only no-fly zone is a cup around a position, its mouth facing east (1) or west (-1),
+     * so that only the East, East_North_East and East_South_East moves or their western mirrors are clear of it
+     */
+    private DataParser worldWithCup(LngLat pos, int mouth) throws IOException {
+        WorkloadGenerator generator = TestWorlds.generator(3, 1);
+        generator.setZones(0, 3);
+        String baseAddress = TestWorlds.writeDay(this.directory, generator);
+
+        double wall = 0.0001;
+        double thickness = 0.00005;
+        double length = 0.0005;
+        double[][] cup = {{-wall - thickness, -wall - thickness}, {length, -wall - thickness}, {length, -wall},
+                {-wall, -wall}, {-wall, wall}, {length, wall}, {length, wall + thickness},
+                {-wall - thickness, wall + thickness}, {-wall - thickness, -wall - thickness}};
+        List<Point> ring = new ArrayList<>();
+        for (double[] vertex : cup) {
+            ring.add(Point.fromLngLat(pos.getLng() + mouth * vertex[0], pos.getLat() + vertex[1]));
+        }
+        Files.writeString(this.directory.resolve("no-fly-zones.geojson"), FeatureCollection.fromFeatures(
+                List.of(Feature.fromGeometry(Polygon.fromLngLats(List.of(ring))))).toJson());
+        WorldSnapshot.invalidate(baseAddress);
+        return TestWorlds.dataParser(baseAddress, null);
+    }
+}
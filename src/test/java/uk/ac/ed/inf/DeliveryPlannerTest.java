@@ -0,0 +1,162 @@
+package uk.ac.ed.inf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test of the selection of orders by the cost of their round trips.
+ */
+public class DeliveryPlannerTest {
+    /**
+     * A route planner with a fixed route length per restaurant, counting how often it is asked
+     */
+    private static class StubPlanner implements RoutePlanner {
+        final Map<LngLat, Integer> lengths = new HashMap<>();
+        int calls;
+
+        @Override
+        public List<LngLat.Direction> planRoute(LngLat start, LngLat goal) {
+            this.calls++;
+            Integer length = this.lengths.get(goal);
+            return length == null ? null : Collections.nCopies(length, LngLat.Direction.North);
+        }
+    }
+
+    private static Order order(int number, LngLat restaurantLoc, int price) {
+        return new Order(String.valueOf(number), "2023-01-01", restaurantLoc, "4024007148673576", "02/28",
+                "226", new String[]{"Margarita"}, price, Order.OrderOutcome.ValidButNotDelivered.toString());
+    }
+
+    private static long total(List<Order> orders, boolean revenue) {
+        long total = 0;
+        for (Order order : orders) {
+            total += revenue ? order.getPriceTotalInPence() : 1;
+        }
+        return total;
+    }
+
+    private static long bruteForce(List<Order> orders, DeliveryPlanner planner, int battery, boolean revenue) {
+        long best = 0;
+        for (int mask = 0; mask < 1 << orders.size(); mask++) {
+            int cost = 0;
+            List<Order> chosen = new ArrayList<>();
+            for (int i = 0; i < orders.size(); i++) {
+                if ((mask & 1 << i) != 0) {
+                    cost += planner.getRoundTripCost(orders.get(i));
+                    chosen.add(orders.get(i));
+                }
+            }
+            if (cost <= battery) {
+                best = Math.max(best, total(chosen, revenue));
+            }
+        }
+        return best;
+    }
+
+    @Test
+    public void knapsackIsOptimal() {
+        Random random = new Random(11);
+        for (int round = 0; round < 50; round++) {
+            StubPlanner routes = new StubPlanner();
+            List<Order> orders = new ArrayList<>();
+            for (int i = 0; i < 12; i++) {
+                LngLat restaurant = new LngLat(-3.19 + i * 0.001, 55.94);
+                routes.lengths.put(restaurant, 50 + random.nextInt(400));
+                orders.add(order(i, restaurant, 1000 + random.nextInt(5000)));
+            }
+
+            for (DeliveryPlanner.Objective objective : DeliveryPlanner.Objective.values()) {
+                boolean revenue = objective == DeliveryPlanner.Objective.REVENUE;
+                DeliveryPlanner planner = new DeliveryPlanner(routes,
+                        new DeliveryPlanner.Selection(objective, DeliveryPlanner.Strategy.KNAPSACK));
+
+                List<Order> selected = planner.select(orders, Drone.BATTERY);
+
+                int cost = 0;
+                for (Order order : selected) {
+                    cost += planner.getRoundTripCost(order);
+                }
+                assertTrue(cost <= Drone.BATTERY);
+                assertEquals(bruteForce(orders, planner, Drone.BATTERY, revenue), total(selected, revenue));
+            }
+        }
+    }
+
+    @Test
+    public void skipsUnaffordableOrdersInsteadOfStopping() {
+        StubPlanner routes = new StubPlanner();
+        LngLat near = new LngLat(-3.187, 55.945);
+        LngLat far = new LngLat(-3.2, 55.95);
+        LngLat walledOff = new LngLat(-3.19, 55.943);
+        routes.lengths.put(near, 100);
+        routes.lengths.put(far, 1500);
+        List<Order> orders = List.of(order(1, near, 1100), order(2, far, 1100), order(3, walledOff, 1100),
+                order(4, near, 1100));
+
+        DeliveryPlanner planner = new DeliveryPlanner(routes, new DeliveryPlanner.Selection(
+                DeliveryPlanner.Objective.DELIVERIES, DeliveryPlanner.Strategy.GREEDY_RATIO));
+        List<Order> selected = planner.select(orders, Drone.BATTERY);
+
+        assertEquals(List.of(orders.get(0), orders.get(3)), selected);
+        // one route per restaurant
+        assertEquals(3, routes.calls);
+    }
+
+    @Test
+    public void restaurantsTheRoutePlannerGivesUpAreCostedWithTheFallback() {
+        StubPlanner routes = new StubPlanner();
+        StubPlanner fallback = new StubPlanner();
+        LngLat near = new LngLat(-3.187, 55.945);
+        LngLat cupped = new LngLat(-3.19, 55.943);
+        LngLat walledOff = new LngLat(-3.2, 55.95);
+        routes.lengths.put(near, 100);
+        fallback.lengths.put(cupped, 120);
+
+        DeliveryPlanner planner = new DeliveryPlanner(routes, new DeliveryPlanner.Selection(
+                DeliveryPlanner.Objective.DELIVERIES, DeliveryPlanner.Strategy.KNAPSACK));
+        planner.setFallbackPlanner(fallback);
+
+        assertEquals(202, planner.getRoundTripCost(order(1, near, 1100)));
+        assertEquals(242, planner.getRoundTripCost(order(2, cupped, 1100)));
+        assertEquals(Integer.MAX_VALUE, planner.getRoundTripCost(order(3, walledOff, 1100)));
+        // the fallback is only asked for the restaurants the route planner gives up
+        assertEquals(2, fallback.calls);
+    }
+
+    @Test
+    public void routesThatDependOnTheHeadingAreCostedWithTheLongest() {
+        LngLat restaurant = new LngLat(-3.187, 55.945);
+        // a longer route for every heading further round the compass, none with a South heading
+        RoutePlanner routes = new RoutePlanner() {
+            @Override
+            public List<LngLat.Direction> planRoute(LngLat start, LngLat goal) {
+                return planRoute(start, goal, LngLat.Direction.East);
+            }
+
+            @Override
+            public List<LngLat.Direction> planRoute(LngLat start, LngLat goal, LngLat.Direction heading) {
+                return heading == LngLat.Direction.South ? null
+                        : Collections.nCopies(100 + heading.ordinal(), LngLat.Direction.North);
+            }
+
+            @Override
+            public boolean dependsOnHeading() {
+                return true;
+            }
+        };
+
+        DeliveryPlanner planner = new DeliveryPlanner(routes, new DeliveryPlanner.Selection(
+                DeliveryPlanner.Objective.DELIVERIES, DeliveryPlanner.Strategy.KNAPSACK));
+        assertEquals((100 + LngLat.Direction.East_South_East.ordinal()) * 2 + 2,
+                planner.getRoundTripCost(order(1, restaurant, 1100)));
+    }
+}
@@ -0,0 +1,94 @@
+package uk.ac.ed.inf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.geom.Line2D;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test of the fixed-point coordinates: exact moves, packing and geometry predicates.
+ */
+public class FixedPointTest {
+    private static final LngLat.Direction[] COMPASS = Arrays.copyOf(LngLat.Direction.values(), 16);
+
+    @Test
+    public void movesAreExactAndCloseToTheMovesInDoubles() {
+        long startLng = FixedPoint.toFixed(Drone.APPLETON_LONGITUDE);
+        long startLat = FixedPoint.toFixed(Drone.APPLETON_LATITUDE);
+        assertEquals(0, FixedPoint.stepLng(LngLat.Direction.Null));
+        assertEquals(0, FixedPoint.stepLat(LngLat.Direction.Null));
+        for (LngLat.Direction direction : COMPASS) {
+            assertEquals(0, FixedPoint.stepLng(direction) + FixedPoint.stepLng(direction.opposite()));
+            assertEquals(0, FixedPoint.stepLat(direction) + FixedPoint.stepLat(direction.opposite()));
+        }
+
+        // a random walk flown back in reverse lands exactly where it started, unlike the same walk in doubles
+        Random random = new Random(7);
+        LngLat.Direction[] walk = new LngLat.Direction[Drone.BATTERY];
+        long lng = startLng;
+        long lat = startLat;
+        LngLat pos = Drone.APPLETON_TOWER;
+        for (int i = 0; i < walk.length; i++) {
+            walk[i] = COMPASS[random.nextInt(COMPASS.length)];
+            lng += FixedPoint.stepLng(walk[i]);
+            lat += FixedPoint.stepLat(walk[i]);
+            pos = pos.nextPosition(walk[i]);
+        }
+        LngLat fixed = new LngLat(FixedPoint.toDegrees(lng), FixedPoint.toDegrees(lat));
+        double drift = FixedPoint.MAX_STEP_ERROR * Math.sqrt(2) * (walk.length + 2) / FixedPoint.UNITS_PER_DEGREE;
+        assertTrue(fixed.distanceTo(pos) <= drift, fixed.distanceTo(pos) + " > " + drift);
+
+        for (int i = walk.length - 1; i >= 0; i--) {
+            lng += FixedPoint.stepLng(walk[i].opposite());
+            lat += FixedPoint.stepLat(walk[i].opposite());
+        }
+        assertEquals(startLng, lng);
+        assertEquals(startLat, lat);
+
+        // positions in the same cell of the closed set share its key, the neighbouring cells do not
+        long quantum = FixedPoint.LENGTH_OF_MOVE / 2;
+        long centreLng = Math.floorDiv(startLng, quantum) * quantum;
+        long centreLat = Math.floorDiv(startLat, quantum) * quantum;
+        long key = FixedPoint.quantize(centreLng, centreLat, quantum);
+        assertEquals(key, FixedPoint.quantize(centreLng + quantum / 4, centreLat - quantum / 4, quantum));
+        assertTrue(key != FixedPoint.quantize(centreLng + quantum, centreLat, quantum));
+        assertTrue(key != FixedPoint.quantize(centreLng, centreLat + quantum, quantum));
+        assertTrue(FixedPoint.quantize(-quantum, 0, quantum) != FixedPoint.quantize(0, -quantum, quantum));
+
+        long tolerance = FixedPoint.toFixed(LngLat.DISTANCE_TOLERANCE);
+        assertTrue(FixedPoint.closeTo(0, 0, tolerance - 1, 0, tolerance));
+        assertFalse(FixedPoint.closeTo(0, 0, tolerance, 0, tolerance));
+        assertFalse(FixedPoint.closeTo(0, 0, Long.MAX_VALUE / 2, Long.MAX_VALUE / 2, tolerance));
+    }
+
+    @Test
+    public void segmentTestAgreesWithLine2D() {
+        // on a small grid most segments are collinear or touch at an end, where tolerance matters most
+        Random random = new Random(11);
+        for (int i = 0; i < 100_000; i++) {
+            long[] c = new long[8];
+            for (int k = 0; k < c.length; k++) {
+                c[k] = random.nextInt(5);
+            }
+            // Line2D reports any two points as intersecting
+            if (c[0] == c[2] && c[1] == c[3] && c[4] == c[6] && c[5] == c[7]) {
+                continue;
+            }
+            assertEquals(Line2D.linesIntersect(c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7]),
+                    FixedPoint.segmentsIntersect(c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7]));
+        }
+
+        // products of these differences overflow a long
+        long big = 3L << 40;
+        assertEquals(1, FixedPoint.orientation(-big, -big, big, -big, big, big));
+        assertEquals(-1, FixedPoint.orientation(-big, -big, big, big, big, -big));
+        assertEquals(0, FixedPoint.orientation(-big, -big, 0, 0, big, big));
+        assertTrue(FixedPoint.segmentsIntersect(-big, -big, big, big, -big, big, big, -big));
+        assertFalse(FixedPoint.segmentsIntersect(-big, -big, big, big, -big, -big + 1, big - 1, big));
+    }
+}
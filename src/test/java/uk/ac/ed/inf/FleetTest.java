@@ -0,0 +1,153 @@
+package uk.ac.ed.inf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.mapbox.geojson.Feature;
+import com.mapbox.geojson.FeatureCollection;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test of the dispatch of orders to a fleet and of the orders a drone hands back.
+ */
+public class FleetTest {
+    @TempDir
+    Path directory;
+
+    private static boolean isValid(Order order) {
+        return order.getOrderOutcome().equals(Order.OrderOutcome.ValidButNotDelivered.toString());
+    }
+
+    private static double estimate(Order order) {
+        return Drone.APPLETON_TOWER.distanceTo(order.getRestaurantLoc()) * 2 / LngLat.LENGTH_OF_MOVE;
+    }
+
+    @Test
+    public void dispatchAssignsEveryOrderOnceWithinTheEstimate() {
+        Fleet fleet = new Fleet(TestWorlds.dataParser(TestWorlds.writeDay(this.directory,
+                TestWorlds.generator(13, 200)), null), 3);
+        fleet.initializeOrders();
+
+        List<List<Order>> assigned = fleet.dispatch();
+        assertEquals(3, assigned.size());
+        Set<Order> seen = new HashSet<>();
+        for (List<Order> orders : assigned) {
+            assertFalse(orders.isEmpty());
+            double battery = 0;
+            for (Order order : orders) {
+                assertTrue(isValid(order));
+                assertTrue(seen.add(order), order.getOrderNo());
+                battery += estimate(order);
+            }
+            assertTrue(battery <= Drone.BATTERY);
+        }
+    }
+
+    @Test
+    public void ordersADroneCannotAffordAreHandedBack() {
+        Fleet fleet = new Fleet(TestWorlds.dataParser(TestWorlds.writeDay(this.directory,
+                TestWorlds.generator(17, 120)), null), 2);
+        fleet.initializeOrders();
+        fleet.deliverOrders();
+
+        Set<Order> delivered = new HashSet<>();
+        for (Drone drone : fleet.getDrones()) {
+            for (Order order : drone.getOrderDelivered()) {
+                assertTrue(delivered.add(order), order.getOrderNo());
+            }
+        }
+        assertFalse(delivered.isEmpty());
+
+        // an order left behind is one no drone has the battery for, not one dropped by an early stop
+        for (Order order : fleet.getAllOrders()) {
+            if (isValid(order)) {
+                for (Drone drone : fleet.getDrones()) {
+                    assertTrue(drone.haveNoEnoughBattery(order), order.getOrderNo());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void ordersToAnUnreachableRestaurantAreGivenUpOnce() throws IOException {
+        for (boolean byRoute : new boolean[]{false, true}) {
+            WorkloadGenerator generator = TestWorlds.generator(17, 120);
+            generator.setZones(0, 3);
+            String baseAddress = TestWorlds.writeDay(this.directory, generator);
+            // the nearest restaurant, so that its orders are dispatched in the first round
+            LngLat boxed = TestWorlds.dataParser(baseAddress, null).getOrders().stream().filter(FleetTest::isValid)
+                    .min((o1, o2) -> Double.compare(o1.getDistance(), o2.getDistance())).orElseThrow()
+                    .getRestaurantLoc();
+
+            // a zone around the restaurant, neither planner reaches it
+            double size = 0.001;
+            Files.writeString(this.directory.resolve("no-fly-zones.geojson"), FeatureCollection.fromFeatures(List.of(
+                    Feature.fromGeometry(TestWorlds.square(boxed.getLng() - size / 2, boxed.getLat() - size / 2,
+                            size)))).toJson());
+            WorldSnapshot.invalidate(baseAddress);
+            DataParser dataParser = TestWorlds.dataParser(baseAddress, null);
+
+            Fleet fleet = new Fleet(dataParser, 2);
+            fleet.setRoutePlanners(() -> new GreedyPlanner(dataParser));
+            fleet.setFallbackPlanners(() -> new AStarPlanner(dataParser, 5000));
+            if (byRoute) {
+                DeliveryPlanner deliveryPlanner = new DeliveryPlanner(new GreedyPlanner(dataParser),
+                        new DeliveryPlanner.Selection(DeliveryPlanner.Objective.DELIVERIES,
+                                DeliveryPlanner.Strategy.GREEDY_RATIO));
+                deliveryPlanner.setFallbackPlanner(new AStarPlanner(dataParser, 5000));
+                fleet.setDeliveryPlanner(deliveryPlanner);
+            }
+            fleet.initializeOrders();
+            assertTimeoutPreemptively(Duration.ofSeconds(60), fleet::deliverOrders);
+
+            int delivered = 0;
+            int boxedOrders = 0;
+            for (Order order : fleet.getAllOrders()) {
+                if (order.getRestaurantLoc().equals(boxed)) {
+                    assertTrue(isValid(order), order.getOrderNo());
+                    boxedOrders++;
+                }
+            }
+            assertTrue(boxedOrders > 0);
+            for (Drone drone : fleet.getDrones()) {
+                delivered += drone.getOrderDelivered().size();
+                // every drone is back at Appleton Tower
+                List<Flightpath> moves = drone.getFlightpaths();
+                Flightpath last = moves.get(moves.size() - 1);
+                assertTrue(new LngLat(last.toLongitude, last.toLatitude).closeTo(Drone.APPLETON_TOWER));
+            }
+            assertTrue(delivered > 0);
+        }
+    }
+
+    @Test
+    public void droneSkipsOrdersItCannotAffordAndDeliversTheRest() {
+        Drone drone = new Drone(TestWorlds.dataParser(TestWorlds.writeDay(this.directory,
+                TestWorlds.generator(19, 120)), null));
+        drone.initializeOrders();
+
+        // farthest orders first, so that the battery runs short before the near orders
+        List<Order> orders = new ArrayList<>(drone.getAllOrders());
+        orders.sort((o1, o2) -> Double.compare(o2.getDistance(), o1.getDistance()));
+        List<Order> skipped = drone.deliverOrdersWithinBattery(orders);
+
+        assertFalse(skipped.isEmpty());
+        for (Order order : skipped) {
+            assertTrue(isValid(order));
+        }
+        Order lastDelivered = drone.getOrderDelivered().get(drone.getOrderDelivered().size() - 1);
+        assertTrue(orders.indexOf(lastDelivered) > orders.indexOf(skipped.get(0)));
+    }
+}
@@ -0,0 +1,134 @@
+package uk.ac.ed.inf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test checking that the binary flightpath file reproduces every move exactly.
+ */
+public class FlightpathArchiveTest {
+    @TempDir
+    Path directory;
+
+    private static List<Flightpath> randomFlight(Random random, int moves) {
+        LngLat.Direction[] directions = LngLat.Direction.values();
+        List<Flightpath> flightpaths = new ArrayList<>();
+        double lng = -3.186874;
+        double lat = 55.944494;
+        int ticks = 0;
+        for (int i = 0; i < moves; i++) {
+            String orderNo = "ORD" + (i / 40);
+            double angle = directions[random.nextInt(directions.length)].getValue();
+            double toLng = lng;
+            double toLat = lat;
+            if (angle != LngLat.Direction.Null.getValue()) {
+                toLng = lng + Math.cos(Math.toRadians(angle)) * LngLat.LENGTH_OF_MOVE;
+                toLat = lat + Math.sin(Math.toRadians(angle)) * LngLat.LENGTH_OF_MOVE;
+            }
+            if (random.nextInt(50) == 0) {
+                // a jump, as the return leg of a delivery starts where the drone hovered
+                lng += random.nextDouble() * 0.01;
+                angle = random.nextDouble() * 360;
+            }
+            ticks += random.nextInt(3);
+            flightpaths.add(new Flightpath(orderNo, lng, lat, angle, toLng, toLat, ticks));
+            lng = toLng;
+            lat = toLat;
+        }
+        return flightpaths;
+    }
+
+    private static void assertSameMove(Flightpath expected, Flightpath actual) {
+        assertEquals(expected.orderNo, actual.orderNo);
+        assertEquals(Double.doubleToRawLongBits(expected.fromLongitude), Double.doubleToRawLongBits(actual.fromLongitude));
+        assertEquals(Double.doubleToRawLongBits(expected.fromLatitude), Double.doubleToRawLongBits(actual.fromLatitude));
+        assertEquals(Double.doubleToRawLongBits(expected.angle), Double.doubleToRawLongBits(actual.angle));
+        assertEquals(Double.doubleToRawLongBits(expected.toLongitude), Double.doubleToRawLongBits(actual.toLongitude));
+        assertEquals(Double.doubleToRawLongBits(expected.toLatitude), Double.doubleToRawLongBits(actual.toLatitude));
+        assertEquals(expected.getTicksSinceStartOfCalculation(), actual.getTicksSinceStartOfCalculation());
+    }
+
+    @Test
+    public void roundTripsEveryMove() throws IOException {
+        List<Flightpath> expected = randomFlight(new Random(3), 2000);
+        Path file = directory.resolve("flightpath-2023-01-01.fpb");
+
+        FlightpathArchive.write(expected, file);
+        List<Flightpath> actual = FlightpathArchive.read(file);
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSameMove(expected.get(i), actual.get(i));
+        }
+        assertTrue(Files.size(file) < expected.size() * 20L);
+    }
+
+    @Test
+    public void keepsTheDronesOfAFleet() throws IOException {
+        Random random = new Random(5);
+        List<Flightpath> expected = new ArrayList<>();
+        for (int droneId = 0; droneId < 3; droneId++) {
+            for (Flightpath path : randomFlight(random, 300)) {
+                expected.add(new Flightpath(droneId, path.orderNo + "-" + droneId, path.fromLongitude,
+                        path.fromLatitude, path.angle, path.toLongitude, path.toLatitude,
+                        path.getTicksSinceStartOfCalculation()));
+            }
+        }
+        Path file = directory.resolve("flightpath-2023-01-04.fpb");
+
+        FlightpathArchive.write(expected, file);
+        List<Flightpath> actual = FlightpathArchive.read(file);
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getDroneId(), actual.get(i).getDroneId());
+            assertSameMove(expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    public void overwritesALargerFileWithTheExactSize() throws IOException {
+        Random random = new Random(5);
+        List<Flightpath> expected = randomFlight(random, 300);
+        Path file = this.directory.resolve("flightpath.fpb");
+        Path fresh = this.directory.resolve("fresh.fpb");
+        FlightpathArchive.write(randomFlight(random, 3000), file);
+        FlightpathArchive.write(expected, file);
+        FlightpathArchive.write(expected, fresh);
+
+        assertEquals(Files.size(fresh), Files.size(file));
+        List<Flightpath> actual = FlightpathArchive.read(file);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSameMove(expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    public void roundTripsEmptyDay() throws IOException {
+        Path file = directory.resolve("flightpath-2023-01-02.fpb");
+
+        FlightpathArchive.write(new ArrayList<>(), file);
+
+        assertTrue(FlightpathArchive.read(file).isEmpty());
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws IOException {
+        Path file = directory.resolve("flightpath-2023-01-03.fpb");
+        Files.writeString(file, "[]");
+
+        assertThrows(IOException.class, () -> FlightpathArchive.read(file));
+    }
+}
@@ -0,0 +1,155 @@
+package uk.ac.ed.inf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.stream.JsonWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test checking that the verifier accepts the result files of a flown day and reports broken moves.
+ */
+public class FlightpathVerifierTest {
+    @TempDir
+    Path directory;
+
+    private static String flightpathJson(List<Flightpath> moves) throws IOException {
+        StringWriter out = new StringWriter();
+        JsonWriter jsonWriter = new JsonWriter(out);
+        jsonWriter.beginArray();
+        for (Flightpath move : moves) {
+            jsonWriter.beginObject();
+            jsonWriter.name("orderNo").value(move.orderNo);
+            jsonWriter.name("fromLongitude").value(move.fromLongitude);
+            jsonWriter.name("fromLatitude").value(move.fromLatitude);
+            jsonWriter.name("angle").value(move.angle);
+            jsonWriter.name("toLongitude").value(move.toLongitude);
+            jsonWriter.name("toLatitude").value(move.toLatitude);
+            jsonWriter.name("ticksSinceStartOfCalculation").value(move.getTicksSinceStartOfCalculation());
+            jsonWriter.endObject();
+        }
+        jsonWriter.endArray();
+        jsonWriter.close();
+        return out.toString();
+    }
+
+    private static String deliveriesJson(Map<String, String> outcomes) throws IOException {
+        StringWriter out = new StringWriter();
+        JsonWriter jsonWriter = new JsonWriter(out);
+        jsonWriter.beginArray();
+        for (Map.Entry<String, String> outcome : outcomes.entrySet()) {
+            jsonWriter.beginObject();
+            jsonWriter.name("orderNo").value(outcome.getKey());
+            jsonWriter.name("outcome").value(outcome.getValue());
+            jsonWriter.name("costInPence").value(1100);
+            jsonWriter.endObject();
+        }
+        jsonWriter.endArray();
+        jsonWriter.close();
+        return out.toString();
+    }
+
+    private static List<FlightpathVerifier.Violation> verify(FlightpathVerifier verifier, List<Flightpath> moves,
+                                                             Map<String, String> outcomes) throws IOException {
+        return verifier.verify(TestWorlds.DATE, new ByteArrayInputStream(flightpathJson(moves).getBytes(StandardCharsets.UTF_8)),
+                new ByteArrayInputStream(deliveriesJson(outcomes).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /** a delivery three moves east of Appleton Tower and back */
+    private static List<Flightpath> shortDelivery(String orderNo) {
+        List<Flightpath> moves = new ArrayList<>();
+        LngLat pos = Drone.APPLETON_TOWER;
+        int ticks = 0;
+        for (LngLat.Direction direction : new LngLat.Direction[]{LngLat.Direction.East, LngLat.Direction.East,
+                LngLat.Direction.East, LngLat.Direction.Null, LngLat.Direction.West, LngLat.Direction.West,
+                LngLat.Direction.West, LngLat.Direction.Null}) {
+            LngLat next = pos.nextPosition(direction);
+            moves.add(new Flightpath(orderNo, pos.getLng(), pos.getLat(), direction.getValue(),
+                    next.getLng(), next.getLat(), ++ticks));
+            pos = next;
+        }
+        return moves;
+    }
+
+    @Test
+    public void acceptsAFlownDay() throws IOException {
+        String base = TestWorlds.writeDay(this.directory, TestWorlds.generator(9, 60));
+        DataParser dataParser = TestWorlds.dataParser(base, null);
+        Drone drone = new Drone(dataParser);
+        drone.initializeOrders();
+        drone.deliverOrders(drone.getAllOrders());
+        assertTrue(drone.getOrderDelivered().size() > 0);
+
+        Map<String, String> outcomes = new LinkedHashMap<>();
+        for (Order order : drone.getAllOrders()) {
+            outcomes.put(order.getOrderNo(), order.getOrderOutcome());
+        }
+        FlightpathVerifier verifier = new FlightpathVerifier(dataParser.getNoFlyZoneIndex());
+        assertEquals(List.of(), verify(verifier, drone.getFlightpaths(), outcomes));
+    }
+
+    @Test
+    public void verifiesTheDaysOfADirectorySkippingOtherFiles() throws IOException {
+        Map<String, String> delivered = Map.of("A", Order.OrderOutcome.Delivered.toString());
+        Files.writeString(this.directory.resolve("flightpath-" + TestWorlds.DATE + ".json"),
+                flightpathJson(shortDelivery("A")));
+        Files.writeString(this.directory.resolve("deliveries-" + TestWorlds.DATE + ".json"), deliveriesJson(delivered));
+        Files.writeString(this.directory.resolve("flightpath-" + TestWorlds.DATE + "-copy.json"), "not json");
+        Files.writeString(this.directory.resolve("flightpath-latest.json"), "not json");
+
+        FlightpathVerifier verifier = new FlightpathVerifier(new NoFlyZoneIndex(List.of()));
+        assertEquals(List.of(), verifier.verifyAll(this.directory, 2));
+    }
+
+    @Test
+    public void reportsBrokenMovesWithOrderAndTick() throws IOException {
+        // a zone across the second move east of Appleton Tower
+        double lng = Drone.APPLETON_LONGITUDE + LngLat.LENGTH_OF_MOVE * 1.5;
+        NoFlyZoneIndex zones = new NoFlyZoneIndex(List.of(TestWorlds.square(lng, Drone.APPLETON_LATITUDE - 0.000025, 0.00005)));
+        NoFlyZoneIndex noZones = new NoFlyZoneIndex(List.of());
+        Map<String, String> delivered = Map.of("A", Order.OrderOutcome.Delivered.toString());
+
+        assertEquals(List.of(), verify(new FlightpathVerifier(noZones), shortDelivery("A"), delivered));
+
+        List<FlightpathVerifier.Violation> crossing = verify(new FlightpathVerifier(zones), shortDelivery("A"), delivered);
+        assertEquals(2, crossing.size());
+        assertEquals(2, crossing.get(0).ticks());
+        assertEquals("move crosses a no-fly zone", crossing.get(0).message());
+        assertEquals(6, crossing.get(1).ticks());
+
+        List<Flightpath> moves = shortDelivery("A");
+        moves.get(1).angle = 10;
+        moves.remove(5);
+        List<FlightpathVerifier.Violation> broken = verify(new FlightpathVerifier(noZones), moves, delivered);
+        assertEquals(2, broken.size());
+        assertEquals("2023-01-01 order A tick 2: angle 10.0 is not a compass direction", broken.get(0).toString());
+        assertEquals("move does not start where the previous move ended", broken.get(1).message());
+        assertEquals(7, broken.get(1).ticks());
+
+        moves = shortDelivery("A");
+        moves.remove(moves.size() - 1);
+        List<FlightpathVerifier.Violation> unfinished = verify(new FlightpathVerifier(noZones), moves, delivered);
+        assertEquals(1, unfinished.size());
+        assertEquals("delivered order does not end with a hover at Appleton Tower", unfinished.get(0).message());
+        assertEquals(-1, unfinished.get(0).ticks());
+
+        List<FlightpathVerifier.Violation> outcomes = verify(new FlightpathVerifier(noZones), shortDelivery("A"),
+                Map.of("A", Order.OrderOutcome.InvalidCvv.toString(), "B", Order.OrderOutcome.Delivered.toString()));
+        assertEquals(2, outcomes.size());
+        assertEquals("an order with outcome InvalidCvv is flown", outcomes.get(0).message());
+        assertEquals("B", outcomes.get(1).orderNo());
+        assertEquals("delivered order has no moves", outcomes.get(1).message());
+    }
+}
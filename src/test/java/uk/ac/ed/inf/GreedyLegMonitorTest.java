@@ -0,0 +1,156 @@
+package uk.ac.ed.inf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test of the detection of stuck greedy legs and of the drone giving them up.
+ */
+public class GreedyLegMonitorTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    public void cyclesAndLegsWithoutProgressAreStuck() {
+        LngLat start = Drone.APPLETON_TOWER;
+        LngLat goal = new LngLat(start.getLng(), start.getLat() + 0.01);
+
+        // back and forth along the same line: coming back to a position with the same heading is a cycle
+        GreedyLegMonitor monitor = new GreedyLegMonitor(start, goal);
+        LngLat east = start.nextPosition(LngLat.Direction.East);
+        assertFalse(monitor.isStuck(east, LngLat.Direction.East));
+        assertFalse(monitor.isStuck(start, LngLat.Direction.West));
+        assertFalse(monitor.isStuck(start, LngLat.Direction.South));
+        assertTrue(monitor.isStuck(east, LngLat.Direction.East));
+
+        // flying away from the goal never repeats a state, it is given up after the window
+        monitor = new GreedyLegMonitor(start, goal);
+        assertEquals(GreedyLegMonitor.MIN_NO_PROGRESS_WINDOW, monitor.getNoProgressWindow());
+        LngLat pos = start;
+        for (int i = 1; i < GreedyLegMonitor.MIN_NO_PROGRESS_WINDOW; i++) {
+            pos = pos.nextPosition(LngLat.Direction.South);
+            assertFalse(monitor.isStuck(pos, LngLat.Direction.South));
+        }
+        assertTrue(monitor.isStuck(pos.nextPosition(LngLat.Direction.South), LngLat.Direction.South));
+    }
+
+    @Test
+    public void longLegsFlyLongDetoursWithoutProgress() {
+        // 667 moves north, around a wall across the whole straight line
+        LngLat start = Drone.APPLETON_TOWER;
+        LngLat goal = new LngLat(start.getLng(), start.getLat() + 0.1);
+        GreedyLegMonitor monitor = new GreedyLegMonitor(start, goal);
+        assertTrue(monitor.getNoProgressWindow() > GreedyLegMonitor.MIN_NO_PROGRESS_WINDOW);
+
+        // east along the wall, north past it, which only gets closer after more than the short window,
+        // then west to the goal
+        int movesWithoutProgress = 0;
+        double closest = start.distanceTo(goal);
+        LngLat pos = start;
+        List<LngLat.Direction> detour = new ArrayList<>();
+        detour.addAll(Collections.nCopies(300, LngLat.Direction.East));
+        detour.addAll(Collections.nCopies(667, LngLat.Direction.North));
+        detour.addAll(Collections.nCopies(300, LngLat.Direction.West));
+        for (LngLat.Direction direction : detour) {
+            if (pos.closeTo(goal)) {
+                break;
+            }
+            pos = pos.nextPosition(direction);
+            if (pos.distanceTo(goal) < closest) {
+                closest = pos.distanceTo(goal);
+            } else {
+                movesWithoutProgress++;
+            }
+            assertFalse(monitor.isStuck(pos, direction));
+        }
+        assertTrue(pos.closeTo(goal));
+        assertTrue(movesWithoutProgress > GreedyLegMonitor.MIN_NO_PROGRESS_WINDOW);
+    }
+
+    @Test
+    public void droneGivesUpACupAndFliesTheFallbackRoute() throws IOException {
+        WorkloadGenerator generator = TestWorlds.generator(5, 4);
+        generator.setInvalidFraction(0);
+        generator.setZones(0, 3);
+        String baseAddress = TestWorlds.writeDay(this.directory, generator);
+        Order order = TestWorlds.dataParser(baseAddress, null).getOrders().get(0);
+
+        // a cup halfway to the restaurant, open towards Appleton Tower
+        writeCup(Drone.APPLETON_TOWER, order.getRestaurantLoc());
+        WorldSnapshot.invalidate(baseAddress);
+        DataParser dataParser = TestWorlds.dataParser(baseAddress, new Metrics());
+        order = dataParser.getOrders().get(0);
+        assertNull(new GreedyPlanner(dataParser).planRoute(Drone.APPLETON_TOWER, order.getRestaurantLoc()));
+        assertEquals(1, dataParser.getMetrics().greedyLegsAbandoned.get());
+
+        // without a fallback the order is given up and its battery restored
+        Drone drone = new Drone(dataParser);
+        drone.droneMove(order);
+        assertEquals(Drone.BATTERY, drone.getRemainBattery());
+        assertEquals(0, drone.getMoves().size());
+        assertEquals(Order.OrderOutcome.ValidButNotDelivered.toString(), order.getOrderOutcome());
+        assertEquals(2, dataParser.getMetrics().greedyLegsAbandoned.get());
+
+        // with a fallback only the fallback route is flown and streamed
+        List<Flightpath> streamed = new ArrayList<>();
+        drone = new Drone(dataParser);
+        drone.setFallbackPlanner(new AStarPlanner(dataParser));
+        drone.streamMovesTo(streamed::add);
+        drone.droneMove(order);
+        assertEquals(Order.OrderOutcome.Delivered.toString(), order.getOrderOutcome());
+        assertEquals(Drone.BATTERY - drone.getRemainBattery(), streamed.size());
+        assertEquals(Drone.APPLETON_LONGITUDE, streamed.get(0).fromLongitude);
+        assertEquals(Drone.APPLETON_LATITUDE, streamed.get(0).fromLatitude);
+        assertEquals(3, dataParser.getMetrics().greedyLegsAbandoned.get());
+
+        // a leg the greedy planner gave up is not flown greedily again, the fallback route is flown straight away
+        dataParser = TestWorlds.dataParser(baseAddress, dataParser.getMetrics());
+        order = dataParser.getOrders().get(0);
+        streamed.clear();
+        drone = new Drone(dataParser);
+        drone.setRoutePlanner(new GreedyPlanner(dataParser));
+        drone.setFallbackPlanner(new AStarPlanner(dataParser));
+        drone.streamMovesTo(streamed::add);
+        drone.droneMove(order);
+        assertEquals(Order.OrderOutcome.Delivered.toString(), order.getOrderOutcome());
+        assertEquals(Drone.BATTERY - drone.getRemainBattery(), streamed.size());
+        // only the planner gave the leg up
+        assertEquals(4, dataParser.getMetrics().greedyLegsAbandoned.get());
+    }
+
+    /** replace the no-fly zones with a cup on the line from start to goal, its mouth facing start */
+    private void writeCup(LngLat start, LngLat goal) throws IOException {
+        double distance = start.distanceTo(goal);
+        double alongLng = (goal.getLng() - start.getLng()) / distance;
+        double alongLat = (goal.getLat() - start.getLat()) / distance;
+        double centreLng = (start.getLng() + goal.getLng()) / 2;
+        double centreLat = (start.getLat() + goal.getLat()) / 2;
+        double w = Math.min(0.001, distance / 4);
+
+        // in the frame of the line: along it towards the goal, across it
+        double[][] cup = {{-w, -w}, {w, -w}, {w, w}, {-w, w}, {-w, 0.7 * w}, {0.7 * w, 0.7 * w},
+                {0.7 * w, -0.7 * w}, {-w, -0.7 * w}, {-w, -w}};
+        StringBuilder ring = new StringBuilder();
+        for (double[] vertex : cup) {
+            double lng = centreLng + vertex[0] * alongLng - vertex[1] * alongLat;
+            double lat = centreLat + vertex[0] * alongLat + vertex[1] * alongLng;
+            ring.append(ring.length() == 0 ? "" : ",").append(String.format(Locale.ROOT, "[%.9f,%.9f]", lng, lat));
+        }
+        Files.writeString(this.directory.resolve("no-fly-zones.geojson"), "{\"type\":\"FeatureCollection\"," +
+                "\"features\":[{\"type\":\"Feature\",\"properties\":{\"name\":\"Cup\"},\"geometry\":" +
+                "{\"type\":\"Polygon\",\"coordinates\":[[" + ring + "]]}}]}");
+    }
+}
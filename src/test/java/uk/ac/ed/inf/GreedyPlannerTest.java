@@ -0,0 +1,77 @@
+package uk.ac.ed.inf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test of the greedy routes planned ahead of the flight.
+ */
+public class GreedyPlannerTest {
+    @TempDir
+    Path directory;
+
+    private DataParser dataParser(long seed) {
+        WorkloadGenerator generator = TestWorlds.generator(seed, 40);
+        generator.setZones(8, 6);
+        return TestWorlds.dataParser(TestWorlds.writeDay(this.directory, generator), null);
+    }
+
+    @Test
+    public void routeIsTheGreedyNavigatorFromTheGivenHeading() {
+        DataParser dataParser = dataParser(23);
+        GreedyPlanner planner = new GreedyPlanner(dataParser);
+        for (LngLat restaurant : dataParser.getRestaurantLocs()) {
+            for (LngLat.Direction heading : List.of(LngLat.Direction.East, LngLat.Direction.North_North_West)) {
+                List<LngLat.Direction> route = planner.planRoute(Drone.APPLETON_TOWER, restaurant, heading);
+                if (route == null) {
+                    continue;
+                }
+                LngLat pos = Drone.APPLETON_TOWER;
+                LngLat.Direction current = heading;
+                for (LngLat.Direction direction : route) {
+                    current = pos.nextDirection(dataParser, restaurant, current);
+                    assertEquals(current, direction);
+                    pos = pos.nextPosition(direction);
+                }
+                assertTrue(pos.closeTo(restaurant));
+            }
+            assertEquals(planner.planRoute(Drone.APPLETON_TOWER, restaurant, LngLat.Direction.East),
+                    planner.planRoute(Drone.APPLETON_TOWER, restaurant));
+        }
+    }
+
+    @Test
+    public void plannedDayFliesTheMovesOfTheGreedyDrone() {
+        DataParser dataParser = dataParser(29);
+        Drone greedy = new Drone(dataParser);
+        greedy.initializeOrders();
+        greedy.deliverOrders(greedy.getAllOrders());
+
+        // a fresh day, the heading of every leg is carried into the planner
+        dataParser = dataParser(29);
+        Drone planned = new Drone(dataParser);
+        planned.setRoutePlanner(new GreedyPlanner(dataParser));
+        planned.initializeOrders();
+        planned.deliverOrders(planned.getAllOrders());
+
+        assertNotNull(greedy.getFlightpaths());
+        assertTrue(greedy.getOrderDelivered().size() > 1);
+        assertEquals(moves(greedy), moves(planned));
+    }
+
+    private static List<String> moves(Drone drone) {
+        List<String> moves = new ArrayList<>();
+        for (Flightpath flightpath : drone.getFlightpaths()) {
+            moves.add(flightpath.orderNo + " " + flightpath.toLongitude + "," + flightpath.toLatitude);
+        }
+        return moves;
+    }
+}
@@ -0,0 +1,186 @@
+package uk.ac.ed.inf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test of the cache of server responses: gzip bodies, conditional revalidation and offline mode.
+ */
+public class HttpCacheTest {
+    private static final String BODY = "[{\"name\": \"Civerinos Slice\"}]".repeat(50);
+
+    @TempDir
+    Path directory;
+
+    private HttpServer server;
+    private String baseAddress;
+    private volatile String etag = "\"v1\"";
+    /** the status of every response of the server */
+    private final List<Integer> statuses = new CopyOnWriteArrayList<>();
+    /** the bodies of /held/ are sent once this is released */
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.createContext("/", this::respond);
+        this.server.setExecutor(Executors.newCachedThreadPool());
+        this.server.start();
+        this.baseAddress = "http://localhost:" + this.server.getAddress().getPort();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        this.release.countDown();
+        this.server.stop(0);
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        if (this.etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            this.statuses.add(304);
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+
+        byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+        boolean plain = exchange.getRequestURI().getPath().endsWith("/plain");
+        if (!plain && "gzip".equals(exchange.getRequestHeaders().getFirst("Accept-Encoding"))) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (OutputStream out = new GZIPOutputStream(compressed)) {
+                out.write(body);
+            }
+            body = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().set("ETag", this.etag);
+        this.statuses.add(200);
+        if (exchange.getRequestURI().getPath().startsWith("/held/")) {
+            // the headers go out at once, the body once released
+            exchange.sendResponseHeaders(200, 0);
+            try {
+                this.release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else {
+            exchange.sendResponseHeaders(200, body.length);
+        }
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Test
+    public void cachedBodiesAreRevalidated() throws IOException {
+        RestFetcher fetcher = new RestFetcher(2);
+        assertEquals(BODY, fetcher.fetch(this.baseAddress + "/restaurants"));
+
+        HttpCache cache = new HttpCache(this.directory);
+        fetcher.setCache(cache);
+        assertEquals(BODY, fetcher.fetch(this.baseAddress + "/restaurants"));
+        try (InputStream body = RestFetcher.await(fetcher.fetchStreamAsync(this.baseAddress + "/restaurants"))) {
+            assertEquals(BODY, new String(body.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertEquals(List.of(200, 200, 304), this.statuses);
+
+        // a changed body is transferred again
+        this.etag = "\"v2\"";
+        assertEquals(BODY, fetcher.fetch(this.baseAddress + "/restaurants"));
+        assertEquals(BODY, fetcher.fetch(this.baseAddress + "/restaurants"));
+        assertEquals(List.of(200, 200, 304, 200, 304), this.statuses);
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void offlineServesOnlyCachedBodies() {
+        RestFetcher fetcher = new RestFetcher(2);
+        HttpCache cache = new HttpCache(this.directory);
+        fetcher.setCache(cache);
+        assertEquals(BODY, fetcher.fetch(this.baseAddress + "/restaurants"));
+        this.server.stop(0);
+
+        cache.setOffline(true);
+        assertEquals(BODY, fetcher.fetch(this.baseAddress + "/restaurants"));
+        UncheckedIOException notCached = assertThrows(UncheckedIOException.class,
+                () -> fetcher.fetch(this.baseAddress + "/centralArea"));
+        assertInstanceOf(HttpCache.NotCachedException.class, notCached.getCause());
+
+        // a new cache on the same directory serves the bodies of earlier runs
+        HttpCache rerun = new HttpCache(this.directory);
+        rerun.setOffline(true);
+        fetcher.setCache(rerun);
+        assertEquals(BODY, fetcher.fetch(this.baseAddress + "/restaurants"));
+        assertEquals(1, rerun.getHits());
+        assertEquals(List.of(200), this.statuses);
+    }
+
+    @Test
+    public void streamedBodiesAreHandedOverBeforeTheyArrive() throws Exception {
+        RestFetcher fetcher = new RestFetcher(2);
+        CompletableFuture<InputStream> uncached = fetcher.fetchStreamAsync(this.baseAddress + "/held/orders");
+        HttpCache cache = new HttpCache(this.directory);
+        fetcher.setCache(cache);
+        CompletableFuture<InputStream> cached = fetcher.fetchStreamAsync(this.baseAddress + "/held/plain");
+
+        try (InputStream uncachedBody = uncached.get(5, TimeUnit.SECONDS);
+             InputStream cachedBody = cached.get(5, TimeUnit.SECONDS)) {
+            // nothing of the bodies was sent yet, and nothing is stored before the body is read
+            assertNull(cache.lookup(this.baseAddress + "/held/plain"));
+            this.release.countDown();
+            assertEquals(BODY, new String(uncachedBody.readAllBytes(), StandardCharsets.UTF_8));
+            assertEquals(BODY, new String(cachedBody.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        HttpCache.Entry entry = cache.lookup(this.baseAddress + "/held/plain");
+        assertNotNull(entry);
+        assertEquals(BODY, new String(HttpCache.read(entry.body()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void streamedBodiesAreCachedOnlyOnceReadToTheEnd() throws IOException {
+        RestFetcher fetcher = new RestFetcher(2);
+        HttpCache cache = new HttpCache(this.directory);
+        fetcher.setCache(cache);
+        try (InputStream body = RestFetcher.await(fetcher.fetchStreamAsync(this.baseAddress + "/orders"))) {
+            assertEquals(BODY.substring(0, 10), new String(body.readNBytes(10), StandardCharsets.UTF_8));
+        }
+        assertNull(cache.lookup(this.baseAddress + "/orders"));
+
+        try (InputStream body = RestFetcher.await(fetcher.fetchStreamAsync(this.baseAddress + "/orders"))) {
+            assertEquals(BODY, new String(body.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        try (InputStream body = RestFetcher.await(fetcher.fetchStreamAsync(this.baseAddress + "/orders"))) {
+            assertEquals(BODY, new String(body.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertEquals(List.of(200, 200, 304), this.statuses);
+        assertEquals(1, cache.getHits());
+    }
+}
@@ -0,0 +1,130 @@
+package uk.ac.ed.inf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test of the live intake: orders are validated and flown as they arrive and every route is timed.
+ */
+public class LiveIntakeTest {
+    @TempDir
+    Path directory;
+
+    /** a generated day, with its orders as JSON Lines */
+    private List<String> generateDay(int orderCount) throws IOException {
+        TestWorlds.writeDay(this.directory, TestWorlds.generator(11, orderCount));
+        return TestWorlds.orderLines(this.directory);
+    }
+
+    @Test
+    public void submittedOrdersAreFlownAndTimed() throws IOException {
+        List<String> lines = generateDay(30);
+        List<Flightpath> moves = new ArrayList<>();
+        LiveIntake intake = new LiveIntake(WorldSnapshot.of(this.directory.toUri().toString()), moves::add);
+
+        for (String line : lines) {
+            intake.submit(line);
+        }
+        intake.submit("");
+        intake.submit("{\"orderNo\": ");
+        intake.finish();
+        List<Order> orders = intake.run();
+
+        assertEquals(30, orders.size());
+        long delivered = orders.stream()
+                .filter(order -> order.getOrderOutcome().equals(Order.OrderOutcome.Delivered.toString())).count();
+        assertTrue(delivered > 0);
+        assertEquals(Drone.BATTERY - intake.getDrone().getRemainBattery(), moves.size());
+
+        // one route per flown order, invalid orders are never flown
+        Metrics metrics = intake.getMetrics();
+        assertEquals(delivered, metrics.ordersDelivered.get());
+        assertEquals(30, metrics.orderValidation.getCount());
+        Set<String> flown = new HashSet<>();
+        for (Flightpath move : moves) {
+            flown.add(move.orderNo);
+        }
+        assertTrue(flown.size() >= delivered);
+        assertEquals(flown.size(), metrics.histogram("order_route_latency_seconds", "", 1e9).getCount());
+        for (Order order : orders) {
+            if (flown.contains(order.getOrderNo())) {
+                // the battery may run out on the way
+                assertTrue(order.getOrderOutcome().equals(Order.OrderOutcome.Delivered.toString()) ||
+                        order.getOrderOutcome().equals(Order.OrderOutcome.ValidButNotDelivered.toString()));
+            } else {
+                assertTrue(!order.getOrderOutcome().equals(Order.OrderOutcome.Delivered.toString()));
+            }
+        }
+    }
+
+    @Test
+    public void followedFileIsReadAsItGrows() throws IOException, InterruptedException {
+        List<String> lines = generateDay(6);
+        Path file = this.directory.resolve("intake.jsonl");
+        List<Flightpath> moves = new ArrayList<>();
+        LiveIntake intake = new LiveIntake(WorldSnapshot.of(this.directory.toUri().toString()), moves::add);
+        intake.setIdleTimeout(Duration.ofSeconds(2));
+        Thread follower = intake.follow(file);
+
+        // the last line is split across two writes
+        try (Writer writer = Files.newBufferedWriter(file)) {
+            for (int i = 0; i < lines.size() - 1; i++) {
+                writer.write(lines.get(i) + "\n");
+            }
+            String last = lines.get(lines.size() - 1);
+            writer.write(last.substring(0, last.length() / 2));
+            writer.flush();
+            Thread.sleep(5 * LiveIntake.POLL_MILLIS);
+            writer.write(last.substring(last.length() / 2) + "\n");
+        }
+        List<Order> orders = intake.run();
+        follower.interrupt();
+
+        assertEquals(6, orders.size());
+        assertEquals(lines.size(), orders.stream().map(Order::getOrderNo).distinct().count());
+        assertTrue(moves.size() > 0);
+    }
+
+    @Test
+    public void followedFileIsReadAgainWhenTruncatedOrRotated() throws IOException, InterruptedException {
+        List<String> lines = generateDay(6);
+        Path file = this.directory.resolve("intake.jsonl");
+        LiveIntake intake = new LiveIntake(WorldSnapshot.of(this.directory.toUri().toString()), move -> { });
+        intake.setIdleTimeout(Duration.ofSeconds(2));
+        Thread follower = intake.follow(file);
+
+        Files.writeString(file, lines.get(0) + "\n" + lines.get(1) + "\n");
+        Thread.sleep(10 * LiveIntake.POLL_MILLIS);
+        // truncated, then written again from its start
+        Files.write(file, new byte[0]);
+        Thread.sleep(10 * LiveIntake.POLL_MILLIS);
+        Files.writeString(file, lines.get(2) + "\n", StandardOpenOption.APPEND);
+        Thread.sleep(10 * LiveIntake.POLL_MILLIS);
+        // rotated: moved away and replaced by a new file
+        Files.move(file, this.directory.resolve("intake.jsonl.1"));
+        Files.writeString(file, lines.get(3) + "\n" + lines.get(4) + "\n" + lines.get(5) + "\n");
+        List<Order> orders = intake.run();
+        follower.interrupt();
+
+        OrderReader orderReader = new OrderReader(WorldSnapshot.of(this.directory.toUri().toString()).getMenuCatalog());
+        List<String> expected = new ArrayList<>();
+        for (String line : lines) {
+            expected.add(orderReader.readOrder(line).getOrderNo());
+        }
+        assertEquals(expected, orders.stream().map(Order::getOrderNo).toList());
+    }
+}
@@ -0,0 +1,39 @@
+package uk.ac.ed.inf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test of the shared direction table of the immutable LngLat.
+ */
+public class LngLatTest {
+    @Test
+    public void looksUpEveryDirectionByAngle() {
+        for (LngLat.Direction direction : LngLat.Direction.values()) {
+            assertSame(direction, LngLat.Direction.fromAngle(direction.getValue()));
+        }
+        assertNull(LngLat.Direction.fromAngle(10));
+        assertNull(LngLat.Direction.fromAngle(360));
+        assertNull(LngLat.Direction.fromAngle(-22.5));
+    }
+
+    @Test
+    public void movesAsTheTrigonometricFormula() {
+        LngLat start = new LngLat(-3.186874, 55.944494);
+        for (LngLat.Direction direction : LngLat.Direction.values()) {
+            LngLat next = start.nextPosition(direction);
+            if (direction == LngLat.Direction.Null) {
+                assertSame(start, next);
+                continue;
+            }
+            double angle = Math.toRadians(direction.getValue());
+            assertEquals(new LngLat(start.getLng() + Math.cos(angle) * LngLat.LENGTH_OF_MOVE,
+                    start.getLat() + Math.sin(angle) * LngLat.LENGTH_OF_MOVE), next);
+            // flying back in the opposite direction returns to the start, up to rounding
+            assertEquals(0, next.nextPosition(direction.opposite()).distanceTo(start), 1e-12);
+        }
+    }
+}
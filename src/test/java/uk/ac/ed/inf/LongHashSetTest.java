@@ -0,0 +1,70 @@
+package uk.ac.ed.inf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test of the open-addressing set of the closed positions of A*.
+ */
+public class LongHashSetTest {
+    @Test
+    public void collidingKeysAreProbedPastEachOther() {
+        // a set for 4 keys has 8 slots, find three keys starting at the same slot
+        LongHashSet set = new LongHashSet(4);
+        long[] colliding = new long[3];
+        int found = 0;
+        for (long key = 1; found < colliding.length; key++) {
+            if ((LongHashSet.mix(key) & 7) == (LongHashSet.mix(1) & 7)) {
+                colliding[found++] = key;
+            }
+        }
+
+        assertTrue(set.add(colliding[0]));
+        assertTrue(set.add(colliding[1]));
+        assertFalse(set.add(colliding[1]));
+        assertTrue(set.contains(colliding[0]));
+        assertTrue(set.contains(colliding[1]));
+        assertFalse(set.contains(colliding[2]));
+        assertEquals(2, set.size());
+
+        // the reserved empty marker is a key like any other
+        assertFalse(set.contains(Long.MIN_VALUE));
+        assertTrue(set.add(Long.MIN_VALUE));
+        assertFalse(set.add(Long.MIN_VALUE));
+        assertTrue(set.contains(Long.MIN_VALUE));
+        assertEquals(3, set.size());
+
+        set.clear();
+        assertEquals(0, set.size());
+        assertFalse(set.contains(colliding[0]));
+        assertFalse(set.contains(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void growingKeepsEveryKey() {
+        LongHashSet set = new LongHashSet(1);
+        Set<Long> expected = new HashSet<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            // quantized positions are dense around the start, mix in random ones
+            long key = i % 2 == 0 ? i : random.nextLong();
+            assertEquals(expected.add(key), set.add(key));
+        }
+        assertEquals(expected.size(), set.size());
+        for (long key : expected) {
+            assertTrue(set.contains(key));
+        }
+        for (int i = 0; i < 1000; i++) {
+            long absent = random.nextLong();
+            assertEquals(expected.contains(absent), set.contains(absent));
+            assertFalse(set.contains(-1 - 2L * i));
+        }
+    }
+}
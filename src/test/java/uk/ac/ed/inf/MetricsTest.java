@@ -0,0 +1,98 @@
+package uk.ac.ed.inf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test of the metrics registry and of the metrics recorded while a day is delivered.
+ */
+public class MetricsTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    public void quantilesAreWithinTheBucketResolution() {
+        Metrics.Histogram histogram = new Metrics().histogram("test_seconds", "test", 1e9);
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(100_000L * 100_001 / 2, histogram.getSum());
+        assertEquals(100_000, histogram.getMax());
+        for (double quantile : new double[]{0.5, 0.9, 0.99, 0.999}) {
+            double exact = quantile * 100_000;
+            double error = Math.abs(histogram.getValueAtQuantile(quantile) - exact) / exact;
+            assertTrue(error < 1.0 / 32, quantile + ": " + histogram.getValueAtQuantile(quantile));
+        }
+        assertEquals(100_000, histogram.getValueAtQuantile(1));
+
+        // values below 32 are exact, larger values share a bucket with values less than 1/32 away
+        for (long value = 0; value < 1_000_000; value = value * 9 / 8 + 1) {
+            long highest = Metrics.Histogram.highestValueOf(Metrics.Histogram.bucketOf(value));
+            if (value < 32) {
+                assertEquals(value, highest);
+            }
+            assertTrue(highest >= value && highest < value + value / 32 + 1, value + " in bucket up to " + highest);
+        }
+        assertEquals(Long.MAX_VALUE, Metrics.Histogram.highestValueOf(Metrics.Histogram.bucketOf(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void dumpsAsJsonAndPrometheus() throws IOException {
+        Metrics metrics = new Metrics();
+        metrics.counter("test_bytes_total", "Bytes").add(42);
+        metrics.histogram("test_seconds", "Latency", 1e9).record(2_000_000);
+
+        StringWriter json = new StringWriter();
+        metrics.writeJson(json);
+        JsonObject root = JsonParser.parseString(json.toString()).getAsJsonObject();
+        assertEquals(42, root.getAsJsonObject("counters").get("test_bytes_total").getAsLong());
+        JsonObject latency = root.getAsJsonObject("histograms").getAsJsonObject("test_seconds");
+        assertEquals(1, latency.get("count").getAsLong());
+        assertEquals(0.002, latency.get("max").getAsDouble(), 1e-12);
+        assertEquals(0.002, latency.get("p50").getAsDouble(), 0.002 / 32);
+
+        StringWriter prometheus = new StringWriter();
+        metrics.writePrometheus(prometheus);
+        String text = prometheus.toString();
+        assertTrue(text.contains("# TYPE pizzadronz_test_bytes_total counter\npizzadronz_test_bytes_total 42\n"));
+        assertTrue(text.contains("# TYPE pizzadronz_test_seconds summary\n"));
+        assertTrue(text.contains("pizzadronz_test_seconds_count 1\n"));
+        assertTrue(text.contains("pizzadronz_test_seconds{quantile=\"1\"} 0.002\n"));
+    }
+
+    @Test
+    public void deliveredDayIsMeasured() throws IOException {
+        String base = TestWorlds.writeDay(this.directory, TestWorlds.generator(5, 40));
+
+        Metrics metrics = new Metrics();
+        DataParser dataParser = TestWorlds.dataParser(base, metrics);
+        Drone drone = new Drone(dataParser);
+        drone.initializeOrders();
+        drone.deliverOrders(drone.getAllOrders());
+
+        // the five documents of the snapshot and the orders
+        assertEquals(6, metrics.fetchLatency.getCount());
+        assertTrue(metrics.fetchBytes.get() > 0);
+        assertEquals(40, metrics.orderValidation.getCount());
+        assertEquals(drone.getOrderDelivered().size(), metrics.ordersDelivered.get());
+        assertEquals(1, metrics.batteryRemaining.getCount());
+
+        // every outbound greedy move is measured, the return moves replay them
+        assertTrue(metrics.movePlanning.getCount() > 0);
+        assertTrue(metrics.movePlanning.getCount() < drone.getFlightpaths().size());
+        assertEquals(metrics.movePlanning.getCount(), metrics.angleAdjustments.getCount());
+        assertEquals(metrics.movePlanning.getCount(), metrics.edgesTested.getCount());
+        assertEquals(Drone.BATTERY - drone.getRemainBattery(), metrics.orderMoves.getSum());
+    }
+}
@@ -0,0 +1,73 @@
+package uk.ac.ed.inf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test of the columnar move buffer and its reversed return legs.
+ */
+public class MoveBufferTest {
+    private static final LngLat.Direction[] OUTBOUND = {LngLat.Direction.North, LngLat.Direction.East_North_East,
+            LngLat.Direction.South_West};
+
+    /**
+     * Fly the outbound moves of an order, hover and add the return leg
+     * @return the ticks after the return leg
+     */
+    private static int deliver(MoveBuffer moves, String orderNo, int ticks) {
+        int start = moves.getRecordedCount();
+        LngLat pos = new LngLat(Drone.APPLETON_LONGITUDE, Drone.APPLETON_LATITUDE);
+        for (LngLat.Direction direction : OUTBOUND) {
+            LngLat next = pos.nextPosition(direction);
+            moves.add(orderNo, pos.getLng(), pos.getLat(), direction, next.getLng(), next.getLat(), ++ticks);
+            pos = next;
+        }
+        moves.add(orderNo, pos.getLng(), pos.getLat(), LngLat.Direction.Null, pos.getLng(), pos.getLat(), ++ticks);
+        moves.addReversed(start, moves.getRecordedCount() - 1, ticks + 1);
+        return ticks + OUTBOUND.length;
+    }
+
+    @Test
+    public void returnLegReversesOutboundMoves() {
+        MoveBuffer moves = new MoveBuffer();
+        deliver(moves, "A", 0);
+
+        List<Flightpath> flightpaths = moves.toFlightpaths();
+        assertEquals(OUTBOUND.length * 2 + 1, flightpaths.size());
+        assertEquals(OUTBOUND.length * 2 + 1, moves.size());
+
+        for (int i = 0; i < OUTBOUND.length; i++) {
+            Flightpath out = flightpaths.get(i);
+            Flightpath back = flightpaths.get(flightpaths.size() - 1 - i);
+            assertEquals(out.fromLongitude, back.toLongitude);
+            assertEquals(out.fromLatitude, back.toLatitude);
+            assertEquals(out.toLongitude, back.fromLongitude);
+            assertEquals(out.toLatitude, back.fromLatitude);
+            assertEquals((out.angle + 180) % 360, back.angle);
+        }
+        for (int i = 0; i < flightpaths.size(); i++) {
+            assertEquals(i + 1, flightpaths.get(i).getTicksSinceStartOfCalculation());
+        }
+    }
+
+    @Test
+    public void keepsDeliveriesInFlyingOrder() {
+        MoveBuffer moves = new MoveBuffer();
+        int ticks = 0;
+        for (int order = 0; order < 200; order++) {
+            ticks = deliver(moves, "ORD" + order, ticks);
+        }
+
+        List<Flightpath> flightpaths = moves.toFlightpaths();
+        int perOrder = OUTBOUND.length * 2 + 1;
+        assertEquals(200 * perOrder, flightpaths.size());
+        assertEquals(200, moves.getOrderNos().size());
+        for (int i = 0; i < flightpaths.size(); i++) {
+            assertEquals("ORD" + (i / perOrder), flightpaths.get(i).orderNo);
+            assertEquals(i + 1, flightpaths.get(i).getTicksSinceStartOfCalculation());
+        }
+    }
+}
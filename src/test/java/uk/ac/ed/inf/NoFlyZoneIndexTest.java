@@ -0,0 +1,104 @@
+package uk.ac.ed.inf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.geom.Line2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for the prepared no-fly-zone index.
+ */
+public class NoFlyZoneIndexTest {
+
+
+    private static boolean bruteForce(List<Polygon> zones, double fromLng, double fromLat, double toLng, double toLat) {
+        for (Polygon zone : zones) {
+            List<Point> points = zone.coordinates().get(0);
+            for (int i = 0; i < points.size() - 1; i++) {
+                Point p1 = points.get(i);
+                Point p2 = points.get(i + 1);
+                if (Line2D.linesIntersect(fromLat, fromLng, toLat, toLng,
+                        p1.latitude(), p1.longitude(), p2.latitude(), p2.longitude())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean bruteForceFixed(List<Polygon> zones, long fromLng, long fromLat, long toLng, long toLat) {
+        for (Polygon zone : zones) {
+            List<Point> points = zone.coordinates().get(0);
+            for (int i = 0; i < points.size() - 1; i++) {
+                Point p1 = points.get(i);
+                Point p2 = points.get(i + 1);
+                if (FixedPoint.segmentsIntersect(fromLat, fromLng, toLat, toLng,
+                        FixedPoint.toFixed(p1.latitude()), FixedPoint.toFixed(p1.longitude()),
+                        FixedPoint.toFixed(p2.latitude()), FixedPoint.toFixed(p2.longitude()))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void detectsCrossingAndClearMoves() {
+        NoFlyZoneIndex index = new NoFlyZoneIndex(List.of(TestWorlds.square(-3.19, 55.94, 0.001)));
+
+        assertEquals(4, index.getEdgeCount());
+        assertTrue(index.intersects(-3.1901, 55.9405, -3.1899, 55.9405));
+        assertFalse(index.intersects(-3.1950, 55.9405, -3.1948, 55.9405));
+        assertFalse(index.intersects(-3.1895, 55.9405, -3.1894, 55.9405));
+
+        // a move across every cell of the square tests each of its edges once
+        int test = index.testMove(-3.1899, 55.9401, -3.1891, 55.9409);
+        assertFalse(NoFlyZoneIndex.isIntersection(test));
+        assertEquals(4, NoFlyZoneIndex.edgesTested(test));
+    }
+
+    @Test
+    public void agreesWithLinearScan() {
+        Random random = new Random(42);
+        List<Polygon> zones = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            zones.add(TestWorlds.square(-3.20 + random.nextDouble() * 0.03, 55.93 + random.nextDouble() * 0.03,
+                    0.0002 + random.nextDouble() * 0.002));
+        }
+        NoFlyZoneIndex index = new NoFlyZoneIndex(zones);
+
+        for (int i = 0; i < 20000; i++) {
+            double lng = -3.205 + random.nextDouble() * 0.04;
+            double lat = 55.925 + random.nextDouble() * 0.04;
+            double angle = random.nextInt(16) * Math.PI / 8;
+            double toLng = lng + Math.cos(angle) * LngLat.LENGTH_OF_MOVE;
+            double toLat = lat + Math.sin(angle) * LngLat.LENGTH_OF_MOVE;
+            assertEquals(bruteForce(zones, lng, lat, toLng, toLat), index.intersects(lng, lat, toLng, toLat));
+            assertTrue(NoFlyZoneIndex.edgesTested(index.testMove(lng, lat, toLng, toLat)) <= index.getEdgeCount());
+
+            // the same move on the lattice of A*
+            long fromLng = FixedPoint.toFixed(lng);
+            long fromLat = FixedPoint.toFixed(lat);
+            LngLat.Direction direction = LngLat.Direction.values()[random.nextInt(16)];
+            long nextLng = fromLng + FixedPoint.stepLng(direction);
+            long nextLat = fromLat + FixedPoint.stepLat(direction);
+            assertEquals(bruteForceFixed(zones, fromLng, fromLat, nextLng, nextLat),
+                    index.intersectsFixed(fromLng, fromLat, nextLng, nextLat, 0));
+        }
+    }
+
+    @Test
+    public void emptyIndexNeverIntersects() {
+        NoFlyZoneIndex index = new NoFlyZoneIndex(List.of());
+        assertFalse(index.intersects(-3.19, 55.94, -3.18, 55.95));
+        assertFalse(index.intersectsFixed(0, 0, FixedPoint.UNITS_PER_DEGREE, FixedPoint.UNITS_PER_DEGREE, 0));
+    }
+}
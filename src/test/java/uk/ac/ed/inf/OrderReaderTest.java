@@ -0,0 +1,65 @@
+package uk.ac.ed.inf;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for the streaming order reader.
+ */
+public class OrderReaderTest {
+    static final String RESTAURANTS = "[" +
+            "{\"name\":\"Civerinos Slice\",\"longitude\":-3.1912869215011597,\"latitude\":55.945535152517735," +
+            "\"menu\":[{\"name\":\"Margarita\",\"priceInPence\":1000},{\"name\":\"Calzone\",\"priceInPence\":1400}]}," +
+            "{\"name\":\"Sora Lella Vegan Restaurant\",\"longitude\":-3.202541470527649,\"latitude\":55.943284737579376," +
+            "\"menu\":[{\"name\":\"Meat Lover\",\"priceInPence\":1400},{\"name\":\"Vegan Delight\",\"priceInPence\":1100}]}]";
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void readsOrdersOneByOne() throws IOException {
+        OrderReader reader = new OrderReader(new MenuCatalog(Restaurant.parseRestaurants(RESTAURANTS)));
+        String json = "[" +
+                "{\"orderNo\":\"1AFFE082\",\"orderDate\":\"2023-01-01\",\"customer\":\"Gilberto Handshoe\"," +
+                "\"creditCardNumber\":\"4024007148673576\",\"creditCardExpiry\":\"02/28\",\"cvv\":\"226\"," +
+                "\"priceTotalInPence\":2500,\"orderItems\":[\"Margarita\",\"Calzone\"]}," +
+                "{\"orderNo\":\"0A1AF2B1\",\"orderDate\":\"2023-01-01\",\"creditCardNumber\":\"4024007148673576\"," +
+                "\"creditCardExpiry\":\"02/28\",\"cvv\":\"226\",\"priceTotalInPence\":2500," +
+                "\"orderItems\":[\"Margarita\",\"Meat Lover\"]}," +
+                "{\"orderNo\":\"3C2E12F5\",\"orderDate\":\"2023-01-01\",\"creditCardNumber\":\"4024007148673576\"," +
+                "\"creditCardExpiry\":\"02/28\",\"cvv\":\"226\",\"priceTotalInPence\":100," +
+                "\"orderItems\":[\"Pineapple\"]}]";
+
+        List<Order> orders = new ArrayList<>();
+        reader.readOrders(stream(json), orders::add);
+
+        assertEquals(3, orders.size());
+        assertEquals("1AFFE082", orders.get(0).getOrderNo());
+        assertEquals(Order.OrderOutcome.ValidButNotDelivered.toString(), orders.get(0).getOrderOutcome());
+        assertArrayEquals(new double[]{-3.1912869215011597, 55.945535152517735},
+                new double[]{orders.get(0).getRestaurantLoc().getLng(), orders.get(0).getRestaurantLoc().getLat()});
+        assertEquals(Order.OrderOutcome.InvalidPizzaCombinationMultipleSuppliers.toString(),
+                orders.get(1).getOrderOutcome());
+        assertEquals(Order.OrderOutcome.InvalidPizzaNotDefined.toString(), orders.get(2).getOrderOutcome());
+        assertNull(orders.get(2).getRestaurantLoc());
+    }
+
+    @Test
+    public void rejectsIncompleteOrders() {
+        OrderReader reader = new OrderReader(new MenuCatalog(Restaurant.parseRestaurants(RESTAURANTS)));
+        assertThrows(IOException.class, () -> reader.readOrders(stream("[{\"orderNo\":\"1AFFE082\"}]"), order -> {}));
+        assertThrows(IOException.class, () -> reader.readOrders(stream("{}"), order -> {}));
+    }
+}
@@ -0,0 +1,68 @@
+package uk.ac.ed.inf;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.text.ParseException;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test checking the allocation-free validator against Order.getOrderOutcome.
+ */
+public class OrderValidatorTest {
+    private static final String[] PIZZAS = {"Margarita", "Calzone", "Meat Lover", "Vegan Delight", "Pineapple"};
+    private static final String[] CARDS = {"4024007148673576", "4024007148673577", "402400714867357",
+            "40240071486735767", "4024 07148673576", "４024007148673576"};
+    private static final String[] EXPIRIES = {"02/28", "12/22", "01/23", "13/25", "00/25", "1/25", "02/2028",
+            "ab/cd", "06/23x", "05/46"};
+    private static final String[] CVVS = {"226", "22", "2266", "22a", "٢26"};
+    private static final String[] DATES = {"2023-01-01", "2023-02-15", "2023-13-01", "2023-1-01"};
+
+    private static String random(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    @Test
+    public void matchesLegacyOutcomes() throws ParseException {
+        Restaurant[] restaurants = Restaurant.parseRestaurants(OrderReaderTest.RESTAURANTS);
+        OrderValidator validator = new OrderValidator(new MenuCatalog(restaurants));
+        Random random = new Random(7);
+
+        for (int i = 0; i < 20000; i++) {
+            String[] items = new String[random.nextInt(6)];
+            int total = 100;
+            for (int j = 0; j < items.length; j++) {
+                items[j] = random(random, PIZZAS);
+                total += 1000 + random.nextInt(2) * 400;
+            }
+            String card = random(random, CARDS);
+            String expiry = random(random, EXPIRIES);
+            String cvv = random(random, CVVS);
+            String date = random(random, DATES);
+
+            String expected = Order.getOrderOutcome(restaurants, items, card, expiry, cvv, date, total);
+            assertEquals(expected, validator.validate(items, card, expiry, cvv, date, total).toString());
+        }
+    }
+
+    @Test
+    public void validatesBatchesInOrder() throws ParseException {
+        Restaurant[] restaurants = Restaurant.parseRestaurants(OrderReaderTest.RESTAURANTS);
+        OrderValidator validator = new OrderValidator(new MenuCatalog(restaurants));
+
+        Order[] orders = new Order[1000];
+        Order.OrderOutcome[] expected = new Order.OrderOutcome[orders.length];
+        for (int i = 0; i < orders.length; i++) {
+            String[] items = i % 3 == 0 ? new String[]{"Margarita", "Meat Lover"} : new String[]{"Margarita"};
+            String cvv = i % 5 == 0 ? "22" : "226";
+            orders[i] = new Order(String.valueOf(i), "2023-01-01", null, "4024007148673576", "02/28",
+                    cvv, items, 1100, null);
+            expected[i] = Order.OrderOutcome.valueOf(Order.getOrderOutcome(restaurants, items, "4024007148673576",
+                    "02/28", cvv, "2023-01-01", 1100));
+        }
+
+        assertArrayEquals(expected, validator.validateAll(orders));
+    }
+}
@@ -0,0 +1,95 @@
+package uk.ac.ed.inf;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test of the simplification of the drone flight line.
+ */
+public class PathSimplifierTest {
+    /**
+     * Fly the given directions from Appleton Tower, 10 moves each
+     * @return interleaved lng, lat pairs of every position
+     */
+    private static double[] fly(LngLat.Direction... directions) {
+        double[] points = new double[(directions.length * 10 + 1) * 2];
+        LngLat pos = new LngLat(Drone.APPLETON_LONGITUDE, Drone.APPLETON_LATITUDE);
+        points[0] = pos.getLng();
+        points[1] = pos.getLat();
+        int i = 1;
+        for (LngLat.Direction direction : directions) {
+            for (int step = 0; step < 10; step++) {
+                pos = pos.nextPosition(direction);
+                points[i * 2] = pos.getLng();
+                points[i * 2 + 1] = pos.getLat();
+                i++;
+            }
+        }
+        return points;
+    }
+
+    @Test
+    public void mergesStraightRunsToCorners() {
+        double[] points = fly(LngLat.Direction.East, LngLat.Direction.North, LngLat.Direction.West);
+        double[] corners = {points[0], points[1], points[20], points[21], points[40], points[41],
+                points[60], points[61]};
+
+        int kept = PathSimplifier.mergeCollinear(points, points.length / 2);
+
+        assertEquals(4, kept);
+        assertArrayEquals(corners, Arrays.copyOf(points, kept * 2));
+    }
+
+    @Test
+    public void keepsReversals() {
+        double[] points = fly(LngLat.Direction.East, LngLat.Direction.West);
+
+        int kept = PathSimplifier.mergeCollinear(points, points.length / 2);
+
+        assertEquals(3, kept);
+        assertEquals(points[0], points[4]);
+    }
+
+    @Test
+    public void dropsRepeatedPoints() {
+        double[] points = {0, 0, 1, 1, 1, 1, 2, 0};
+
+        assertEquals(3, PathSimplifier.mergeCollinear(points, 4));
+    }
+
+    @Test
+    public void douglasPeuckerStaysWithinTolerance() {
+        double[] original = fly(LngLat.Direction.East, LngLat.Direction.East_North_East, LngLat.Direction.North_East,
+                LngLat.Direction.East_South_East, LngLat.Direction.South);
+        double[] points = original.clone();
+        double tolerance = 0.0003;
+
+        int kept = PathSimplifier.douglasPeucker(points, points.length / 2, tolerance);
+
+        assertTrue(kept < original.length / 2);
+        assertEquals(original[0], points[0]);
+        assertEquals(original[original.length - 1], points[kept * 2 - 1]);
+
+        // every original point is close to some segment of the simplified line
+        for (int i = 0; i < original.length / 2; i++) {
+            double closest = Double.MAX_VALUE;
+            for (int s = 0; s + 1 < kept; s++) {
+                closest = Math.min(closest, distance(original[i * 2], original[i * 2 + 1],
+                        points[s * 2], points[s * 2 + 1], points[s * 2 + 2], points[s * 2 + 3]));
+            }
+            assertTrue(closest <= tolerance + 1e-12);
+        }
+    }
+
+    private static double distance(double x, double y, double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double t = Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy) / (dx * dx + dy * dy)));
+        return Math.hypot(x - (x1 + t * dx), y - (y1 + t * dy));
+    }
+}
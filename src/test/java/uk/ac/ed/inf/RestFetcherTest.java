@@ -0,0 +1,117 @@
+package uk.ac.ed.inf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test of the bounded concurrency and the timeouts of the fetcher, against a loopback server.
+ */
+public class RestFetcherTest {
+    private HttpServer server;
+    private ExecutorService executor;
+    private String baseAddress;
+    /** the server answers once this is released */
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.executor = Executors.newCachedThreadPool();
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/slow", this::respondWhenReleased);
+        this.server.createContext("/fast", exchange -> respond(exchange, "fast"));
+        this.server.start();
+        this.baseAddress = "http://localhost:" + this.server.getAddress().getPort();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        this.release.countDown();
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+
+    private void respondWhenReleased(HttpExchange exchange) throws IOException {
+        int current = this.inFlight.incrementAndGet();
+        this.maxInFlight.accumulateAndGet(current, Math::max);
+        try {
+            this.release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.inFlight.decrementAndGet();
+        respond(exchange, exchange.getRequestURI().getQuery());
+    }
+
+    private static void respond(HttpExchange exchange, String text) throws IOException {
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Test
+    public void requestsBeyondTheLimitWaitForAFreeSlot() throws Exception {
+        RestFetcher fetcher = new RestFetcher(2);
+        List<CompletableFuture<String>> bodies = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            bodies.add(fetcher.fetchAsync(this.baseAddress + "/slow?" + i));
+        }
+
+        // two requests reach the server, the others are queued in the fetcher
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (this.inFlight.get() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        assertEquals(2, this.inFlight.get());
+
+        this.release.countDown();
+        for (int i = 0; i < bodies.size(); i++) {
+            assertEquals(String.valueOf(i), bodies.get(i).get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(2, this.maxInFlight.get());
+    }
+
+    @Test
+    public void hungResponseTimesOutAndFreesItsSlot() {
+        RestFetcher fetcher = new RestFetcher(1);
+        fetcher.setRequestTimeout(Duration.ofMillis(300));
+
+        long start = System.nanoTime();
+        UncheckedIOException error = assertThrows(UncheckedIOException.class,
+                () -> fetcher.fetch(this.baseAddress + "/slow?hung"));
+        assertTrue(error.getCause() instanceof HttpTimeoutException, error.getMessage());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+
+        // the only slot was given back
+        assertEquals("fast", fetcher.fetch(this.baseAddress + "/fast"));
+    }
+}
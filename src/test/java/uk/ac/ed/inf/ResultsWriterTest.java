@@ -0,0 +1,151 @@
+package uk.ac.ed.inf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.mapbox.geojson.Feature;
+import com.mapbox.geojson.FeatureCollection;
+import com.mapbox.geojson.LineString;
+import com.mapbox.geojson.Point;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Golden test of the result files: with the default options they are byte for byte what the
+ * Gson and mapbox serialization of the first version wrote, whether written at once or streamed.
+ */
+public class ResultsWriterTest {
+    @TempDir
+    Path directory;
+
+    /** a flown day, with the landmarks of its map served as mapbox writes them */
+    private Drone flyDay(Path day) throws IOException {
+        String base = TestWorlds.writeDay(day, TestWorlds.generator(5, 30));
+        List<Feature> landmarks = WorldSnapshot.of(base).getLandmarks();
+        Files.writeString(day.resolve("all.geojson"), FeatureCollection.fromFeatures(landmarks).toJson());
+        WorldSnapshot.invalidate(base);
+
+        Drone drone = new Drone(TestWorlds.dataParser(base, null));
+        drone.initializeOrders();
+        drone.deliverOrders(drone.getAllOrders());
+        assertTrue(drone.getOrderDelivered().size() > 0);
+        return drone;
+    }
+
+    private ResultsWriter resultsWriter(Path folder) throws IOException {
+        Files.createDirectories(folder);
+        ResultsWriter resultsWriter = new ResultsWriter("2023", "01", "01");
+        resultsWriter.setResultFolder(folder);
+        return resultsWriter;
+    }
+
+    @Test
+    public void droneGeojsonOfOneDroneIsTheMapboxOutput() throws IOException {
+        Drone drone = flyDay(this.directory.resolve("day"));
+        WorldSnapshot snapshot = WorldSnapshot.of(this.directory.resolve("day").toUri().toString());
+        Path folder = this.directory.resolve("results");
+        resultsWriter(folder).writeDroneGeojson(snapshot.getLandmarkFeatures(), List.of(drone.getMoves()));
+
+        // the serialization of the first version
+        List<Flightpath> flightpaths = drone.getFlightpaths();
+        List<Point> points = new ArrayList<>();
+        points.add(Point.fromLngLat(flightpaths.get(0).fromLongitude, flightpaths.get(0).fromLatitude));
+        for (Flightpath flightpath : flightpaths) {
+            points.add(Point.fromLngLat(flightpath.toLongitude, flightpath.toLatitude));
+        }
+        List<Feature> features = new ArrayList<>();
+        features.add(Feature.fromGeometry(LineString.fromLngLats(points)));
+        features.addAll(snapshot.getLandmarks());
+        String expected = FeatureCollection.fromFeatures(features).toJson();
+
+        assertEquals(expected, Files.readString(folder.resolve("drone-2023-01-01.geojson")));
+    }
+
+    /** the flightpath file as the first version wrote it, with a Gson JsonArray */
+    private static String gsonFlightpaths(List<Flightpath> flightpaths) {
+        JsonArray jsonArray = new JsonArray();
+        for (Flightpath path : flightpaths) {
+            JsonObject jsonObject = new JsonObject();
+            jsonObject.addProperty("orderNo", path.orderNo);
+            jsonObject.addProperty("fromLongitude", path.fromLongitude);
+            jsonObject.addProperty("fromLatitude", path.fromLatitude);
+            jsonObject.addProperty("angle", path.angle);
+            jsonObject.addProperty("toLongitude", path.toLongitude);
+            jsonObject.addProperty("toLatitude", path.toLatitude);
+            jsonObject.addProperty("ticksSinceStartOfCalculation", path.getTicksSinceStartOfCalculation());
+            jsonArray.add(jsonObject);
+        }
+        return jsonArray.toString();
+    }
+
+    @Test
+    public void flightpathJsonIsTheGsonOutput() throws IOException {
+        Drone drone = flyDay(this.directory.resolve("day"));
+        Path folder = this.directory.resolve("results");
+        ResultsWriter resultsWriter = resultsWriter(folder);
+        resultsWriter.writeFlightpathJson(drone.getMoves());
+        String expected = gsonFlightpaths(drone.getFlightpaths());
+        assertEquals(expected, Files.readString(folder.resolve("flightpath-2023-01-01.json")));
+
+        // streamed while the drone flies, move by move; the ticks of a flight depend on the clock
+        DataParser dataParser = TestWorlds.dataParser(this.directory.resolve("day").toUri().toString(), null);
+        Drone streaming = new Drone(dataParser);
+        List<Flightpath> streamed = new ArrayList<>();
+        try (ResultsWriter.FlightpathStream stream = resultsWriter.openFlightpathStream()) {
+            streaming.streamMovesTo(move -> {
+                streamed.add(move);
+                stream.accept(move);
+            });
+            streaming.initializeOrders();
+            streaming.deliverOrders(streaming.getAllOrders());
+        }
+        assertEquals(drone.getFlightpaths().size(), streamed.size());
+        assertEquals(gsonFlightpaths(streamed), Files.readString(folder.resolve("flightpath-2023-01-01.json")));
+
+        // a day without moves
+        resultsWriter.writeFlightpathJson(new MoveBuffer(0));
+        assertEquals("[]", Files.readString(folder.resolve("flightpath-2023-01-01.json")));
+    }
+
+    @Test
+    public void deliveriesJsonIsTheGsonOutput() throws IOException {
+        Drone drone = flyDay(this.directory.resolve("day"));
+        Path folder = this.directory.resolve("results");
+        resultsWriter(folder).writeDeliveriesJson(drone.getAllOrders());
+
+        JsonArray jsonArray = new JsonArray();
+        for (Order order : drone.getAllOrders()) {
+            JsonObject jsonObject = new JsonObject();
+            jsonObject.addProperty("orderNo", order.getOrderNo());
+            jsonObject.addProperty("outcome", order.getOrderOutcome());
+            jsonObject.addProperty("costInPence", order.getPriceTotalInPence());
+            jsonArray.add(jsonObject);
+        }
+        assertTrue(jsonArray.size() > drone.getOrderDelivered().size());
+        assertEquals(jsonArray.toString(), Files.readString(folder.resolve("deliveries-2023-01-01.json")));
+    }
+
+    @Test
+    public void everyFlightLineOfAFleetHasProperties() throws IOException {
+        Drone drone = flyDay(this.directory.resolve("day"));
+        MoveBuffer other = new MoveBuffer(1);
+        drone.getMoves().forEachMove((orderNo, fromLng, fromLat, angle, toLng, toLat, ticks) ->
+                other.add(orderNo, fromLng, fromLat, LngLat.Direction.Null, toLng, toLat, ticks));
+        Path folder = this.directory.resolve("results");
+        resultsWriter(folder).writeDroneGeojson("", List.of(drone.getMoves(), other));
+
+        String geojson = Files.readString(folder.resolve("drone-2023-01-01.geojson"));
+        FeatureCollection collection = FeatureCollection.fromJson(geojson);
+        assertEquals(2, collection.features().size());
+        assertEquals(0, collection.features().get(0).getNumberProperty("droneId").intValue());
+        assertEquals(1, collection.features().get(1).getNumberProperty("droneId").intValue());
+    }
+}
@@ -0,0 +1,102 @@
+package uk.ac.ed.inf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test of the cache of planned routes, in memory and on disk.
+ */
+public class RouteCacheTest {
+    private static final LngLat GOAL = new LngLat(-3.19, 55.945);
+
+    @TempDir
+    Path directory;
+
+    /**
+     * A planner whose route is its number of calls, so that every planned route can be told apart
+     */
+    private static class CountingPlanner implements RoutePlanner {
+        final List<LngLat.Direction> headings = new ArrayList<>();
+        int calls;
+
+        @Override
+        public List<LngLat.Direction> planRoute(LngLat start, LngLat goal) {
+            return planRoute(start, goal, LngLat.Direction.East);
+        }
+
+        @Override
+        public List<LngLat.Direction> planRoute(LngLat start, LngLat goal, LngLat.Direction heading) {
+            this.calls++;
+            this.headings.add(heading);
+            return this.calls > 3 ? null : List.of(LngLat.Direction.values()).subList(0, this.calls);
+        }
+
+        @Override
+        public boolean dependsOnHeading() {
+            return true;
+        }
+    }
+
+    @Test
+    public void routesAreServedUntilTheGeometryChanges() {
+        RouteCache cache = new RouteCache(null, 16);
+        CountingPlanner planner = new CountingPlanner();
+        RoutePlanner cached = cache.wrap(planner, 1);
+
+        List<LngLat.Direction> route = cached.planRoute(Drone.APPLETON_TOWER, GOAL, LngLat.Direction.North);
+        assertEquals(1, route.size());
+        assertEquals(route, cached.planRoute(Drone.APPLETON_TOWER, GOAL, LngLat.Direction.North));
+        assertEquals(1, planner.calls);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        // the route of another heading or another geometry is planned again
+        assertEquals(2, cached.planRoute(Drone.APPLETON_TOWER, GOAL, LngLat.Direction.South).size());
+        assertEquals(3, cache.wrap(planner, 2).planRoute(Drone.APPLETON_TOWER, GOAL, LngLat.Direction.North).size());
+        assertEquals(List.of(LngLat.Direction.North, LngLat.Direction.South, LngLat.Direction.North),
+                planner.headings);
+
+        // a goal without a route is not cached
+        assertNull(cached.planRoute(GOAL, Drone.APPLETON_TOWER));
+        assertNull(cached.planRoute(GOAL, Drone.APPLETON_TOWER));
+        assertEquals(5, planner.calls);
+        assertEquals(1, cache.getHits());
+        assertEquals(5, cache.getMisses());
+    }
+
+    @Test
+    public void routesOnDiskSurviveTheCache() {
+        CountingPlanner planner = new CountingPlanner();
+        List<LngLat.Direction> route = new RouteCache(this.directory, 16).wrap(planner, 1)
+                .planRoute(Drone.APPLETON_TOWER, GOAL, LngLat.Direction.West);
+
+        // a new cache on the same directory, as in the next run, reads the route back
+        RouteCache rerun = new RouteCache(this.directory, 16);
+        assertEquals(route, rerun.wrap(planner, 1).planRoute(Drone.APPLETON_TOWER, GOAL, LngLat.Direction.West));
+        assertEquals(1, planner.calls);
+        assertEquals(1, rerun.getHits());
+
+        // the key is stored with the route, the route of another geometry is not read back
+        assertEquals(2, rerun.wrap(planner, 3).planRoute(Drone.APPLETON_TOWER, GOAL, LngLat.Direction.West).size());
+        assertEquals(2, planner.calls);
+    }
+
+    @Test
+    public void noHeadingSharesTheRouteOfEast() {
+        RouteCache cache = new RouteCache(null, 16);
+        CountingPlanner planner = new CountingPlanner();
+        RoutePlanner cached = cache.wrap(planner, 1);
+
+        List<LngLat.Direction> route = cached.planRoute(Drone.APPLETON_TOWER, GOAL);
+        assertEquals(route, cached.planRoute(Drone.APPLETON_TOWER, GOAL, LngLat.Direction.East));
+        assertEquals(List.of(LngLat.Direction.East), planner.headings);
+        assertEquals(1, cache.getHits());
+    }
+}
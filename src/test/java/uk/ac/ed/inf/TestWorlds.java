@@ -0,0 +1,83 @@
+package uk.ac.ed.inf;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+
+/**
+ * Fixtures shared by the tests: days written by WorkloadGenerator into a temporary directory,
+ * read back through a file: base address, and simple no-fly zones.
+ */
+final class TestWorlds {
+    /** the day of every generated workload */
+    static final LocalDate DATE = LocalDate.parse("2023-01-01");
+
+    private TestWorlds() {}
+
+    /**
+     * @param seed the seed of the workload
+     * @param orderCount the number of orders of the day
+     * @return a generator of the day on the default map
+     */
+    static WorkloadGenerator generator(long seed, int orderCount) {
+        WorkloadGenerator generator = new WorkloadGenerator(seed);
+        generator.setOrderCount(orderCount);
+        return generator;
+    }
+
+    /**
+     * Write the day of a generator
+     * @param directory the directory to write into, e.g. a TempDir
+     * @param generator the generator of the day
+     * @return the base address of the day
+     */
+    static String writeDay(Path directory, WorkloadGenerator generator) {
+        generator.write(directory, DATE);
+        // a map rewritten in the same directory must be fetched again
+        WorldSnapshot.invalidate(directory.toUri().toString());
+        return directory.toUri().toString();
+    }
+
+    /**
+     * @param baseAddress the base address of a written day
+     * @param metrics the metrics of the day, or null
+     * @return the parser of the day, with its orders fetched
+     */
+    static DataParser dataParser(String baseAddress, Metrics metrics) {
+        return new DataParser(baseAddress, String.valueOf(DATE.getYear()),
+                String.format("%02d", DATE.getMonthValue()), String.format("%02d", DATE.getDayOfMonth()), metrics);
+    }
+
+    /**
+     * @param directory the directory of a written day
+     * @return the orders of the day as JSON Lines
+     */
+    static List<String> orderLines(Path directory) throws IOException {
+        List<String> lines = new ArrayList<>();
+        String orders = Files.readString(directory.resolve("orders").resolve(DATE.toString()));
+        for (JsonElement order : JsonParser.parseString(orders).getAsJsonArray()) {
+            lines.add(order.toString());
+        }
+        return lines;
+    }
+
+    /**
+     * @param lng the longitude of the south-west corner
+     * @param lat the latitude of the south-west corner
+     * @param size the length of the sides, in degrees
+     * @return a square no-fly zone
+     */
+    static Polygon square(double lng, double lat, double size) {
+        List<Point> ring = List.of(Point.fromLngLat(lng, lat), Point.fromLngLat(lng + size, lat),
+                Point.fromLngLat(lng + size, lat + size), Point.fromLngLat(lng, lat + size), Point.fromLngLat(lng, lat));
+        return Polygon.fromLngLats(List.of(ring));
+    }
+}
@@ -0,0 +1,90 @@
+package uk.ac.ed.inf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test of the visibility graph and of the routes planned on it.
+ */
+public class VisibilityGraphPlannerTest {
+    /** a small central area far from the zones of the tests */
+    private static final CentralArea CENTRAL_AREA = new CentralArea(List.of(new LngLat(-3.30, 55.80),
+            new LngLat(-3.29, 55.80), new LngLat(-3.29, 55.81), new LngLat(-3.30, 55.81)));
+
+    @TempDir
+    Path directory;
+
+    private static Point at(double x, double y) {
+        double unit = 0.0003;
+        return Point.fromLngLat(-3.19 + x * unit, 55.94 + y * unit);
+    }
+
+    @Test
+    public void pathLeavesACupAroundItsCorners() {
+        // a cup open to the west, its two inner corners are reflex
+        Polygon cup = Polygon.fromLngLats(List.of(List.of(at(0, 0), at(4, 0), at(4, 4), at(0, 4), at(0, 3),
+                at(3, 3), at(3, 1), at(0, 1), at(0, 0))));
+        NoFlyZoneIndex zones = new NoFlyZoneIndex(List.of(cup));
+        VisibilityGraph graph = new VisibilityGraph(List.of(cup), zones, CENTRAL_AREA, List.of());
+        assertEquals(6, graph.getNodeCount());
+
+        LngLat start = new LngLat(at(1.5, 2).longitude(), at(1.5, 2).latitude());
+        LngLat goal = new LngLat(at(6, 2).longitude(), at(6, 2).latitude());
+        List<LngLat> path = graph.findPath(start, goal);
+        assertNotNull(path);
+        assertEquals(start, path.get(0));
+        assertEquals(goal, path.get(path.size() - 1));
+        // out of the mouth, round two outer corners and on to the goal
+        assertEquals(5, path.size());
+        for (int i = 1; i < path.size(); i++) {
+            LngLat from = path.get(i - 1);
+            LngLat to = path.get(i);
+            assertFalse(zones.intersects(from.getLng(), from.getLat(), to.getLng(), to.getLat()));
+        }
+
+        // with nothing in the way the path is the straight line
+        assertEquals(List.of(goal, new LngLat(goal.getLng() + 0.001, goal.getLat())),
+                graph.findPath(goal, new LngLat(goal.getLng() + 0.001, goal.getLat())));
+    }
+
+    @Test
+    public void routesAreLegalAndNearlyAsShortAsAStar() {
+        WorkloadGenerator generator = TestWorlds.generator(3, 1);
+        generator.setZones(60, 10);
+        DataParser dataParser = TestWorlds.dataParser(TestWorlds.writeDay(this.directory, generator), null);
+        NoFlyZoneIndex zones = dataParser.getNoFlyZoneIndex();
+        CentralArea centralArea = dataParser.getCentralAreaPolygon();
+
+        VisibilityGraphPlanner planner = new VisibilityGraphPlanner(dataParser);
+        AStarPlanner shortest = new AStarPlanner(dataParser);
+        for (LngLat restaurant : dataParser.getRestaurantLocs()) {
+            List<LngLat.Direction> route = planner.planRoute(Drone.APPLETON_TOWER, restaurant);
+            assertNotNull(route);
+
+            // replay the route: no move crosses a zone or re-enters the central area once left
+            LngLat pos = Drone.APPLETON_TOWER;
+            boolean left = false;
+            for (LngLat.Direction direction : route) {
+                LngLat next = pos.nextPosition(direction);
+                assertFalse(zones.intersects(pos.getLng(), pos.getLat(), next.getLng(), next.getLat()));
+                left |= !centralArea.contains(pos.getLng(), pos.getLat());
+                assertFalse(left && centralArea.contains(next.getLng(), next.getLat()));
+                pos = next;
+            }
+            assertTrue(pos.closeTo(restaurant));
+
+            List<LngLat.Direction> best = shortest.planRoute(Drone.APPLETON_TOWER, restaurant);
+            assertTrue(route.size() <= best.size() * 1.05 + 2, route.size() + " moves, A* " + best.size());
+        }
+    }
+}
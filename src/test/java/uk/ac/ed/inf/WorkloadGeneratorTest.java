@@ -0,0 +1,144 @@
+package uk.ac.ed.inf;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test checking that generated days are read by the application as intended.
+ */
+public class WorkloadGeneratorTest {
+    private static final LocalDate DATE = LocalDate.parse("2023-03-14");
+
+    @TempDir
+    Path directory;
+
+    private static WorkloadGenerator generator(long seed) {
+        WorkloadGenerator generator = new WorkloadGenerator(seed);
+        generator.setOrderCount(700);
+        generator.setInvalidFraction(0.2);
+        generator.setRestaurantCount(6);
+        generator.setZones(20, 12);
+        return generator;
+    }
+
+    private WorldSnapshot readSnapshot(Path day) {
+        String base = day.toUri().toString();
+        RestFetcher fetcher = RestFetcher.getDefault();
+        return new WorldSnapshot(fetcher.fetch(base + "/no-fly-zones.geojson"), fetcher.fetch(base + "/restaurants.geojson"),
+                fetcher.fetch(base + "/all.geojson"), fetcher.fetch(base + "/centralArea"),
+                fetcher.fetch(base + "/restaurants"));
+    }
+
+    @Test
+    public void ordersHaveTheRequestedOutcomes() throws IOException {
+        Path day = directory.resolve("day");
+        WorkloadGenerator generator = generator(7);
+        generator.write(day, DATE);
+
+        WorldSnapshot worldSnapshot = readSnapshot(day);
+        List<Order> orders = new ArrayList<>();
+        try (InputStream in = Files.newInputStream(day.resolve("orders").resolve(DATE.toString()))) {
+            new OrderReader(worldSnapshot.getMenuCatalog()).readOrders(in, orders::add);
+        }
+
+        Map<Order.OrderOutcome, Integer> outcomes = new EnumMap<>(Order.OrderOutcome.class);
+        for (Order order : orders) {
+            outcomes.merge(Order.OrderOutcome.valueOf(order.getOrderOutcome()), 1, Integer::sum);
+        }
+        assertEquals(700, orders.size());
+        assertEquals(700 - generator.getInvalidCount(), outcomes.get(Order.OrderOutcome.ValidButNotDelivered));
+        // 140 invalid orders spread over the 7 invalid outcomes
+        for (Order.OrderOutcome outcome : new Order.OrderOutcome[]{Order.OrderOutcome.InvalidCardNumber,
+                Order.OrderOutcome.InvalidExpiryDate, Order.OrderOutcome.InvalidCvv, Order.OrderOutcome.InvalidTotal,
+                Order.OrderOutcome.InvalidPizzaNotDefined, Order.OrderOutcome.InvalidPizzaCount,
+                Order.OrderOutcome.InvalidPizzaCombinationMultipleSuppliers}) {
+            assertEquals(20, outcomes.get(outcome), outcome.toString());
+        }
+    }
+
+    @Test
+    public void zonesDoNotOverlapOrBlockTheRestaurants() {
+        Path day = directory.resolve("day");
+        generator(11).write(day, DATE);
+        WorldSnapshot worldSnapshot = readSnapshot(day);
+
+        List<Polygon> zones = worldSnapshot.getNoFlyZones();
+        assertEquals(20, zones.size());
+        for (int z = 0; z < zones.size(); z++) {
+            List<Point> ring = zones.get(z).coordinates().get(0);
+            assertEquals(13, ring.size());
+            // no vertex of a zone lies in the bounding box of another zone
+            for (int other = 0; other < zones.size(); other++) {
+                if (other != z) {
+                    for (Point point : ring) {
+                        assertFalse(inBounds(zones.get(other), point.longitude(), point.latitude()));
+                    }
+                }
+            }
+        }
+        for (LngLat restaurant : worldSnapshot.getRestaurantLocs()) {
+            for (Polygon zone : zones) {
+                assertFalse(inBounds(zone, restaurant.getLng(), restaurant.getLat()));
+            }
+        }
+        for (Polygon zone : zones) {
+            assertFalse(inBounds(zone, Drone.APPLETON_LONGITUDE, Drone.APPLETON_LATITUDE));
+        }
+    }
+
+    @Test
+    public void zoneCountAndVerticesAreValidatedSeparately() {
+        WorkloadGenerator generator = new WorkloadGenerator(1);
+        assertEquals("The number of zones cannot be negative",
+                assertThrows(IllegalArgumentException.class, () -> generator.setZones(-1, 12)).getMessage());
+        assertEquals("Zones need at least 3 vertices",
+                assertThrows(IllegalArgumentException.class, () -> generator.setZones(4, 2)).getMessage());
+        generator.setZones(0, 3);
+    }
+
+    @Test
+    public void sameSeedWritesSameBytes() throws IOException {
+        generator(3).write(directory.resolve("a"), DATE);
+        generator(3).write(directory.resolve("b"), DATE);
+        generator(4).write(directory.resolve("c"), DATE);
+
+        for (String file : new String[]{"restaurants", "no-fly-zones.geojson", "orders/" + DATE}) {
+            assertArrayEquals(Files.readAllBytes(directory.resolve("a").resolve(file)),
+                    Files.readAllBytes(directory.resolve("b").resolve(file)));
+        }
+        assertTrue(Files.mismatch(directory.resolve("a").resolve("orders/" + DATE),
+                directory.resolve("c").resolve("orders/" + DATE)) >= 0);
+    }
+
+    private static boolean inBounds(Polygon zone, double lng, double lat) {
+        double minLng = Double.POSITIVE_INFINITY;
+        double minLat = Double.POSITIVE_INFINITY;
+        double maxLng = Double.NEGATIVE_INFINITY;
+        double maxLat = Double.NEGATIVE_INFINITY;
+        for (Point point : zone.coordinates().get(0)) {
+            minLng = Math.min(minLng, point.longitude());
+            minLat = Math.min(minLat, point.latitude());
+            maxLng = Math.max(maxLng, point.longitude());
+            maxLat = Math.max(maxLat, point.latitude());
+        }
+        return lng >= minLng && lng <= maxLng && lat >= minLat && lat <= maxLat;
+    }
+}
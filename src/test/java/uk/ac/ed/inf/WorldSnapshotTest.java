@@ -0,0 +1,137 @@
+package uk.ac.ed.inf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit test of the sharing of snapshots between threads, against a loopback server of a generated day.
+ */
+public class WorldSnapshotTest {
+    @TempDir
+    Path directory;
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private String address;
+    /** the /slow/ server answers once this is released */
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile boolean failing;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        TestWorlds.writeDay(this.directory, TestWorlds.generator(3, 1));
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.executor = Executors.newCachedThreadPool();
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/fast/", exchange -> serve(exchange, "/fast/"));
+        this.server.createContext("/slow/", exchange -> {
+            try {
+                this.release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            serve(exchange, "/slow/");
+        });
+        this.server.start();
+        this.address = "http://localhost:" + this.server.getAddress().getPort();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        this.release.countDown();
+        this.server.stop(0);
+        this.executor.shutdownNow();
+        WorldSnapshot.invalidate(this.address + "/fast/");
+        WorldSnapshot.invalidate(this.address + "/slow/");
+    }
+
+    private void serve(HttpExchange exchange, String prefix) throws IOException {
+        this.requests.incrementAndGet();
+        String name = exchange.getRequestURI().getPath().substring(prefix.length()).replaceFirst("^/+", "");
+        if (this.failing) {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+            return;
+        }
+        byte[] body = Files.readAllBytes(this.directory.resolve(name));
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Test
+    public void concurrentCallersShareOneFetch() throws Exception {
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<WorldSnapshot>> snapshots = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                snapshots.add(callers.submit(() -> WorldSnapshot.of(this.address + "/fast/")));
+            }
+            WorldSnapshot first = snapshots.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<WorldSnapshot> snapshot : snapshots) {
+                assertSame(first, snapshot.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        // one request per endpoint
+        assertEquals(5, this.requests.get());
+    }
+
+    @Test
+    public void aSlowServerDoesNotBlockTheOthers() throws Exception {
+        ExecutorService callers = Executors.newSingleThreadExecutor();
+        try {
+            Future<WorldSnapshot> slow = callers.submit(() -> WorldSnapshot.of(this.address + "/slow/"));
+            Thread.sleep(100);
+
+            long start = System.nanoTime();
+            WorldSnapshot.of(this.address + "/fast/");
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+            assertFalse(slow.isDone());
+
+            this.release.countDown();
+            slow.get(10, TimeUnit.SECONDS);
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void aFailedFetchIsNotCached() {
+        this.failing = true;
+        assertThrows(UncheckedIOException.class, () -> WorldSnapshot.of(this.address + "/fast/"));
+
+        this.failing = false;
+        WorldSnapshot snapshot = WorldSnapshot.of(this.address + "/fast/");
+        assertSame(snapshot, WorldSnapshot.of(this.address + "/fast/"));
+    }
+}